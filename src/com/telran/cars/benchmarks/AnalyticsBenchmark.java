@@ -0,0 +1,84 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.RentRecord;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The reports of 10 models and drivers over 1 000 000 records read from the kept counters,
+ * against grouping all the records of the period as a report without counters does.
+ */
+public class AnalyticsBenchmark {
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 50_000;
+    static final int RENTS_PER_CAR = 10;
+    static final int CALLS = 20;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 2; round++) {
+            run("RentCompanyEmbedded", RentCompanyEmbedded::new);
+            run("RentCompanyConcurrent", RentCompanyConcurrent::new);
+        }
+    }
+
+    static void run(String name, Supplier<IRentCompany> factory) {
+        IRentCompany company = factory.get();
+        long t0 = System.nanoTime();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        long t1 = System.nanoTime();
+        System.out.printf("%s: populate %d records %.1f s%n", name,
+                MODELS * CARS_PER_MODEL * RENTS_PER_CAR, (t1 - t0) / 1e9);
+
+        LocalDate from = Fleet.START_DATE.plusDays(8);
+        LocalDate to = from.plusDays(12);
+        report("  all records", company, null, null, 0, Integer.MAX_VALUE);
+        report("  12 days", company, from, to, 0, Integer.MAX_VALUE);
+        report("  age 30-40", company, null, null, 30, 40);
+    }
+
+    static void report(String title, IRentCompany company, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        long sink = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            sink += company.getMostPopularCarModels(10, from, to, fromAge, toAge).size();
+            sink += company.getMostProfitableCarModels(10, from, to, fromAge, toAge).size();
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += company.getMostActiveDrivers(10, from, to, fromAge, toAge).size();
+        long t2 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += scanModels(company, from, to, fromAge, toAge).size();
+        long t3 = System.nanoTime();
+        System.out.printf("%s: models %.3f ms, drivers %.3f ms, scan of the records %.3f ms (%d)%n",
+                title, (t1 - t0) / 2e6 / CALLS, (t2 - t1) / 1e6 / CALLS, (t3 - t2) / 1e6 / CALLS, sink);
+    }
+
+    //Отчет без счетчиков: группировка всех записей периода
+    static List<String> scanModels(IRentCompany company, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        Map<String, Long> rents = company.streamRentRecordsAtDates(from == null ? LocalDate.MIN : from,
+                        to == null ? LocalDate.MAX : to)
+                .filter(r -> isAge(company, r, fromAge, toAge))
+                .collect(Collectors.groupingBy(r -> company.getCar(r.getRegNumber()).getModelName(),
+                        Collectors.counting()));
+        return rents.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(10)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    static boolean isAge(IRentCompany company, RentRecord record, int fromAge, int toAge) {
+        int age = record.getRentDate().getYear() - company.getDriver(record.getLicenseId()).getBirthYear();
+        return age >= fromAge && age < toAge;
+    }
+}
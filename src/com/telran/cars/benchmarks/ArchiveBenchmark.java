@@ -0,0 +1,71 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.RecordArchive;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Heap of a company with 1 000 000 records before and after the records older than 30 days
+ * are archived, the size of the archive on disk, and the history queries over hot and cold days.
+ * Run with -Xmx4g.
+ */
+public class ArchiveBenchmark {
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 50_000;
+    static final int RENTS_PER_CAR = 10;
+    static final int CALLS = 200;
+
+    public static void main(String[] args) throws IOException {
+        RentCompanyEmbedded company = new RentCompanyEmbedded();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        LocalDate today = Fleet.START_DATE.plusDays(RENTS_PER_CAR * 4L + 20);
+        long heapBefore = usedHeap();
+        query("hot", company, today.minusDays(30));
+
+        Path dir = Files.createTempDirectory("archive");
+        company.attachArchive(new RecordArchive(dir.toString()), 30);
+        long t0 = System.nanoTime();
+        int archived = company.archiveRecords(today);
+        long t1 = System.nanoTime();
+        long heapAfter = usedHeap();
+        long disk;
+        try (Stream<Path> files = Files.list(dir)) {
+            disk = files.mapToLong(f -> f.toFile().length()).sum();
+        }
+        System.out.printf("archived %d records in %d ms, heap %d MB -> %d MB, archive %d MB on disk%n",
+                archived, (t1 - t0) / 1_000_000, heapBefore >> 20, heapAfter >> 20, disk >> 20);
+        query("hot", company, today.minusDays(30));
+        query("cold", company, Fleet.START_DATE);
+
+        long t2 = System.nanoTime();
+        new RentCompanyEmbedded().attachArchive(new RecordArchive(dir.toString()), 30);
+        System.out.printf("open and count the archive %d ms%n", (System.nanoTime() - t2) / 1_000_000);
+    }
+
+    static void query(String title, RentCompanyEmbedded company, LocalDate day) {
+        Random random = new Random(1);
+        long sink = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += company.getCarByDrivers(Fleet.license(random.nextInt(DRIVERS))).size();
+        long t1 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += company.getRentRecordsAtDates(day, day.plusDays(1)).size();
+        long t2 = System.nanoTime();
+        System.out.printf("%s: getCarByDrivers %.3f ms, getRentRecordsAtDates of a day %.3f ms (%d)%n",
+                title, (t1 - t0) / 1e6 / CALLS, (t2 - t1) / 1e6 / CALLS, sink);
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
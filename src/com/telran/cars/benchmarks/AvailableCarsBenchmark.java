@@ -0,0 +1,54 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * getCarsByModel, countCarsByModel and getAnyCarByModel on a model of 10 000 cars with 10 of them free,
+ * against the scan of all the cars of the model that getCarsByModel did before.
+ */
+public class AvailableCarsBenchmark {
+    static final int CARS = 10_000;
+    static final int FREE = 10;
+    static final int CALLS = 100_000;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 3; round++) {
+            run("RentCompanyEmbedded", RentCompanyEmbedded::new);
+            run("RentCompanyConcurrent", RentCompanyConcurrent::new);
+        }
+    }
+
+    static void run(String name, Supplier<IRentCompany> factory) {
+        IRentCompany company = factory.get();
+        Fleet.populate(company, 1, CARS, CARS, 0, 1);
+        String model = Fleet.modelName(0);
+        List<Car> allCars = new ArrayList<>(company.getCarsByModel(model));
+        for (int c = FREE; c < CARS; c++)
+            company.rentCar(Fleet.regNumber(0, c), Fleet.license(c), Fleet.START_DATE, 3);
+
+        long sink = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += allCars.stream().filter(c -> !c.isFlRemoved() && !c.isInUse()).toList().size();
+        long t1 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += company.getCarsByModel(model).size();
+        long t2 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += company.countCarsByModel(model);
+        long t3 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++)
+            sink += company.getAnyCarByModel(model).getRegNumber().length();
+        long t4 = System.nanoTime();
+        System.out.printf("%s: scan of all cars %.0f ns, getCarsByModel %.0f ns, count %.0f ns, any %.0f ns (%d)%n",
+                name, (t1 - t0) / (double) CALLS, (t2 - t1) / (double) CALLS, (t3 - t2) / (double) CALLS,
+                (t4 - t3) / (double) CALLS, sink);
+    }
+}
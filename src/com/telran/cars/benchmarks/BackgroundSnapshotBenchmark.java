@@ -0,0 +1,137 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.JournaledRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.utils.Journal;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * rentCar/returnCar throughput and worst latency of a journaled company with 1 000 000 rent records
+ * while nothing else happens, while a background snapshot is written
+ * and while a snapshot is written with the mutations stopped, as save did before.
+ * The view taken under the mutation lock is reported separately. Run with -Xmx3g.
+ */
+public class BackgroundSnapshotBenchmark {
+    static final int MODELS = 10;
+    static final int CARS_PER_MODEL = 1_000;
+    static final int DRIVERS = 100_000;
+    static final int RENTS_PER_CAR = 100;
+    static final int THREADS = 4;
+
+    static final LongAdder ops = new LongAdder();
+    static final AtomicLong maxLatency = new AtomicLong();
+    //Число операций по степеням двойки задержки в микросекундах
+    static final AtomicLongArray latencies = new AtomicLongArray(64);
+    //Воркеры берут read lock на каждую операцию, остановка мира - write lock
+    static final ReentrantReadWriteLock world = new ReentrantReadWriteLock();
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        String snapshot = new File(dir, "backgroundSnapshot.data").getPath();
+        String journal = new File(dir, "backgroundSnapshot.journal").getPath();
+        RentCompanyEmbedded seed = new RentCompanyEmbedded();
+        Fleet.populate(seed, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        seed.save(snapshot);
+        seed = null;
+        Files.deleteIfExists(Path.of(journal));
+
+        try (JournaledRentCompany company = JournaledRentCompany.open(snapshot, journal, Journal.SyncPolicy.NONE)) {
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> workers = startWorkers(company, stop);
+            for (int round = 0; round < 3; round++) {
+                measure("idle", () -> Thread.sleep(2_000));
+                measure("background snapshot", () -> {
+                    long t0 = System.nanoTime();
+                    CompletableFuture<Void> saved = company.checkpointInBackground();
+                    System.out.printf("view of the company taken in %.1f ms%n", (System.nanoTime() - t0) / 1e6);
+                    saved.join();
+                });
+                //Прежнее поведение: мутации ждут всю запись снимка
+                measure("stop-the-world snapshot", () -> {
+                    world.writeLock().lock();
+                    try {
+                        company.checkpoint();
+                    } finally {
+                        world.writeLock().unlock();
+                    }
+                });
+            }
+            stop.set(true);
+            for (Thread worker : workers) worker.join();
+        }
+        Files.deleteIfExists(Path.of(snapshot));
+        Files.deleteIfExists(Path.of(journal));
+    }
+
+    interface Phase {
+        void run() throws Exception;
+    }
+
+    private static void measure(String name, Phase phase) throws Exception {
+        Thread.sleep(200); //операции, задержанные прошлой фазой, не попадают в эту
+        ops.reset();
+        maxLatency.set(0);
+        for (int i = 0; i < latencies.length(); i++) latencies.set(i, 0);
+        long start = System.nanoTime();
+        phase.run();
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-24s %6d ms, %,10.0f ops/s, p99 < %5d us, max latency %6.1f ms%n", name,
+                duration / 1_000_000, ops.sum() * 1e9 / duration, p99(), maxLatency.get() / 1e6);
+    }
+
+    private static long p99() {
+        long total = 0;
+        for (int i = 0; i < latencies.length(); i++) total += latencies.get(i);
+        long seen = 0;
+        for (int i = 0; i < latencies.length(); i++) {
+            seen += latencies.get(i);
+            if (seen * 100 >= total * 99) return 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static List<Thread> startWorkers(JournaledRentCompany company, AtomicBoolean stop) {
+        List<Thread> workers = new ArrayList<>();
+        int cars = MODELS * CARS_PER_MODEL;
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                LocalDate date = Fleet.START_DATE.plusDays(RENTS_PER_CAR * 4L);
+                while (!stop.get()) {
+                    for (int c = thread; c < cars && !stop.get(); c += THREADS) {
+                        String regNumber = Fleet.regNumber(c / CARS_PER_MODEL, c % CARS_PER_MODEL);
+                        long license = Fleet.license(c % DRIVERS);
+                        long t0 = System.nanoTime();
+                        world.readLock().lock();
+                        try {
+                            company.rentCar(regNumber, license, date, 3);
+                            company.returnCar(regNumber, license, date.plusDays(3), 5, 90);
+                        } finally {
+                            world.readLock().unlock();
+                        }
+                        long latency = System.nanoTime() - t0;
+                        maxLatency.accumulateAndGet(latency, Math::max);
+                        latencies.incrementAndGet(64 - Long.numberOfLeadingZeros(latency / 1000));
+                        ops.add(2);
+                    }
+                    date = date.plusDays(4);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        return workers;
+    }
+}
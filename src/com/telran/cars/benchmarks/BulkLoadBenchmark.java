@@ -0,0 +1,98 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.Driver;
+import com.telran.cars.dto.Model;
+import com.telran.cars.models.FleetCsvLoader;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Loads 100 models, 1 000 000 cars and 10 000 000 drivers from CSV files:
+ * parallel parsing, batch add, and for comparison one addCar/addDriver call per entity.
+ * The sizes can be given as arguments: directory, cars, drivers. Run with -Xmx4g.
+ */
+public class BulkLoadBenchmark {
+    static final int MODELS = 100;
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        int cars = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int drivers = args.length > 2 ? Integer.parseInt(args[2]) : 10_000_000;
+        Path models = new File(dir, "bulkModels.csv").toPath();
+        Path carsFile = new File(dir, "bulkCars.csv").toPath();
+        Path driversFile = new File(dir, "bulkDrivers.csv").toPath();
+        writeFiles(models, carsFile, driversFile, cars, drivers);
+        System.out.printf("files: %,d + %,d bytes, %d threads%n", Files.size(carsFile), Files.size(driversFile),
+                Runtime.getRuntime().availableProcessors());
+
+        run("RentCompanyEmbedded", RentCompanyEmbedded::new, models, carsFile, driversFile);
+        run("RentCompanyConcurrent", RentCompanyConcurrent::new, models, carsFile, driversFile);
+
+        Files.deleteIfExists(models);
+        Files.deleteIfExists(carsFile);
+        Files.deleteIfExists(driversFile);
+    }
+
+    static void run(String name, Supplier<IRentCompany> factory, Path models, Path carsFile, Path driversFile)
+            throws IOException {
+        long t0 = System.nanoTime();
+        List<Model> modelList = FleetCsvLoader.readModels(models);
+        List<Car> carList = FleetCsvLoader.readCars(carsFile);
+        List<Driver> driverList = FleetCsvLoader.readDrivers(driversFile);
+        long t1 = System.nanoTime();
+
+        //Второй круг - после прогрева JIT и роста кучи
+        for (int round = 1; round <= 2; round++) {
+            System.gc();
+            IRentCompany company = factory.get();
+            long t2 = System.nanoTime();
+            company.addModels(modelList);
+            company.addCars(carList);
+            company.addDrivers(driverList);
+            long t3 = System.nanoTime();
+            company = null;
+            System.gc();
+
+            //Прежний путь: по одному вызову на машину и водителя
+            company = factory.get();
+            long t4 = System.nanoTime();
+            for (Model model : modelList) company.addModel(model);
+            for (Car car : carList) company.addCar(car);
+            for (Driver driver : driverList) company.addDriver(driver);
+            long t5 = System.nanoTime();
+            System.out.printf("%s round %d: parse %d ms, batch add %d ms, one by one %d ms (%,d cars, %,d drivers)%n",
+                    name, round, (t1 - t0) / 1_000_000, (t3 - t2) / 1_000_000, (t5 - t4) / 1_000_000,
+                    carList.size(), driverList.size());
+        }
+    }
+
+    static void writeFiles(Path models, Path cars, Path drivers, int nCars, int nDrivers) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(models)) {
+            out.write("modelName,gasTank,company,country,priceDay\n");
+            for (int m = 0; m < MODELS; m++)
+                out.write(Fleet.modelName(m) + "," + (40 + m % 30) + ",Company" + m % 10 + ",Country" + m % 5 + ","
+                        + (100 + m % 200) + "\n");
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(cars)) {
+            out.write("regNumber,color,modelName\n");
+            for (int c = 0; c < nCars; c++)
+                out.write(Fleet.regNumber(c % MODELS, c / MODELS) + "," + Fleet.COLORS[c % Fleet.COLORS.length] + ","
+                        + Fleet.modelName(c % MODELS) + "\n");
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(drivers)) {
+            out.write("licenseId,name,birthYear,phone\n");
+            for (int d = 0; d < nDrivers; d++)
+                out.write(Fleet.license(d) + ",Driver" + d + "," + (1950 + d % 50) + ",05" + d + "\n");
+        }
+    }
+}
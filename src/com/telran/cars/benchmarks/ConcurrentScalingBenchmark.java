@@ -0,0 +1,77 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of rentCar + returnCar on {@link RentCompanyConcurrent} with 1 to 16 threads,
+ * every thread on cars no other thread touches, for {@link #SECONDS} seconds per level.
+ * Prints pairs per second and the speedup over one thread: with no shared car the threads meet
+ * only on the striped locks, so the speedup should follow the processors up to their number.
+ */
+public class ConcurrentScalingBenchmark {
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 20_000;
+    static final int[] THREADS = {1, 2, 4, 8, 16};
+    static final int WARMUP_SECONDS = 1;
+    static final int SECONDS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%d processors%n", Runtime.getRuntime().availableProcessors());
+        //Первый проход прогревает JIT
+        for (int round = 0; round < 2; round++) {
+            double single = 0;
+            for (int threads : THREADS) {
+                double pairs = run(threads);
+                if (threads == 1) single = pairs;
+                System.out.printf("%2d threads: %9.0f rent+return/s, speedup %.2f%n", threads, pairs, pairs / single);
+            }
+        }
+    }
+
+    //Новая компания на каждый уровень: записи прошлых уровней не замедляют следующие
+    static double run(int threads) throws InterruptedException {
+        IRentCompany company = new RentCompanyConcurrent();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, 1, 1);
+        LongAdder measured = new LongAdder();
+        long measureFrom = System.nanoTime() + WARMUP_SECONDS * 1_000_000_000L;
+        long end = measureFrom + SECONDS * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                int cars = MODELS * CARS_PER_MODEL;
+                LocalDate rentDate = Fleet.START_DATE.plusDays(10);
+                long count = 0;
+                long now = System.nanoTime();
+                //Свои машины потока - с номером по модулю threads, равным thread; круг по ним - на день позже
+                for (int car = thread; now < end; car += threads) {
+                    if (car >= cars) {
+                        car = thread;
+                        rentDate = rentDate.plusDays(1);
+                    }
+                    String regNumber = Fleet.regNumber(car % MODELS, car / MODELS);
+                    long license = Fleet.license(car % DRIVERS);
+                    if (company.rentCar(regNumber, license, rentDate, 1) != CarsReturnCode.OK)
+                        throw new IllegalStateException("car " + regNumber + " not rented");
+                    company.returnCar(regNumber, license, rentDate, 0, 100);
+                    now = System.nanoTime();
+                    if (now >= measureFrom && now < end) count++;
+                }
+                measured.add(count);
+            }, "rent-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        return measured.sum() / (double) SECONDS;
+    }
+}
@@ -0,0 +1,85 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.RentRecord;
+import com.telran.utils.StringDictionary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Heap and lookups of the car index of one million cars: HashMap by reg number against
+ * StringDictionary ids with a list by id, and the heap of one million rent records
+ * with a reg number string of their own against the one of their car.
+ */
+public class DictionaryBenchmark {
+    static final int CARS = 1_000_000;
+    static final int LOOKUPS = 20_000_000;
+
+    public static void main(String[] args) {
+        Car[] cars = new Car[CARS];
+        for (int i = 0; i < CARS; i++)
+            cars[i] = new Car(Fleet.regNumber(i % 100, i / 100), "black", Fleet.modelName(i % 100));
+
+        long base = usedHeap();
+        Map<String, Car> byRegNumber = new HashMap<>();
+        for (Car car : cars) byRegNumber.put(car.getRegNumber(), car);
+        long mapBytes = usedHeap() - base;
+
+        base = usedHeap();
+        StringDictionary regNumbers = new StringDictionary();
+        List<Car> byId = new ArrayList<>();
+        for (Car car : cars) {
+            regNumbers.add(car.getRegNumber());
+            byId.add(car);
+        }
+        long dictionaryBytes = usedHeap() - base;
+        System.out.printf("HashMap<String, Car>: %d MB, StringDictionary + ArrayList<Car>: %d MB per million cars%n",
+                mapBytes >> 20, dictionaryBytes >> 20);
+
+        //Номера строятся заново, как они приходят в запросах
+        Random random = new Random(1);
+        String[] keys = new String[LOOKUPS / 10];
+        for (int i = 0; i < keys.length; i++) {
+            int car = random.nextInt(CARS * 2);
+            keys[i] = Fleet.regNumber(car % 100, car / 100);
+        }
+        for (int round = 0; round < 3; round++) {
+            long hits = 0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++)
+                if (byRegNumber.get(keys[i % keys.length]) != null) hits++;
+            long t1 = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                int id = regNumbers.id(keys[i % keys.length]);
+                if (id >= 0 && byId.get(id) != null) hits++;
+            }
+            long t2 = System.nanoTime();
+            System.out.printf("lookup HashMap %.1f ns, StringDictionary %.1f ns (%d hits)%n",
+                    (t1 - t0) / (double) LOOKUPS, (t2 - t1) / (double) LOOKUPS, hits);
+        }
+
+        base = usedHeap();
+        List<RentRecord> ownStrings = new ArrayList<>(CARS);
+        for (int i = 0; i < CARS; i++)
+            ownStrings.add(new RentRecord(Fleet.regNumber(i % 100, i / 100), Fleet.license(i), Fleet.START_DATE, 3));
+        long ownBytes = usedHeap() - base;
+        base = usedHeap();
+        List<RentRecord> shared = new ArrayList<>(CARS);
+        for (int i = 0; i < CARS; i++)
+            shared.add(new RentRecord(cars[i].getRegNumber(), Fleet.license(i), Fleet.START_DATE, 3));
+        long sharedBytes = usedHeap() - base;
+        System.out.printf("RentRecord with its own reg number: %d MB, with the one of the car: %d MB per million records%n",
+                ownBytes >> 20, sharedBytes >> 20);
+        System.out.println(byRegNumber.size() + byId.size() + ownStrings.size() + shared.size());
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,58 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Driver;
+import com.telran.utils.LongHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Heap taken by a driver index of one million drivers: boxed HashMap against LongHashMap.
+ * The Driver objects are shared, so only the index itself is measured.
+ */
+public class DriverIndexMemoryBenchmark {
+    static final int DRIVERS = 1_000_000;
+    static final int LOOKUPS = 20_000_000;
+
+    public static void main(String[] args) {
+        Driver[] drivers = new Driver[DRIVERS];
+        for (int i = 0; i < DRIVERS; i++)
+            drivers[i] = new Driver(Fleet.license(i), "Driver" + i, 1980, "05" + i);
+
+        long base = usedHeap();
+        Map<Long, Driver> boxed = new HashMap<>();
+        for (Driver d : drivers) boxed.put(d.getLicenseId(), d);
+        long boxedBytes = usedHeap() - base;
+
+        base = usedHeap();
+        LongHashMap<Driver> primitive = new LongHashMap<>();
+        for (Driver d : drivers) primitive.put(d.getLicenseId(), d);
+        long primitiveBytes = usedHeap() - base;
+
+        System.out.printf("HashMap<Long, Driver>: %d MB, LongHashMap<Driver>: %d MB, saved %d MB per million drivers%n",
+                boxedBytes >> 20, primitiveBytes >> 20, (boxedBytes - primitiveBytes) >> 20);
+
+        //Случайный порядок, половина ключей отсутствует
+        long[] licenses = new Random(1).longs(LOOKUPS, Fleet.license(0), Fleet.license(DRIVERS * 2)).toArray();
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            long hits = 0;
+            for (long license : licenses)
+                if (boxed.get(license) != null) hits++;
+            long t1 = System.nanoTime();
+            for (long license : licenses)
+                if (primitive.get(license) != null) hits++;
+            long t2 = System.nanoTime();
+            System.out.printf("lookup HashMap %.1f ns, LongHashMap %.1f ns (%d hits)%n",
+                    (t1 - t0) / (double) LOOKUPS, (t2 - t1) / (double) LOOKUPS, hits);
+        }
+        System.out.println(boxed.size() + primitive.size() + drivers.length);
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
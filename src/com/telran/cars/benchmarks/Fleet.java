@@ -0,0 +1,58 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.Driver;
+import com.telran.cars.dto.Model;
+import com.telran.cars.models.IRentCompany;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Builds synthetic fleets with a closed rental history for the benchmarks.
+ */
+public class Fleet {
+    public static final LocalDate START_DATE = LocalDate.of(2020, 1, 1);
+    public static final String[] COLORS = {"black", "white", "red", "silver", "blue", "grey"};
+    public static final long FIRST_LICENSE = 1_000_000L;
+
+    public static String modelName(int model) {
+        return "Model" + model;
+    }
+
+    public static String regNumber(int model, int car) {
+        return model + "-" + car;
+    }
+
+    public static long license(int driver) {
+        return FIRST_LICENSE + driver;
+    }
+
+    /**
+     * Adds {@code nModels} models with {@code carsPerModel} cars each and {@code nDrivers} drivers,
+     * then rents and returns every car {@code rentsPerCar} times.
+     */
+    public static void populate(IRentCompany company, int nModels, int carsPerModel,
+                                int nDrivers, int rentsPerCar, long seed) {
+        Random random = new Random(seed);
+        for (int m = 0; m < nModels; m++) {
+            company.addModel(new Model(modelName(m), 40 + m % 30, "Company" + m % 10,
+                    "Country" + m % 5, 100 + m % 200));
+            for (int c = 0; c < carsPerModel; c++)
+                company.addCar(new Car(regNumber(m, c), COLORS[c % COLORS.length], modelName(m)));
+        }
+        for (int d = 0; d < nDrivers; d++)
+            company.addDriver(new Driver(license(d), "Driver" + d, 1950 + d % 50, "05" + d));
+        for (int r = 0; r < rentsPerCar; r++) {
+            LocalDate rentDate = START_DATE.plusDays(r * 4L);
+            for (int m = 0; m < nModels; m++)
+                for (int c = 0; c < carsPerModel; c++) {
+                    String regNumber = regNumber(m, c);
+                    long license = license(random.nextInt(nDrivers));
+                    company.rentCar(regNumber, license, rentDate, 3);
+                    company.returnCar(regNumber, license, rentDate.plusDays(2 + random.nextInt(3)),
+                            random.nextInt(10), 50 + random.nextInt(51));
+                }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.InstrumentedRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * rentCar/returnCar and getCar throughput of a concurrent company with and without
+ * {@link InstrumentedRentCompany}, on 4 threads.
+ */
+public class InstrumentationBenchmark {
+    static final int MODELS = 10;
+    static final int CARS_PER_MODEL = 1_000;
+    static final int DRIVERS = 10_000;
+    static final int THREADS = 4;
+    static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) {
+            run("plain", new RentCompanyConcurrent());
+            InstrumentedRentCompany instrumented = new InstrumentedRentCompany(new RentCompanyConcurrent());
+            run("instrumented", instrumented);
+            if (round == 2) System.out.println(instrumented.snapshot().toText());
+        }
+    }
+
+    static void run(String name, IRentCompany company) throws InterruptedException {
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, 1, 1);
+        int cars = MODELS * CARS_PER_MODEL;
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                LocalDate date = Fleet.START_DATE.plusDays(10);
+                for (int r = 0; r < ROUNDS; r++, date = date.plusDays(4))
+                    for (int c = thread; c < cars; c += THREADS) {
+                        String regNumber = Fleet.regNumber(c / CARS_PER_MODEL, c % CARS_PER_MODEL);
+                        long license = Fleet.license(c % DRIVERS);
+                        company.getCar(regNumber);
+                        company.rentCar(regNumber, license, date, 3);
+                        company.returnCar(regNumber, license, date.plusDays(3), 5, 90);
+                    }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) worker.join();
+        long duration = System.nanoTime() - start;
+        System.out.printf("%-12s %,10.0f ops/s%n", name, 3.0 * ROUNDS * cars * 1e9 / duration);
+    }
+}
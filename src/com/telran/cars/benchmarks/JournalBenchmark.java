@@ -0,0 +1,80 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.JournaledRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.utils.Journal;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of journaled rentCar/returnCar for every fsync policy and number of writer threads.
+ * Every thread rents and returns its own cars, so the only contention is the journal.
+ * The directory of the journal is the first argument (default: the working directory);
+ * it must be on a real disk, fsync on tmpfs costs nothing.
+ */
+public class JournalBenchmark {
+    static final int MODELS = 10;
+    static final int CARS_PER_MODEL = 100;
+    static final int DRIVERS = 1_000;
+    static final long DURATION_MILLIS = 3_000;
+    static final int[] THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        String snapshot = new File(dir, "journalBenchmark.data").getPath();
+        String journal = new File(dir, "journalBenchmark.journal").getPath();
+
+        for (Journal.SyncPolicy policy : Journal.SyncPolicy.values()) {
+            for (int threads : THREADS) {
+                RentCompanyConcurrent seed = new RentCompanyConcurrent();
+                Fleet.populate(seed, MODELS, CARS_PER_MODEL, DRIVERS, 0, 1);
+                seed.save(snapshot);
+                Files.deleteIfExists(Path.of(journal));
+                try (JournaledRentCompany company = JournaledRentCompany.open(snapshot, journal, policy,
+                        RentCompanyConcurrent::load)) {
+                    double opsPerSecond = run(company, threads);
+                    System.out.printf("%-6s %2d threads: %,10.0f ops/s, journal %d MB%n", policy, threads,
+                            opsPerSecond, Files.size(Path.of(journal)) >> 20);
+                }
+            }
+        }
+        Files.deleteIfExists(Path.of(snapshot));
+        Files.deleteIfExists(Path.of(journal));
+    }
+
+    private static double run(JournaledRentCompany company, int threads) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> workers = new ArrayList<>();
+        int cars = MODELS * CARS_PER_MODEL;
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                LocalDate date = Fleet.START_DATE;
+                while (!stop.get()) {
+                    for (int c = thread; c < cars && !stop.get(); c += threads) {
+                        String regNumber = Fleet.regNumber(c / CARS_PER_MODEL, c % CARS_PER_MODEL);
+                        long license = Fleet.license(c % DRIVERS);
+                        company.rentCar(regNumber, license, date, 3);
+                        company.returnCar(regNumber, license, date.plusDays(3), 5, 90);
+                        ops.add(2);
+                    }
+                    date = date.plusDays(4);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        Thread.sleep(DURATION_MILLIS);
+        stop.set(true);
+        for (Thread worker : workers) worker.join();
+        return ops.sum() * 1e9 / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,45 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.cars.models.RentCompanyMapped;
+
+import java.io.File;
+
+/**
+ * Time from restore to the answer of the first getCar/getDriver for growing snapshots:
+ * full restore against the memory-mapped restore.
+ * Run with -Xmx6g.
+ */
+public class MappedRestoreBenchmark {
+    static final int CARS_PER_MODEL = 1_000;
+    static final int DRIVERS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        for (int rentsPerCar : new int[]{1, 10, 100}) {
+            RentCompanyEmbedded company = new RentCompanyEmbedded();
+            Fleet.populate(company, 10, CARS_PER_MODEL, DRIVERS, rentsPerCar, 1);
+            File file = File.createTempFile("company", ".snapshot");
+            file.deleteOnExit();
+            company.save(file.getPath());
+            company = null;
+
+            for (int round = 0; round < 3; round++) {
+                long t0 = System.nanoTime();
+                IRentCompany full = RentCompanyEmbedded.restoreFromFile(file.getPath());
+                full.getCar(Fleet.regNumber(5, 500));
+                full.getDriver(Fleet.license(500));
+                long t1 = System.nanoTime();
+                RentCompanyMapped mapped = (RentCompanyMapped) RentCompanyMapped.restoreFromFile(file.getPath());
+                mapped.getCar(Fleet.regNumber(5, 500));
+                mapped.getDriver(Fleet.license(500));
+                long t2 = System.nanoTime();
+                mapped.awaitLoaded();
+                long t3 = System.nanoTime();
+                System.out.printf("%,d records, %d MB: first query after full restore %d ms, mapped %.2f ms (background load %d ms)%n",
+                        10L * CARS_PER_MODEL * rentsPerCar, file.length() >> 20, (t1 - t0) / 1_000_000,
+                        (t2 - t1) / 1e6, (t3 - t1) / 1_000_000);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.telran.cars.benchmarks;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.cars.models.RentCompanyOffHeap;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Heap and GC pauses of a company with 3 000 000 rent records kept as objects and off-heap:
+ * live heap after populating, the pauses while populating and while running a query load,
+ * and the time of a full collection with the company alive.
+ * Run with -Xmx4g, one engine per run to keep the heaps apart: embedded or offheap.
+ */
+public class OffHeapBenchmark {
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 50_000;
+    static final int RENTS_PER_CAR = 30;
+    static final int CALLS = 20_000;
+
+    static final AtomicLong pauses = new AtomicLong();
+    static final AtomicLong pauseMillis = new AtomicLong();
+    static final AtomicLong maxPauseMillis = new AtomicLong();
+
+    public static void main(String[] args) {
+        listenToCollections();
+        String engine = args.length > 0 ? args[0] : "offheap";
+        run(engine, engine.equals("embedded") ? RentCompanyEmbedded::new : RentCompanyOffHeap::new);
+    }
+
+    static void run(String name, Supplier<IRentCompany> factory) {
+        long base = usedHeap();
+        resetPauses();
+        long t0 = System.nanoTime();
+        IRentCompany company = factory.get();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        long t1 = System.nanoTime();
+        System.out.printf("%s: populate %d ms, %s%n", name, (t1 - t0) / 1_000_000, pausesText());
+        long heap = usedHeap() - base;
+        Object offHeap = company instanceof RentCompanyOffHeap offHeapCompany ?
+                offHeapCompany.getIndexSizes().get("offHeapBytes") : 0L;
+        System.out.printf("%s: live heap %d MB, off-heap %d MB%n", name, heap >> 20, ((Long) offHeap) >> 20);
+
+        resetPauses();
+        Random random = new Random(1);
+        long sink = 0;
+        long t2 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            sink += company.getCarByDrivers(Fleet.license(random.nextInt(DRIVERS))).size();
+            LocalDate day = Fleet.START_DATE.plusDays(random.nextInt(RENTS_PER_CAR) * 4L);
+            sink += company.getRentRecordsAtDates(day, day.plusDays(1), 100, null).getItems().size();
+        }
+        long t3 = System.nanoTime();
+        System.out.printf("%s: query load %d ms, %s (%d)%n", name, (t3 - t2) / 1_000_000, pausesText(), sink);
+
+        long t4 = System.nanoTime();
+        System.gc();
+        System.out.printf("%s: full collection %d ms%n", name, (System.nanoTime() - t4) / 1_000_000);
+        System.out.println(company.getCar(Fleet.regNumber(0, 0)));
+    }
+
+    static void listenToCollections() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                    return;
+                long duration = GarbageCollectionNotificationInfo
+                        .from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+                pauses.incrementAndGet();
+                pauseMillis.addAndGet(duration);
+                maxPauseMillis.accumulateAndGet(duration, Math::max);
+            }, null, null);
+    }
+
+    static void resetPauses() {
+        pauses.set(0);
+        pauseMillis.set(0);
+        maxPauseMillis.set(0);
+    }
+
+    static String pausesText() {
+        return String.format("%d collections, %d ms in total, longest %d ms",
+                pauses.get(), pauseMillis.get(), maxPauseMillis.get());
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
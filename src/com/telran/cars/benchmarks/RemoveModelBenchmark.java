@@ -0,0 +1,57 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.RemovedCarData;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Removes a model of 10 000 cars with 1 000 000 rent records in its history:
+ * removeCar car by car as removeModel did before, the batched removeModel,
+ * and removeModel with an action that only counts the records.
+ * Run with -Xmx4g.
+ */
+public class RemoveModelBenchmark {
+    static final int CARS = 10_000;
+    static final int DRIVERS = 10_000;
+    static final int RENTS_PER_CAR = 100;
+
+    public static void main(String[] args) {
+        for (String mode : List.of("removeCar", "removeModel", "streaming")) {
+            run("RentCompanyEmbedded", RentCompanyEmbedded::new, mode);
+            run("RentCompanyConcurrent", RentCompanyConcurrent::new, mode);
+        }
+    }
+
+    static void run(String name, Supplier<IRentCompany> factory, String mode) {
+        IRentCompany company = factory.get();
+        long t0 = System.nanoTime();
+        Fleet.populate(company, 1, CARS, DRIVERS, RENTS_PER_CAR, 1);
+        String model = Fleet.modelName(0);
+        System.gc();
+        long t1 = System.nanoTime();
+        AtomicLong cars = new AtomicLong();
+        AtomicLong records = new AtomicLong();
+        switch (mode) {
+            case "removeCar" -> {
+                for (Car car : company.getCarsByModel(model))
+                    count(company.removeCar(car.getRegNumber()), cars, records);
+            }
+            case "removeModel" -> company.removeModel(model).forEach(r -> count(r, cars, records));
+            default -> company.removeModel(model, r -> count(r, cars, records));
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("%s: populate %d ms, %s %d ms (%d cars, %d records)%n",
+                name, (t1 - t0) / 1_000_000, mode, (t2 - t1) / 1_000_000, cars.get(), records.get());
+    }
+
+    static void count(RemovedCarData removed, AtomicLong cars, AtomicLong records) {
+        cars.incrementAndGet();
+        records.addAndGet(removed.getRemovedRecords().size());
+    }
+}
@@ -0,0 +1,83 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.JournaledRentCompany;
+import com.telran.cars.models.RentCompanyReplica;
+import com.telran.cars.models.ReplicationPrimary;
+import com.telran.utils.Journal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replication over loopback: the primary fills a fleet of 20 000 cars with 60 000 records
+ * while 0 to 2 replicas follow it, the time for the replicas to apply the last record
+ * and the most records they were behind. Then a new replica catches up from a snapshot.
+ */
+public class ReplicationBenchmark {
+    static final String SNAPSHOT = "replicationBenchmark.data";
+    static final String JOURNAL = "replicationBenchmark.journal";
+    static final int[] REPLICAS = {0, 1, 2};
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 1_000;
+    static final int DRIVERS = 5_000;
+    static final int RENTS_PER_CAR = 3;
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++)
+            for (int replicas : REPLICAS)
+                run(replicas);
+    }
+
+    static void run(int nReplicas) throws Exception {
+        Files.deleteIfExists(Path.of(SNAPSHOT));
+        Files.deleteIfExists(Path.of(JOURNAL));
+        try (JournaledRentCompany company = JournaledRentCompany.open(SNAPSHOT, JOURNAL, Journal.SyncPolicy.NONE);
+             ReplicationPrimary primary = new ReplicationPrimary(company, 0)) {
+            primary.start();
+            RentCompanyReplica[] replicas = new RentCompanyReplica[nReplicas];
+            for (int i = 0; i < nReplicas; i++)
+                replicas[i] = RentCompanyReplica.connect("localhost", primary.getPort());
+
+            //Наибольшее отставание - выборкой в отдельном потоке
+            long[] maxLag = new long[1];
+            Thread sampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (RentCompanyReplica replica : replicas)
+                        maxLag[0] = Math.max(maxLag[0], company.lastSequence() - replica.getAppliedSequence());
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+
+            long t0 = System.nanoTime();
+            Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+            long t1 = System.nanoTime();
+            long last = company.lastSequence();
+            for (RentCompanyReplica replica : replicas)
+                if (!replica.awaitSequence(last, 60, TimeUnit.SECONDS))
+                    throw new IllegalStateException("replica did not catch up");
+            long t2 = System.nanoTime();
+            sampler.interrupt();
+
+            //Новая реплика без состояния всегда начинает со снимка
+            long t3 = System.nanoTime();
+            try (RentCompanyReplica late = RentCompanyReplica.connect("localhost", primary.getPort())) {
+                if (!late.awaitSequence(last, 60, TimeUnit.SECONDS))
+                    throw new IllegalStateException("late replica did not catch up");
+                long t4 = System.nanoTime();
+                System.out.printf("%d replicas: %d records in %5d ms (%6.0f records/s), replicas done %4d ms later, " +
+                                "max lag %6d records; new replica from snapshot %4d ms%n",
+                        nReplicas, last, (t1 - t0) / 1_000_000, last * 1e9 / (t1 - t0), (t2 - t1) / 1_000_000,
+                        maxLag[0], (t4 - t3) / 1_000_000);
+            }
+            for (RentCompanyReplica replica : replicas)
+                replica.close();
+        }
+    }
+}
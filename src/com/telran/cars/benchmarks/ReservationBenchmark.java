@@ -0,0 +1,95 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * findFreeCar of a 3-day window on a model of 1 000 to 100 000 cars reserved back to back over
+ * a 60-day horizon with a rare free window, against the check of the reservations car by car,
+ * and the window with no free car, where the whole model is scanned.
+ */
+public class ReservationBenchmark {
+    static final int[] FLEETS = {1_000, 10_000, 100_000};
+    static final int HORIZON = 60;
+    static final int WINDOW = 3;
+    static final int GAP_ONE_IN = 20;
+    static final int CALLS = 20_000;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 2; round++)
+            for (int cars : FLEETS)
+                run(cars);
+    }
+
+    static void run(int cars) {
+        IRentCompany company = new RentCompanyEmbedded();
+        Fleet.populate(company, 1, cars, 1_000, 0, 1);
+        String model = Fleet.modelName(0);
+        //Те же брони по машинам: проверка каждой машины по очереди
+        Map<String, TreeMap<Integer, Integer>> byCar = new HashMap<>();
+        Random random = new Random(1);
+        int reserved = 0;
+        long t0 = System.nanoTime();
+        //Брони подряд, изредка окно в 3 дня: свободная машина - одна из нескольких сотен
+        for (int car = 0; car < cars; car++) {
+            String regNumber = Fleet.regNumber(0, car);
+            TreeMap<Integer, Integer> carReservations = new TreeMap<>();
+            for (int from = random.nextInt(4); from < HORIZON; ) {
+                int days = 3 + random.nextInt(6);
+                if (company.reserveCar(regNumber, Fleet.license(random.nextInt(1_000)), day(from), days) == CarsReturnCode.OK) {
+                    carReservations.put(from, from + days);
+                    reserved++;
+                }
+                from += days + (random.nextInt(GAP_ONE_IN) == 0 ? WINDOW : 0);
+            }
+            byCar.put(regNumber, carReservations);
+        }
+        long t1 = System.nanoTime();
+        //Окно без свободной машины
+        LocalDate full = day(HORIZON + 10);
+        for (int car = 0; car < cars; car++)
+            company.reserveCar(Fleet.regNumber(0, car), Fleet.license(0), full, 1);
+
+        List<Car> allCars = company.getCarsByModel(model);
+        long sink = 0;
+        long t2 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            int from = random.nextInt(HORIZON - WINDOW);
+            Car car = company.findFreeCar(model, day(from), day(from + WINDOW));
+            sink += car == null ? 0 : car.getRegNumber().length();
+        }
+        long t3 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            int from = random.nextInt(HORIZON - WINDOW);
+            Car car = scan(allCars, byCar, from, from + WINDOW);
+            sink += car == null ? 0 : car.getRegNumber().length();
+        }
+        long t4 = System.nanoTime();
+        int fullCalls = Math.max(10, CALLS * 1_000 / cars / 10);
+        for (int i = 0; i < fullCalls; i++)
+            sink += company.findFreeCar(model, full, full.plusDays(1)) == null ? 1 : 0;
+        long t5 = System.nanoTime();
+        System.out.printf("%d cars: %d reservations %.0f ns each, findFreeCar %.0f ns, check car by car %.0f ns, " +
+                        "no free car %.0f ns (%d)%n",
+                cars, reserved, (t1 - t0) / (double) reserved, (t3 - t2) / (double) CALLS,
+                (t4 - t3) / (double) CALLS, (t5 - t4) / (double) fullCalls, sink);
+    }
+
+    static Car scan(List<Car> cars, Map<String, TreeMap<Integer, Integer>> byCar, int from, int to) {
+        for (Car car : cars) {
+            TreeMap<Integer, Integer> reservations = byCar.get(car.getRegNumber());
+            Map.Entry<Integer, Integer> before = reservations == null ? null : reservations.lowerEntry(to);
+            if (before == null || before.getValue() <= from) return car;
+        }
+        return null;
+    }
+
+    static LocalDate day(int day) {
+        return Fleet.START_DATE.plusDays(day);
+    }
+}
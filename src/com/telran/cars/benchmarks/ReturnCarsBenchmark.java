@@ -0,0 +1,68 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.CarReturn;
+import com.telran.cars.dto.RemovedCarData;
+import com.telran.cars.dto.ReturnResults;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End of day settlement of 100 000 returns of 20 models: returnCar one by one against
+ * returnCars in batches of 10 000, with the revenue of both to check they agree.
+ */
+public class ReturnCarsBenchmark {
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 50_000;
+    static final int BATCH = 10_000;
+    static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 2; i++) {
+            run(false);
+            run(true);
+        }
+    }
+
+    static void run(boolean batched) {
+        IRentCompany company = new RentCompanyEmbedded();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, 0, 1);
+        long nanos = 0;
+        double revenue = 0;
+        int returned = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            LocalDate rentDate = Fleet.START_DATE.plusDays(round * 10L);
+            List<CarReturn> returns = new ArrayList<>(MODELS * CARS_PER_MODEL);
+            for (int c = 0; c < CARS_PER_MODEL; c++)
+                for (int m = 0; m < MODELS; m++) {
+                    long license = Fleet.license((c * MODELS + m) % DRIVERS);
+                    company.rentCar(Fleet.regNumber(m, c), license, rentDate, 3);
+                    //Часть машин возвращается с опозданием, неполным баком или повреждениями
+                    returns.add(new CarReturn(Fleet.regNumber(m, c), license, rentDate.plusDays(2 + c % 4),
+                            c % 7 * 5, 50 + c % 6 * 10));
+                }
+            long t0 = System.nanoTime();
+            if (batched) {
+                for (int from = 0; from < returns.size(); from += BATCH) {
+                    ReturnResults res = company.returnCars(returns.subList(from, Math.min(returns.size(), from + BATCH)));
+                    revenue += res.getRevenue();
+                    returned += res.getReturned();
+                }
+            } else {
+                for (CarReturn r : returns) {
+                    RemovedCarData res = company.returnCar(r.getRegNumber(), r.getLicenseId(), r.getReturnDate(),
+                            r.getDamages(), r.getTankPercent());
+                    if (res.getCar() != null) returned++;
+                }
+            }
+            nanos += System.nanoTime() - t0;
+        }
+        if (!batched) revenue = company.getRevenueTotals(null, null).getRevenue();
+        System.out.printf("%s: %d returns, %.0f ns per return, revenue %.0f%n",
+                batched ? "returnCars" : "returnCar", returned, nanos / (double) returned, revenue);
+    }
+}
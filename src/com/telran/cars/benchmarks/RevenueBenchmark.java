@@ -0,0 +1,53 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.RentRecord;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * getRevenueTotals of random periods over 1 000 000 records, against summing the costs of
+ * the records of the period read by getRentRecordsAtDates.
+ */
+public class RevenueBenchmark {
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 50_000;
+    static final int RENTS_PER_CAR = 10;
+    static final int DAYS = RENTS_PER_CAR * 4;
+    static final int CALLS = 100_000;
+    static final int SCANS = 50;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 2; round++) {
+            run("RentCompanyEmbedded", RentCompanyEmbedded::new);
+            run("RentCompanyConcurrent", RentCompanyConcurrent::new);
+        }
+    }
+
+    static void run(String name, Supplier<IRentCompany> factory) {
+        IRentCompany company = factory.get();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        Random random = new Random(1);
+
+        double sink = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            LocalDate from = Fleet.START_DATE.plusDays(random.nextInt(DAYS));
+            sink += company.getRevenueTotals(from, from.plusDays(1 + random.nextInt(DAYS))).getRevenue();
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < SCANS; i++) {
+            LocalDate from = Fleet.START_DATE.plusDays(random.nextInt(DAYS));
+            sink += company.getRentRecordsAtDates(from, from.plusDays(1 + random.nextInt(DAYS))).stream()
+                    .mapToDouble(RentRecord::getCost).sum();
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("%s: getRevenueTotals %.0f ns, sum of getRentRecordsAtDates %.2f ms (%.0f)%n",
+                name, (t1 - t0) / (double) CALLS, (t2 - t1) / 1e6 / SCANS, sink);
+    }
+}
@@ -0,0 +1,130 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.server.RentCompanyClient;
+import com.telran.cars.server.RentCompanyServer;
+import com.telran.utils.LatencyHistogram;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Closed-loop load of a {@link RentCompanyServer} over loopback: 1 to 64 clients, each sending
+ * its next request as soon as the previous one is answered, for {@link #SECONDS} seconds per level.
+ * Mix: 60% getCar, 15% getCarByDrivers, 10% findFreeCar, 15% rentCar or returnCar
+ * of a car that no other client touches. Prints throughput and latency percentiles in microseconds.
+ */
+public class ServerLoadBenchmark {
+    static final int MODELS = 10;
+    static final int CARS_PER_MODEL = 1_000;
+    static final int DRIVERS = 10_000;
+    static final int[] CLIENTS = {1, 2, 4, 8, 16, 32, 64};
+    static final int MAX_CLIENTS = 64;
+    static final int WARMUP_SECONDS = 1;
+    static final int SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        IRentCompany company = new RentCompanyConcurrent();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, 2, 1);
+        try (RentCompanyServer server = new RentCompanyServer(company, 0)) {
+            server.start();
+            RentCompanyClient client = new RentCompanyClient("localhost", server.getPort());
+            System.out.printf("%d cars, %d processors%n", MODELS * CARS_PER_MODEL,
+                    Runtime.getRuntime().availableProcessors());
+            for (int clients : CLIENTS)
+                run(client, clients);
+        }
+    }
+
+    static void run(IRentCompany client, int clients) throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long start = System.nanoTime();
+        long measureFrom = start + WARMUP_SECONDS * 1_000_000_000L;
+        long end = measureFrom + SECONDS * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Worker worker = new Worker(client, c, histogram, measureFrom, end);
+            Thread thread = new Thread(worker, "load-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        System.out.printf("%2d clients: %7.0f req/s, mean %6.0f us, p50 %6d us, p99 %6d us, p999 %6d us, max %6d us%n",
+                clients, snapshot.getCount() / (double) SECONDS, snapshot.getMean() / 1_000,
+                snapshot.getValueAtPercentile(50) / 1_000, snapshot.getValueAtPercentile(99) / 1_000,
+                snapshot.getValueAtPercentile(99.9) / 1_000, snapshot.getMax() / 1_000);
+    }
+
+    static class Worker implements Runnable {
+        final IRentCompany client;
+        final int id;
+        final LatencyHistogram histogram;
+        final long measureFrom;
+        final long end;
+        final Random random;
+        //Машины клиента: номер машины по модулю MAX_CLIENTS равен id, других клиентов они не касаются
+        int ownCar;
+        int round;
+        String rented;
+        long renter;
+        LocalDate rentDate;
+
+        Worker(IRentCompany client, int id, LatencyHistogram histogram, long measureFrom, long end) {
+            this.client = client;
+            this.id = id;
+            this.histogram = histogram;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            random = new Random(id);
+        }
+
+        @Override
+        public void run() {
+            long now = System.nanoTime();
+            while (now < end) {
+                request();
+                long finished = System.nanoTime();
+                if (now >= measureFrom) histogram.record(finished - now);
+                now = finished;
+            }
+            if (rented != null) client.returnCar(rented, renter, rentDate.plusDays(2), 0, 100);
+        }
+
+        void request() {
+            int op = random.nextInt(100);
+            if (op < 60) {
+                client.getCar(Fleet.regNumber(random.nextInt(MODELS), random.nextInt(CARS_PER_MODEL)));
+            } else if (op < 75) {
+                client.getCarByDrivers(Fleet.license(random.nextInt(DRIVERS)));
+            } else if (op < 85) {
+                LocalDate from = Fleet.START_DATE.plusDays(random.nextInt(30));
+                client.findFreeCar(Fleet.modelName(random.nextInt(MODELS)), from, from.plusDays(3));
+            } else if (rented == null) {
+                rentOwnCar();
+            } else {
+                client.returnCar(rented, renter, rentDate.plusDays(2), random.nextInt(10), 50 + random.nextInt(51));
+                rented = null;
+            }
+        }
+
+        void rentOwnCar() {
+            int car = id + ownCar * MAX_CLIENTS;
+            if (car >= MODELS * CARS_PER_MODEL) {
+                ownCar = 0;
+                round++;
+                car = id;
+            }
+            ownCar++;
+            rented = Fleet.regNumber(car % MODELS, car / MODELS);
+            renter = Fleet.license(random.nextInt(DRIVERS));
+            //Каждый круг по своим машинам - позже прошлого возврата
+            rentDate = Fleet.START_DATE.plusDays(100 + round * 4L);
+            client.rentCar(rented, renter, rentDate, 3);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.models.RentCompanySharded;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * The same fleet of 100 000 cars with 300 000 records in 1 to 16 shards: time to fill it,
+ * point calls about one car (getCar, rentCar and returnCar) and the queries run on all shards
+ * (records of a week, cars of a driver, cars of a model) merged by {@link RentCompanySharded}.
+ * The shards of a query run in parallel, so the query scales with the processors, the point calls stay flat.
+ */
+public class ShardBenchmark {
+    static final int[] SHARDS = {1, 2, 4, 8, 16};
+    static final int MODELS = 20;
+    static final int CARS_PER_MODEL = 5_000;
+    static final int DRIVERS = 20_000;
+    static final int RENTS_PER_CAR = 3;
+    static final int POINT_CALLS = 200_000;
+    static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        System.out.printf("%d processors%n", Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 2; round++)
+            for (int shards : SHARDS)
+                run(shards);
+    }
+
+    static void run(int shards) {
+        RentCompanySharded company = new RentCompanySharded(shards);
+        long t0 = System.nanoTime();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        long t1 = System.nanoTime();
+
+        Random random = new Random(2);
+        long sink = 0;
+        LocalDate rentDate = Fleet.START_DATE.plusDays(RENTS_PER_CAR * 4L);
+        for (int i = 0; i < POINT_CALLS; i++) {
+            String regNumber = Fleet.regNumber(random.nextInt(MODELS), random.nextInt(CARS_PER_MODEL));
+            long license = Fleet.license(random.nextInt(DRIVERS));
+            sink += company.getCar(regNumber).getColor().length();
+            //Каждая машина арендуется не больше раза за день: возврат тем же днем
+            if (company.rentCar(regNumber, license, rentDate, 1) == CarsReturnCode.OK)
+                sink += company.returnCar(regNumber, license, rentDate, 0, 100).getRemovedRecords() == null ? 1 : 0;
+            if (i % 10_000 == 9_999) rentDate = rentDate.plusDays(1);
+        }
+        long t2 = System.nanoTime();
+
+        for (int i = 0; i < QUERIES; i++) {
+            LocalDate from = Fleet.START_DATE.plusDays(random.nextInt(RENTS_PER_CAR * 4));
+            sink += company.getRentRecordsAtDates(from, from.plusDays(7)).size();
+        }
+        long t3 = System.nanoTime();
+        for (int i = 0; i < QUERIES * 10; i++)
+            sink += company.getCarByDrivers(Fleet.license(random.nextInt(DRIVERS))).size();
+        long t4 = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++)
+            sink += company.getCarsByModel(Fleet.modelName(random.nextInt(MODELS))).size();
+        long t5 = System.nanoTime();
+        company.close();
+
+        System.out.printf("%2d shards: fill %5d ms, getCar+rent+return %5.0f ns, records of a week %6.0f us, " +
+                        "cars of a driver %5.0f us, cars of a model %5.0f us (%d)%n",
+                shards, (t1 - t0) / 1_000_000, (t2 - t1) / (double) POINT_CALLS,
+                (t3 - t2) / 1_000. / QUERIES, (t4 - t3) / 1_000. / (QUERIES * 10),
+                (t5 - t4) / 1_000. / QUERIES, sink);
+    }
+}
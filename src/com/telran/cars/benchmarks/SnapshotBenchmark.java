@@ -0,0 +1,38 @@
+package com.telran.cars.benchmarks;
+
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+
+import java.io.*;
+import java.time.LocalDate;
+
+/**
+ * Size and time of the binary snapshot of {@code save} for a fleet with 1 000 000 rent records.
+ * Run with -Xmx8g.
+ */
+public class SnapshotBenchmark {
+    static final int MODELS = 10;
+    static final int CARS_PER_MODEL = 1_000;
+    static final int DRIVERS = 100_000;
+    static final int RENTS_PER_CAR = 100;
+
+    public static void main(String[] args) throws Exception {
+        RentCompanyEmbedded company = new RentCompanyEmbedded();
+        Fleet.populate(company, MODELS, CARS_PER_MODEL, DRIVERS, RENTS_PER_CAR, 1);
+        File snapshot = File.createTempFile("company", ".snapshot");
+        snapshot.deleteOnExit();
+
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            company.save(snapshot.getPath());
+            long t1 = System.nanoTime();
+            IRentCompany fromSnapshot = RentCompanyEmbedded.restoreFromFile(snapshot.getPath());
+            long t2 = System.nanoTime();
+
+            System.out.printf("Binary snapshot: %d MB, save %d ms, restore %d ms%n",
+                    snapshot.length() >> 20, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000);
+            LocalDate to = Fleet.START_DATE.plusYears(5);
+            System.out.println("records " + fromSnapshot.getRentRecordsAtDates(Fleet.START_DATE, to).size());
+        }
+    }
+}
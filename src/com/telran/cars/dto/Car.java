@@ -10,10 +10,10 @@ import static com.telran.cars.dto.enums.State.*;
 public class Car implements Serializable {
     private String regNumber;
     private String color;
-    private State state = EXCELLENT;
+    private volatile State state = EXCELLENT;
     private String modelName;
-    private boolean inUse;
-    private boolean flRemoved;
+    private volatile boolean inUse;
+    private volatile boolean flRemoved;
 
     public Car() {
     }
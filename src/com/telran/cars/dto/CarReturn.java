@@ -0,0 +1,57 @@
+package com.telran.cars.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * One return of a batch settled by {@code returnCars}: the arguments of {@code returnCar}.
+ */
+public class CarReturn implements Serializable {
+    private String regNumber;
+    private long licenseId;
+    private LocalDate returnDate;
+    private int damages;
+    private int tankPercent;
+
+    public CarReturn() {
+    }
+
+    public CarReturn(String regNumber, long licenseId, LocalDate returnDate, int damages, int tankPercent) {
+        this.regNumber = regNumber;
+        this.licenseId = licenseId;
+        this.returnDate = returnDate;
+        this.damages = damages;
+        this.tankPercent = tankPercent;
+    }
+
+    public String getRegNumber() {
+        return regNumber;
+    }
+
+    public long getLicenseId() {
+        return licenseId;
+    }
+
+    public LocalDate getReturnDate() {
+        return returnDate;
+    }
+
+    public int getDamages() {
+        return damages;
+    }
+
+    public int getTankPercent() {
+        return tankPercent;
+    }
+
+    @Override
+    public String toString() {
+        return "CarReturn{" +
+                "regNumber='" + regNumber + '\'' +
+                ", licenseId=" + licenseId +
+                ", returnDate=" + returnDate +
+                ", damages=" + damages +
+                ", tankPercent=" + tankPercent +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+package com.telran.cars.dto;
+
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.utils.LatencyHistogram;
+
+import java.util.Map;
+
+/**
+ * Metrics of a company at one moment: latency histograms and return codes by method name,
+ * index sizes by index name. Counters only grow, rates are the differences of two snapshots.
+ */
+public class MetricsSnapshot {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    long timestamp;
+    Map<String, LatencyHistogram.Snapshot> latencies;
+    Map<String, Map<CarsReturnCode, Long>> returnCodes;
+    Map<String, Long> indexSizes;
+
+    public MetricsSnapshot(long timestamp, Map<String, LatencyHistogram.Snapshot> latencies,
+                           Map<String, Map<CarsReturnCode, Long>> returnCodes, Map<String, Long> indexSizes) {
+        this.timestamp = timestamp;
+        this.latencies = latencies;
+        this.returnCodes = returnCodes;
+        this.indexSizes = indexSizes;
+    }
+
+    /**
+     * @return milliseconds since the epoch when the snapshot was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return latencies in nanoseconds of the methods called at least once
+     */
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return number of every code returned, by method
+     */
+    public Map<String, Map<CarsReturnCode, Long>> getReturnCodes() {
+        return returnCodes;
+    }
+
+    public Map<String, Long> getIndexSizes() {
+        return indexSizes;
+    }
+
+    public long getReturnCodeCount(String method, CarsReturnCode code) {
+        return returnCodes.getOrDefault(method, Map.of()).getOrDefault(code, 0L);
+    }
+
+    /**
+     * Text in the Prometheus exposition format, for a scrape endpoint or a log.
+     */
+    public String toText() {
+        StringBuilder res = new StringBuilder();
+        latencies.forEach((method, histogram) -> {
+            for (double quantile : QUANTILES)
+                res.append("rent_company_latency_ns{method=\"").append(method).append("\",quantile=\"")
+                        .append(quantile).append("\"} ")
+                        .append(histogram.getValueAtPercentile(quantile * 100)).append('\n');
+            res.append("rent_company_latency_ns_max{method=\"").append(method).append("\"} ")
+                    .append(histogram.getMax()).append('\n');
+            res.append("rent_company_latency_ns_count{method=\"").append(method).append("\"} ")
+                    .append(histogram.getCount()).append('\n');
+        });
+        returnCodes.forEach((method, codes) -> codes.forEach((code, count) ->
+                res.append("rent_company_return_codes_total{method=\"").append(method).append("\",code=\"")
+                        .append(code).append("\"} ").append(count).append('\n')));
+        indexSizes.forEach((index, size) ->
+                res.append("rent_company_index_size{index=\"").append(index).append("\"} ")
+                        .append(size).append('\n'));
+        return res.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "timestamp=" + timestamp +
+                ", latencies=" + latencies +
+                ", returnCodes=" + returnCodes +
+                ", indexSizes=" + indexSizes +
+                '}';
+    }
+}
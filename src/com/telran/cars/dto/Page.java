@@ -0,0 +1,104 @@
+package com.telran.cars.dto;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * One page of a query result. {@code nextPageToken} is opaque for the caller:
+ * pass it back to get the next page, null means there are no more pages.
+ */
+public class Page<T> implements Serializable {
+    private List<T> items;
+    private String nextPageToken;
+
+    public Page() {
+    }
+
+    public Page(List<T> items, String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+
+    /**
+     * Pages a stream by offset: the token keeps the number of items already returned.
+     * Only {@code pageSize + 1} items of the stream are pulled after the offset.
+     */
+    public static <T> Page<T> ofStream(Stream<T> stream, int pageSize, String pageToken) {
+        long offset = pageToken == null ? 0 : decodeToken(pageToken, 1)[0];
+        try (stream) {
+            Iterator<T> it = stream.skip(offset).iterator();
+            List<T> items = take(it, pageSize);
+            return new Page<>(items, it.hasNext() ? encodeToken(offset + items.size()) : null);
+        }
+    }
+
+    public static <T> List<T> take(Iterator<T> it, int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("page size must be positive " + pageSize);
+        List<T> items = new ArrayList<>(Math.min(pageSize, 1024));
+        while (items.size() < pageSize && it.hasNext())
+            items.add(it.next());
+        return items;
+    }
+
+    public static String encodeToken(long... positions) {
+        StringBuilder sb = new StringBuilder();
+        for (long p : positions) {
+            if (!sb.isEmpty()) sb.append(':');
+            sb.append(p);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static long[] decodeToken(String pageToken, int length) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.US_ASCII)
+                    .split(":");
+            if (parts.length != length) throw new IllegalArgumentException();
+            long[] res = new long[length];
+            for (int i = 0; i < length; i++)
+                res[i] = Long.parseLong(parts[i]);
+            return res;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("wrong page token " + pageToken);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "items=" + getItems() +
+                ", nextPageToken='" + getNextPageToken() + '\'' +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        Page<?> page = (Page<?>) o;
+        return Objects.equals(items, page.items) && Objects.equals(nextPageToken, page.nextPageToken);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(items, nextPageToken);
+    }
+}
@@ -4,15 +4,21 @@ import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.Objects;
 
+/**
+ * Record of a rent. The fields set by the return are volatile: a concurrent company updates the record
+ * under the lock of its car while queries read it without one. The return date is set last,
+ * so a reader that sees it also sees the damages, the tank and the cost of the return.
+ */
 public class RentRecord implements Serializable {
     private String regNumber;
     private long licenseId;
     private LocalDate rentDate;
-    private LocalDate returnDate;
+    private volatile LocalDate returnDate;
     private int rentDays;
-    private int damages;
-    private int tankPercent;
-    private double cost;
+    private volatile int damages;
+    private volatile int tankPercent;
+    private volatile double cost;
+    private volatile double gasCost; //part of the cost for the gas, by the gas price of the return
 
     public RentRecord() {
     }
@@ -56,6 +62,10 @@ public class RentRecord implements Serializable {
         return cost;
     }
 
+    public double getGasCost() {
+        return gasCost;
+    }
+
     public void setDamages(int damages) {
         this.damages = damages;
     }
@@ -68,6 +78,10 @@ public class RentRecord implements Serializable {
         this.cost = cost;
     }
 
+    public void setGasCost(double gasCost) {
+        this.gasCost = gasCost;
+    }
+
     public void setReturnDate(LocalDate returnDate) {
         this.returnDate = returnDate;
     }
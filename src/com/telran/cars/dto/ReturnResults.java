@@ -0,0 +1,68 @@
+package com.telran.cars.dto;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Results of a batch of returns in the order of the batch: the cost of every return,
+ * NaN if the car had no open rental of the driver, and the cars removed by their return
+ * for damages or because they were removed while in use.
+ * Two arrays instead of one {@link RemovedCarData} per return; the history of a removed car is not kept.
+ */
+public class ReturnResults implements Serializable {
+    private final double[] costs;
+    private final BitSet removed;
+
+    public ReturnResults(double[] costs, BitSet removed) {
+        this.costs = costs;
+        this.removed = removed;
+    }
+
+    public int size() {
+        return costs.length;
+    }
+
+    public boolean isReturned(int index) {
+        return !Double.isNaN(costs[index]);
+    }
+
+    /**
+     * @return cost of the return, NaN if the car was not returned
+     */
+    public double getCost(int index) {
+        return costs[index];
+    }
+
+    public boolean isRemoved(int index) {
+        return removed.get(index);
+    }
+
+    /**
+     * @return number of the cars returned
+     */
+    public int getReturned() {
+        int res = 0;
+        for (double cost : costs)
+            if (!Double.isNaN(cost)) res++;
+        return res;
+    }
+
+    /**
+     * @return sum of the costs of the returns
+     */
+    public double getRevenue() {
+        double res = 0;
+        for (double cost : costs)
+            if (!Double.isNaN(cost)) res += cost;
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return "ReturnResults{" +
+                "costs=" + Arrays.toString(costs) +
+                ", removed=" + removed +
+                '}';
+    }
+}
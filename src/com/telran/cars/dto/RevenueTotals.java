@@ -0,0 +1,89 @@
+package com.telran.cars.dto;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Totals of the rent records returned in [from, to). The cost of every record is split
+ * into the rent by the price per day, the fine for the delay and the gas surcharge.
+ */
+public class RevenueTotals implements Serializable {
+    private LocalDate from;
+    private LocalDate to;
+    private long returns;
+    private long rentedDays;
+    private double revenue;
+    private double rentCost;
+    private double fines;
+    private double gasCost;
+
+    public RevenueTotals() {
+    }
+
+    public RevenueTotals(LocalDate from, LocalDate to, long returns, long rentedDays,
+                         double revenue, double rentCost, double fines, double gasCost) {
+        this.from = from;
+        this.to = to;
+        this.returns = returns;
+        this.rentedDays = rentedDays;
+        this.revenue = revenue;
+        this.rentCost = rentCost;
+        this.fines = fines;
+        this.gasCost = gasCost;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * @return number of the records returned
+     */
+    public long getReturns() {
+        return returns;
+    }
+
+    /**
+     * @return days from rent to return of the records, the car utilization of the period
+     */
+    public long getRentedDays() {
+        return rentedDays;
+    }
+
+    /**
+     * @return sum of the costs of the records
+     */
+    public double getRevenue() {
+        return revenue;
+    }
+
+    public double getRentCost() {
+        return rentCost;
+    }
+
+    public double getFines() {
+        return fines;
+    }
+
+    public double getGasCost() {
+        return gasCost;
+    }
+
+    @Override
+    public String toString() {
+        return "RevenueTotals{" +
+                "from=" + from +
+                ", to=" + to +
+                ", returns=" + returns +
+                ", rentedDays=" + rentedDays +
+                ", revenue=" + revenue +
+                ", rentCost=" + rentCost +
+                ", fines=" + fines +
+                ", gasCost=" + gasCost +
+                '}';
+    }
+}
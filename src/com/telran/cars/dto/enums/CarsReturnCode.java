@@ -1,5 +1,5 @@
 package com.telran.cars.dto.enums;
 
 public enum CarsReturnCode {
-    OK, MODEL_EXISTS, CAR_EXISTS, NO_MODEL, NO_CAR, CAR_REMOVED, CAR_IN_USE, NO_DRIVER, DRIVER_EXISTS
+    OK, MODEL_EXISTS, CAR_EXISTS, NO_MODEL, NO_CAR, CAR_REMOVED, CAR_IN_USE, NO_DRIVER, DRIVER_EXISTS, CAR_RESERVED, WRONG_PERIOD
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.telran.cars.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks with the GC profiler (allocation rate per operation):
+ * every benchmark on one thread, then the queries and the mutations on {@code threads} threads,
+ * the mutations only for the thread-safe engines.
+ * <pre>
+ * java com.telran.cars.jmh.BenchmarkRunner [regexp of benchmarks] [threads] [engine...]
+ * </pre>
+ * The engines can be any {@link com.telran.cars.models.IRentCompany} class names, see {@link Engines}.
+ * The benchmark classes must be compiled with the JMH annotation processor.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "com.telran.cars.jmh.*";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String[] engines = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : null;
+
+        new Runner(options(include, engines).threads(1).build()).run();
+        if (threads < 2) return;
+        //Включения JMH объединяются по "или", поэтому многопоточный прогон берет классы целиком
+        if (Pattern.compile(include).matcher(QueryBenchmarks.class.getName()).find())
+            new Runner(options(QueryBenchmarks.class.getName(), engines).threads(threads).build()).run();
+        if (Pattern.compile(include).matcher(MutationBenchmarks.class.getName()).find())
+            new Runner(options(MutationBenchmarks.class.getName(), engines != null ? engines : Engines.THREAD_SAFE)
+                    .threads(threads).build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(String include, String[] engines) {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class);
+        if (engines != null) options.param("engine", engines);
+        return options;
+    }
+}
@@ -0,0 +1,104 @@
+package com.telran.cars.jmh;
+
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.JournaledRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.cars.models.RentCompanyMapped;
+import com.telran.utils.Journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Engines the benchmarks run against, chosen by the {@code engine} parameter:
+ * embedded, concurrent, journaled (journal without fsync), mapped,
+ * or the full name of any other {@link IRentCompany} with a public no-arg constructor
+ * and, for restore, a {@code public static IRentCompany restoreFromFile(String)}.
+ */
+public class Engines {
+    public static final String EMBEDDED = "embedded";
+    public static final String CONCURRENT = "concurrent";
+    public static final String JOURNALED = "journaled";
+    public static final String MAPPED = "mapped";
+
+    /**
+     * Engines safe to call from several threads.
+     */
+    public static final String[] THREAD_SAFE = {CONCURRENT, JOURNALED};
+
+    /**
+     * @param dir directory for the files of engines that keep them
+     */
+    public static IRentCompany create(String engine, Path dir) throws IOException {
+        return switch (engine) {
+            case EMBEDDED, MAPPED -> new RentCompanyEmbedded();
+            case CONCURRENT -> new RentCompanyConcurrent();
+            case JOURNALED -> JournaledRentCompany.open(dir.resolve("company.data").toString(),
+                    dir.resolve("company.journal").toString(), Journal.SyncPolicy.NONE);
+            default -> newInstance(engine);
+        };
+    }
+
+    /**
+     * Restores a file written by {@code save} of the same engine.
+     */
+    public static IRentCompany restore(String engine, String fileName) {
+        return switch (engine) {
+            case EMBEDDED -> RentCompanyEmbedded.restoreFromFile(fileName);
+            case CONCURRENT -> RentCompanyConcurrent.restoreFromFile(fileName);
+            //Журнал рядом со снимком пуст, восстановление - это чтение снимка
+            case JOURNALED -> RentCompanyEmbedded.restoreFromFile(fileName);
+            case MAPPED -> ((RentCompanyMapped) RentCompanyMapped.restoreFromFile(fileName)).awaitLoaded();
+            default -> restoreReflectively(engine, fileName);
+        };
+    }
+
+    /**
+     * Fleets of the mapped engine are built in memory and reopened from a snapshot,
+     * so every query goes through the mapped company.
+     */
+    public static IRentCompany afterPopulate(String engine, IRentCompany company, Path dir) {
+        if (!engine.equals(MAPPED)) return company;
+        String file = dir.resolve("mapped.data").toString();
+        ((RentCompanyEmbedded) company).save(file);
+        return RentCompanyMapped.restoreFromFile(file);
+    }
+
+    public static void close(IRentCompany company, Path dir) throws IOException {
+        if (company instanceof Closeable closeable) closeable.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private static IRentCompany newInstance(String className) {
+        try {
+            return (IRentCompany) Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("unknown engine " + className, e);
+        }
+    }
+
+    private static IRentCompany restoreReflectively(String className, String fileName) {
+        try {
+            Method restore = Class.forName(className).getMethod("restoreFromFile", String.class);
+            return (IRentCompany) restore.invoke(null, fileName);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("engine " + className + " has no restoreFromFile", e);
+        }
+    }
+
+    static Path tempDir() {
+        try {
+            return Files.createTempDirectory("jmh-company");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
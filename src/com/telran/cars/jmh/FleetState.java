@@ -0,0 +1,62 @@
+package com.telran.cars.jmh;
+
+import com.telran.cars.benchmarks.Fleet;
+import com.telran.cars.models.IRentCompany;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Company of the chosen engine with {@link #MODELS} models, {@code cars} cars, as many drivers
+ * and {@code rentsPerCar} closed rents of every car, built once per trial and shared by the threads.
+ */
+@State(Scope.Benchmark)
+public class FleetState {
+    public static final int MODELS = 10;
+
+    @Param({Engines.EMBEDDED, Engines.CONCURRENT, Engines.JOURNALED, Engines.MAPPED})
+    public String engine;
+
+    @Param({"1000", "100000"})
+    public int cars;
+
+    @Param({"10", "100"})
+    public int rentsPerCar;
+
+    public IRentCompany company;
+    public Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Engines.tempDir();
+        company = Engines.create(engine, dir);
+        Fleet.populate(company, MODELS, carsPerModel(), cars, rentsPerCar, 1);
+        company = Engines.afterPopulate(engine, company, dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Engines.close(company, dir);
+    }
+
+    public int carsPerModel() {
+        return cars / MODELS;
+    }
+
+    public String regNumber(int car) {
+        return Fleet.regNumber(car % MODELS, car / MODELS % carsPerModel());
+    }
+
+    public long license(int driver) {
+        return Fleet.license(driver % cars);
+    }
+
+    /**
+     * First day after the history written by {@link Fleet#populate}.
+     */
+    public LocalDate endOfHistory() {
+        return Fleet.START_DATE.plusDays(rentsPerCar * 4L);
+    }
+}
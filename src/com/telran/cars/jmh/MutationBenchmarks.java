@@ -0,0 +1,93 @@
+package com.telran.cars.jmh;
+
+import com.telran.cars.benchmarks.Fleet;
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.Driver;
+import com.telran.cars.dto.RemovedCarData;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write operations of {@link com.telran.cars.models.IRentCompany}.
+ * Every thread rents its own cars and adds its own keys; with more than one thread
+ * only the engines of {@link Engines#THREAD_SAFE} are accepted.
+ * The history grows while the benchmark runs, as it does in a working company.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class MutationBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int thread;
+        int threads;
+        int car;
+        LocalDate date;
+        long added;
+
+        @Setup(Level.Trial)
+        public void setUp(FleetState fleet, ThreadParams params) {
+            threads = params.getThreadCount();
+            if (threads > 1 && !Arrays.asList(Engines.THREAD_SAFE).contains(fleet.engine))
+                throw new IllegalStateException(fleet.engine + " is not thread-safe");
+            thread = params.getThreadIndex();
+            car = thread;
+            date = fleet.endOfHistory();
+        }
+
+        //Следующая своя машина; после круга по всем машинам даты сдвигаются
+        String nextCar(FleetState fleet) {
+            String regNumber = fleet.regNumber(car);
+            car += threads;
+            if (car >= fleet.cars) {
+                car = thread;
+                date = date.plusDays(4);
+            }
+            return regNumber;
+        }
+
+        String nextKey() {
+            return "jmh-" + thread + "-" + added++;
+        }
+    }
+
+    @Benchmark
+    public Object rentAndReturnCar(FleetState fleet, Cursor cursor) {
+        LocalDate date = cursor.date;
+        long license = fleet.license(cursor.car);
+        String regNumber = cursor.nextCar(fleet);
+        fleet.company.rentCar(regNumber, license, date, 3);
+        return fleet.company.returnCar(regNumber, license, date.plusDays(3), 5, 90);
+    }
+
+    @Benchmark
+    public CarsReturnCode addCar(FleetState fleet, Cursor cursor) {
+        return fleet.company.addCar(new Car(cursor.nextKey(), Fleet.COLORS[0], Fleet.modelName(0)));
+    }
+
+    @Benchmark
+    public RemovedCarData addAndRemoveCar(FleetState fleet, Cursor cursor) {
+        String regNumber = cursor.nextKey();
+        fleet.company.addCar(new Car(regNumber, Fleet.COLORS[0], Fleet.modelName(0)));
+        return fleet.company.removeCar(regNumber);
+    }
+
+    @Benchmark
+    public CarsReturnCode addDriver(FleetState fleet, Cursor cursor) {
+        long license = Long.MAX_VALUE / 2 + ((long) cursor.thread << 40) + cursor.added++;
+        return fleet.company.addDriver(new Driver(license, "Driver", 1980, "050"));
+    }
+
+    @Benchmark
+    public void setGasPrice(FleetState fleet) {
+        fleet.company.setGasPrice(10);
+    }
+}
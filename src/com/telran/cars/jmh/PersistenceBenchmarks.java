@@ -0,0 +1,39 @@
+package com.telran.cars.jmh;
+
+import com.telran.cars.models.IRentCompany;
+import com.telran.utils.Persistable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code save} of the company and {@code restoreFromFile} of the saved file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PersistenceBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class SavedFile {
+        String fileName;
+
+        @Setup(Level.Trial)
+        public void setUp(FleetState fleet) {
+            fileName = fleet.dir.resolve("saved.data").toString();
+            ((Persistable) fleet.company).save(fileName);
+        }
+    }
+
+    @Benchmark
+    public void save(FleetState fleet, SavedFile file) {
+        ((Persistable) fleet.company).save(file.fileName);
+    }
+
+    @Benchmark
+    public IRentCompany restoreFromFile(FleetState fleet, SavedFile file) {
+        return Engines.restore(fleet.engine, file.fileName);
+    }
+}
@@ -0,0 +1,95 @@
+package com.telran.cars.jmh;
+
+import com.telran.cars.benchmarks.Fleet;
+import com.telran.cars.dto.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read operations of {@link com.telran.cars.models.IRentCompany} on a random car, driver or model.
+ * The queries do not change the company, so every engine can be run with several threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class QueryBenchmarks {
+    //Окно в 30 дней внутри истории аренд
+    static final int WINDOW_DAYS = 30;
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    private static LocalDate randomFrom(FleetState fleet) {
+        return Fleet.START_DATE.plusDays(random(Math.max(1, fleet.rentsPerCar * 4 - WINDOW_DAYS)));
+    }
+
+    @Benchmark
+    public Car getCar(FleetState fleet) {
+        return fleet.company.getCar(fleet.regNumber(random(fleet.cars)));
+    }
+
+    @Benchmark
+    public Driver getDriver(FleetState fleet) {
+        return fleet.company.getDriver(fleet.license(random(fleet.cars)));
+    }
+
+    @Benchmark
+    public Model getModel(FleetState fleet) {
+        return fleet.company.getModel(Fleet.modelName(random(FleetState.MODELS)));
+    }
+
+    @Benchmark
+    public List<Car> getCarsByModel(FleetState fleet) {
+        return fleet.company.getCarsByModel(Fleet.modelName(random(FleetState.MODELS)));
+    }
+
+    @Benchmark
+    public Page<Car> getCarsByModelPage(FleetState fleet) {
+        return fleet.company.getCarsByModel(Fleet.modelName(random(FleetState.MODELS)), 20, null);
+    }
+
+    @Benchmark
+    public List<Car> getCarByDrivers(FleetState fleet) {
+        return fleet.company.getCarByDrivers(fleet.license(random(fleet.cars)));
+    }
+
+    @Benchmark
+    public List<Driver> getDriversByCars(FleetState fleet) {
+        return fleet.company.getDriversByCars(fleet.regNumber(random(fleet.cars)));
+    }
+
+    @Benchmark
+    public List<Car> getRentedCars(FleetState fleet) {
+        return fleet.company.getRentedCars();
+    }
+
+    @Benchmark
+    public List<RentRecord> getRentRecordsAtDates(FleetState fleet) {
+        LocalDate from = randomFrom(fleet);
+        return fleet.company.getRentRecordsAtDates(from, from.plusDays(WINDOW_DAYS));
+    }
+
+    @Benchmark
+    public Page<RentRecord> getRentRecordsAtDatesPage(FleetState fleet) {
+        LocalDate from = randomFrom(fleet);
+        return fleet.company.getRentRecordsAtDates(from, from.plusDays(WINDOW_DAYS), 100, null);
+    }
+
+    @Benchmark
+    public List<RentRecord> getRentRecordsActiveAtDates(FleetState fleet) {
+        LocalDate from = randomFrom(fleet);
+        return fleet.company.getRentRecordsActiveAtDates(from, from.plusDays(WINDOW_DAYS));
+    }
+
+    @Benchmark
+    public int getGasPriceAndFine(FleetState fleet) {
+        return fleet.company.getGasPrice() + fleet.company.getFinePercent();
+    }
+}
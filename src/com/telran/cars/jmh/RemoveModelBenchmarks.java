@@ -0,0 +1,30 @@
+package com.telran.cars.jmh;
+
+import com.telran.cars.benchmarks.Fleet;
+import com.telran.cars.dto.RemovedCarData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code removeModel} of a model with its whole history, one model per measured call.
+ * Warmup and measurement together remove fewer models than the fleet has, so the fleet is built once.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RemoveModelBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class NextModel {
+        int model;
+    }
+
+    @Benchmark
+    public List<RemovedCarData> removeModel(FleetState fleet, NextModel next) {
+        return fleet.company.removeModel(Fleet.modelName(next.model++ % FleetState.MODELS));
+    }
+}
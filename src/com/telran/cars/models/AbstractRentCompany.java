@@ -1,9 +1,25 @@
 package com.telran.cars.models;
 
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.CarReturn;
+import com.telran.cars.dto.Driver;
+import com.telran.cars.dto.Model;
+import com.telran.cars.dto.Page;
+import com.telran.cars.dto.RentRecord;
+import com.telran.cars.dto.RevenueTotals;
+import com.telran.cars.dto.enums.CarsReturnCode;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
 public abstract class AbstractRentCompany implements IRentCompany {
 
-    protected int finePercent = 15;
-    protected int gasPrice = 10;
+    protected volatile int finePercent = 15;
+    protected volatile int gasPrice = 10;
+    RentAnalytics analytics = new RentAnalytics(); //counters of the reports, updated by the subclasses
+    RevenueRollup revenue = new RevenueRollup(); //totals of the returned records by return day
+    ReservationCalendar reservations = new ReservationCalendar(); //booked days of the cars, updated by the subclasses
 
     @Override
     public int getFinePercent() {
@@ -25,6 +41,81 @@ public abstract class AbstractRentCompany implements IRentCompany {
         this.gasPrice = gasPrice;
     }
 
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return revenue.totals(from, to);
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return analytics.popularModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return analytics.profitableModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return analytics.activeDrivers(n, from, to, fromAge, toAge, l -> getDriver(l).getBirthYear()).stream()
+                .map(this::getDriver)
+                .toList();
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        Car car = getCar(regNumber);
+        if (car == null) return CarsReturnCode.NO_CAR;
+        if (car.isFlRemoved()) return CarsReturnCode.CAR_REMOVED;
+        if (getDriver(licenseId) == null) return CarsReturnCode.NO_DRIVER;
+        CarsReturnCode res = reservations.reserve(regNumber, licenseId, (int) from.toEpochDay(), days);
+        //Машину удалили между проверкой и бронью
+        return res == CarsReturnCode.NO_CAR ? CarsReturnCode.CAR_REMOVED : res;
+    }
+
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        String regNumber = reservations.findFree(modelName, (int) from.toEpochDay(), (int) to.toEpochDay());
+        return regNumber == null ? null : getCar(regNumber);
+    }
+
+    //Дни записи без возврата заняты в календаре: импорт и загрузка снимка
+    void booked(RentRecord record) {
+        if (record.getReturnDate() == null)
+            reservations.rented(record.getRegNumber(), (int) record.getRentDate().toEpochDay(), record.getRentDays());
+    }
+
+    void restoreReservations(CompanySnapshot snapshot) {
+        reservations.advance(snapshot.today);
+        snapshot.reservations.forEach(reservations::restore);
+    }
+
+    /**
+     * View of the company written by {@code save}, it reads the live indexes.
+     */
+    abstract CompanySnapshot toSnapshot();
+
+    /**
+     * Point-in-time snapshot that can be written on another thread while the company keeps changing.
+     * Must be taken with the mutations stopped, and {@link CompanySnapshot#release}d the same way once written.
+     */
+    CompanySnapshot freeze() {
+        return toSnapshot().detach();
+    }
+
+    /**
+     * Checks every return of a batch before any of them is applied, so a bad return leaves the company unchanged.
+     * @throws IllegalArgumentException if a return or its return date is null
+     */
+    static void checkReturns(List<CarReturn> returns) {
+        for (CarReturn r : returns) {
+            if (r == null) throw new IllegalArgumentException("null return in the batch");
+            if (r.getReturnDate() == null)
+                throw new IllegalArgumentException("no return date of the car " + r.getRegNumber());
+        }
+    }
+
     protected double computeCost(int rentPricePerDay
             , int rentDays, int delay, int tankPercent, int tankVolume) {
         double cost = rentDays * rentPricePerDay;
@@ -35,6 +126,76 @@ public abstract class AbstractRentCompany implements IRentCompany {
         return cost;
     }
 
+    /**
+     * {@link #computeCost} of a batch over primitive arrays: one loop without branches or lookups,
+     * the fine and the gas price read once, that the JIT can unroll and vectorize.
+     * Gives the same costs as {@link #computeCost}; a delay of 0 or less adds no fine, a full tank no gas.
+     */
+    protected void computeCosts(int count, int[] pricesPerDay, int[] rentDays, int[] delays,
+                                int[] tankPercents, int[] tankVolumes, double[] costs) {
+        double fineFactor = 1 + finePercent / 100.;
+        int gas = gasPrice;
+        for (int i = 0; i < count; i++) {
+            int price = pricesPerDay[i];
+            double cost = rentDays[i] * price;
+            cost += Math.max(0, delays[i]) * (price * fineFactor);
+            cost += tankVolumes[i] * (100 - Math.min(100, tankPercents[i])) / 100. * gas;
+            costs[i] = cost;
+        }
+    }
+
+    /**
+     * Page of records from an index by rent date. The token keeps the day to continue from
+     * and the number of records of that day already returned, so a page costs O(log days + pageSize).
+     */
+    protected static <V> Page<RentRecord> pageByDays(NavigableMap<LocalDate, V> days,
+                                                     Function<V, Collection<RentRecord>> dayRecords,
+                                                     LocalDate from, LocalDate to,
+                                                     int pageSize, String pageToken) {
+        LocalDate day = from;
+        long skip = 0;
+        if (pageToken != null) {
+            long[] position = Page.decodeToken(pageToken, 2);
+            day = LocalDate.ofEpochDay(position[0]);
+            skip = position[1];
+        }
+        if (pageSize <= 0) throw new IllegalArgumentException("page size must be positive " + pageSize);
+        List<RentRecord> items = new ArrayList<>(Math.min(pageSize, 1024));
+        if (day.isBefore(from) || !day.isBefore(to))
+            return new Page<>(items, null);
+        for (Map.Entry<LocalDate, V> entry : days.subMap(day, to).entrySet()) {
+            long position = 0;
+            for (RentRecord record : dayRecords.apply(entry.getValue())) {
+                if (entry.getKey().equals(day) && position < skip) {
+                    position++;
+                    continue;
+                }
+                if (items.size() == pageSize)
+                    return new Page<>(items, Page.encodeToken(entry.getKey().toEpochDay(), position));
+                items.add(record);
+                position++;
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Gas part of the cost by the current gas price, as {@link #computeCost} adds it.
+     * Stored in the record at the return, so the revenue split keeps the price of that day.
+     */
+    protected double gasCost(int tankPercent, int tankVolume) {
+        return tankPercent < 100 ? additionalGasCost(tankPercent, tankVolume) : 0;
+    }
+
+    /**
+     * Sets the gas part of a returned record that comes without one, imported or from an older snapshot,
+     * by the current gas price.
+     */
+    protected void splitGas(RentRecord record, Model model) {
+        if(record.getReturnDate() != null && record.getGasCost() == 0 && record.getTankPercent() < 100)
+            record.setGasCost(gasCost(record.getTankPercent(), model.getGasTank()));
+    }
+
     private double additionalGasCost(int tankPercent, int tankVolume) {
         return tankVolume*(100 - tankPercent)/100. * gasPrice;
     }
@@ -0,0 +1,410 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.State;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Binary snapshot of a rent company.
+ * <pre>
+ * header     int magic "RCSN", short version, int finePercent, int gasPrice,
+ *            (since version 3) long journalSequence
+ * dictionary int count, UTF strings (model names, colors, companies, countries)
+ * models     int count, per model: int name, int gasTank, int company, int country, int priceDay
+ * drivers    int count, per driver: long license, UTF name, int birthYear, UTF phone
+ * cars       int count, per car: UTF regNumber, int color, int model, byte state, byte flags
+ * records    per record: int car, long license, int rentDay, int returnDay, int rentDays,
+ *            int damages, int tankPercent, double cost, (since version 5) double gasCost; closed by car -1
+ * reservations (since version 4) (since version 6) int today,
+ *            int count, per reservation: int car, long license, int fromDay, int days
+ * lookup     (since version 2) int count, per driver: long license, long position
+ *            int count, per car: int hash of reg number, long position
+ * footer     (since version 2) long position of lookup, int magic
+ * </pre>
+ * Strings are positions in the dictionary (-1 for null), the car of a record is its position in the cars section,
+ * days are epoch days. Every entity is written once, indexes are rebuilt on load.
+ * Drivers are written sorted by license and cars by hash of reg number, so the lookup section
+ * lets {@link MappedSnapshot} find one entity by binary search without reading the file.
+ * journalSequence is the last journal operation contained in the snapshot, 0 without a journal.
+ */
+public class CompanySnapshot {
+    public static final int MAGIC = 0x5243534E; //RCSN
+    public static final short VERSION = 6;
+    static final int FOOTER_SIZE = 12;
+    static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final State[] STATES = State.values();
+
+    int finePercent;
+    int gasPrice;
+    Collection<Model> models;
+    Collection<Driver> drivers;
+    Collection<Car> cars;
+    Iterable<RentRecord> records;
+    Collection<ReservationCalendar.Reservation> reservations = List.of();
+    int today = Integer.MIN_VALUE; //day of the reservation calendar
+    long journalSequence;
+    Runnable onRelease = () -> {};
+
+    CompanySnapshot(int finePercent, int gasPrice, Collection<Model> models, Collection<Driver> drivers,
+                    Collection<Car> cars, Iterable<RentRecord> records) {
+        this.finePercent = finePercent;
+        this.gasPrice = gasPrice;
+        this.models = models;
+        this.drivers = drivers;
+        this.cars = cars;
+        this.records = records;
+    }
+
+    /**
+     * Point-in-time copy that stays consistent while the company keeps changing, so it can be written
+     * on another thread. The collections are copied; cars and not returned records, the only entities
+     * the companies change in place, are copied too. Drivers and closed records are shared.
+     * Costs O(records) reference copies and O(cars + open records) entity copies.
+     */
+    CompanySnapshot detach() {
+        List<Model> modelsCopy = new ArrayList<>(models.size());
+        models.forEach(m -> modelsCopy.add(copy(m)));
+        List<Car> carsCopy = new ArrayList<>(cars.size());
+        cars.forEach(c -> carsCopy.add(copy(c)));
+        List<RentRecord> recordsCopy = new ArrayList<>();
+        records.forEach(r -> recordsCopy.add(r.getReturnDate() == null ? copy(r) : r));
+        CompanySnapshot res = new CompanySnapshot(finePercent, gasPrice, modelsCopy,
+                new ArrayList<>(drivers), carsCopy, recordsCopy);
+        res.reservations = new ArrayList<>(reservations);
+        res.today = today;
+        res.journalSequence = journalSequence;
+        return res;
+    }
+
+    /**
+     * Called with the mutations stopped once a snapshot taken by {@link AbstractRentCompany#freeze} is written.
+     */
+    void release() {
+        onRelease.run();
+    }
+
+    static Model copy(Model m) {
+        return new Model(m.getModelName(), m.getGasTank(), m.getCompany(), m.getCountry(), m.getPriceDay());
+    }
+
+    static Car copy(Car c) {
+        Car car = new Car(c.getRegNumber(), c.getColor(), c.getModelName());
+        car.setState(c.getState());
+        car.setInUse(c.isInUse());
+        car.setFlRemoved(c.isFlRemoved());
+        return car;
+    }
+
+    static RentRecord copy(RentRecord r) {
+        RentRecord record = new RentRecord(r.getRegNumber(), r.getLicenseId(), r.getRentDate(), r.getRentDays());
+        record.setReturnDate(r.getReturnDate());
+        record.setDamages(r.getDamages());
+        record.setTankPercent(r.getTankPercent());
+        record.setCost(r.getCost());
+        record.setGasCost(r.getGasCost());
+        return record;
+    }
+
+    /**
+     * @return true if the file starts with the snapshot magic, false for other formats
+     */
+    static boolean isSnapshot(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    void write(String fileName) throws IOException {
+        FileOutputStream file = new FileOutputStream(fileName);
+        try (CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(file, BUFFER_SIZE))) {
+            write(new DataOutputStream(counter), counter);
+            counter.flush();
+            //Журнал усекается только после снимка, который точно на диске
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Writes the snapshot to a stream, e.g. to a replica; the stream is flushed, not closed.
+     */
+    void write(OutputStream stream) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        write(new DataOutputStream(counter), counter);
+        counter.flush();
+    }
+
+    //DataOutputStream.size() ограничен int, позиции в снимке - long
+    private static class CountingOutputStream extends FilterOutputStream {
+        long position;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+
+    private void write(DataOutputStream out, CountingOutputStream counter) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(finePercent);
+        out.writeInt(gasPrice);
+        out.writeLong(journalSequence);
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        models.forEach(m -> {
+            encode(dictionary, m.getModelName());
+            encode(dictionary, m.getCompany());
+            encode(dictionary, m.getCountry());
+        });
+        cars.forEach(c -> {
+            encode(dictionary, c.getColor());
+            encode(dictionary, c.getModelName());
+        });
+        out.writeInt(dictionary.size());
+        for (String s : dictionary.keySet())
+            out.writeUTF(s);
+
+        out.writeInt(models.size());
+        for (Model m : models) {
+            out.writeInt(id(dictionary, m.getModelName()));
+            out.writeInt(m.getGasTank());
+            out.writeInt(id(dictionary, m.getCompany()));
+            out.writeInt(id(dictionary, m.getCountry()));
+            out.writeInt(m.getPriceDay());
+        }
+
+        Driver[] sortedDrivers = drivers.toArray(new Driver[0]);
+        Arrays.sort(sortedDrivers, Comparator.comparingLong(Driver::getLicenseId));
+        long[] driverPositions = new long[sortedDrivers.length];
+        out.writeInt(sortedDrivers.length);
+        for (int i = 0; i < sortedDrivers.length; i++) {
+            Driver d = sortedDrivers[i];
+            driverPositions[i] = counter.position;
+            out.writeLong(d.getLicenseId());
+            writeString(out, d.getName());
+            out.writeInt(d.getBirthYear());
+            writeString(out, d.getPhone());
+        }
+
+        Car[] sortedCars = cars.toArray(new Car[0]);
+        Arrays.sort(sortedCars, Comparator.comparingInt((Car c) -> c.getRegNumber().hashCode()));
+        long[] carPositions = new long[sortedCars.length];
+        Map<String, Integer> carIndex = new HashMap<>(sortedCars.length * 2);
+        out.writeInt(sortedCars.length);
+        for (Car c : sortedCars) {
+            carPositions[carIndex.size()] = counter.position;
+            carIndex.put(c.getRegNumber(), carIndex.size());
+            out.writeUTF(c.getRegNumber());
+            out.writeInt(id(dictionary, c.getColor()));
+            out.writeInt(id(dictionary, c.getModelName()));
+            out.writeByte(c.getState().ordinal());
+            out.writeByte((c.isInUse() ? IN_USE : 0) | (c.isFlRemoved() ? REMOVED : 0));
+        }
+
+        for (RentRecord r : records) {
+            Integer car = carIndex.get(r.getRegNumber());
+            if (car == null) continue; //запись машины, удаленной во время записи снимка
+            out.writeInt(car);
+            out.writeLong(r.getLicenseId());
+            out.writeInt(toDay(r.getRentDate()));
+            out.writeInt(toDay(r.getReturnDate()));
+            out.writeInt(r.getRentDays());
+            out.writeInt(r.getDamages());
+            out.writeInt(r.getTankPercent());
+            out.writeDouble(r.getCost());
+            out.writeDouble(r.getGasCost());
+        }
+        out.writeInt(-1);
+
+        List<ReservationCalendar.Reservation> written = new ArrayList<>(reservations.size());
+        for (ReservationCalendar.Reservation r : reservations)
+            if (carIndex.containsKey(r.regNumber())) written.add(r);
+        out.writeInt(today);
+        out.writeInt(written.size());
+        for (ReservationCalendar.Reservation r : written) {
+            out.writeInt(carIndex.get(r.regNumber()));
+            out.writeLong(r.licenseId());
+            out.writeInt(r.fromDay());
+            out.writeInt(r.days());
+        }
+
+        long lookup = counter.position;
+        out.writeInt(sortedDrivers.length);
+        for (int i = 0; i < sortedDrivers.length; i++) {
+            out.writeLong(sortedDrivers[i].getLicenseId());
+            out.writeLong(driverPositions[i]);
+        }
+        out.writeInt(sortedCars.length);
+        for (int i = 0; i < sortedCars.length; i++) {
+            out.writeInt(sortedCars[i].getRegNumber().hashCode());
+            out.writeLong(carPositions[i]);
+        }
+        out.writeLong(lookup);
+        out.writeInt(MAGIC);
+    }
+
+    static CompanySnapshot read(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE))) {
+            return read(in);
+        }
+    }
+
+    static CompanySnapshot read(DataInputStream in) throws IOException {
+        long[] header = readHeader(in);
+        String[] dictionary = readDictionary(in);
+        List<Model> models = readModels(in, dictionary);
+
+        int count = in.readInt();
+        List<Driver> drivers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            drivers.add(readDriver(in));
+
+        count = in.readInt();
+        List<Car> cars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            cars.add(readCar(in, dictionary));
+
+        List<RentRecord> records = new ArrayList<>();
+        for (int car = in.readInt(); car >= 0; car = in.readInt()) {
+            long license = in.readLong();
+            LocalDate rentDate = fromDay(in.readInt());
+            LocalDate returnDate = fromDay(in.readInt());
+            RentRecord record = new RentRecord(cars.get(car).getRegNumber(), license, rentDate, in.readInt());
+            record.setReturnDate(returnDate);
+            record.setDamages(in.readInt());
+            record.setTankPercent(in.readInt());
+            record.setCost(in.readDouble());
+            //В старых версиях доли топлива нет: ее задает восстановление по цене снимка
+            if (header[0] >= 5) record.setGasCost(in.readDouble());
+            records.add(record);
+        }
+        List<ReservationCalendar.Reservation> reservations = new ArrayList<>();
+        int today = header[0] >= 6 ? in.readInt() : Integer.MIN_VALUE;
+        if (header[0] >= 4) {
+            count = in.readInt();
+            for (int i = 0; i < count; i++)
+                reservations.add(new ReservationCalendar.Reservation(cars.get(in.readInt()).getRegNumber(),
+                        in.readLong(), in.readInt(), in.readInt()));
+        }
+        CompanySnapshot res = new CompanySnapshot((int) header[1], (int) header[2], models, drivers, cars, records);
+        res.reservations = reservations;
+        res.today = today;
+        res.journalSequence = header[3];
+        return res;
+    }
+
+    /**
+     * @return version, finePercent, gasPrice, journalSequence
+     */
+    static long[] readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("not a rent company snapshot");
+        short version = in.readShort();
+        if (version < 1 || version > VERSION)
+            throw new IOException("unsupported snapshot version " + version);
+        int finePercent = in.readInt();
+        int gasPrice = in.readInt();
+        return new long[]{version, finePercent, gasPrice, version >= 3 ? in.readLong() : 0};
+    }
+
+    /**
+     * Reads only the header of a snapshot file.
+     * @return the journal sequence stored in the snapshot, 0 for other formats and older versions
+     */
+    static long readJournalSequence(String fileName) throws IOException {
+        if (!new File(fileName).exists() || !isSnapshot(fileName))
+            return 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return readHeader(in)[3];
+        }
+    }
+
+    static String[] readDictionary(DataInput in) throws IOException {
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++)
+            dictionary[i] = in.readUTF();
+        return dictionary;
+    }
+
+    static List<Model> readModels(DataInput in, String[] dictionary) throws IOException {
+        int count = in.readInt();
+        List<Model> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String modelName = decode(dictionary, in.readInt());
+            int gasTank = in.readInt();
+            String company = decode(dictionary, in.readInt());
+            String country = decode(dictionary, in.readInt());
+            models.add(new Model(modelName, gasTank, company, country, in.readInt()));
+        }
+        return models;
+    }
+
+    static Driver readDriver(DataInput in) throws IOException {
+        long license = in.readLong();
+        String name = readString(in);
+        int birthYear = in.readInt();
+        return new Driver(license, name, birthYear, readString(in));
+    }
+
+    static Car readCar(DataInput in, String[] dictionary) throws IOException {
+        String regNumber = in.readUTF();
+        String color = decode(dictionary, in.readInt());
+        Car car = new Car(regNumber, color, decode(dictionary, in.readInt()));
+        car.setState(STATES[in.readByte()]);
+        int flags = in.readByte();
+        car.setInUse((flags & IN_USE) != 0);
+        car.setFlRemoved((flags & REMOVED) != 0);
+        return car;
+    }
+
+    private static void encode(Map<String, Integer> dictionary, String s) {
+        if (s != null) dictionary.putIfAbsent(s, dictionary.size());
+    }
+
+    private static int id(Map<String, Integer> dictionary, String s) {
+        return s == null ? -1 : dictionary.get(s);
+    }
+
+    private static String decode(String[] dictionary, int id) {
+        return id < 0 ? null : dictionary[id];
+    }
+
+    //null допустим для имени и телефона водителя
+    static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static int toDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    static LocalDate fromDay(int day) {
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+}
@@ -0,0 +1,79 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.Driver;
+import com.telran.cars.dto.Model;
+import com.telran.cars.dto.RentRecord;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.dto.enums.State;
+import com.telran.utils.ParallelCsvReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Loads a fleet from CSV files with a header line, parsed in parallel by {@link ParallelCsvReader}
+ * and added by the batch methods of the company.
+ * <pre>
+ * models   modelName,gasTank,company,country,priceDay
+ * cars     regNumber,color,modelName[,state]
+ * drivers  licenseId,name,birthYear,phone
+ * records  regNumber,licenseId,rentDate,rentDays[,returnDate,damages,tankPercent,cost]
+ * </pre>
+ * Dates are ISO (2025-08-01), an empty field is null.
+ */
+public class FleetCsvLoader {
+
+    public static List<Model> readModels(Path file) throws IOException {
+        return ParallelCsvReader.read(file, true, f ->
+                new Model(f[0], Integer.parseInt(f[1]), blankToNull(f[2]), blankToNull(f[3]), Integer.parseInt(f[4])));
+    }
+
+    public static List<Car> readCars(Path file) throws IOException {
+        return ParallelCsvReader.read(file, true, f -> {
+            Car car = new Car(f[0], blankToNull(f[1]), f[2]);
+            if (f.length > 3 && !f[3].isBlank()) car.setState(State.valueOf(f[3].trim()));
+            return car;
+        });
+    }
+
+    public static List<Driver> readDrivers(Path file) throws IOException {
+        return ParallelCsvReader.read(file, true, f ->
+                new Driver(Long.parseLong(f[0]), blankToNull(f[1]), Integer.parseInt(f[2]), blankToNull(f[3])));
+    }
+
+    public static List<RentRecord> readRentRecords(Path file) throws IOException {
+        return ParallelCsvReader.read(file, true, f -> {
+            RentRecord record = new RentRecord(f[0], Long.parseLong(f[1]), LocalDate.parse(f[2]), Integer.parseInt(f[3]));
+            if (f.length > 4 && !f[4].isBlank()) {
+                record.setReturnDate(LocalDate.parse(f[4]));
+                record.setDamages(Integer.parseInt(f[5]));
+                record.setTankPercent(Integer.parseInt(f[6]));
+                record.setCost(Double.parseDouble(f[7]));
+            }
+            return record;
+        });
+    }
+
+    public static List<CarsReturnCode> loadModels(IRentCompany company, Path file) throws IOException {
+        return company.addModels(readModels(file));
+    }
+
+    public static List<CarsReturnCode> loadCars(IRentCompany company, Path file) throws IOException {
+        return company.addCars(readCars(file));
+    }
+
+    public static List<CarsReturnCode> loadDrivers(IRentCompany company, Path file) throws IOException {
+        return company.addDrivers(readDrivers(file));
+    }
+
+    public static List<CarsReturnCode> loadRentRecords(IRentCompany company, Path file) throws IOException {
+        return company.importRentRecords(readRentRecords(file));
+    }
+
+    private static String blankToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+}
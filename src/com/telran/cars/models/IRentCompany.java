@@ -5,7 +5,11 @@ import com.telran.cars.dto.enums.CarsReturnCode;
 
 import java.io.Serializable;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface IRentCompany extends Serializable {
 
@@ -29,6 +33,34 @@ public interface IRentCompany extends Serializable {
 
     Driver getDriver(long licenseId);
 
+    /*
+     * Batch variants of the add methods: one return code per item, in the order of the items.
+     */
+    default List<CarsReturnCode> addModels(Collection<Model> models) {
+        List<CarsReturnCode> res = new ArrayList<>(models.size());
+        models.forEach(m -> res.add(addModel(m)));
+        return res;
+    }
+
+    default List<CarsReturnCode> addCars(Collection<Car> cars) {
+        List<CarsReturnCode> res = new ArrayList<>(cars.size());
+        cars.forEach(c -> res.add(addCar(c)));
+        return res;
+    }
+
+    default List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        List<CarsReturnCode> res = new ArrayList<>(drivers.size());
+        drivers.forEach(d -> res.add(addDriver(d)));
+        return res;
+    }
+
+    /**
+     * Adds rent records kept elsewhere as they are, with their return data and cost.
+     * The car and the driver must exist; a record not returned yet puts its car in use.
+     * @return per record OK, NO_CAR, CAR_REMOVED, NO_DRIVER or CAR_IN_USE
+     */
+    List<CarsReturnCode> importRentRecords(Collection<RentRecord> records);
+
     //Stream 2
     CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays);
 
@@ -38,12 +70,160 @@ public interface IRentCompany extends Serializable {
 
     List<Car> getCarsByModel(String modelName);
 
+    /**
+     * Number of the cars that {@link #getCarsByModel} returns.
+     * The engines count their index of the free cars of the model, O(free cars) and not constant:
+     * the flags of every car are checked, since a {@link Car} may be marked outside the company.
+     */
+    default int countCarsByModel(String modelName) {
+        return (int) streamCarsByModel(modelName).count();
+    }
+
+    /**
+     * Stops at the first free car of the index: constant while the cars are marked only by the company,
+     * up to O(free cars) when the first of them were marked outside it.
+     * @return one of the cars that {@link #getCarsByModel} returns, null if there is none
+     */
+    default Car getAnyCarByModel(String modelName) {
+        return streamCarsByModel(modelName).findAny().orElse(null);
+    }
+
+    List<Car> getRentedCars();
+
     List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to);
 
+    /**
+     * Rentals active at least one day in [from, to): a rental occupies the days from its rent date
+     * to its return date, or to rent date + rent days while the car is not returned.
+     * @return records in order of rent date, archived ones included
+     */
+    List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to);
+
+    /*
+     * Lazy variants of the queries above: results are produced while the stream is consumed,
+     * and a short-circuiting operation stops the traversal of the indexes.
+     * A stream must be consumed before the next mutation of the company.
+     */
+    default Stream<Car> streamCarByDrivers(long licenseId) {
+        return getCarByDrivers(licenseId).stream();
+    }
+
+    default Stream<Driver> streamDriversByCars(String regNumber) {
+        return getDriversByCars(regNumber).stream();
+    }
+
+    default Stream<Car> streamCarsByModel(String modelName) {
+        return getCarsByModel(modelName).stream();
+    }
+
+    default Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return getRentRecordsAtDates(from, to).stream();
+    }
+
+    /*
+     * Paged variants: pageToken is null for the first page, then the token of the previous page.
+     */
+    default Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return Page.ofStream(streamCarByDrivers(licenseId), pageSize, pageToken);
+    }
+
+    default Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return Page.ofStream(streamDriversByCars(regNumber), pageSize, pageToken);
+    }
+
+    default Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        return Page.ofStream(streamCarsByModel(modelName), pageSize, pageToken);
+    }
+
+    default Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return Page.ofStream(streamRentRecordsAtDates(from, to), pageSize, pageToken);
+    }
+
     //Stream 3
     RemovedCarData removeCar(String regNumber);
     List<RemovedCarData> removeModel (String model);
     RemovedCarData returnCar(String regNumber, long licensedId,
                              LocalDate returnDate, int damages, int tankPercent);
 
+    /**
+     * Settles a batch of returns as {@link #returnCar} in the order of the batch.
+     * @return cost per return, NaN if the car had no open rental of the driver, and the cars removed by their return
+     */
+    ReturnResults returnCars(List<CarReturn> returns);
+
+    /**
+     * Books the car for the driver on the days [from, from + days). A rent of the car by the driver
+     * over any of these days takes the reservation, rents of booked days by others return CAR_RESERVED.
+     * The company has no clock: its day is the latest day of a rent or a return. A reservation is dropped
+     * once that day reaches its end, and a car not returned by the end of its rent days stays taken until it is.
+     * @return OK, NO_CAR, CAR_REMOVED, NO_DRIVER, WRONG_PERIOD if days is not positive or the period
+     * ends by the day of the company, or CAR_RESERVED if a day is reserved or in an open rental
+     */
+    CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days);
+
+    /**
+     * @return a car of the model, not removed, with no reserved or rented day in [from, to) and not overdue,
+     * null if there is none
+     */
+    Car findFreeCar(String modelName, LocalDate from, LocalDate to);
+
+    /**
+     * Removes the model as {@link #removeModel(String)} does, passing the data of every removed car
+     * to {@code action} as it is ready instead of collecting the list.
+     * {@code action} is called by one thread at a time, possibly not the caller's one.
+     * @return number of cars removed
+     */
+    default int removeModel(String model, Consumer<? super RemovedCarData> action) {
+        List<RemovedCarData> res = removeModel(model);
+        res.forEach(action);
+        return res.size();
+    }
+
+    //Stream 4
+    /*
+     * Reports over the rent records with rent date in [from, to) - a null date is not bounded -
+     * rented by drivers of age in [fromAge, toAge) at the rent date, taken in whole 10-year buckets.
+     * At most n items, the largest first, ties in ascending order of the name or license id.
+     */
+    default List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return RentAnalytics.of(rentRecords(from, to), this).popularModels(n, from, to, fromAge, toAge);
+    }
+
+    /**
+     * Models by the cost of their returned records.
+     */
+    default List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return RentAnalytics.of(rentRecords(from, to), this).profitableModels(n, from, to, fromAge, toAge);
+    }
+
+    default List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return RentAnalytics.of(rentRecords(from, to), this)
+                .activeDrivers(n, from, to, fromAge, toAge, l -> getDriver(l).getBirthYear()).stream()
+                .map(this::getDriver)
+                .toList();
+    }
+
+    default List<String> getMostPopularCarModels(int n) {
+        return getMostPopularCarModels(n, null, null, 0, Integer.MAX_VALUE);
+    }
+
+    default List<String> getMostProfitableCarModels(int n) {
+        return getMostProfitableCarModels(n, null, null, 0, Integer.MAX_VALUE);
+    }
+
+    default List<Driver> getMostActiveDrivers(int n) {
+        return getMostActiveDrivers(n, null, null, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Totals of the records returned in [from, to), a null date is not bounded.
+     */
+    default RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return RevenueRollup.of(rentRecords(null, to), this).totals(from, to);
+    }
+
+    private Iterable<RentRecord> rentRecords(LocalDate from, LocalDate to) {
+        return streamRentRecordsAtDates(from == null ? LocalDate.MIN : from, to == null ? LocalDate.MAX : to)::iterator;
+    }
+
 }
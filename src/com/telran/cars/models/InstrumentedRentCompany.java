@@ -0,0 +1,385 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.utils.Archivable;
+import com.telran.utils.LatencyHistogram;
+import com.telran.utils.Measurable;
+import com.telran.utils.Persistable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Decorator of any company that measures every call: a latency histogram per method,
+ * the number of every {@link CarsReturnCode} returned per method, and the index sizes of the company
+ * if it is {@link Measurable}. Recording is lock-free, {@link #snapshot} can be called from any thread.
+ * Stream methods are measured until the stream is returned, not while it is consumed.
+ */
+public class InstrumentedRentCompany implements IRentCompany, Persistable, Measurable, Archivable, Closeable {
+    private static final CarsReturnCode[] CODES = CarsReturnCode.values();
+
+    private final IRentCompany company;
+    private final Map<String, MethodMetrics> methods = new LinkedHashMap<>();
+
+    private final MethodMetrics getGasPrice = metrics("getGasPrice");
+    private final MethodMetrics setGasPrice = metrics("setGasPrice");
+    private final MethodMetrics getFinePercent = metrics("getFinePercent");
+    private final MethodMetrics setFinePercent = metrics("setFinePercent");
+    private final MethodMetrics addModel = metrics("addModel");
+    private final MethodMetrics getModel = metrics("getModel");
+    private final MethodMetrics addCar = metrics("addCar");
+    private final MethodMetrics getCar = metrics("getCar");
+    private final MethodMetrics addDriver = metrics("addDriver");
+    private final MethodMetrics getDriver = metrics("getDriver");
+    private final MethodMetrics addModels = metrics("addModels");
+    private final MethodMetrics addCars = metrics("addCars");
+    private final MethodMetrics addDrivers = metrics("addDrivers");
+    private final MethodMetrics importRentRecords = metrics("importRentRecords");
+    private final MethodMetrics rentCar = metrics("rentCar");
+    private final MethodMetrics getCarByDrivers = metrics("getCarByDrivers");
+    private final MethodMetrics getDriversByCars = metrics("getDriversByCars");
+    private final MethodMetrics getCarsByModel = metrics("getCarsByModel");
+    private final MethodMetrics countCarsByModel = metrics("countCarsByModel");
+    private final MethodMetrics getAnyCarByModel = metrics("getAnyCarByModel");
+    private final MethodMetrics getRentedCars = metrics("getRentedCars");
+    private final MethodMetrics getRentRecordsAtDates = metrics("getRentRecordsAtDates");
+    private final MethodMetrics getRentRecordsActiveAtDates = metrics("getRentRecordsActiveAtDates");
+    private final MethodMetrics streamCarByDrivers = metrics("streamCarByDrivers");
+    private final MethodMetrics streamDriversByCars = metrics("streamDriversByCars");
+    private final MethodMetrics streamCarsByModel = metrics("streamCarsByModel");
+    private final MethodMetrics streamRentRecordsAtDates = metrics("streamRentRecordsAtDates");
+    private final MethodMetrics getCarByDriversPage = metrics("getCarByDriversPage");
+    private final MethodMetrics getDriversByCarsPage = metrics("getDriversByCarsPage");
+    private final MethodMetrics getCarsByModelPage = metrics("getCarsByModelPage");
+    private final MethodMetrics getRentRecordsAtDatesPage = metrics("getRentRecordsAtDatesPage");
+    private final MethodMetrics removeCar = metrics("removeCar");
+    private final MethodMetrics removeModel = metrics("removeModel");
+    private final MethodMetrics removeModelStreaming = metrics("removeModelStreaming");
+    private final MethodMetrics returnCar = metrics("returnCar");
+    private final MethodMetrics returnCars = metrics("returnCars");
+    private final MethodMetrics reserveCar = metrics("reserveCar");
+    private final MethodMetrics findFreeCar = metrics("findFreeCar");
+    private final MethodMetrics getMostPopularCarModels = metrics("getMostPopularCarModels");
+    private final MethodMetrics getMostProfitableCarModels = metrics("getMostProfitableCarModels");
+    private final MethodMetrics getMostActiveDrivers = metrics("getMostActiveDrivers");
+    private final MethodMetrics getRevenueTotals = metrics("getRevenueTotals");
+    private final MethodMetrics save = metrics("save");
+    private final MethodMetrics archiveRecords = metrics("archiveRecords");
+
+    private static class MethodMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLongArray codes = new AtomicLongArray(CODES.length);
+
+        <T> T time(Supplier<T> call) {
+            long start = System.nanoTime();
+            try {
+                return call.get();
+            } finally {
+                latency.recordSince(start);
+            }
+        }
+
+        void time(Runnable call) {
+            long start = System.nanoTime();
+            try {
+                call.run();
+            } finally {
+                latency.recordSince(start);
+            }
+        }
+
+        CarsReturnCode count(CarsReturnCode code) {
+            if (code != null) codes.incrementAndGet(code.ordinal());
+            return code;
+        }
+
+        List<CarsReturnCode> count(List<CarsReturnCode> codes) {
+            codes.forEach(this::count);
+            return codes;
+        }
+
+        //Возврат без открытой аренды водителя считается как NO_CAR
+        RemovedCarData count(RemovedCarData removed) {
+            count(removed.getCar() != null ? CarsReturnCode.OK : CarsReturnCode.NO_CAR);
+            return removed;
+        }
+
+        ReturnResults count(ReturnResults results) {
+            for (int i = 0; i < results.size(); i++)
+                count(results.isReturned(i) ? CarsReturnCode.OK : CarsReturnCode.NO_CAR);
+            return results;
+        }
+    }
+
+    public InstrumentedRentCompany(IRentCompany company) {
+        this.company = company;
+    }
+
+    private MethodMetrics metrics(String method) {
+        MethodMetrics res = new MethodMetrics();
+        methods.put(method, res);
+        return res;
+    }
+
+    public IRentCompany getCompany() {
+        return company;
+    }
+
+    /**
+     * @return metrics collected since the company was wrapped; methods never called are left out
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<>();
+        Map<String, Map<CarsReturnCode, Long>> returnCodes = new LinkedHashMap<>();
+        methods.forEach((name, metrics) -> {
+            LatencyHistogram.Snapshot latency = metrics.latency.snapshot();
+            if (latency.getCount() > 0) latencies.put(name, latency);
+            Map<CarsReturnCode, Long> codes = new EnumMap<>(CarsReturnCode.class);
+            for (CarsReturnCode code : CODES) {
+                long count = metrics.codes.get(code.ordinal());
+                if (count > 0) codes.put(code, count);
+            }
+            if (!codes.isEmpty()) returnCodes.put(name, codes);
+        });
+        return new MetricsSnapshot(System.currentTimeMillis(), latencies, returnCodes, getIndexSizes());
+    }
+
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        return company instanceof Measurable measurable ? measurable.getIndexSizes() : Map.of();
+    }
+
+    @Override
+    public int archiveRecords(LocalDate today) {
+        return archiveRecords.time(() -> company instanceof Archivable archivable ?
+                archivable.archiveRecords(today) : 0);
+    }
+
+    @Override
+    public void save(String fileName) {
+        save.time(() -> ((Persistable) company).save(fileName));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (company instanceof Closeable closeable) closeable.close();
+    }
+
+    @Override
+    public int getGasPrice() {
+        return getGasPrice.time(company::getGasPrice);
+    }
+
+    @Override
+    public void setGasPrice(int price) {
+        setGasPrice.time(() -> company.setGasPrice(price));
+    }
+
+    @Override
+    public int getFinePercent() {
+        return getFinePercent.time(company::getFinePercent);
+    }
+
+    @Override
+    public void setFinePercent(int finePercent) {
+        setFinePercent.time(() -> company.setFinePercent(finePercent));
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        return addModel.count(addModel.time(() -> company.addModel(model)));
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return getModel.time(() -> company.getModel(modelName));
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        return addCar.count(addCar.time(() -> company.addCar(car)));
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        return getCar.time(() -> company.getCar(regNumber));
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        return addDriver.count(addDriver.time(() -> company.addDriver(driver)));
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return getDriver.time(() -> company.getDriver(licenseId));
+    }
+
+    @Override
+    public List<CarsReturnCode> addModels(Collection<Model> models) {
+        return addModels.count(addModels.time(() -> company.addModels(models)));
+    }
+
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> cars) {
+        return addCars.count(addCars.time(() -> company.addCars(cars)));
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        return addDrivers.count(addDrivers.time(() -> company.addDrivers(drivers)));
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> records) {
+        return importRentRecords.count(importRentRecords.time(() -> company.importRentRecords(records)));
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        return rentCar.count(rentCar.time(() -> company.rentCar(regNumber, licenseId, rentDate, rentDays)));
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return getCarByDrivers.time(() -> company.getCarByDrivers(licenseId));
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return getDriversByCars.time(() -> company.getDriversByCars(regNumber));
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return getCarsByModel.time(() -> company.getCarsByModel(modelName));
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return getRentedCars.time(company::getRentedCars);
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return getRentRecordsAtDates.time(() -> company.getRentRecordsAtDates(from, to));
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        return getRentRecordsActiveAtDates.time(() -> company.getRentRecordsActiveAtDates(from, to));
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        return streamCarByDrivers.time(() -> company.streamCarByDrivers(licenseId));
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        return streamDriversByCars.time(() -> company.streamDriversByCars(regNumber));
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return countCarsByModel.time(() -> company.countCarsByModel(modelName));
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return getAnyCarByModel.time(() -> company.getAnyCarByModel(modelName));
+    }
+
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        return streamCarsByModel.time(() -> company.streamCarsByModel(modelName));
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return streamRentRecordsAtDates.time(() -> company.streamRentRecordsAtDates(from, to));
+    }
+
+    @Override
+    public Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return getCarByDriversPage.time(() -> company.getCarByDrivers(licenseId, pageSize, pageToken));
+    }
+
+    @Override
+    public Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return getDriversByCarsPage.time(() -> company.getDriversByCars(regNumber, pageSize, pageToken));
+    }
+
+    @Override
+    public Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        return getCarsByModelPage.time(() -> company.getCarsByModel(modelName, pageSize, pageToken));
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return getRentRecordsAtDatesPage.time(() -> company.getRentRecordsAtDates(from, to, pageSize, pageToken));
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        return removeCar.time(() -> company.removeCar(regNumber));
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String model) {
+        return removeModel.time(() -> company.removeModel(model));
+    }
+
+    @Override
+    public int removeModel(String model, Consumer<? super RemovedCarData> action) {
+        return removeModelStreaming.time(() -> company.removeModel(model, action));
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        return returnCar.count(returnCar.time(() ->
+                company.returnCar(regNumber, licensedId, returnDate, damages, tankPercent)));
+    }
+
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        return returnCars.count(returnCars.time(() -> company.returnCars(returns)));
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        return reserveCar.count(reserveCar.time(() -> company.reserveCar(regNumber, licenseId, from, days)));
+    }
+
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        return findFreeCar.time(() -> company.findFreeCar(modelName, from, to));
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return getMostPopularCarModels.time(() -> company.getMostPopularCarModels(n, from, to, fromAge, toAge));
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return getMostProfitableCarModels.time(() -> company.getMostProfitableCarModels(n, from, to, fromAge, toAge));
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return getMostActiveDrivers.time(() -> company.getMostActiveDrivers(n, from, to, fromAge, toAge));
+    }
+
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return getRevenueTotals.time(() -> company.getRevenueTotals(from, to));
+    }
+}
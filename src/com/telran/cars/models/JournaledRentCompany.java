@@ -0,0 +1,776 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.dto.enums.State;
+import com.telran.utils.Archivable;
+import com.telran.utils.Journal;
+import com.telran.utils.Measurable;
+import com.telran.utils.Persistable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Company whose mutations are written to a {@link Journal} before they are applied,
+ * so nothing done between two snapshots is lost on a crash.
+ * A mutation is appended under one lock, committed by the {@link Journal.SyncPolicy} after the lock
+ * is released, which lets concurrent writers share an fsync (group commit), and only then applied
+ * to the company, in the order of the journal. Readers never see a change that is not committed.
+ * Every mutation call is journaled, also one that fails: replay repeats the failure.
+ * If the journal cannot be written, the mutation is not applied and the company refuses
+ * every later mutation with {@link IllegalStateException}; its state is the committed one.
+ * Reads are delegated without locking, as thread-safe as the wrapped company.
+ * <p>
+ * {@link #open} restores the snapshot and replays the journal records newer than the snapshot.
+ * Saving to the own snapshot file truncates the journal. Snapshots are written from a point-in-time view
+ * on a separate thread, see {@link #saveInBackground}.
+ */
+public class JournaledRentCompany implements IRentCompany, Persistable, Measurable, Archivable, Closeable {
+    private static final byte SET_GAS_PRICE = 1;
+    private static final byte SET_FINE_PERCENT = 2;
+    private static final byte ADD_MODEL = 3;
+    private static final byte ADD_CAR = 4;
+    private static final byte ADD_DRIVER = 5;
+    private static final byte RENT_CAR = 6;
+    private static final byte RETURN_CAR = 7;
+    private static final byte REMOVE_CAR = 8;
+    private static final byte REMOVE_MODEL = 9;
+    private static final byte IMPORT_RECORD = 10;
+    private static final byte BATCH = 11;
+    private static final byte RESERVE_CAR = 12;
+    //Пакеты повторяются тем же пакетным методом: BATCH пишется только старыми версиями
+    private static final byte ADD_MODELS = 13;
+    private static final byte ADD_CARS = 14;
+    private static final byte ADD_DRIVERS = 15;
+    private static final byte IMPORT_RECORDS = 16;
+    private static final byte RETURN_CARS = 17;
+    //Записи с долей топлива: IMPORT_RECORDS и IMPORT_RECORD пишутся только старыми версиями
+    private static final byte IMPORT_SPLIT_RECORDS = 18;
+    private static final State[] STATES = State.values();
+
+    private final AbstractRentCompany company;
+    private final transient Journal journal;
+    private final Path snapshotFile;
+    private final transient Object mutationLock = new Object(); //appends to the journal
+    private final transient Object applyLock = new Object(); //applied, failure
+    private long applied; //last sequence applied to the company
+    //Номер открытия журнала: после перезапуска номера записей могут повториться с другим содержимым
+    private final transient long epoch = newEpoch();
+    private volatile IOException failure; //the journal could not be written, no further mutation
+    private final transient ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread writer = new Thread(r, "snapshot-writer");
+        writer.setDaemon(true);
+        return writer;
+    });
+
+    private final transient List<RecordListener> listeners = new CopyOnWriteArrayList<>();
+
+    private interface Operation {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private interface ItemWriter<T> {
+        void write(DataOutput out, T item) throws IOException;
+    }
+
+    private interface ItemReader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    /**
+     * Restores the company of the snapshot file, e.g. {@code RentCompanyConcurrent::load}.
+     * A file that cannot be read must be reported, not replaced with an empty company.
+     */
+    public interface Loader {
+        IRentCompany load(String fileName) throws IOException;
+    }
+
+    /**
+     * Receives every committed record in the order of the journal, on the thread that applies it
+     * and before the next record is applied, so it must not block;
+     * the record can be applied to another company by {@link #replay}.
+     */
+    interface RecordListener {
+        void appended(long sequence, byte[] record);
+    }
+
+    private JournaledRentCompany(AbstractRentCompany company, Journal journal, Path snapshotFile) {
+        this.company = company;
+        this.journal = journal;
+        this.snapshotFile = snapshotFile;
+        applied = journal.lastSequence();
+    }
+
+    public static JournaledRentCompany open(String snapshotFile, String journalFile,
+                                            Journal.SyncPolicy policy) throws IOException {
+        return open(snapshotFile, journalFile, policy, RentCompanyEmbedded::load);
+    }
+
+    /**
+     * A snapshot that cannot be restored stops the opening: the journal is never replayed over an empty company.
+     * @param loader restores the snapshot file, e.g. {@code RentCompanyConcurrent::load}
+     */
+    public static JournaledRentCompany open(String snapshotFile, String journalFile, Journal.SyncPolicy policy,
+                                            Loader loader) throws IOException {
+        IRentCompany restored = loader.load(snapshotFile);
+        if (!(restored instanceof AbstractRentCompany company))
+            throw new IllegalArgumentException("journal needs a company with snapshots " + restored.getClass());
+
+        long snapshotSequence = CompanySnapshot.readJournalSequence(snapshotFile);
+        long base = Journal.base(journalFile);
+        if (base > snapshotSequence)
+            throw new IOException("journal " + journalFile + " starts at " + base
+                    + " after the snapshot at " + snapshotSequence);
+        long last = Journal.replay(journalFile, snapshotSequence, (sequence, in) -> replay(company, in));
+        //Журнал целиком в снимке: сбой между записью снимка и усечением журнала
+        if (last <= snapshotSequence)
+            Files.deleteIfExists(Path.of(journalFile));
+        return new JournaledRentCompany(company, new Journal(journalFile, policy, snapshotSequence),
+                Path.of(snapshotFile).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Appends the operation, waits for its commit and then applies it in the order of the journal.
+     */
+    private <T> T mutate(Supplier<T> mutation, Operation operation) {
+        byte[] record = encode(operation);
+        long sequence;
+        synchronized (mutationLock) {
+            checkJournal();
+            sequence = append(record);
+        }
+        try {
+            journal.commit(sequence);
+        } catch (IOException e) {
+            throw fail(e);
+        }
+        //Записи, добавленные раньше, применяются раньше. Раз эта запись сохранена, сохранены и они
+        synchronized (applyLock) {
+            boolean interrupted = false;
+            while (applied < sequence - 1)
+                interrupted |= awaitApplied();
+            if (interrupted) Thread.currentThread().interrupt();
+            try {
+                return mutation.get();
+            } finally {
+                //Слушатели - только сохраненные записи, в порядке журнала и без mutationLock
+                for (RecordListener listener : listeners)
+                    listener.appended(sequence, record);
+                applied = sequence;
+                applyLock.notifyAll();
+            }
+        }
+    }
+
+    //под mutationLock
+    private long append(byte[] record) {
+        try {
+            return journal.append(record);
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    private static long newEpoch() {
+        long res;
+        do {
+            res = ThreadLocalRandom.current().nextLong();
+        } while (res == 0);
+        return res;
+    }
+
+    //Журнал после сбоя не принимает записей: несохраненные не применяются, мутации прекращаются
+    private UncheckedIOException fail(IOException e) {
+        synchronized (applyLock) {
+            if (failure == null) failure = e;
+            applyLock.notifyAll();
+        }
+        return new UncheckedIOException(e);
+    }
+
+    private void checkJournal() {
+        IOException e = failure;
+        if (e != null)
+            throw new IllegalStateException("journal could not be written, the company is read-only", e);
+    }
+
+    //под applyLock; без прерывания: сохраненная запись должна быть применена
+    private boolean awaitApplied() {
+        try {
+            applyLock.wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    void addListener(RecordListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(RecordListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs the action with the mutations stopped: no record is journaled meanwhile,
+     * and every record journaled before is applied and passed to the listeners, unless the journal has failed.
+     */
+    <T> T whileStopped(Supplier<T> action) {
+        synchronized (mutationLock) {
+            long last = journal.lastSequence();
+            synchronized (applyLock) {
+                boolean interrupted = false;
+                while (applied < last && failure == null)
+                    interrupted |= awaitApplied();
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+            return action.get();
+        }
+    }
+
+    /**
+     * Point-in-time view with the sequence of the last record it contains, see {@link AbstractRentCompany#freeze}.
+     * Must be taken and released with the mutations stopped.
+     */
+    CompanySnapshot freeze() {
+        checkJournal();
+        CompanySnapshot res = company.freeze();
+        res.journalSequence = journal.lastSequence();
+        return res;
+    }
+
+    private static byte[] encode(Operation operation) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            operation.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Applies a journal record to a company on replay. A mutation that threw when it was made
+     * is journaled too and throws here again with the same effect, so the exception is dropped.
+     */
+    static void replay(IRentCompany company, DataInput in) throws IOException {
+        try {
+            apply(company, in);
+        } catch (RuntimeException e) {
+            //так же, как при первом применении
+        }
+    }
+
+    private static void apply(IRentCompany company, DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case SET_GAS_PRICE -> company.setGasPrice(in.readInt());
+            case SET_FINE_PERCENT -> company.setFinePercent(in.readInt());
+            case ADD_MODEL -> company.addModel(readModel(in));
+            case ADD_CAR -> company.addCar(readCar(in));
+            case ADD_DRIVER -> company.addDriver(readDriver(in));
+            case RENT_CAR -> company.rentCar(readString(in), in.readLong(),
+                    CompanySnapshot.fromDay(in.readInt()), in.readInt());
+            case RETURN_CAR -> {
+                CarReturn r = readReturn(in);
+                company.returnCar(r.getRegNumber(), r.getLicenseId(), r.getReturnDate(), r.getDamages(), r.getTankPercent());
+            }
+            case REMOVE_CAR -> company.removeCar(readString(in));
+            case REMOVE_MODEL -> company.removeModel(readString(in));
+            case IMPORT_RECORD -> company.importRentRecords(List.of(readRecord(in)));
+            case RESERVE_CAR -> company.reserveCar(readString(in), in.readLong(),
+                    CompanySnapshot.fromDay(in.readInt()), in.readInt());
+            case ADD_MODELS -> company.addModels(readList(in, JournaledRentCompany::readModel));
+            case ADD_CARS -> company.addCars(readList(in, JournaledRentCompany::readCar));
+            case ADD_DRIVERS -> company.addDrivers(readList(in, JournaledRentCompany::readDriver));
+            case IMPORT_RECORDS -> company.importRentRecords(readList(in, JournaledRentCompany::readRecord));
+            case IMPORT_SPLIT_RECORDS -> company.importRentRecords(readList(in, JournaledRentCompany::readSplitRecord));
+            case RETURN_CARS -> company.returnCars(readList(in, JournaledRentCompany::readReturn));
+            case BATCH -> {
+                for (int count = in.readInt(); count > 0; count--)
+                    apply(company, in);
+            }
+            default -> throw new IOException("unknown journal operation " + type);
+        }
+    }
+
+    private static <T> Operation batch(byte type, Collection<T> items, ItemWriter<T> writer) {
+        return out -> {
+            out.writeByte(type);
+            out.writeInt(items.size());
+            for (T item : items)
+                writer.write(out, item);
+        };
+    }
+
+    private static <T> List<T> readList(DataInput in, ItemReader<T> reader) throws IOException {
+        int count = in.readInt();
+        List<T> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            res.add(reader.read(in));
+        return res;
+    }
+
+    private static void writeModel(DataOutput out, Model model) throws IOException {
+        writeString(out, model.getModelName());
+        out.writeInt(model.getGasTank());
+        writeString(out, model.getCompany());
+        writeString(out, model.getCountry());
+        out.writeInt(model.getPriceDay());
+    }
+
+    private static Model readModel(DataInput in) throws IOException {
+        String modelName = readString(in);
+        int gasTank = in.readInt();
+        String modelCompany = readString(in);
+        String country = readString(in);
+        return new Model(modelName, gasTank, modelCompany, country, in.readInt());
+    }
+
+    private static void writeCar(DataOutput out, Car car) throws IOException {
+        writeString(out, car.getRegNumber());
+        writeString(out, car.getColor());
+        writeString(out, car.getModelName());
+        out.writeByte(car.getState().ordinal());
+        out.writeBoolean(car.isInUse());
+        out.writeBoolean(car.isFlRemoved());
+    }
+
+    private static Car readCar(DataInput in) throws IOException {
+        Car car = new Car(readString(in), readString(in), readString(in));
+        car.setState(STATES[in.readByte()]);
+        car.setInUse(in.readBoolean());
+        car.setFlRemoved(in.readBoolean());
+        return car;
+    }
+
+    private static void writeDriver(DataOutput out, Driver driver) throws IOException {
+        out.writeLong(driver.getLicenseId());
+        writeString(out, driver.getName());
+        out.writeInt(driver.getBirthYear());
+        writeString(out, driver.getPhone());
+    }
+
+    private static Driver readDriver(DataInput in) throws IOException {
+        long license = in.readLong();
+        String name = readString(in);
+        int birthYear = in.readInt();
+        return new Driver(license, name, birthYear, readString(in));
+    }
+
+    private static void writeRecord(DataOutput out, RentRecord record) throws IOException {
+        writeString(out, record.getRegNumber());
+        out.writeLong(record.getLicenseId());
+        out.writeInt(CompanySnapshot.toDay(record.getRentDate()));
+        out.writeInt(record.getRentDays());
+        out.writeInt(CompanySnapshot.toDay(record.getReturnDate()));
+        out.writeInt(record.getDamages());
+        out.writeInt(record.getTankPercent());
+        out.writeDouble(record.getCost());
+    }
+
+    private static RentRecord readRecord(DataInput in) throws IOException {
+        RentRecord record = new RentRecord(readString(in), in.readLong(),
+                CompanySnapshot.fromDay(in.readInt()), in.readInt());
+        record.setReturnDate(CompanySnapshot.fromDay(in.readInt()));
+        record.setDamages(in.readInt());
+        record.setTankPercent(in.readInt());
+        record.setCost(in.readDouble());
+        return record;
+    }
+
+    private static void writeSplitRecord(DataOutput out, RentRecord record) throws IOException {
+        writeRecord(out, record);
+        out.writeDouble(record.getGasCost());
+    }
+
+    private static RentRecord readSplitRecord(DataInput in) throws IOException {
+        RentRecord record = readRecord(in);
+        record.setGasCost(in.readDouble());
+        return record;
+    }
+
+    private static void writeReturn(DataOutput out, CarReturn r) throws IOException {
+        writeString(out, r.getRegNumber());
+        out.writeLong(r.getLicenseId());
+        out.writeInt(CompanySnapshot.toDay(r.getReturnDate()));
+        out.writeInt(r.getDamages());
+        out.writeInt(r.getTankPercent());
+    }
+
+    private static CarReturn readReturn(DataInput in) throws IOException {
+        return new CarReturn(readString(in), in.readLong(), CompanySnapshot.fromDay(in.readInt()),
+                in.readInt(), in.readInt());
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        CompanySnapshot.writeString(out, s);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return CompanySnapshot.readString(in);
+    }
+
+    /**
+     * Saves the snapshot of the own file, which truncates the journal.
+     */
+    public void checkpoint() {
+        save(snapshotFile.toString());
+    }
+
+    public CompletableFuture<Void> checkpointInBackground() {
+        return saveInBackground(snapshotFile.toString());
+    }
+
+    /**
+     * Takes a point-in-time view of the company ({@link AbstractRentCompany#freeze}) and writes it
+     * on the snapshot thread; mutations wait only while the view is taken.
+     * The file is written through a temporary file, so a crash leaves the previous snapshot in place.
+     * A snapshot of the own file truncates the journal up to the copy, keeping the records appended since.
+     * Snapshots are written one at a time in the order they were taken.
+     */
+    public CompletableFuture<Void> saveInBackground(String fileName) {
+        Path file = Path.of(fileName).toAbsolutePath().normalize();
+        CompanySnapshot snapshot = whileStopped(this::freeze);
+        return CompletableFuture.runAsync(() -> {
+            Path tmp = Path.of(file + ".tmp");
+            try {
+                snapshot.write(tmp.toString());
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (file.equals(snapshotFile))
+                    journal.truncate(snapshot.journalSequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                whileStopped(() -> {
+                    snapshot.release();
+                    return null;
+                });
+            }
+        }, snapshotWriter);
+    }
+
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        return company instanceof Measurable measurable ? measurable.getIndexSizes() : Map.of();
+    }
+
+    /**
+     * Archiving changes no result, so it is not journaled; it runs between the mutations.
+     */
+    @Override
+    public int archiveRecords(LocalDate today) {
+        if (!(company instanceof Archivable archivable)) return 0;
+        return whileStopped(() -> archivable.archiveRecords(today));
+    }
+
+    @Override
+    public void save(String fileName) {
+        try {
+            saveInBackground(fileName).join();
+        } catch (CompletionException e) {
+            System.out.println("Error in method save " + e.getCause().getMessage());
+        }
+    }
+
+    public long lastSequence() {
+        return journal.lastSequence();
+    }
+
+    /**
+     * @return random id of this opening of the journal, never 0: the sequences of another opening
+     * may name other records, e.g. after a crash that lost the end of the journal
+     */
+    long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Waits for the snapshots already taken, then closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    @Override
+    public int getGasPrice() {
+        return company.getGasPrice();
+    }
+
+    @Override
+    public void setGasPrice(int price) {
+        mutate(() -> {
+            company.setGasPrice(price);
+            return null;
+        }, out -> {
+            out.writeByte(SET_GAS_PRICE);
+            out.writeInt(price);
+        });
+    }
+
+    @Override
+    public int getFinePercent() {
+        return company.getFinePercent();
+    }
+
+    @Override
+    public void setFinePercent(int finePercent) {
+        mutate(() -> {
+            company.setFinePercent(finePercent);
+            return null;
+        }, out -> {
+            out.writeByte(SET_FINE_PERCENT);
+            out.writeInt(finePercent);
+        });
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        return mutate(() -> company.addModel(model), out -> {
+            out.writeByte(ADD_MODEL);
+            writeModel(out, model);
+        });
+    }
+
+    @Override
+    public List<CarsReturnCode> addModels(Collection<Model> models) {
+        return mutate(() -> company.addModels(models), batch(ADD_MODELS, models, JournaledRentCompany::writeModel));
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return company.getModel(modelName);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        return mutate(() -> company.addCar(car), out -> {
+            out.writeByte(ADD_CAR);
+            writeCar(out, car);
+        });
+    }
+
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> cars) {
+        return mutate(() -> company.addCars(cars), batch(ADD_CARS, cars, JournaledRentCompany::writeCar));
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        return company.getCar(regNumber);
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        return mutate(() -> company.addDriver(driver), out -> {
+            out.writeByte(ADD_DRIVER);
+            writeDriver(out, driver);
+        });
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        return mutate(() -> company.addDrivers(drivers),
+                batch(ADD_DRIVERS, drivers, JournaledRentCompany::writeDriver));
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> records) {
+        return mutate(() -> company.importRentRecords(records),
+                batch(IMPORT_SPLIT_RECORDS, records, JournaledRentCompany::writeSplitRecord));
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return company.getDriver(licenseId);
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        return mutate(() -> company.rentCar(regNumber, licenseId, rentDate, rentDays), out -> {
+            out.writeByte(RENT_CAR);
+            writeString(out, regNumber);
+            out.writeLong(licenseId);
+            out.writeInt(CompanySnapshot.toDay(rentDate));
+            out.writeInt(rentDays);
+        });
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return company.getCarByDrivers(licenseId);
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return company.getDriversByCars(regNumber);
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return company.getCarsByModel(modelName);
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return company.getRentedCars();
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return company.getRentRecordsAtDates(from, to);
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        return company.getRentRecordsActiveAtDates(from, to);
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        return company.streamCarByDrivers(licenseId);
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        return company.streamDriversByCars(regNumber);
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return company.countCarsByModel(modelName);
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return company.getAnyCarByModel(modelName);
+    }
+
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        return company.streamCarsByModel(modelName);
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return company.streamRentRecordsAtDates(from, to);
+    }
+
+    @Override
+    public Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return company.getCarByDrivers(licenseId, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return company.getDriversByCars(regNumber, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        return company.getCarsByModel(modelName, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return company.getRentRecordsAtDates(from, to, pageSize, pageToken);
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        return mutate(() -> company.removeCar(regNumber), out -> {
+            out.writeByte(REMOVE_CAR);
+            writeString(out, regNumber);
+        });
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String model) {
+        return mutate(() -> company.removeModel(model), out -> {
+            out.writeByte(REMOVE_MODEL);
+            writeString(out, model);
+        });
+    }
+
+    @Override
+    public int removeModel(String model, Consumer<? super RemovedCarData> action) {
+        return mutate(() -> company.removeModel(model, action), out -> {
+            out.writeByte(REMOVE_MODEL);
+            writeString(out, model);
+        });
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return company.getMostPopularCarModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return company.getMostProfitableCarModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return company.getMostActiveDrivers(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return company.getRevenueTotals(from, to);
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        CarReturn r = new CarReturn(regNumber, licensedId, returnDate, damages, tankPercent);
+        return mutate(() -> company.returnCar(regNumber, licensedId, returnDate, damages, tankPercent), out -> {
+            out.writeByte(RETURN_CAR);
+            writeReturn(out, r);
+        });
+    }
+
+    /**
+     * Journals the batch as one RETURN_CARS record, replayed by the same batch method.
+     */
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        AbstractRentCompany.checkReturns(returns); //плохой пакет не попадает в журнал
+        return mutate(() -> company.returnCars(returns), batch(RETURN_CARS, returns, JournaledRentCompany::writeReturn));
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        return mutate(() -> company.reserveCar(regNumber, licenseId, from, days), out -> {
+            out.writeByte(RESERVE_CAR);
+            writeString(out, regNumber);
+            out.writeLong(licenseId);
+            out.writeInt(CompanySnapshot.toDay(from));
+            out.writeInt(days);
+        });
+    }
+
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        return company.findFreeCar(modelName, from, to);
+    }
+}
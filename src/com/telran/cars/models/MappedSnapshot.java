@@ -0,0 +1,143 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.Car;
+import com.telran.cars.dto.Driver;
+import com.telran.cars.dto.Model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of a {@link CompanySnapshot} file mapped into memory.
+ * Opening parses only the header, the dictionary and the models;
+ * drivers and cars are found by binary search in the lookup section and parsed on every call.
+ */
+class MappedSnapshot {
+    private static final long SEGMENT = 1L << 30;
+    //Сегменты перекрываются, чтобы любая сущность целиком лежала в сегменте своего начала
+    private static final int OVERLAP = 1 << 20;
+    private static final int DRIVER_ENTRY = 16;
+    private static final int CAR_ENTRY = 12;
+
+    private final MappedByteBuffer[] segments;
+    final int finePercent;
+    final int gasPrice;
+    private final String[] dictionary;
+    private final Map<String, Model> models = new HashMap<>();
+    private final boolean indexed;
+    private long driverLookup;
+    private int driverCount;
+    private long carLookup;
+    private int carCount;
+
+    MappedSnapshot(String fileName) throws IOException {
+        long size;
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            size = channel.size();
+            segments = new MappedByteBuffer[(int) Math.max(1, (size + SEGMENT - 1) / SEGMENT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(size - start, SEGMENT + OVERLAP));
+            }
+        }
+        DataInput in = at(0);
+        long[] header = CompanySnapshot.readHeader(in);
+        finePercent = (int) header[1];
+        gasPrice = (int) header[2];
+        dictionary = CompanySnapshot.readDictionary(in);
+        CompanySnapshot.readModels(in, dictionary).forEach(m -> models.put(m.getModelName(), m));
+
+        indexed = header[0] >= 2;
+        if (indexed) {
+            DataInput footer = at(size - CompanySnapshot.FOOTER_SIZE);
+            long lookup = footer.readLong();
+            if (footer.readInt() != CompanySnapshot.MAGIC)
+                throw new IOException("snapshot footer is damaged");
+            driverCount = getInt(lookup);
+            driverLookup = lookup + 4;
+            long carSection = driverLookup + (long) DRIVER_ENTRY * driverCount;
+            carCount = getInt(carSection);
+            carLookup = carSection + 4;
+        }
+    }
+
+    /**
+     * false for snapshots of version 1 without the lookup section
+     */
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    Model getModel(String modelName) {
+        return models.get(modelName);
+    }
+
+    Driver getDriver(long licenseId) throws IOException {
+        int lo = 0, hi = driverCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long entry = driverLookup + (long) DRIVER_ENTRY * mid;
+            long license = getLong(entry);
+            if (license < licenseId) lo = mid + 1;
+            else if (license > licenseId) hi = mid - 1;
+            else return CompanySnapshot.readDriver(at(getLong(entry + 8)));
+        }
+        return null;
+    }
+
+    Car getCar(String regNumber) throws IOException {
+        int hash = regNumber.hashCode();
+        int lo = 0, hi = carCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getInt(carLookup + (long) CAR_ENTRY * mid) < hash) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int i = lo; i < carCount; i++) {
+            long entry = carLookup + (long) CAR_ENTRY * i;
+            if (getInt(entry) != hash) break;
+            Car car = CompanySnapshot.readCar(at(getLong(entry + 4)), dictionary);
+            if (car.getRegNumber().equals(regNumber)) return car;
+        }
+        return null;
+    }
+
+    private ByteBuffer buffer(long position) {
+        ByteBuffer buffer = segments[(int) (position / SEGMENT)].duplicate();
+        buffer.position((int) (position % SEGMENT));
+        return buffer;
+    }
+
+    private int getInt(long position) {
+        return buffer(position).getInt();
+    }
+
+    private long getLong(long position) {
+        return buffer(position).getLong();
+    }
+
+    private DataInput at(long position) {
+        ByteBuffer buffer = buffer(position);
+        return new DataInputStream(new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!buffer.hasRemaining()) return -1;
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+        });
+    }
+}
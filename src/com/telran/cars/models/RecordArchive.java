@@ -0,0 +1,408 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.RentRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier of returned rent records: a directory of segments, one file per month of rent date,
+ * appended by {@link #append}. A segment is a chain of blocks of at most {@link #BLOCK_SIZE} records
+ * sorted by license id, every block a gzip member behind an uncompressed header with the license range,
+ * the day ranges and a Bloom filter of the reg numbers. Only the headers stay on heap, so a query
+ * decompresses just the blocks that may hold its records.
+ * Removing a car rewrites the segments with its records; nothing else changes a segment.
+ * Not thread-safe: the company calls it under its own locking.
+ */
+public class RecordArchive {
+    public static final int BLOCK_SIZE = 4096;
+    private static final String SUFFIX = ".seg";
+    private static final String WATERMARK = "watermark";
+    private static final int BLOOM_LONGS = BLOCK_SIZE / 8; //8 бит на запись и 3 хеша: ~3% ложных попаданий
+    private static final int BLOOM_HASHES = 3;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + BLOOM_LONGS * 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path dir;
+    private final TreeMap<Integer, List<Block>> segments = new TreeMap<>(); //key month: year * 12 + month - 1
+    private LocalDate watermark; //records returned before it were archived
+
+    private static class Block {
+        final long offset; //of the gzip member in the file
+        final int length;
+        final int count;
+        final long minLicense;
+        final long maxLicense;
+        final int minRentDay;
+        final int maxRentDay;
+        final int maxReturnDay;
+        final long[] regNumbers; //Bloom filter
+
+        Block(long offset, DataInput in) throws IOException {
+            this.offset = offset;
+            length = in.readInt();
+            count = in.readInt();
+            minLicense = in.readLong();
+            maxLicense = in.readLong();
+            minRentDay = in.readInt();
+            maxRentDay = in.readInt();
+            maxReturnDay = in.readInt();
+            regNumbers = new long[BLOOM_LONGS];
+            for (int i = 0; i < BLOOM_LONGS; i++)
+                regNumbers[i] = in.readLong();
+        }
+
+        boolean hasLicense(long licenseId) {
+            return licenseId >= minLicense && licenseId <= maxLicense;
+        }
+
+        boolean mayHaveCar(String regNumber) {
+            int hash = regNumber.hashCode();
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bloomBit(hash, i);
+                if ((regNumbers[bit >>> 6] & 1L << bit) == 0) return false;
+            }
+            return true;
+        }
+
+        boolean rentedIn(int fromDay, int toDay) {
+            return minRentDay < toDay && maxRentDay >= fromDay;
+        }
+    }
+
+    /**
+     * Opens the archive in the directory, creating it if needed; only the block headers are read.
+     */
+    public RecordArchive(String dir) {
+        this.dir = Path.of(dir);
+        try {
+            Files.createDirectories(this.dir);
+            Path watermarkFile = this.dir.resolve(WATERMARK);
+            if (Files.exists(watermarkFile))
+                watermark = LocalDate.parse(Files.readString(watermarkFile).trim());
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    int month = toMonth(LocalDate.parse(name.substring(0, name.length() - SUFFIX.length()) + "-01"));
+                    segments.put(month, readHeaders(file));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long size() {
+        return segments.values().stream().flatMap(List::stream).mapToLong(b -> b.count).sum();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return date before which all returned records were archived, null if nothing was
+     */
+    public LocalDate getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Appends records returned before {@code watermark} to the segments of their months.
+     */
+    void append(Collection<RentRecord> records, LocalDate watermark) {
+        Map<Integer, List<RentRecord>> byMonth = new TreeMap<>();
+        records.forEach(r -> byMonth.computeIfAbsent(toMonth(r.getRentDate()), k -> new ArrayList<>()).add(r));
+        try {
+            for (Map.Entry<Integer, List<RentRecord>> month : byMonth.entrySet()) {
+                List<Block> blocks = write(file(month.getKey()), month.getValue(), true);
+                segments.computeIfAbsent(month.getKey(), k -> new ArrayList<>()).addAll(blocks);
+            }
+            if (this.watermark == null || watermark.isAfter(this.watermark)) {
+                Files.writeString(dir.resolve(WATERMARK), watermark.toString());
+                this.watermark = watermark;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void forEach(Consumer<RentRecord> action) {
+        records(segments, b -> true, r -> true).forEach(action);
+    }
+
+    /**
+     * Records with rent date in [from, to), by rent date, read one segment at a time:
+     * a month is decompressed only when the records before it are consumed.
+     */
+    Stream<RentRecord> streamRecordsAtDates(LocalDate from, LocalDate to) {
+        if (!from.isBefore(to)) return Stream.empty();
+        int fromDay = day(from);
+        int toDay = day(to);
+        List<Integer> months = new ArrayList<>(segments.subMap(toMonth(from), true, toMonth(to), true).keySet());
+        return months.stream().flatMap(month -> {
+            List<RentRecord> res = records(segments.subMap(month, true, month, true),
+                    b -> b.rentedIn(fromDay, toDay),
+                    r -> !r.getRentDate().isBefore(from) && r.getRentDate().isBefore(to));
+            res.sort(Comparator.comparing(RentRecord::getRentDate));
+            return res.stream();
+        });
+    }
+
+    /**
+     * @return records rented before {@code to} and returned not before {@code from}, by rent date
+     */
+    List<RentRecord> getRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        int fromDay = day(from);
+        int toDay = day(to);
+        List<RentRecord> res = records(segments.headMap(toMonth(to), true),
+                b -> b.minRentDay < toDay && b.maxReturnDay >= fromDay,
+                r -> r.getRentDate().isBefore(to) && !r.getReturnDate().isBefore(from));
+        res.sort(Comparator.comparing(RentRecord::getRentDate));
+        return res;
+    }
+
+    List<RentRecord> getDriverRecords(long licenseId) {
+        return records(segments, b -> b.hasLicense(licenseId), r -> r.getLicenseId() == licenseId);
+    }
+
+    List<RentRecord> getCarRecords(String regNumber) {
+        return records(segments, b -> b.mayHaveCar(regNumber), r -> r.getRegNumber().equals(regNumber));
+    }
+
+    /**
+     * @return for every record, whether an equal one - same car, driver, rent and return dates - is archived
+     */
+    boolean[] contains(List<RentRecord> records) {
+        boolean[] res = new boolean[records.size()];
+        Map<Integer, List<Integer>> byMonth = new HashMap<>();
+        for (int i = 0; i < res.length; i++)
+            byMonth.computeIfAbsent(toMonth(records.get(i).getRentDate()), k -> new ArrayList<>()).add(i);
+        byMonth.forEach((month, indexes) -> {
+            List<Block> blocks = segments.get(month);
+            if (blocks == null) return;
+            Set<String> keys = new HashSet<>();
+            records(segments.subMap(month, true, month, true), b -> true, r -> true).forEach(r -> keys.add(key(r)));
+            indexes.forEach(i -> res[i] = keys.contains(key(records.get(i))));
+        });
+        return res;
+    }
+
+    private static String key(RentRecord record) {
+        return record.getRegNumber() + '|' + record.getLicenseId() + '|' + record.getRentDate() + '|'
+                + record.getReturnDate();
+    }
+
+    boolean overlaps(LocalDate from, LocalDate to) {
+        int fromDay = day(from);
+        int toDay = day(to);
+        return from.isBefore(to) && segments.subMap(toMonth(from), true, toMonth(to), true).values().stream()
+                .flatMap(List::stream)
+                .anyMatch(b -> b.rentedIn(fromDay, toDay));
+    }
+
+    /**
+     * Rewrites the segments with records of the car without them.
+     * @return removed records
+     */
+    List<RentRecord> removeCar(String regNumber) {
+        List<RentRecord> res = new ArrayList<>();
+        try {
+            for (int month : new ArrayList<>(segments.keySet())) {
+                List<Block> blocks = segments.get(month);
+                if (blocks.stream().noneMatch(b -> b.mayHaveCar(regNumber))) continue;
+                List<RentRecord> kept = new ArrayList<>();
+                int removed = res.size();
+                records(segments.subMap(month, true, month, true), b -> true, r -> true)
+                        .forEach(r -> (r.getRegNumber().equals(regNumber) ? res : kept).add(r));
+                if (res.size() == removed) continue; //ложное попадание фильтра
+                Path file = file(month);
+                if (kept.isEmpty()) {
+                    Files.delete(file);
+                    segments.remove(month);
+                    continue;
+                }
+                Path tmp = dir.resolve(file.getFileName() + ".tmp");
+                List<Block> rewritten = write(tmp, kept, false);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                segments.put(month, rewritten);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return res;
+    }
+
+    private List<RentRecord> records(SortedMap<Integer, List<Block>> candidates, Predicate<Block> blockFilter,
+                                     Predicate<RentRecord> filter) {
+        List<RentRecord> res = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, List<Block>> segment : candidates.entrySet()) {
+                if (segment.getValue().stream().noneMatch(blockFilter)) continue;
+                try (FileChannel channel = FileChannel.open(file(segment.getKey()), StandardOpenOption.READ)) {
+                    for (Block block : segment.getValue())
+                        if (blockFilter.test(block))
+                            for (RentRecord record : read(channel, block))
+                                if (filter.test(record)) res.add(record);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return res;
+    }
+
+    private static List<Block> readHeaders(Path file) throws IOException {
+        List<Block> res = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            long offset = 0;
+            while (true) {
+                Block block;
+                try {
+                    block = new Block(offset + HEADER_SIZE, in);
+                } catch (EOFException e) {
+                    return res;
+                }
+                in.skipNBytes(block.length);
+                offset += HEADER_SIZE + block.length;
+                res.add(block);
+            }
+        }
+    }
+
+    private static List<RentRecord> read(FileChannel channel, Block block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(block.length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, block.offset + buffer.position()) < 0) throw new EOFException();
+        List<RentRecord> res = new ArrayList<>(block.count);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new ByteArrayInputStream(buffer.array()), BUFFER_SIZE)))) {
+            for (int i = 0; i < block.count; i++) {
+                RentRecord record = new RentRecord(in.readUTF(), in.readLong(),
+                        CompanySnapshot.fromDay(in.readInt()), in.readInt());
+                record.setReturnDate(CompanySnapshot.fromDay(in.readInt()));
+                record.setDamages(in.readInt());
+                record.setTankPercent(in.readInt());
+                record.setCost(in.readDouble());
+                res.add(record);
+            }
+            readGasCosts(in, res);
+        }
+        return res;
+    }
+
+    //Записи сортируются по водителю: записи одного водителя попадают в один-два блока сегмента
+    private static List<Block> write(Path file, List<RentRecord> records, boolean append) throws IOException {
+        List<RentRecord> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparingLong(RentRecord::getLicenseId));
+        List<Block> res = new ArrayList<>();
+        FileOutputStream stream = new FileOutputStream(file.toFile(), append);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE))) {
+            long offset = stream.getChannel().position();
+            for (int from = 0; from < sorted.size(); from += BLOCK_SIZE) {
+                List<RentRecord> block = sorted.subList(from, Math.min(sorted.size(), from + BLOCK_SIZE));
+                byte[] compressed = compress(block);
+                byte[] header = header(block, compressed.length);
+                out.write(header);
+                out.write(compressed);
+                res.add(new Block(offset + HEADER_SIZE, new DataInputStream(new ByteArrayInputStream(header))));
+                offset += HEADER_SIZE + compressed.length;
+            }
+            out.flush();
+            //Записи удаляются из памяти только после того, как они на диске
+            stream.getFD().sync();
+        }
+        return res;
+    }
+
+    private static byte[] header(List<RentRecord> block, int length) throws IOException {
+        long[] bloom = new long[BLOOM_LONGS];
+        int minRentDay = Integer.MAX_VALUE;
+        int maxRentDay = Integer.MIN_VALUE;
+        int maxReturnDay = Integer.MIN_VALUE;
+        for (RentRecord record : block) {
+            int hash = record.getRegNumber().hashCode();
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = bloomBit(hash, i);
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+            minRentDay = Math.min(minRentDay, day(record.getRentDate()));
+            maxRentDay = Math.max(maxRentDay, day(record.getRentDate()));
+            maxReturnDay = Math.max(maxReturnDay, day(record.getReturnDate()));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(length);
+        out.writeInt(block.size());
+        out.writeLong(block.get(0).getLicenseId());
+        out.writeLong(block.get(block.size() - 1).getLicenseId());
+        out.writeInt(minRentDay);
+        out.writeInt(maxRentDay);
+        out.writeInt(maxReturnDay);
+        for (long word : bloom)
+            out.writeLong(word);
+        return bytes.toByteArray();
+    }
+
+    //Доли топлива - после записей блока; в блоках старых версий их нет, долю задает компания
+    private static void readGasCosts(DataInputStream in, List<RentRecord> records) throws IOException {
+        double[] gasCosts = new double[records.size()];
+        try {
+            for (int i = 0; i < gasCosts.length; i++)
+                gasCosts[i] = in.readDouble();
+        } catch (EOFException e) {
+            return;
+        }
+        for (int i = 0; i < gasCosts.length; i++)
+            records.get(i).setGasCost(gasCosts[i]);
+    }
+
+    private static byte[] compress(List<RentRecord> block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, BUFFER_SIZE))) {
+            for (RentRecord record : block) {
+                out.writeUTF(record.getRegNumber());
+                out.writeLong(record.getLicenseId());
+                out.writeInt(CompanySnapshot.toDay(record.getRentDate()));
+                out.writeInt(record.getRentDays());
+                out.writeInt(CompanySnapshot.toDay(record.getReturnDate()));
+                out.writeInt(record.getDamages());
+                out.writeInt(record.getTankPercent());
+                out.writeDouble(record.getCost());
+            }
+            for (RentRecord record : block)
+                out.writeDouble(record.getGasCost());
+        }
+        return bytes.toByteArray();
+    }
+
+    //Двойное хеширование: i-й бит из двух половин перемешанного hashCode
+    private static int bloomBit(int hash, int i) {
+        int h = hash * 0x9E3779B9;
+        int step = h >>> 16 | 1;
+        return ((h + i * step) & Integer.MAX_VALUE) % (BLOOM_LONGS * 64);
+    }
+
+    private Path file(int month) {
+        return dir.resolve(String.format("%04d-%02d%s", month / 12, month % 12 + 1, SUFFIX));
+    }
+
+    //LocalDate.MIN и MAX в запросах без границ выходят за int
+    private static int day(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    private static int toMonth(LocalDate date) {
+        long month = date.getYear() * 12L + date.getMonthValue() - 1;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, month));
+    }
+}
@@ -0,0 +1,270 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.RentRecord;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Rent records kept off-heap in columns: blocks of {@link #CHUNK_ROWS} rows in direct buffers,
+ * every column of a block stored contiguously. A record is its row number; the heap holds
+ * only the list of blocks, so the number of records does not change the work of the collector.
+ * Besides the data columns every row has next/prev links of three chains - by driver, by car and
+ * by rent day - so the indexes of the company are lists of rows unlinked in O(1).
+ * A removed row is marked and not reused: rows stay in order of adding.
+ * Not thread-safe.
+ */
+class RecordStore {
+    static final int NONE = -1;
+    static final int BY_DRIVER = 0;
+    static final int BY_CAR = 1;
+    static final int BY_DAY = 2;
+    static final int CHUNK_ROWS = 1 << 14;
+    private static final int ROW_MASK = CHUNK_ROWS - 1;
+    private static final int ROW_SHIFT = 14;
+    private static final int NO_DAY = Integer.MIN_VALUE;
+
+    //Смещения столбцов в блоке: столбец занимает CHUNK_ROWS * ширина байт
+    private static final int CAR = 0;
+    private static final int LICENSE = CAR + 4 * CHUNK_ROWS;
+    private static final int RENT_DAY = LICENSE + 8 * CHUNK_ROWS;
+    private static final int RENT_DAYS = RENT_DAY + 4 * CHUNK_ROWS;
+    private static final int RETURN_DAY = RENT_DAYS + 4 * CHUNK_ROWS;
+    private static final int DAMAGES = RETURN_DAY + 4 * CHUNK_ROWS;
+    private static final int TANK = DAMAGES + 4 * CHUNK_ROWS;
+    private static final int COST = TANK + 4 * CHUNK_ROWS;
+    private static final int GAS_COST = COST + 8 * CHUNK_ROWS;
+    private static final int LINKS = GAS_COST + 8 * CHUNK_ROWS; //next и prev каждой цепочки
+    static final int ROW_BYTES = (LINKS + 3 * 2 * 4 * CHUNK_ROWS) / CHUNK_ROWS;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final IntFunction<String> regNumbers; //car id -> reg number
+    private int size; //rows taken, removed included
+    private int live;
+
+    /**
+     * @param regNumbers reg number of a car id, for the records read back
+     */
+    RecordStore(IntFunction<String> regNumbers) {
+        this.regNumbers = regNumbers;
+    }
+
+    /**
+     * @return row of the new record, not linked to any chain
+     */
+    int add(int carId, long licenseId, LocalDate rentDate, int rentDays) {
+        if (size == chunks.size() * CHUNK_ROWS)
+            chunks.add(ByteBuffer.allocateDirect(ROW_BYTES * CHUNK_ROWS));
+        int row = size++;
+        live++;
+        putInt(CAR, row, carId);
+        chunk(row).putLong(LICENSE + (row & ROW_MASK) * 8, licenseId);
+        putInt(RENT_DAY, row, (int) rentDate.toEpochDay());
+        putInt(RENT_DAYS, row, rentDays);
+        putInt(RETURN_DAY, row, NO_DAY);
+        putInt(DAMAGES, row, 0);
+        putInt(TANK, row, 0);
+        chunk(row).putDouble(COST + (row & ROW_MASK) * 8, 0);
+        chunk(row).putDouble(GAS_COST + (row & ROW_MASK) * 8, 0);
+        for (int link = 0; link < 6; link++)
+            putInt(LINKS + link * 4 * CHUNK_ROWS, row, NONE);
+        return row;
+    }
+
+    void setReturn(int row, LocalDate returnDate, int damages, int tankPercent, double cost, double gasCost) {
+        putInt(RETURN_DAY, row, (int) returnDate.toEpochDay());
+        putInt(DAMAGES, row, damages);
+        putInt(TANK, row, tankPercent);
+        chunk(row).putDouble(COST + (row & ROW_MASK) * 8, cost);
+        chunk(row).putDouble(GAS_COST + (row & ROW_MASK) * 8, gasCost);
+    }
+
+    //Строка остается на месте, номер машины NONE отличает ее от живых
+    void remove(int row) {
+        putInt(CAR, row, NONE);
+        live--;
+    }
+
+    boolean isLive(int row) {
+        return carId(row) != NONE;
+    }
+
+    int carId(int row) {
+        return getInt(CAR, row);
+    }
+
+    long licenseId(int row) {
+        return chunk(row).getLong(LICENSE + (row & ROW_MASK) * 8);
+    }
+
+    int rentDay(int row) {
+        return getInt(RENT_DAY, row);
+    }
+
+    int rentDays(int row) {
+        return getInt(RENT_DAYS, row);
+    }
+
+    boolean isReturned(int row) {
+        return getInt(RETURN_DAY, row) != NO_DAY;
+    }
+
+    double cost(int row) {
+        return chunk(row).getDouble(COST + (row & ROW_MASK) * 8);
+    }
+
+    /**
+     * @return return day, or rent day + rent days while the car is not returned
+     */
+    int endDay(int row) {
+        int returnDay = getInt(RETURN_DAY, row);
+        return returnDay != NO_DAY ? Math.max(rentDay(row), returnDay) : rentDay(row) + rentDays(row);
+    }
+
+    /**
+     * Appends the row to a chain; {@code ends} is {head, tail} of the chain, {NONE, NONE} when empty.
+     */
+    void link(int chain, int[] ends, int row) {
+        int next = LINKS + chain * 8 * CHUNK_ROWS;
+        int prev = next + 4 * CHUNK_ROWS;
+        putInt(prev, row, ends[1]);
+        putInt(next, row, NONE);
+        if (ends[1] == NONE) ends[0] = row;
+        else putInt(next, ends[1], row);
+        ends[1] = row;
+    }
+
+    /**
+     * @return true if the chain became empty
+     */
+    boolean unlink(int chain, int[] ends, int row) {
+        int nextColumn = LINKS + chain * 8 * CHUNK_ROWS;
+        int prevColumn = nextColumn + 4 * CHUNK_ROWS;
+        int next = getInt(nextColumn, row);
+        int prev = getInt(prevColumn, row);
+        if (prev == NONE) ends[0] = next;
+        else putInt(nextColumn, prev, next);
+        if (next == NONE) ends[1] = prev;
+        else putInt(prevColumn, next, prev);
+        return ends[0] == NONE;
+    }
+
+    int next(int chain, int row) {
+        return getInt(LINKS + chain * 8 * CHUNK_ROWS, row);
+    }
+
+    IntStream rows(int chain, int[] ends) {
+        return ends == null ? IntStream.empty() : IntStream.iterate(ends[0], r -> r != NONE, r -> next(chain, r));
+    }
+
+    /**
+     * @return live rows in order of adding
+     */
+    IntStream rows() {
+        return IntStream.range(0, size).filter(this::isLive);
+    }
+
+    /**
+     * @return new record with the data of the row
+     */
+    RentRecord toRecord(int row) {
+        return cursor().at(row).copy();
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    int size() {
+        return live;
+    }
+
+    int removedRows() {
+        return size - live;
+    }
+
+    long offHeapBytes() {
+        return (long) chunks.size() * ROW_BYTES * CHUNK_ROWS;
+    }
+
+    /**
+     * Read-only view of one row that is moved from row to row, so a scan creates no record objects.
+     * It is not a {@link RentRecord}: nothing can set its fields or keep it as a record, {@link #copy} makes one.
+     * It must not be kept past the next {@link #at} or mutation.
+     */
+    class Cursor {
+        private int row = NONE;
+
+        Cursor at(int row) {
+            this.row = row;
+            return this;
+        }
+
+        int row() {
+            return row;
+        }
+
+        RentRecord copy() {
+            RentRecord res = new RentRecord(regNumber(), licenseId(), rentDate(), rentDays());
+            res.setReturnDate(returnDate());
+            res.setDamages(damages());
+            res.setTankPercent(tankPercent());
+            res.setCost(cost());
+            res.setGasCost(gasCost());
+            return res;
+        }
+
+        String regNumber() {
+            return regNumbers.apply(carId(row));
+        }
+
+        long licenseId() {
+            return RecordStore.this.licenseId(row);
+        }
+
+        LocalDate rentDate() {
+            return LocalDate.ofEpochDay(rentDay(row));
+        }
+
+        LocalDate returnDate() {
+            int day = getInt(RETURN_DAY, row);
+            return day == NO_DAY ? null : LocalDate.ofEpochDay(day);
+        }
+
+        int rentDays() {
+            return RecordStore.this.rentDays(row);
+        }
+
+        int damages() {
+            return getInt(DAMAGES, row);
+        }
+
+        int tankPercent() {
+            return getInt(TANK, row);
+        }
+
+        double cost() {
+            return RecordStore.this.cost(row);
+        }
+
+        double gasCost() {
+            return chunk(row).getDouble(GAS_COST + (row & ROW_MASK) * 8);
+        }
+    }
+
+    private ByteBuffer chunk(int row) {
+        return chunks.get(row >>> ROW_SHIFT);
+    }
+
+    private int getInt(int column, int row) {
+        return chunk(row).getInt(column + (row & ROW_MASK) * 4);
+    }
+
+    private void putInt(int column, int row, int value) {
+        chunk(row).putInt(column + (row & ROW_MASK) * 4, value);
+    }
+}
@@ -0,0 +1,287 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.RentRecord;
+import com.telran.utils.LongHashMap;
+import com.telran.utils.TopCounter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.LongFunction;
+
+/**
+ * Rent counts and revenue kept up to date by the company as records are added, returned and removed,
+ * so the reports do not read the records.
+ * Totals answer the reports without filters: models are few and sorted per report,
+ * drivers are ranked by a {@link TopCounter}. Filtered reports merge the counters of the rent days
+ * in the range, kept per age bucket of the driver at the rent date.
+ * Revenue is the cost of a returned record and counts on its rent date.
+ * <p>
+ * The counters are striped and merged on read: the models and days of a record are counted in the stripe
+ * of its car, by the same hash as the car locks of {@link RentCompanyConcurrent}, so a writer holding
+ * its car lock takes an uncontended monitor; the drivers are counted in the stripe of the license,
+ * so a driver is in one {@link TopCounter} and the top of the stripes merges exactly.
+ */
+class RentAnalytics implements Serializable {
+    static final int AGE_BUCKET = 10;
+
+    private final Stripe[] stripes;
+
+    private static class Stripe implements Serializable {
+        final Map<String, ModelStats> models = new HashMap<>(); //key model name
+        final TopCounter<Long> drivers = new TopCounter<>(); //rents by license id
+        final TreeMap<Integer, DayStats> days = new TreeMap<>(); //key epoch day of rent
+    }
+
+    private static class ModelStats implements Serializable {
+        long rents;
+        double revenue;
+
+        boolean isEmpty() {
+            return rents == 0;
+        }
+
+        void add(ModelStats other) {
+            rents += other.rents;
+            revenue += other.revenue;
+        }
+    }
+
+    private static class DayStats implements Serializable {
+        final Map<Integer, Map<String, ModelStats>> models = new HashMap<>(); //age bucket -> model name
+        final LongHashMap<long[]> drivers = new LongHashMap<>(); //license id -> rents
+
+        boolean isEmpty() {
+            return models.isEmpty() && drivers.isEmpty();
+        }
+    }
+
+    RentAnalytics() {
+        this(1);
+    }
+
+    /**
+     * @param stripes number of stripes, a power of two
+     */
+    RentAnalytics(int stripes) {
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = new Stripe();
+    }
+
+    //Тот же хэш, что у блокировок машин RentCompanyConcurrent
+    static int stripe(String regNumber, int stripes) {
+        int h = regNumber.hashCode();
+        return (h ^ (h >>> 16)) & (stripes - 1);
+    }
+
+    private Stripe carStripe(RentRecord record) {
+        return stripes[stripe(record.getRegNumber(), stripes.length)];
+    }
+
+    private Stripe driverStripe(long licenseId) {
+        return stripes[Long.hashCode(licenseId * 0x9E3779B97F4A7C15L) & (stripes.length - 1)];
+    }
+
+    static int ageBucket(int age) {
+        return Math.max(0, age) / AGE_BUCKET;
+    }
+
+    private static int ageBucket(RentRecord record, int birthYear) {
+        return ageBucket(record.getRentDate().getYear() - birthYear);
+    }
+
+    void rented(RentRecord record, String modelName, int birthYear) {
+        Stripe stripe = carStripe(record);
+        synchronized (stripe) {
+            stripe.models.computeIfAbsent(modelName, k -> new ModelStats()).rents++;
+            DayStats day = stripe.days.computeIfAbsent((int) record.getRentDate().toEpochDay(), k -> new DayStats());
+            day.models.computeIfAbsent(ageBucket(record, birthYear), k -> new HashMap<>())
+                    .computeIfAbsent(modelName, k -> new ModelStats()).rents++;
+            day.drivers.computeIfAbsent(record.getLicenseId(), k -> new long[1])[0]++;
+            if (record.getReturnDate() != null) returned(stripe, record, modelName, birthYear);
+        }
+        Stripe drivers = driverStripe(record.getLicenseId());
+        synchronized (drivers) {
+            drivers.drivers.increment(record.getLicenseId());
+        }
+    }
+
+    void returned(RentRecord record, String modelName, int birthYear) {
+        Stripe stripe = carStripe(record);
+        synchronized (stripe) {
+            returned(stripe, record, modelName, birthYear);
+        }
+    }
+
+    private static void returned(Stripe stripe, RentRecord record, String modelName, int birthYear) {
+        double cost = record.getCost();
+        stripe.models.get(modelName).revenue += cost;
+        stripe.days.get((int) record.getRentDate().toEpochDay()).models.get(ageBucket(record, birthYear))
+                .get(modelName).revenue += cost;
+    }
+
+    void removed(RentRecord record, String modelName, int birthYear) {
+        double cost = record.getReturnDate() != null ? record.getCost() : 0;
+        Stripe stripe = carStripe(record);
+        synchronized (stripe) {
+            ModelStats total = stripe.models.get(modelName);
+            total.rents--;
+            total.revenue -= cost;
+            if (total.isEmpty()) stripe.models.remove(modelName);
+
+            int epochDay = (int) record.getRentDate().toEpochDay();
+            DayStats day = stripe.days.get(epochDay);
+            int bucket = ageBucket(record, birthYear);
+            Map<String, ModelStats> bucketModels = day.models.get(bucket);
+            ModelStats stats = bucketModels.get(modelName);
+            stats.rents--;
+            stats.revenue -= cost;
+            if (stats.isEmpty()) bucketModels.remove(modelName);
+            if (bucketModels.isEmpty()) day.models.remove(bucket);
+            long[] rents = day.drivers.get(record.getLicenseId());
+            if (--rents[0] == 0) day.drivers.remove(record.getLicenseId());
+            if (day.isEmpty()) stripe.days.remove(epochDay);
+        }
+        Stripe drivers = driverStripe(record.getLicenseId());
+        synchronized (drivers) {
+            drivers.drivers.decrement(record.getLicenseId());
+        }
+    }
+
+    static boolean isFiltered(LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return from != null || to != null || fromAge > 0 || toAge < Integer.MAX_VALUE;
+    }
+
+    List<String> popularModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return popularModels(List.of(this), n, from, to, fromAge, toAge);
+    }
+
+    List<String> profitableModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return profitableModels(List.of(this), n, from, to, fromAge, toAge);
+    }
+
+    List<Long> activeDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge,
+                             LongFunction<Integer> birthYearOf) {
+        return activeDrivers(List.of(this), n, from, to, fromAge, toAge, birthYearOf);
+    }
+
+    /*
+     * Reports over several counters, e.g. of the shards of a company, whose records are disjoint.
+     * Every stripe is read under its monitor, one at a time.
+     */
+    static List<String> popularModels(Collection<RentAnalytics> parts, int n, LocalDate from, LocalDate to,
+                                      int fromAge, int toAge) {
+        return topModels(mergeModels(parts, from, to, fromAge, toAge), n,
+                Comparator.comparingLong((Map.Entry<String, ModelStats> e) -> e.getValue().rents));
+    }
+
+    static List<String> profitableModels(Collection<RentAnalytics> parts, int n, LocalDate from, LocalDate to,
+                                         int fromAge, int toAge) {
+        return topModels(mergeModels(parts, from, to, fromAge, toAge), n,
+                Comparator.comparingDouble((Map.Entry<String, ModelStats> e) -> e.getValue().revenue));
+    }
+
+    /**
+     * @param birthYearOf birth year of a driver by license id, for the age filter
+     * @return license ids of the drivers with most rents
+     */
+    static List<Long> activeDrivers(Collection<RentAnalytics> parts, int n, LocalDate from, LocalDate to,
+                                    int fromAge, int toAge, LongFunction<Integer> birthYearOf) {
+        LongHashMap<long[]> rents = new LongHashMap<>();
+        if (!isFiltered(from, to, fromAge, toAge)) {
+            //Водитель - в одной полосе счетчиков: лучшие n всех полос содержат лучших n.
+            //У разных счетчиков водители общие, и складываются все
+            boolean disjoint = parts.size() == 1;
+            for (RentAnalytics part : parts)
+                for (Stripe stripe : part.stripes)
+                    synchronized (stripe) {
+                        if (disjoint) {
+                            for (Long license : stripe.drivers.top(n, Comparator.naturalOrder()))
+                                rents.computeIfAbsent(license, k -> new long[1])[0] += stripe.drivers.get(license);
+                        } else {
+                            stripe.drivers.forEach((license, count) ->
+                                    rents.computeIfAbsent(license, k -> new long[1])[0] += count);
+                        }
+                    }
+        } else {
+            int fromBucket = ageBucket(fromAge);
+            int toBucket = ageBucket(toAge - 1);
+            for (RentAnalytics part : parts)
+                for (Stripe stripe : part.stripes)
+                    synchronized (stripe) {
+                        for (Map.Entry<Integer, DayStats> day : days(stripe, from, to).entrySet()) {
+                            int year = LocalDate.ofEpochDay(day.getKey()).getYear();
+                            day.getValue().drivers.forEach((license, count) -> {
+                                int bucket = ageBucket(year - birthYearOf.apply(license));
+                                if (bucket >= fromBucket && bucket <= toBucket)
+                                    rents.computeIfAbsent(license, k -> new long[1])[0] += count[0];
+                            });
+                        }
+                    }
+        }
+        //Куча из n лучших: меньше рент, затем больший номер - первым на выход
+        Comparator<long[]> order = Comparator.<long[]>comparingLong(e -> e[1]).thenComparingLong(e -> -e[0]);
+        PriorityQueue<long[]> heap = new PriorityQueue<>(order);
+        rents.forEach((license, count) -> {
+            heap.add(new long[]{license, count[0]});
+            if (heap.size() > n) heap.poll();
+        });
+        List<Long> res = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) res.add(heap.poll()[0]);
+        Collections.reverse(res);
+        return res;
+    }
+
+    private static SortedMap<Integer, DayStats> days(Stripe stripe, LocalDate from, LocalDate to) {
+        int fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        if (to == null) return stripe.days.tailMap(fromDay);
+        int toDay = (int) to.toEpochDay();
+        return fromDay < toDay ? stripe.days.subMap(fromDay, toDay) : Collections.emptySortedMap();
+    }
+
+    private static Map<String, ModelStats> mergeModels(Collection<RentAnalytics> parts, LocalDate from, LocalDate to,
+                                                       int fromAge, int toAge) {
+        boolean filtered = isFiltered(from, to, fromAge, toAge);
+        int fromBucket = ageBucket(fromAge);
+        int toBucket = ageBucket(toAge - 1);
+        Map<String, ModelStats> res = new HashMap<>();
+        for (RentAnalytics part : parts)
+            for (Stripe stripe : part.stripes)
+                synchronized (stripe) {
+                    if (!filtered) {
+                        stripe.models.forEach((modelName, stats) ->
+                                res.computeIfAbsent(modelName, k -> new ModelStats()).add(stats));
+                        continue;
+                    }
+                    for (DayStats day : days(stripe, from, to).values())
+                        day.models.forEach((bucket, bucketModels) -> {
+                            if (bucket < fromBucket || bucket > toBucket) return;
+                            bucketModels.forEach((modelName, stats) ->
+                                    res.computeIfAbsent(modelName, k -> new ModelStats()).add(stats));
+                        });
+                }
+        return res;
+    }
+
+    //Больше - раньше, при равенстве по имени модели
+    private static List<String> topModels(Map<String, ModelStats> stats, int n,
+                                          Comparator<Map.Entry<String, ModelStats>> value) {
+        return stats.entrySet().stream()
+                .sorted(value.reversed().thenComparing(Map.Entry::getKey))
+                .limit(n)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Builds the counters from records, for companies that do not keep them.
+     */
+    static RentAnalytics of(Iterable<RentRecord> records, IRentCompany company) {
+        RentAnalytics res = new RentAnalytics();
+        for (RentRecord record : records)
+            res.rented(record, company.getCar(record.getRegNumber()).getModelName(),
+                    company.getDriver(record.getLicenseId()).getBirthYear());
+        return res;
+    }
+}
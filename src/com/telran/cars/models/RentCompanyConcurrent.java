@@ -0,0 +1,713 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+
+import com.telran.cars.dto.enums.State;
+import com.telran.utils.IntervalIndex;
+import com.telran.utils.Measurable;
+import com.telran.utils.Persistable;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Thread-safe {@link IRentCompany}.
+ * Indexes are concurrent collections, so queries never take a lock.
+ * Every mutation of a car (add, rent, return, remove) is serialized by the lock
+ * of the stripe the reg number hashes to, so operations on different cars run in parallel.
+ * Rent records are keyed by a sequence id in every index, so removing a car
+ * drops its history with one keyed remove per index instead of a list search.
+ * Rental intervals are kept in an interval tree per stripe, guarded by the lock of the stripe:
+ * the overlap query takes the stripe locks one by one, never two at once.
+ */
+public class RentCompanyConcurrent
+        extends AbstractRentCompany
+        implements Persistable, Measurable {
+    private static final int REMOVE_TRESHOLD = 60;
+    private static final int BAD_TRESHOLD = 30;
+    private static final int GOOD_TRESHOLD = 10;
+    private static final int DEFAULT_STRIPES = 64;
+
+    Map<String, Car> cars = new ConcurrentHashMap<>();
+    Map<Long, Driver> drivers = new ConcurrentHashMap<>(); // key license Driver
+    Map<String, Model> models = new ConcurrentHashMap<>(); //key model name
+
+    Map<String, Queue<Car>> modelCars = new ConcurrentHashMap<>();// key model name -> cars
+    Map<String, Set<Car>> availableCars = new ConcurrentHashMap<>(); //key model name -> cars not in use and not removed
+    Map<Long, Map<Long, RentRecord>> driverRecords = new ConcurrentHashMap<>(); //key license id -> record id -> record
+    Map<String, Map<Long, RentRecord>> carRecords = new ConcurrentHashMap<>(); //key reg number -> record id -> record
+    ConcurrentNavigableMap<LocalDate, Map<Long, RentRecord>> records = new ConcurrentSkipListMap<>(); //rent records by date
+    Map<String, Rental> openRentals = new ConcurrentHashMap<>(); //key reg number -> record not returned yet
+
+    private final ReentrantLock[] carLocks;
+    private final StripeIntervals[] rentIntervals; //under the lock of the stripe with the same index
+    private final AtomicLong recordIds = new AtomicLong();
+
+    //Запись с ее id: по нему упорядочены записи одного дня из разных полос
+    private record Rental(long id, RentRecord record) {
+    }
+
+    private static class StripeIntervals {
+        final IntervalIndex<Rental> index = new IntervalIndex<>(); //[rent day, return day] in epoch days
+        final Map<Long, IntervalIndex.Interval<Rental>> byId = new HashMap<>();
+    }
+
+    public RentCompanyConcurrent() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of car lock stripes, rounded up to a power of two
+     */
+    public RentCompanyConcurrent(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        carLocks = new ReentrantLock[size];
+        rentIntervals = new StripeIntervals[size];
+        for (int i = 0; i < size; i++) {
+            carLocks[i] = new ReentrantLock();
+            rentIntervals[i] = new StripeIntervals();
+        }
+        //Полосы счетчиков совпадают с полосами машин: писатель берет монитор, который никто больше не ждет
+        analytics = new RentAnalytics(size);
+        revenue = new RevenueRollup(size);
+    }
+
+    private ReentrantLock carLock(String regNumber) {
+        return carLocks[stripe(regNumber)];
+    }
+
+    private int stripe(String regNumber) {
+        return RentAnalytics.stripe(regNumber, carLocks.length);
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        return models.putIfAbsent(model.getModelName(), model) == null ?
+                OK : MODEL_EXISTS;
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return models.get(modelName);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        if (!models.containsKey(car.getModelName()))
+            return NO_MODEL;
+        ReentrantLock lock = carLock(car.getRegNumber());
+        lock.lock();
+        try {
+            if (cars.putIfAbsent(car.getRegNumber(), car) != null)
+                return CAR_EXISTS;
+            modelCars.computeIfAbsent(car.getModelName(), k -> new ConcurrentLinkedQueue<>()).add(car);
+            if (!car.isInUse() && !car.isFlRemoved())
+                setAvailable(car, true);
+            if (!car.isFlRemoved())
+                reservations.addCar(car.getRegNumber(), car.getModelName());
+            return OK;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the batch with all the car stripes locked, then builds the indexes of each model in one pass:
+     * one insertion into the queue and the set of the model and one call of the calendar per model.
+     */
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> newCars) {
+        List<CarsReturnCode> res = new ArrayList<>(newCars.size());
+        Map<String, List<Car>> added = new HashMap<>(); //key model name
+        lockAll();
+        try {
+            for (Car car : newCars) {
+                CarsReturnCode code = !models.containsKey(car.getModelName()) ? NO_MODEL :
+                        cars.putIfAbsent(car.getRegNumber(), car) != null ? CAR_EXISTS : OK;
+                if (code == OK)
+                    added.computeIfAbsent(car.getModelName(), k -> new ArrayList<>()).add(car);
+                res.add(code);
+            }
+            added.forEach((modelName, list) -> {
+                modelCars.computeIfAbsent(modelName, k -> new ConcurrentLinkedQueue<>()).addAll(list);
+                Set<Car> available = availableCars.computeIfAbsent(modelName, k -> new LinkedHashSet<>());
+                synchronized (available) {
+                    list.stream().filter(c -> !c.isInUse() && !c.isFlRemoved()).forEach(available::add);
+                }
+                reservations.addCars(modelName, list.stream().filter(c -> !c.isFlRemoved())
+                        .map(Car::getRegNumber).toList());
+            });
+        } finally {
+            unlockAll();
+        }
+        return res;
+    }
+
+    //По порядку полос, как и все, кто берет несколько
+    private void lockAll() {
+        for (ReentrantLock lock : carLocks)
+            lock.lock();
+    }
+
+    private void unlockAll() {
+        for (int i = carLocks.length - 1; i >= 0; i--)
+            carLocks[i].unlock();
+    }
+
+    /**
+     * Must be called under the lock of the car stripe at every change of inUse or flRemoved.
+     * The set of a model is guarded by itself, cars of one model are under different stripes.
+     */
+    private void setAvailable(Car car, boolean available) {
+        Set<Car> set = available ?
+                availableCars.computeIfAbsent(car.getModelName(), k -> new LinkedHashSet<>()) :
+                availableCars.get(car.getModelName());
+        if (set == null) return;
+        synchronized (set) {
+            if (available) set.add(car);
+            else set.remove(car);
+        }
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        return cars.get(regNumber);
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        return drivers.putIfAbsent(driver.getLicenseId(), driver) == null ?
+                OK : DRIVER_EXISTS;
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return drivers.get(licenseId);
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        ReentrantLock lock = carLock(regNumber);
+        lock.lock();
+        try {
+            Car car = getCar(regNumber);
+            if (car == null) return NO_CAR;
+            if (car.isFlRemoved()) return CAR_REMOVED;
+            if (car.isInUse()) return CAR_IN_USE;
+            if (!drivers.containsKey(licenseId)) return NO_DRIVER;
+            if (!reservations.rent(regNumber, licenseId, (int) rentDate.toEpochDay(), rentDays))
+                return CAR_RESERVED;
+            addRecord(new RentRecord(regNumber, licenseId, rentDate, rentDays));
+            car.setInUse(true);
+            setAvailable(car, false);
+            return OK;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> newRecords) {
+        List<CarsReturnCode> res = new ArrayList<>(newRecords.size());
+        for (RentRecord record : newRecords)
+            res.add(importRentRecord(record));
+        return res;
+    }
+
+    private CarsReturnCode importRentRecord(RentRecord record) {
+        ReentrantLock lock = carLock(record.getRegNumber());
+        lock.lock();
+        try {
+            Car car = getCar(record.getRegNumber());
+            if (car == null) return NO_CAR;
+            if (car.isFlRemoved()) return CAR_REMOVED;
+            if (!drivers.containsKey(record.getLicenseId())) return NO_DRIVER;
+            boolean open = record.getReturnDate() == null;
+            if (open && car.isInUse()) return CAR_IN_USE;
+            addRecord(record);
+            booked(record);
+            if (open) {
+                car.setInUse(true);
+                setAvailable(car, false);
+            }
+            return OK;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called under the lock of the car stripe.
+     */
+    private void addRecord(RentRecord record) {
+        Long id = recordIds.incrementAndGet();
+        carRecords.computeIfAbsent(record.getRegNumber(), k -> new ConcurrentSkipListMap<>()).put(id, record);
+        driverRecords.computeIfAbsent(record.getLicenseId(), k -> new ConcurrentSkipListMap<>()).put(id, record);
+        records.computeIfAbsent(record.getRentDate(), k -> new ConcurrentSkipListMap<>()).put(id, record);
+        updateInterval(id, record);
+        if (record.getReturnDate() == null)
+            openRentals.put(record.getRegNumber(), new Rental(id, record));
+        analytics.rented(record, getCar(record.getRegNumber()).getModelName(), birthYear(record));
+        if (record.getReturnDate() != null) {
+            Model model = models.get(getCar(record.getRegNumber()).getModelName());
+            splitGas(record, model);
+            revenue.returned(record, model);
+        }
+    }
+
+    /**
+     * Must be called under the lock of the car stripe.
+     * Until the car is returned the rental takes the paid days.
+     */
+    private void updateInterval(long id, RentRecord record) {
+        StripeIntervals intervals = rentIntervals[stripe(record.getRegNumber())];
+        IntervalIndex.Interval<Rental> old = intervals.byId.get(id);
+        if (old != null)
+            intervals.index.remove(old);
+        long start = record.getRentDate().toEpochDay();
+        long end = record.getReturnDate() != null ?
+                record.getReturnDate().toEpochDay() : start + record.getRentDays();
+        intervals.byId.put(id, intervals.index.add(start, Math.max(start, end), new Rental(id, record)));
+    }
+
+    /**
+     * Must be called under the lock of the car stripe.
+     */
+    private void removeInterval(long id, String regNumber) {
+        StripeIntervals intervals = rentIntervals[stripe(regNumber)];
+        IntervalIndex.Interval<Rental> interval = intervals.byId.remove(id);
+        if (interval != null)
+            intervals.index.remove(interval);
+    }
+
+    private int birthYear(RentRecord record) {
+        return drivers.get(record.getLicenseId()).getBirthYear();
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return streamCarByDrivers(licenseId).toList();
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        Map<Long, RentRecord> listRecords = driverRecords.get(licenseId);
+        if (listRecords == null) return Stream.empty();
+        return listRecords.values().stream()
+                .map(r -> getCar(r.getRegNumber()))
+                .filter(Objects::nonNull)
+                .distinct();
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return streamDriversByCars(regNumber).toList();
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        Map<Long, RentRecord> listRecords = carRecords.get(regNumber);
+        if (listRecords == null) return Stream.empty();
+        return listRecords.values().stream()
+                .map(r -> getDriver(r.getLicenseId()))
+                .distinct();
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return streamCarsByModel(modelName).toList();
+    }
+
+    //Копия набора под его монитором; флаги проверяются, машину могли пометить снаружи компании
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        Set<Car> set = availableCars.get(modelName);
+        if (set == null) return Stream.empty();
+        List<Car> res;
+        synchronized (set) {
+            res = new ArrayList<>(set);
+        }
+        return res.stream()
+                .filter(RentCompanyEmbedded::isAvailable);
+    }
+
+    //Без копии: набор просматривается под монитором, помеченные снаружи машины в нем остаются
+    @Override
+    public int countCarsByModel(String modelName) {
+        Set<Car> set = availableCars.get(modelName);
+        if (set == null) return 0;
+        synchronized (set) {
+            return (int) set.stream().filter(RentCompanyEmbedded::isAvailable).count();
+        }
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        Set<Car> set = availableCars.get(modelName);
+        if (set == null) return null;
+        synchronized (set) {
+            return set.stream().filter(RentCompanyEmbedded::isAvailable).findFirst().orElse(null);
+        }
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return openRentals.keySet().stream()
+                .map(this::getCar)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return streamRentRecordsAtDates(from, to).toList();
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return records.subMap(from, to).values().stream()
+                .flatMap(m -> m.values().stream());
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return pageByDays(records, Map::values, from, to, pageSize, pageToken);
+    }
+
+    //Дерево каждой полосы под ее блокировкой, затем общий порядок по дате аренды и id
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        List<Rental> res = new ArrayList<>();
+        for (int i = 0; i < carLocks.length; i++) {
+            carLocks[i].lock();
+            try {
+                rentIntervals[i].index.overlapping(from.toEpochDay(), to.toEpochDay(), res::add);
+            } finally {
+                carLocks[i].unlock();
+            }
+        }
+        res.sort(Comparator.comparing((Rental r) -> r.record().getRentDate()).thenComparingLong(Rental::id));
+        return res.stream().map(Rental::record).toList();
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        ReentrantLock lock = carLock(regNumber);
+        lock.lock();
+        try {
+            Car car = getCar(regNumber);
+            if (car == null || car.isFlRemoved())
+                return null;
+            car.setFlRemoved(true);
+            setAvailable(car, false);
+            reservations.removeCar(regNumber);
+            return car.isInUse() ?
+                    new RemovedCarData(car, null) : actualCarRemove(car);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called under the lock of the car stripe.
+     */
+    private RemovedCarData actualCarRemove(Car car) {
+        String regNumber = car.getRegNumber();
+        Map<Long, RentRecord> removed = carRecords.remove(regNumber);
+        List<RentRecord> removedRecords = new ArrayList<>();
+        if (removed != null) {
+            removed.forEach((id, r) -> {
+                Map<Long, RentRecord> drList = driverRecords.get(r.getLicenseId());
+                if (drList != null) drList.remove(id);
+                Map<Long, RentRecord> dayList = records.get(r.getRentDate());
+                if (dayList != null) dayList.remove(id);
+                removeInterval(id, regNumber);
+                analytics.removed(r, car.getModelName(), birthYear(r));
+                revenue.removed(r, models.get(car.getModelName()));
+                removedRecords.add(r);
+            });
+        }
+        cars.remove(regNumber);
+        openRentals.remove(regNumber);
+        Queue<Car> list = modelCars.get(car.getModelName());
+        if (list != null)
+            list.removeIf(c -> regNumber.equals(c.getRegNumber()));
+        setAvailable(car, false);
+        return new RemovedCarData(car, removedRecords);
+    }
+
+    //Части удаляются параллельно, список возвращается в порядке машин модели
+    @Override
+    public List<RemovedCarData> removeModel(String modelName) {
+        Queue<Car> carsModel = modelCars.get(modelName);
+        if (carsModel == null) return new ArrayList<>();
+        Map<Car, Integer> order = new IdentityHashMap<>();
+        for (Car car : carsModel)
+            order.put(car, order.size());
+        List<RemovedCarData> res = new ArrayList<>();
+        removeModel(modelName, res::add);
+        res.sort(Comparator.comparingInt(r -> order.getOrDefault(r.getCar(), Integer.MAX_VALUE)));
+        return res;
+    }
+
+    /**
+     * Cars of the model are split by lock stripe and the parts are removed in parallel
+     * on the fork/join pool, every part under the lock of its stripe taken once.
+     * Records of a part are grouped by driver and by day, so every list of an index is looked up once,
+     * and the cars leave the queue of the model in one pass at the end.
+     */
+    @Override
+    public int removeModel(String modelName, Consumer<? super RemovedCarData> action) {
+        Queue<Car> carsModel = modelCars.get(modelName);
+        if (carsModel == null) return 0;
+        List<List<Car>> parts = new ArrayList<>(carLocks.length);
+        for (int i = 0; i < carLocks.length; i++)
+            parts.add(new ArrayList<>());
+        for (Car car : carsModel)
+            if (!car.isFlRemoved())
+                parts.get(stripe(car.getRegNumber())).add(car);
+        Set<Car> removed = ConcurrentHashMap.newKeySet();
+        Consumer<RemovedCarData> emit = res -> {
+            synchronized (action) {
+                action.accept(res);
+            }
+        };
+        int count = IntStream.range(0, parts.size()).parallel()
+                .filter(i -> !parts.get(i).isEmpty())
+                .map(i -> removePart(carLocks[i], parts.get(i), removed, emit))
+                .sum();
+        carsModel.removeIf(removed::contains);
+        return count;
+    }
+
+    private int removePart(ReentrantLock lock, List<Car> cars, Set<Car> removed, Consumer<RemovedCarData> emit) {
+        List<RemovedCarData> res = new ArrayList<>(cars.size());
+        lock.lock();
+        try {
+            Map<Long, List<Long>> byDriver = new HashMap<>();
+            Map<LocalDate, List<Long>> byDay = new HashMap<>();
+            for (Car car : cars) {
+                if (car.isFlRemoved()) continue;
+                car.setFlRemoved(true);
+                setAvailable(car, false);
+                reservations.removeCar(car.getRegNumber());
+                if (car.isInUse()) {
+                    res.add(new RemovedCarData(car, null));
+                    continue;
+                }
+                String regNumber = car.getRegNumber();
+                Map<Long, RentRecord> history = carRecords.remove(regNumber);
+                List<RentRecord> removedRecords = new ArrayList<>();
+                if (history != null) {
+                    Model model = models.get(car.getModelName());
+                    history.forEach((id, r) -> {
+                        byDriver.computeIfAbsent(r.getLicenseId(), k -> new ArrayList<>()).add(id);
+                        byDay.computeIfAbsent(r.getRentDate(), k -> new ArrayList<>()).add(id);
+                        removeInterval(id, regNumber);
+                        analytics.removed(r, car.getModelName(), birthYear(r));
+                        revenue.removed(r, model);
+                        removedRecords.add(r);
+                    });
+                }
+                this.cars.remove(regNumber);
+                openRentals.remove(regNumber);
+                removed.add(car);
+                res.add(new RemovedCarData(car, removedRecords));
+            }
+            byDriver.forEach((license, ids) -> {
+                Map<Long, RentRecord> drList = driverRecords.get(license);
+                if (drList != null) ids.forEach(drList::remove);
+            });
+            byDay.forEach((day, ids) -> {
+                Map<Long, RentRecord> dayList = records.get(day);
+                if (dayList != null) ids.forEach(dayList::remove);
+            });
+        } finally {
+            lock.unlock();
+        }
+        res.forEach(emit);
+        return res.size();
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        ReentrantLock lock = carLock(regNumber);
+        lock.lock();
+        try {
+            Rental rental = getRentRecord(regNumber, licensedId);
+            if (rental == null) return new RemovedCarData(null, null);
+            openRentals.remove(regNumber);
+            reservations.returned(regNumber, (int) returnDate.toEpochDay());
+            Car car = getCar(regNumber);
+            updateRecord(rental.record(), car, returnDate, damages, tankPercent);
+            updateInterval(rental.id(), rental.record());
+            updateCar(car, damages);
+            if (damages > REMOVE_TRESHOLD || car.isFlRemoved()) {
+                car.setFlRemoved(true);
+                reservations.removeCar(regNumber);
+                return actualCarRemove(car);
+            }
+            setAvailable(car, true);
+            return new RemovedCarData(car, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Settles the returns one by one, each under the lock of its car stripe as {@link #returnCar}.
+     */
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        checkReturns(returns);
+        double[] costs = new double[returns.size()];
+        BitSet removed = new BitSet();
+        for (int i = 0; i < costs.length; i++) {
+            CarReturn r = returns.get(i);
+            ReentrantLock lock = carLock(r.getRegNumber());
+            lock.lock();
+            try {
+                Rental rental = getRentRecord(r.getRegNumber(), r.getLicenseId());
+                RemovedCarData res = returnCar(r.getRegNumber(), r.getLicenseId(), r.getReturnDate(),
+                        r.getDamages(), r.getTankPercent());
+                costs[i] = rental == null ? Double.NaN : rental.record().getCost();
+                if (res.getRemovedRecords() != null) removed.set(i);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return new ReturnResults(costs, removed);
+    }
+
+    private void updateRecord(RentRecord record, Car car, LocalDate returnDate, int damages, int tankPercent) {
+        Model model = models.get(car.getModelName());
+        record.setDamages(damages);
+        record.setTankPercent(tankPercent);
+        record.setGasCost(gasCost(tankPercent, model.getGasTank()));
+        record.setCost(computeCost(model.getPriceDay(), record.getRentDays(),
+                getDaysDelay(record.getRentDate(), returnDate, record.getRentDays()), tankPercent, model.getGasTank()));
+        //Дата возврата последней: кто видит ее без блокировки, видит и стоимость
+        record.setReturnDate(returnDate);
+        analytics.returned(record, car.getModelName(), birthYear(record));
+        revenue.returned(record, model);
+    }
+
+    private int getDaysDelay(LocalDate rentDate, LocalDate returnDate, int rentDays) {
+        long actualDays = ChronoUnit.DAYS.between(rentDate, returnDate);
+        int delta = (int) (actualDays - rentDays);
+        return delta <= 0 ? 0 : delta;
+    }
+
+    private void updateCar(Car car, int damages) {
+        car.setInUse(false);
+        if (damages > BAD_TRESHOLD) car.setState(State.BAD);
+        else if (damages >= GOOD_TRESHOLD) car.setState(State.GOOD);
+        else car.setState(State.EXCELLENT);
+    }
+
+    /**
+     * Must be called under the lock of the car stripe.
+     */
+    private Rental getRentRecord(String regNumber, long licensedId) {
+        Rental rental = openRentals.get(regNumber);
+        return rental != null && rental.record().getLicenseId() == licensedId ? rental : null;
+    }
+
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        Map<String, Long> res = new LinkedHashMap<>();
+        res.put("models", (long) models.size());
+        res.put("cars", (long) cars.size());
+        res.put("drivers", (long) drivers.size());
+        res.put("modelCars", (long) modelCars.size());
+        res.put("carRecords", (long) carRecords.size());
+        res.put("driverRecords", (long) driverRecords.size());
+        res.put("records", (long) records.size()); //days
+        res.put("openRentals", (long) openRentals.size());
+        res.put("revenueDays", (long) revenue.size());
+        res.put("reservations", (long) reservations.size());
+        return res;
+    }
+
+    @Override
+    public void save(String fileName) {
+        try {
+            freeze().write(fileName);
+        } catch (IOException e) {
+            System.out.println("Error in method save " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copy taken with every stripe locked, in order, so a car is never saved rented without its record
+     * or the reverse; the file is written after the locks are released.
+     * Drivers and models are never removed and are added before the cars and records that refer to them.
+     */
+    @Override
+    CompanySnapshot freeze() {
+        lockAll();
+        try {
+            return super.freeze();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    CompanySnapshot toSnapshot() {
+        Iterable<RentRecord> allRecords = () -> records.values().stream()
+                .flatMap(m -> m.values().stream()).iterator();
+        CompanySnapshot res = new CompanySnapshot(finePercent, gasPrice, models.values(), drivers.values(),
+                cars.values(), allRecords);
+        res.today = reservations.today();
+        res.reservations = reservations.reservations();
+        return res;
+    }
+
+    static RentCompanyConcurrent fromSnapshot(CompanySnapshot snapshot) {
+        RentCompanyConcurrent company = new RentCompanyConcurrent();
+        company.finePercent = snapshot.finePercent;
+        company.gasPrice = snapshot.gasPrice;
+        snapshot.models.forEach(company::addModel);
+        snapshot.drivers.forEach(company::addDriver);
+        snapshot.cars.forEach(company::addCar);
+        snapshot.records.forEach(r -> {
+            company.addRecord(r);
+            company.booked(r);
+        });
+        company.restoreReservations(snapshot);
+        return company;
+    }
+
+    /**
+     * Restores the company saved in the file by {@link #save}, a new one if there is no file.
+     * Unlike {@link #restoreFromFile}, a file that cannot be read is reported; so is a file written
+     * with Java serialization by the first versions, which is not read.
+     */
+    public static IRentCompany load(String fileName) throws IOException {
+        if (!new File(fileName).exists())
+            return new RentCompanyConcurrent();
+        if (!CompanySnapshot.isSnapshot(fileName))
+            throw new IOException(fileName + " is not a company snapshot");
+        return fromSnapshot(CompanySnapshot.read(fileName));
+    }
+
+    public static IRentCompany restoreFromFile(String fileName) {
+        try {
+            return load(fileName);
+        } catch (Exception e) {
+            System.out.println(fileName + " new object has been created " + e.getMessage());
+            return new RentCompanyConcurrent();
+        }
+    }
+
+}
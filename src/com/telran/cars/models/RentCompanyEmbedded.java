@@ -5,62 +5,206 @@ import com.telran.cars.dto.enums.CarsReturnCode;
 import static com.telran.cars.dto.enums.CarsReturnCode.*;
 
 import com.telran.cars.dto.enums.State;
+import com.telran.utils.Archivable;
+import com.telran.utils.IntervalIndex;
+import com.telran.utils.LinkedIndex;
+import com.telran.utils.LongHashMap;
+import com.telran.utils.Measurable;
 import com.telran.utils.Persistable;
+import com.telran.utils.SnapshotLog;
+import com.telran.utils.StringDictionary;
 
 import java.io.*;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class RentCompanyEmbedded
         extends AbstractRentCompany
-        implements Persistable {
+        implements Persistable, Measurable, Archivable {
     private static final int REMOVE_TRESHOLD = 60;
     private static final int BAD_TRESHOLD = 30;
     private static final int GOOD_TRESHOLD = 10;
+    //Строки переводятся в плотные id один раз, индексы ниже - списки по id
+    StringDictionary regNumbers = new StringDictionary(); //reg number -> car id, the id stays after removal
+    StringDictionary modelNames = new StringDictionary(); //model name -> model id
+    StringDictionary colors = new StringDictionary(); //one instance of every color
     //Sprint 1
-    Map<String, Car> cars = new HashMap<>();
-    Map<Long, Driver> drivers = new HashMap<>(); // key license Driver
-    Map<String, Model> models = new HashMap<>(); //key model name
+    ArrayList<Car> cars = new ArrayList<>(); //car id -> car, null if there is none
+    int carCount;
+    LongHashMap<Driver> drivers = new LongHashMap<>(); // key license Driver
+    ArrayList<Model> models = new ArrayList<>(); //model id -> model
 //Sprint 2
-    Map<String, List<Car>> modelCars = new HashMap<>();// key model name -> list cars
-    Map<Long, List<RentRecord>> driverRecords = new HashMap<>(); //key license id rent records
-    Map<String , List<RentRecord>> carRecords = new HashMap<>(); //key reg number
-    Map<LocalDate, List<RentRecord>> records = new TreeMap<>(); //rent records by date
+    ArrayList<List<Car>> modelCars = new ArrayList<>();// model id -> list cars
+    ArrayList<LinkedHashSet<Car>> availableCars = new ArrayList<>(); //model id -> cars not in use and not removed
+    LongHashMap<LinkedIndex<RentRecord>> driverRecords = new LongHashMap<>(); //key license id rent records
+    ArrayList<List<RecordLinks>> carRecords = new ArrayList<>(); //car id -> its records
+    TreeMap<LocalDate, LinkedIndex<RentRecord>> records = new TreeMap<>(); //rent records by date
+    ArrayList<RecordLinks> openRentals = new ArrayList<>(); //car id -> record not returned yet
+    BitSet rented = new BitSet(); //car ids with a record not returned yet
+    IntervalIndex<RentRecord> rentIntervals = new IntervalIndex<>(); //[rent day, return day] in epoch days
+    SnapshotLog<RecordLinks> recordLog = new SnapshotLog<>(); //all records in order of renting, for snapshots
+    transient RecordArchive archive; //cold tier of old returned records, null if not attached
+    int retentionDays;
+
+    /**
+     * Rent record together with its nodes in {@code driverRecords}, {@code records}, {@code rentIntervals}
+     * and {@code recordLog}, so removing a car unlinks its history without searching those lists.
+     */
+    static class RecordLinks implements Serializable, SnapshotLog.Entry {
+        final RentRecord record;
+        final int carId;
+        final LinkedIndex.Node<RentRecord> byDriver;
+        final LinkedIndex.Node<RentRecord> byDate;
+        IntervalIndex.Interval<RentRecord> interval;
+        int logIndex;
+
+        RecordLinks(RentRecord record, int carId, LinkedIndex.Node<RentRecord> byDriver,
+                    LinkedIndex.Node<RentRecord> byDate) {
+            this.record = record;
+            this.carId = carId;
+            this.byDriver = byDriver;
+            this.byDate = byDate;
+        }
+
+        @Override
+        public int getLogIndex() {
+            return logIndex;
+        }
+
+        @Override
+        public void setLogIndex(int index) {
+            logIndex = index;
+        }
+    }
 
     @Override
     public CarsReturnCode addModel(Model model) {
-        return models.putIfAbsent(model.getModelName(),model) == null ?
-                OK : MODEL_EXISTS;
+        int id = modelNames.add(model.getModelName());
+        if(at(models, id) != null)
+            return MODEL_EXISTS;
+        put(models, id, model);
+        return OK;
     }
 
     @Override
     public Model getModel(String modelName) {
-        return models.get(modelName);
+        return at(models, modelNames.id(modelName));
+    }
+
+    private Model getModel(Car car) {
+        return at(models, modelNames.id(car.getModelName()));
     }
 
     @Override
     public CarsReturnCode addCar(Car car) {
-        if(!models.containsKey(car.getModelName()))
+        if(getModel(car) == null)
             return NO_MODEL;
-        boolean res = cars.putIfAbsent(car.getRegNumber(), car) == null;
-        if(!res)
+        if(getCar(car.getRegNumber()) != null)
             return CAR_EXISTS;
-        addModelCars(car);
+        putCar(car);
         return OK;
     }
 
+    //Цвет заменяется равной строкой из словаря: у машин одного цвета один экземпляр
+    private void putCar(Car car) {
+        car.setColor(colors.intern(car.getColor()));
+        put(cars, regNumbers.add(car.getRegNumber()), car);
+        carCount++;
+        addModelCars(car);
+        if(!car.isFlRemoved())
+            reservations.addCar(car.getRegNumber(), car.getModelName());
+    }
+
     private void addModelCars(Car car) {
-        String modelName = car.getModelName();
-        //Получаем существующий лист или создаем пустой
-        List<Car> listCars = modelCars.getOrDefault(modelName, new ArrayList<>());
-        listCars.add(car);
-        modelCars.putIfAbsent(modelName, listCars);
+        int modelId = modelNames.add(car.getModelName());
+        //Лист создается только для первой машины модели
+        List<Car> list = at(modelCars, modelId);
+        if(list == null) put(modelCars, modelId, list = new ArrayList<>());
+        list.add(car);
+        if(!car.isInUse() && !car.isFlRemoved())
+            setAvailable(car, true);
+    }
+
+    //Вызывается при каждой смене inUse и flRemoved в компании
+    private void setAvailable(Car car, boolean available) {
+        int modelId = modelNames.id(car.getModelName());
+        LinkedHashSet<Car> set = at(availableCars, modelId);
+        if(available) {
+            if(set == null) put(availableCars, modelId, set = new LinkedHashSet<>());
+            set.add(car);
+        } else if(set != null) set.remove(car);
+    }
+
+    //Списки по id: id за концом списка - то же, что null
+    private static <V> V at(List<V> list, int id) {
+        return id >= 0 && id < list.size() ? list.get(id) : null;
+    }
+
+    private static <V> void put(ArrayList<V> list, int id, V value) {
+        while(list.size() <= id) list.add(null);
+        list.set(id, value);
+    }
+
+    private static long countPresent(List<?> list) {
+        return list.stream().filter(Objects::nonNull).count();
+    }
+
+    /**
+     * Stores the cars of the batch first and then builds the indexes of each model in one pass:
+     * the list, the set of available cars and the calendar slots grow once per model, not per car.
+     */
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> newCars) {
+        //Одно расширение на пакет вместо удвоений по ходу вставки
+        cars.ensureCapacity(cars.size() + newCars.size());
+        regNumbers.ensureCapacity(regNumbers.size() + newCars.size());
+        List<CarsReturnCode> res = new ArrayList<>(newCars.size());
+        Map<Integer, List<Car>> added = new HashMap<>(); //model id -> cars of the batch
+        for (Car car : newCars) {
+            CarsReturnCode code = getModel(car) == null ? NO_MODEL :
+                    getCar(car.getRegNumber()) != null ? CAR_EXISTS : OK;
+            if (code == OK) {
+                car.setColor(colors.intern(car.getColor()));
+                put(cars, regNumbers.add(car.getRegNumber()), car);
+                carCount++;
+                added.computeIfAbsent(modelNames.id(car.getModelName()), k -> new ArrayList<>()).add(car);
+            }
+            res.add(code);
+        }
+        added.forEach(this::addModelCars);
+        return res;
+    }
+
+    private void addModelCars(int modelId, List<Car> added) {
+        List<Car> list = at(modelCars, modelId);
+        if(list == null) put(modelCars, modelId, new ArrayList<>(added));
+        else list.addAll(added);
+        LinkedHashSet<Car> available = at(availableCars, modelId);
+        if(available == null) put(availableCars, modelId, available = LinkedHashSet.newLinkedHashSet(added.size()));
+        List<String> regNumbers = new ArrayList<>(added.size());
+        for (Car car : added) {
+            if(!car.isInUse() && !car.isFlRemoved()) available.add(car);
+            if(!car.isFlRemoved()) regNumbers.add(car.getRegNumber());
+        }
+        reservations.addCars(at(models, modelId).getModelName(), regNumbers);
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> newDrivers) {
+        drivers.ensureCapacity(drivers.size() + newDrivers.size());
+        List<CarsReturnCode> res = new ArrayList<>(newDrivers.size());
+        for (Driver driver : newDrivers)
+            res.add(addDriver(driver));
+        return res;
     }
 
     @Override
     public Car getCar(String regNumber) {
-        return cars.get(regNumber);
+        return at(cars, regNumbers.id(regNumber));
     }
 
     @Override
@@ -81,61 +225,234 @@ public class RentCompanyEmbedded
         if(car.isFlRemoved()) return CAR_REMOVED;
         if(car.isInUse()) return CAR_IN_USE;
         if(!drivers.containsKey(licenseId)) return NO_DRIVER;
-        RentRecord record = new RentRecord(regNumber, licenseId, rentDate, rentDays);
-        addTofCarRecords(record);
-        addToDriverRecords(record);
-        addToRecords(record);
+        if(!reservations.rent(car.getRegNumber(), licenseId, (int) rentDate.toEpochDay(), rentDays))
+            return CAR_RESERVED;
+        //Номер из машины, а не из аргумента: у записей машины один экземпляр строки
+        addRecord(new RentRecord(car.getRegNumber(), licenseId, rentDate, rentDays));
         car.setInUse(true);
+        setAvailable(car, false);
+        return OK;
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> newRecords) {
+        List<CarsReturnCode> res = new ArrayList<>(newRecords.size());
+        for (RentRecord record : newRecords)
+            res.add(importRentRecord(record));
+        return res;
+    }
+
+    private CarsReturnCode importRentRecord(RentRecord record) {
+        Car car = getCar(record.getRegNumber());
+        if(car == null) return NO_CAR;
+        if(car.isFlRemoved()) return CAR_REMOVED;
+        if(!drivers.containsKey(record.getLicenseId())) return NO_DRIVER;
+        boolean open = record.getReturnDate() == null;
+        if(open && car.isInUse()) return CAR_IN_USE;
+        addRecord(record.getRegNumber() == car.getRegNumber() ? record : withRegNumber(record, car.getRegNumber()));
+        booked(record);
+        if(open) {
+            car.setInUse(true);
+            setAvailable(car, false);
+        }
         return OK;
     }
 
-    private void addToDriverRecords(RentRecord record) {
-        driverRecords.computeIfAbsent(record.getLicenseId(), k -> new ArrayList<>()).add(record);
+    private static RentRecord withRegNumber(RentRecord record, String regNumber) {
+        RentRecord res = new RentRecord(regNumber, record.getLicenseId(), record.getRentDate(), record.getRentDays());
+        res.setReturnDate(record.getReturnDate());
+        res.setDamages(record.getDamages());
+        res.setTankPercent(record.getTankPercent());
+        res.setCost(record.getCost());
+        res.setGasCost(record.getGasCost());
+        return res;
+    }
+
+    private void addRecord(RentRecord record) {
+        int carId = regNumbers.id(record.getRegNumber());
+        RecordLinks links = new RecordLinks(record, carId, addToDriverRecords(record), addToRecords(record));
+        addTofCarRecords(links);
+        updateInterval(links);
+        recordLog.add(links);
+        if(record.getReturnDate() == null) {
+            put(openRentals, carId, links);
+            rented.set(carId);
+        }
+        Car car = cars.get(carId);
+        analytics.rented(record, car.getModelName(), birthYear(record));
+        if(record.getReturnDate() != null) {
+            splitGas(record, getModel(car));
+            revenue.returned(record, getModel(car));
+        }
+    }
+
+    private int birthYear(RentRecord record) {
+        return drivers.get(record.getLicenseId()).getBirthYear();
+    }
+
+    private LinkedIndex.Node<RentRecord> addToDriverRecords(RentRecord record) {
+        return driverRecords.computeIfAbsent(record.getLicenseId(), k -> new LinkedIndex<>()).link(record);
+    }
+
+    private void addTofCarRecords(RecordLinks links) {
+        List<RecordLinks> list = at(carRecords, links.carId);
+        if(list == null) put(carRecords, links.carId, list = new ArrayList<>());
+        list.add(links);
     }
 
-    private void addTofCarRecords(RentRecord record) {
-        carRecords.computeIfAbsent(record.getRegNumber(),k -> new ArrayList<>()).add(record);
+    private LinkedIndex.Node<RentRecord> addToRecords(RentRecord record) {
+        return records.computeIfAbsent(record.getRentDate(), k -> new LinkedIndex<>()).link(record);
     }
 
-    private void addToRecords(RentRecord record) {
-//        LocalDate rentDate = record.getRentDate();
-//        List<RentRecord> listRecords = records.getOrDefault(rentDate, new ArrayList<>());
-//        listRecords.add(record);
-//        records.putIfAbsent(rentDate, listRecords);
-          records.computeIfAbsent(record.getRentDate(), k -> new ArrayList<>()).add(record);
+    //Пока машина не возвращена, аренда занимает оплаченные дни
+    private void updateInterval(RecordLinks links) {
+        RentRecord record = links.record;
+        if(links.interval != null)
+            rentIntervals.remove(links.interval);
+        long start = record.getRentDate().toEpochDay();
+        long end = record.getReturnDate() != null ?
+                record.getReturnDate().toEpochDay() : start + record.getRentDays();
+        links.interval = rentIntervals.add(start, Math.max(start, end), record);
     }
 
     @Override
     public List<Car> getCarByDrivers(long licenseId) {
-        List<RentRecord> listRecords = driverRecords.getOrDefault(licenseId, new ArrayList<>());
-        return listRecords.stream()
+        return streamCarByDrivers(licenseId).toList();
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        return streamDriverRecords(licenseId)
                 .map(r -> getCar(r.getRegNumber()))
-                .distinct()
-                .toList();
+                .distinct();
+    }
+
+    /**
+     * Records of the driver in order of renting, the archived ones first.
+     */
+    Stream<RentRecord> streamDriverRecords(long licenseId) {
+        Collection<RentRecord> listRecords = driverRecords.getOrDefault(licenseId, new LinkedIndex<>());
+        return Stream.concat(archived(a -> a.getDriverRecords(licenseId)).stream(), listRecords.stream());
     }
 
     @Override
     public List<Driver> getDriversByCars(String regNumber) {
-        List<RentRecord> listRecords = carRecords.getOrDefault(regNumber, new ArrayList<>());
-        return listRecords.stream()
+        return streamDriversByCars(regNumber).toList();
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        List<RecordLinks> listRecords = Objects.requireNonNullElse(at(carRecords, regNumbers.id(regNumber)),
+                new ArrayList<>());
+        return Stream.concat(archived(a -> a.getCarRecords(regNumber)).stream(),
+                        listRecords.stream().map(l -> l.record))
                 .map(r -> getDriver(r.getLicenseId()))
-                .distinct()
-                .toList();
+                .distinct();
     }
 
     @Override
     public List<Car> getCarsByModel(String modelName) {
-        List<Car> res  = modelCars.getOrDefault(modelName, new ArrayList<>());
+        return streamCarsByModel(modelName).toList();
+    }
+
+    //Флаги проверяются и здесь: машину могли пометить снаружи компании.
+    //Такая машина остается в наборе и снова видна, когда флаг снят
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        Set<Car> res = at(availableCars, modelNames.id(modelName));
+        if(res == null) return Stream.empty();
         return res.stream()
-                .filter(c -> !c.isFlRemoved() && !c.isInUse())
+                .filter(RentCompanyEmbedded::isAvailable);
+    }
+
+    static boolean isAvailable(Car car) {
+        return !car.isFlRemoved() && !car.isInUse();
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return (int) streamCarsByModel(modelName).count();
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return streamCarsByModel(modelName).findFirst().orElse(null);
+    }
+
+    //Дерево отдает записи по дате аренды: без архива сортировка - один проход по готовому порядку
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        List<RentRecord> res = archived(a -> a.getRecordsActiveAtDates(from, to));
+        rentIntervals.overlapping(from.toEpochDay(), to.toEpochDay(), res::add);
+        res.sort(Comparator.comparing(RentRecord::getRentDate));
+        return res;
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return rented.stream()
+                .mapToObj(cars::get)
                 .toList();
     }
 
     @Override
     public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
-        Collection<List<RentRecord>> res = ((TreeMap<LocalDate,List<RentRecord>>) records)
-                .subMap(from,to).values();
-        return res.stream().flatMap(l -> l.stream()).toList();
+        return streamRentRecordsAtDates(from, to).toList();
+    }
+
+    //С архивом - слияние по дате аренды: в памяти одна запись каждого источника и один месяц архива
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        if(archive == null || !archive.overlaps(from, to))
+            return hotRecords(from, to);
+        return RentDateMerge.stream(List.of(archivedRecords(from, to).iterator(), hotRecords(from, to).iterator()));
+    }
+
+    private Stream<RentRecord> hotRecords(LocalDate from, LocalDate to) {
+        return records.subMap(from,to).values().stream().flatMap(l -> l.stream());
+    }
+
+    //Записи архива машин, которых уже нет, не возвращаются
+    private Stream<RentRecord> archivedRecords(LocalDate from, LocalDate to) {
+        return archive.streamRecordsAtDates(from, to).filter(r -> getCar(r.getRegNumber()) != null);
+    }
+
+    /**
+     * Pages by days of the records in memory; with the archive, pages of the merged records
+     * whose token is the day of the last record and the numbers of records of that day
+     * taken from the archive and from memory, so a page reads only from that day on.
+     */
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        if(archive == null || !archive.overlaps(from, to))
+            return pageByDays(records, l -> l, from, to, pageSize, pageToken);
+        if(pageSize <= 0) throw new IllegalArgumentException("page size must be positive " + pageSize);
+        long[] position = pageToken == null ? new long[]{from.toEpochDay(), 0, 0} : Page.decodeToken(pageToken, 3);
+        if(position[0] < from.toEpochDay() || position[0] > to.toEpochDay() || position[1] < 0 || position[2] < 0)
+            throw new IllegalArgumentException("wrong page token " + pageToken);
+        LocalDate day = LocalDate.ofEpochDay(position[0]);
+        RentDateMerge merge = new RentDateMerge(List.of(archivedRecords(day, to).skip(position[1]).iterator(),
+                hotRecords(day, to).skip(position[2]).iterator()));
+        long[] taken = {position[1], position[2]};
+        List<RentRecord> items = new ArrayList<>(Math.min(pageSize, 1024));
+        while(items.size() < pageSize && merge.hasNext()) {
+            RentRecord record = merge.next();
+            if(!record.getRentDate().equals(day)) {
+                day = record.getRentDate();
+                Arrays.fill(taken, 0);
+            }
+            taken[merge.lastPart()]++;
+            items.add(record);
+        }
+        return new Page<>(items, merge.hasNext() ? Page.encodeToken(day.toEpochDay(), taken[0], taken[1]) : null);
+    }
+
+    //Записи архива машин, которых уже нет, не возвращаются
+    private List<RentRecord> archived(Function<RecordArchive, List<RentRecord>> query) {
+        if(archive == null) return new ArrayList<>();
+        List<RentRecord> res = query.apply(archive);
+        res.removeIf(r -> getCar(r.getRegNumber()) == null);
+        return res;
     }
 
     @Override
@@ -144,79 +461,218 @@ public class RentCompanyEmbedded
         if(car == null || car.isFlRemoved())
             return null;
         car.setFlRemoved(true);
+        setAvailable(car, false);
+        reservations.removeCar(regNumber);
         return car.isInUse() ?
                 new RemovedCarData(car, null) : actualCarRemove(car);
     }
 
     private RemovedCarData actualCarRemove(Car car) {
+        RemovedCarData res = removeHistory(car);
         String regNumber = car.getRegNumber();
-        List<RentRecord> removedRecords = carRecords.get(regNumber);
-        if(removedRecords != null&&!removedRecords.isEmpty()) {
-            removeFromDriverRecords(removedRecords);
-            removeFromRecords(removedRecords);
-        }
-        cars.remove(regNumber);
-        carRecords.remove(regNumber);
-        String modelName = car.getModelName();
-        List<Car> list = modelCars.get(modelName);
+        List<Car> list = at(modelCars, modelNames.id(car.getModelName()));
         if(list!=null)
             list.removeIf(c->regNumber.equals(c.getRegNumber()));
-        return new RemovedCarData(car,
-                removedRecords == null ? new ArrayList<>():removedRecords);
+        setAvailable(car, false);
+        return res;
     }
 
-    private void removeFromRecords(List<RentRecord> removedRecords) {
-        if(removedRecords == null) return;
-        removedRecords.forEach(r-> {
-            List<RentRecord> dayList = records.get(r.getRentDate());
-            if(dayList != null) dayList.remove(r);
-        });
+    //Записи машины удаляются из всех индексов, а сама машина - из всех, кроме списка модели
+    private RemovedCarData removeHistory(Car car) {
+        String regNumber = car.getRegNumber();
+        int carId = regNumbers.id(regNumber);
+        List<RecordLinks> removedLinks = at(carRecords, carId);
+        if(removedLinks != null) carRecords.set(carId, null);
+        List<RentRecord> removedRecords = new ArrayList<>();
+        if(removedLinks != null) {
+            removedLinks.forEach(l -> {
+                if(unlink(l.byDriver))
+                    driverRecords.remove(l.record.getLicenseId());
+                if(unlink(l.byDate))
+                    records.remove(l.record.getRentDate());
+                rentIntervals.remove(l.interval);
+                recordLog.remove(l);
+                analytics.removed(l.record, car.getModelName(), birthYear(l.record));
+                revenue.removed(l.record, getModel(car));
+                removedRecords.add(l.record);
+            });
+        }
+        if(archive != null) {
+            List<RentRecord> archived = archive.removeCar(regNumber);
+            archived.forEach(r -> {
+                analytics.removed(r, car.getModelName(), birthYear(r));
+                splitGas(r, getModel(car));
+                revenue.removed(r, getModel(car));
+            });
+            removedRecords.addAll(0, archived);
+        }
+        cars.set(carId, null);
+        carCount--;
+        if(carId < openRentals.size()) openRentals.set(carId, null);
+        rented.clear(carId);
+        return new RemovedCarData(car, removedRecords);
     }
 
-    private void removeFromDriverRecords(List<RentRecord> removedRecords) {
-        if(removedRecords == null) return;
-        removedRecords.forEach(r->{
-            List<RentRecord> drList = driverRecords.get(r.getLicenseId());
-            if(drList != null) drList.remove(r);
-        });
+    //true, если список опустел: пустые списки удаляются, чтобы subMap по датам не проходил по пустым дням
+    private static boolean unlink(LinkedIndex.Node<RentRecord> node) {
+        LinkedIndex<RentRecord> list = node.getOwner();
+        return list != null && list.unlink(node) && list.isEmpty();
     }
 
     @Override
     public List<RemovedCarData> removeModel(String modelName) {
-        List<Car> carsModel = modelCars.getOrDefault(modelName, new ArrayList<>());
-        return carsModel.stream().filter(c->c.isFlRemoved())
-                .map(c-> removeCar(c.getRegNumber()))
-                .filter(Objects::nonNull).toList();
+        List<RemovedCarData> res = new ArrayList<>();
+        removeModel(modelName, res::add);
+        return res;
+    }
+
+    /**
+     * Removes the history of every car with O(1) unlinks, then the cars from the list
+     * of the model in one pass instead of a search of the list per car.
+     */
+    @Override
+    public int removeModel(String modelName, Consumer<? super RemovedCarData> action) {
+        int modelId = modelNames.id(modelName);
+        List<Car> carsModel = at(modelCars, modelId);
+        if(carsModel == null) return 0;
+        Set<Car> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        int count = 0;
+        for(Car car : carsModel) {
+            if(car.isFlRemoved()) continue;
+            car.setFlRemoved(true);
+            reservations.removeCar(car.getRegNumber());
+            count++;
+            if(car.isInUse()) {
+                action.accept(new RemovedCarData(car, null));
+            } else {
+                action.accept(removeHistory(car));
+                removed.add(car);
+            }
+        }
+        carsModel.removeIf(removed::contains);
+        if(modelId < availableCars.size()) availableCars.set(modelId, null);
+        return count;
     }
 
     @Override
     public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
-        RentRecord record = getRentRecord(regNumber, licensedId);
-        if(record == null) return new RemovedCarData(null,null);
-        Car car = getCar(regNumber);
-        updateRecord(record, returnDate, damages, tankPercent); //Обновление записи
+        RecordLinks links = getRentRecord(regNumber, licensedId);
+        if(links == null) return new RemovedCarData(null,null);
+        Car car = cars.get(links.carId);
+        openRentals.set(links.carId, null);
+        rented.clear(links.carId);
+        reservations.returned(car.getRegNumber(), (int) returnDate.toEpochDay());
+        updateRecord(links.record, returnDate, damages, tankPercent); //Обновление записи
+        updateInterval(links);
         updateCar(car, damages);
         if(damages > REMOVE_TRESHOLD || car.isFlRemoved()) {
             car.setFlRemoved(true);
+            reservations.removeCar(car.getRegNumber());
             RemovedCarData remCarData = actualCarRemove(car);
             return remCarData != null ? remCarData :new RemovedCarData(car, new ArrayList<>());
         }
+        setAvailable(car, true);
         return new RemovedCarData(car, null);
     }
 
+    /**
+     * Settles the batch in three passes: finds the open rentals with the price and tank of their models,
+     * looked up once per model; computes the costs in one loop over primitive arrays; updates the records,
+     * the cars and the indexes. The cars removed by the batch leave the lists of their models in one pass
+     * per model instead of a search of the list per car. The batch is checked before the first pass changes a rental.
+     */
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        checkReturns(returns);
+        int n = returns.size();
+        double[] costs = new double[n];
+        BitSet removed = new BitSet();
+        int[] index = new int[n]; //return of the batch by position in the arrays below
+        RecordLinks[] links = new RecordLinks[n];
+        int[] modelIds = new int[n], prices = new int[n], rentDays = new int[n],
+                delays = new int[n], tankPercents = new int[n], tankVolumes = new int[n];
+        int[] modelPrices = new int[models.size()], modelTanks = new int[models.size()];
+        BitSet resolved = new BitSet(models.size());
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            CarReturn r = returns.get(i);
+            RecordLinks l = getRentRecord(r.getRegNumber(), r.getLicenseId());
+            if(l == null) {
+                costs[i] = Double.NaN;
+                continue;
+            }
+            //Аренда закрывается сразу: второй возврат той же машины в пакете ее не найдет
+            openRentals.set(l.carId, null);
+            rented.clear(l.carId);
+            int modelId = modelNames.id(cars.get(l.carId).getModelName());
+            if(!resolved.get(modelId)) {
+                Model model = models.get(modelId);
+                modelPrices[modelId] = model.getPriceDay();
+                modelTanks[modelId] = model.getGasTank();
+                resolved.set(modelId);
+            }
+            RentRecord record = l.record;
+            index[count] = i;
+            links[count] = l;
+            modelIds[count] = modelId;
+            prices[count] = modelPrices[modelId];
+            tankVolumes[count] = modelTanks[modelId];
+            rentDays[count] = record.getRentDays();
+            delays[count] = (int) (r.getReturnDate().toEpochDay() - record.getRentDate().toEpochDay()) - rentDays[count];
+            tankPercents[count] = r.getTankPercent();
+            count++;
+        }
+
+        double[] batchCosts = new double[count];
+        computeCosts(count, prices, rentDays, delays, tankPercents, tankVolumes, batchCosts);
+
+        Map<Integer, Set<Car>> removedCars = new HashMap<>(); //model id -> cars removed by the batch
+        for (int j = 0; j < count; j++) {
+            CarReturn r = returns.get(index[j]);
+            RentRecord record = links[j].record;
+            record.setDamages(r.getDamages());
+            record.setTankPercent(r.getTankPercent());
+            record.setReturnDate(r.getReturnDate());
+            record.setGasCost(gasCost(r.getTankPercent(), tankVolumes[j]));
+            record.setCost(batchCosts[j]);
+            costs[index[j]] = batchCosts[j];
+            Car car = cars.get(links[j].carId);
+            analytics.returned(record, car.getModelName(), birthYear(record));
+            revenue.returned(record, models.get(modelIds[j]));
+            reservations.returned(car.getRegNumber(), (int) r.getReturnDate().toEpochDay());
+            updateInterval(links[j]);
+            updateCar(car, r.getDamages());
+            if(r.getDamages() > REMOVE_TRESHOLD || car.isFlRemoved()) {
+                car.setFlRemoved(true);
+                reservations.removeCar(car.getRegNumber());
+                setAvailable(car, false);
+                removeHistory(car);
+                removedCars.computeIfAbsent(modelIds[j], k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(car);
+                removed.set(index[j]);
+            } else {
+                setAvailable(car, true);
+            }
+        }
+        removedCars.forEach((modelId, set) -> {
+            List<Car> list = at(modelCars, modelId);
+            if(list != null) list.removeIf(set::contains);
+        });
+        return new ReturnResults(costs, removed);
+    }
+
     private void updateRecord(RentRecord record, LocalDate returnDate, int damages, int tankPercent) {
         record.setDamages(damages);
         record.setTankPercent(tankPercent);
         record.setReturnDate(returnDate);
 
-        double cost = computeCost(getRentPrice(record.getRegNumber()),record.getRentDays(),
-                getDaysDelay(record), tankPercent, getTankVolume(record.getRegNumber()));
+        Car car = getCar(record.getRegNumber());
+        Model model = getModel(car);
+        double cost = computeCost(model.getPriceDay(), record.getRentDays(),
+                getDaysDelay(record), tankPercent, model.getGasTank());
+        record.setGasCost(gasCost(tankPercent, model.getGasTank()));
         record.setCost(cost);
-    }
-
-    private int getTankVolume(String regNumber) {
-        String modelName = cars.get(regNumber).getModelName();
-        return models.get(modelName).getGasTank();
+        analytics.returned(record, car.getModelName(), birthYear(record));
+        revenue.returned(record, model);
     }
 
     private int getDaysDelay(RentRecord record) {
@@ -225,12 +681,6 @@ public class RentCompanyEmbedded
         return  delta <= 0 ? 0 : delta;
     }
 
-    private int getRentPrice(String regNumber) {
-        String modelName = cars.get(regNumber).getModelName();
-        return models.get(modelName).getPriceDay();
-
-    }
-
     private void updateCar(Car car, int damages) {
         car.setInUse(false);
         if(damages>BAD_TRESHOLD) car.setState(State.BAD);
@@ -238,30 +688,195 @@ public class RentCompanyEmbedded
         else car.setState(State.EXCELLENT);
     }
 
-    private RentRecord getRentRecord(String regNumber, long licensedId) {
-        List<RentRecord> list = driverRecords.get(licensedId);
-        if(list == null) return null;
-        return list.stream().filter(r ->
-                r.getRegNumber().equals(regNumber) && r.getReturnDate() == null)
-                .findFirst().orElse(null);
+    private RecordLinks getRentRecord(String regNumber, long licensedId) {
+        RecordLinks links = at(openRentals, regNumbers.id(regNumber));
+        return links != null && links.record.getLicenseId() == licensedId ? links : null;
+    }
+
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        Map<String, Long> res = new LinkedHashMap<>();
+        res.put("models", countPresent(models));
+        res.put("cars", (long) carCount);
+        res.put("drivers", (long) drivers.size());
+        res.put("modelCars", countPresent(modelCars));
+        res.put("carRecords", countPresent(carRecords));
+        res.put("driverRecords", (long) driverRecords.size());
+        res.put("records", (long) records.size()); //days
+        res.put("openRentals", (long) rented.cardinality());
+        res.put("dictionaryStrings", (long) regNumbers.size() + modelNames.size() + colors.size());
+        res.put("rentRecords", (long) recordLog.size());
+        res.put("revenueDays", (long) revenue.size());
+        res.put("reservations", (long) reservations.size());
+        if(archive != null) {
+            res.put("archivedRecords", archive.size());
+            res.put("archiveSegments", (long) archive.getSegmentCount());
+        }
+        return res;
+    }
+
+    /**
+     * Attaches the cold tier: from now on {@link #archiveRecords} moves the records returned
+     * more than {@code retentionDays} ago to it, and the history queries merge its records.
+     * Records of a snapshot taken before the last archiving that are in the archive already
+     * are dropped from memory, then the reports count the archived records.
+     */
+    public void attachArchive(RecordArchive archive, int retentionDays) {
+        LocalDate watermark = archive.getWatermark();
+        if(watermark != null) {
+            List<RecordLinks> candidates = new ArrayList<>();
+            for(RecordLinks l : recordLog)
+                if(l.record.getReturnDate() != null && l.record.getReturnDate().isBefore(watermark))
+                    candidates.add(l);
+            boolean[] archived = archive.contains(candidates.stream().map(l -> l.record).toList());
+            List<RecordLinks> duplicates = new ArrayList<>();
+            for(int i = 0; i < archived.length; i++)
+                if(archived[i]) duplicates.add(candidates.get(i));
+            duplicates.forEach(l -> {
+                Car car = cars.get(l.carId);
+                analytics.removed(l.record, car.getModelName(), birthYear(l.record));
+                revenue.removed(l.record, getModel(car));
+            });
+            unlinkRecords(duplicates);
+        }
+        archive.forEach(r -> {
+            Car car = getCar(r.getRegNumber());
+            if(car == null) return;
+            analytics.rented(r, car.getModelName(), birthYear(r));
+            splitGas(r, getModel(car));
+            revenue.returned(r, getModel(car));
+        });
+        this.archive = archive;
+        this.retentionDays = retentionDays;
+    }
+
+    @Override
+    public int archiveRecords(LocalDate today) {
+        if(archive == null) return 0;
+        LocalDate before = today.minusDays(retentionDays);
+        List<RecordLinks> old = new ArrayList<>();
+        for(RecordLinks l : recordLog)
+            if(l.record.getReturnDate() != null && l.record.getReturnDate().isBefore(before))
+                old.add(l);
+        if(old.isEmpty()) return 0;
+        //Сначала на диск: при ошибке записи в памяти ничего не меняется
+        archive.append(old.stream().map(l -> l.record).toList(), before);
+        unlinkRecords(old);
+        return old.size();
+    }
+
+    //Записи уходят из всех индексов; списки машин чистятся одним проходом на машину
+    private void unlinkRecords(List<RecordLinks> links) {
+        Set<RecordLinks> unlinked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(RecordLinks l : links) {
+            if(unlink(l.byDriver))
+                driverRecords.remove(l.record.getLicenseId());
+            if(unlink(l.byDate))
+                records.remove(l.record.getRentDate());
+            rentIntervals.remove(l.interval);
+            recordLog.remove(l);
+            unlinked.add(l);
+        }
+        for(int carId : links.stream().mapToInt(l -> l.carId).distinct().toArray()) {
+            List<RecordLinks> list = carRecords.get(carId);
+            list.removeIf(unlinked::contains);
+            if(list.isEmpty())
+                carRecords.set(carId, null);
+        }
     }
 
     @Override
     public void save(String fileName) {
-        try(ObjectOutputStream outputStream =
-                    new ObjectOutputStream(
-                            new FileOutputStream(fileName))) {
-            outputStream.writeObject(this);
+        try {
+            toSnapshot().write(fileName);
         } catch (IOException e) {
             System.out.println("Error in method save " + e.getMessage());
         }
     }
 
+    CompanySnapshot toSnapshot() {
+        Iterable<RentRecord> allRecords = () -> records(recordLog, Map.of());
+        CompanySnapshot res = new CompanySnapshot(finePercent, gasPrice, present(models), drivers.values(),
+                present(cars), allRecords);
+        res.today = reservations.today();
+        res.reservations = reservations.reservations();
+        return res;
+    }
+
+    /**
+     * Copies only models, cars and the records not returned yet, the closed records are read
+     * from a frozen view of {@code recordLog}: O(cars + drivers + open rentals) instead of O(records).
+     */
+    @Override
+    CompanySnapshot freeze() {
+        Iterable<RecordLinks> frozen = recordLog.freeze();
+        Map<RentRecord, RentRecord> open = new IdentityHashMap<>(rented.cardinality() * 2);
+        rented.stream().forEach(id -> open.put(openRentals.get(id).record, CompanySnapshot.copy(openRentals.get(id).record)));
+        List<Model> modelsCopy = present(models).stream().map(CompanySnapshot::copy).toList();
+        List<Car> carsCopy = present(cars).stream().map(CompanySnapshot::copy).toList();
+        CompanySnapshot res = new CompanySnapshot(finePercent, gasPrice, modelsCopy,
+                new ArrayList<>(drivers.values()), carsCopy, () -> records(frozen, open));
+        res.today = reservations.today();
+        res.reservations = reservations.reservations();
+        res.onRelease = recordLog::release;
+        return res;
+    }
+
+    private static <V> List<V> present(List<V> list) {
+        return list.stream().filter(Objects::nonNull).toList();
+    }
+
+    private static Iterator<RentRecord> records(Iterable<RecordLinks> log, Map<RentRecord, RentRecord> copies) {
+        Iterator<RecordLinks> links = log.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return links.hasNext();
+            }
+
+            @Override
+            public RentRecord next() {
+                RentRecord record = links.next().record;
+                RentRecord copy = copies.get(record);
+                return copy != null ? copy : record;
+            }
+        };
+    }
+
+    static RentCompanyEmbedded fromSnapshot(CompanySnapshot snapshot) {
+        RentCompanyEmbedded company = new RentCompanyEmbedded();
+        company.finePercent = snapshot.finePercent;
+        company.gasPrice = snapshot.gasPrice;
+        company.cars = new ArrayList<>(snapshot.cars.size());
+        company.regNumbers = new StringDictionary(snapshot.cars.size());
+        company.drivers = new LongHashMap<>(snapshot.drivers.size());
+        snapshot.models.forEach(company::addModel);
+        snapshot.drivers.forEach(company::addDriver);
+        snapshot.cars.forEach(company::putCar);
+        snapshot.records.forEach(r -> {
+            company.addRecord(r);
+            company.booked(r);
+        });
+        company.restoreReservations(snapshot);
+        return company;
+    }
+
+    /**
+     * Restores the company saved in the file by {@link #save}, a new one if there is no file.
+     * Unlike {@link #restoreFromFile}, a file that cannot be read is reported; so is a file written
+     * with Java serialization by the first versions, which is not read.
+     */
+    public static IRentCompany load(String fileName) throws IOException {
+        if (!new File(fileName).exists())
+            return new RentCompanyEmbedded();
+        if (!CompanySnapshot.isSnapshot(fileName))
+            throw new IOException(fileName + " is not a company snapshot");
+        return fromSnapshot(CompanySnapshot.read(fileName));
+    }
+
     public static IRentCompany restoreFromFile(String fileName) {
-        try (ObjectInputStream inputStream =
-                     new ObjectInputStream(
-                             new FileInputStream(fileName))) {
-            return (IRentCompany) inputStream.readObject();
+        try {
+            return load(fileName);
         } catch (Exception e) {
             System.out.println(fileName + " new object has been created " + e.getMessage());
             return new RentCompanyEmbedded();
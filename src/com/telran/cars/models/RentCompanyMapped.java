@@ -0,0 +1,345 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.utils.Archivable;
+import com.telran.utils.Measurable;
+import com.telran.utils.Persistable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Company restored from a snapshot without waiting for the full load.
+ * {@code getCar}, {@code getDriver}, {@code getModel} and the tariffs are answered at once
+ * from the memory-mapped snapshot, while a background thread builds a {@link RentCompanyEmbedded}
+ * with all records and indexes. Every other call waits for that load and then delegates to it.
+ * Entities returned before the load is complete are detached copies read from the file.
+ * If the load fails, every call that needs the loaded company throws {@link IllegalStateException}
+ * with the cause of the failure, the company never answers as if it were empty.
+ */
+public class RentCompanyMapped implements IRentCompany, Persistable, Measurable, Archivable {
+    private volatile transient MappedSnapshot snapshot;
+    private final transient CompletableFuture<IRentCompany> loaded;
+    private final String fileName;
+
+    private RentCompanyMapped(String fileName, MappedSnapshot snapshot) {
+        this.fileName = fileName;
+        this.snapshot = snapshot;
+        loaded = CompletableFuture.supplyAsync(() -> load(fileName),
+                r -> {
+                    Thread loader = new Thread(r, "snapshot-loader");
+                    loader.setDaemon(true);
+                    loader.start();
+                });
+        //После загрузки, удачной или нет, отображение больше не нужно
+        loaded.whenComplete((company, e) -> this.snapshot = null);
+    }
+
+    //Без restoreFromFile: ошибка чтения должна дойти до вызывающих, а не дать пустую компанию
+    private static IRentCompany load(String fileName) {
+        try {
+            return RentCompanyEmbedded.fromSnapshot(CompanySnapshot.read(fileName));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens a snapshot written by {@link RentCompanyEmbedded#save}.
+     * Files in other formats are restored synchronously by {@link RentCompanyEmbedded#restoreFromFile}.
+     */
+    public static IRentCompany restoreFromFile(String fileName) {
+        try {
+            if (!CompanySnapshot.isSnapshot(fileName))
+                return RentCompanyEmbedded.restoreFromFile(fileName);
+            return new RentCompanyMapped(fileName, new MappedSnapshot(fileName));
+        } catch (Exception e) {
+            System.out.println(fileName + " new object has been created " + e.getMessage());
+            return new RentCompanyEmbedded();
+        }
+    }
+
+    /**
+     * @return true once the background load has completed successfully
+     */
+    public boolean isLoaded() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+
+    /**
+     * @return true if the background load has failed, every call that needs it throws
+     */
+    public boolean isFailed() {
+        return loaded.isCompletedExceptionally();
+    }
+
+    /**
+     * Waits for the background load.
+     * @return the fully loaded company every call is delegated to
+     * @throws IllegalStateException if the load has failed, with the failure as the cause
+     */
+    public IRentCompany awaitLoaded() {
+        try {
+            return loaded.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("loading of " + fileName + " has failed", e.getCause());
+        }
+    }
+
+    private MappedSnapshot mapped() {
+        MappedSnapshot res = snapshot;
+        return res != null && res.isIndexed() && !loaded.isDone() ? res : null;
+    }
+
+    @Override
+    public int getGasPrice() {
+        MappedSnapshot mapped = mapped();
+        return mapped != null ? mapped.gasPrice : awaitLoaded().getGasPrice();
+    }
+
+    @Override
+    public void setGasPrice(int price) {
+        awaitLoaded().setGasPrice(price);
+    }
+
+    @Override
+    public int getFinePercent() {
+        MappedSnapshot mapped = mapped();
+        return mapped != null ? mapped.finePercent : awaitLoaded().getFinePercent();
+    }
+
+    @Override
+    public void setFinePercent(int finePercent) {
+        awaitLoaded().setFinePercent(finePercent);
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        return awaitLoaded().addModel(model);
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        MappedSnapshot mapped = mapped();
+        return mapped != null ? mapped.getModel(modelName) : awaitLoaded().getModel(modelName);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        return awaitLoaded().addCar(car);
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        MappedSnapshot mapped = mapped();
+        if (mapped == null) return awaitLoaded().getCar(regNumber);
+        try {
+            return mapped.getCar(regNumber);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        return awaitLoaded().addDriver(driver);
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        MappedSnapshot mapped = mapped();
+        if (mapped == null) return awaitLoaded().getDriver(licenseId);
+        try {
+            return mapped.getDriver(licenseId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<CarsReturnCode> addModels(Collection<Model> models) {
+        return awaitLoaded().addModels(models);
+    }
+
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> cars) {
+        return awaitLoaded().addCars(cars);
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        return awaitLoaded().addDrivers(drivers);
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> records) {
+        return awaitLoaded().importRentRecords(records);
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        return awaitLoaded().rentCar(regNumber, licenseId, rentDate, rentDays);
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return awaitLoaded().getCarByDrivers(licenseId);
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return awaitLoaded().getDriversByCars(regNumber);
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return awaitLoaded().getCarsByModel(modelName);
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return awaitLoaded().getRentedCars();
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return awaitLoaded().getRentRecordsAtDates(from, to);
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        return awaitLoaded().getRentRecordsActiveAtDates(from, to);
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        return awaitLoaded().streamCarByDrivers(licenseId);
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        return awaitLoaded().streamDriversByCars(regNumber);
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return awaitLoaded().countCarsByModel(modelName);
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return awaitLoaded().getAnyCarByModel(modelName);
+    }
+
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        return awaitLoaded().streamCarsByModel(modelName);
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return awaitLoaded().streamRentRecordsAtDates(from, to);
+    }
+
+    @Override
+    public Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return awaitLoaded().getCarByDrivers(licenseId, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return awaitLoaded().getDriversByCars(regNumber, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        return awaitLoaded().getCarsByModel(modelName, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return awaitLoaded().getRentRecordsAtDates(from, to, pageSize, pageToken);
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        return awaitLoaded().removeCar(regNumber);
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String model) {
+        return awaitLoaded().removeModel(model);
+    }
+
+    @Override
+    public int removeModel(String model, Consumer<? super RemovedCarData> action) {
+        return awaitLoaded().removeModel(model, action);
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        return awaitLoaded().returnCar(regNumber, licensedId, returnDate, damages, tankPercent);
+    }
+
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        return awaitLoaded().returnCars(returns);
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        return awaitLoaded().reserveCar(regNumber, licenseId, from, days);
+    }
+
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        return awaitLoaded().findFreeCar(modelName, from, to);
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return awaitLoaded().getMostPopularCarModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return awaitLoaded().getMostProfitableCarModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return awaitLoaded().getMostActiveDrivers(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return awaitLoaded().getRevenueTotals(from, to);
+    }
+
+    /**
+     * @return sizes of the loaded company, empty while it is loading or if the load has failed
+     */
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        return isLoaded() ? ((Measurable) awaitLoaded()).getIndexSizes() : Map.of();
+    }
+
+    @Override
+    public int archiveRecords(LocalDate today) {
+        return ((Archivable) awaitLoaded()).archiveRecords(today);
+    }
+
+    @Override
+    public void save(String fileName) {
+        ((Persistable) awaitLoaded()).save(fileName);
+    }
+}
@@ -0,0 +1,512 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.dto.enums.State;
+import com.telran.utils.LongHashMap;
+import com.telran.utils.Measurable;
+import com.telran.utils.Persistable;
+import com.telran.utils.StringDictionary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static com.telran.cars.models.RecordStore.*;
+
+/**
+ * Single-threaded company like {@link RentCompanyEmbedded} that keeps its rent records off-heap
+ * in a {@link RecordStore}: a record is a row of columns, the indexes by driver, car and day are
+ * chains of rows in the same store. Models, cars and drivers stay on heap.
+ * Queries return new {@link RentRecord} objects read from the rows, so changing a returned record
+ * does not change the company. The counters of the reports are updated from the records as they change,
+ * scans read the columns of the rows.
+ */
+public class RentCompanyOffHeap
+        extends AbstractRentCompany
+        implements Persistable, Measurable {
+    private static final int REMOVE_TRESHOLD = 60;
+    private static final int BAD_TRESHOLD = 30;
+    private static final int GOOD_TRESHOLD = 10;
+
+    StringDictionary regNumbers = new StringDictionary(); //reg number -> car id, the id stays after removal
+    ArrayList<CarSlot> carIds = new ArrayList<>(); //car id -> car, null if there is none
+    int carCount;
+    LongHashMap<Driver> drivers = new LongHashMap<>();
+    Map<String, Model> models = new HashMap<>();
+    Map<String, List<Car>> modelCars = new HashMap<>();
+    Map<String, LinkedHashSet<Car>> availableCars = new HashMap<>();
+    LongHashMap<int[]> driverRecords = new LongHashMap<>(); //key license id -> chain of rows
+    TreeMap<LocalDate, int[]> records = new TreeMap<>(); //rent date -> chain of rows
+    Map<String, CarSlot> openRentals = new HashMap<>(); //key reg number -> car with a record not returned yet
+    int maxSpan; //longest rental in days, active records start at most that many days before a period
+    RecordStore store = new RecordStore(id -> carIds.get(id).car.getRegNumber());
+
+    /**
+     * Car with its id in the store, the chain of its rows and the row not returned yet.
+     */
+    static class CarSlot {
+        final Car car;
+        final int id;
+        final int[] records = {NONE, NONE};
+        int open = NONE;
+
+        CarSlot(Car car, int id) {
+            this.car = car;
+            this.id = id;
+        }
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        return models.putIfAbsent(model.getModelName(), model) == null ?
+                OK : MODEL_EXISTS;
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return models.get(modelName);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        if(!models.containsKey(car.getModelName()))
+            return NO_MODEL;
+        if(slot(car.getRegNumber()) != null)
+            return CAR_EXISTS;
+        putCar(car);
+        return OK;
+    }
+
+    private void putCar(Car car) {
+        CarSlot slot = new CarSlot(car, regNumbers.add(car.getRegNumber()));
+        while(carIds.size() <= slot.id) carIds.add(null);
+        carIds.set(slot.id, slot);
+        carCount++;
+        modelCars.computeIfAbsent(car.getModelName(), k -> new ArrayList<>()).add(car);
+        if(!car.isInUse() && !car.isFlRemoved())
+            setAvailable(car, true);
+        if(!car.isFlRemoved())
+            reservations.addCar(car.getRegNumber(), car.getModelName());
+    }
+
+    //Вызывается при каждой смене inUse и flRemoved в компании
+    private void setAvailable(Car car, boolean available) {
+        if(available)
+            availableCars.computeIfAbsent(car.getModelName(), k -> new LinkedHashSet<>()).add(car);
+        else {
+            Set<Car> set = availableCars.get(car.getModelName());
+            if(set != null) set.remove(car);
+        }
+    }
+
+    //Машина, вернувшаяся под прежним номером, получает прежний id, старые строки этого id уже удалены
+    private CarSlot slot(String regNumber) {
+        int id = regNumbers.id(regNumber);
+        return id >= 0 && id < carIds.size() ? carIds.get(id) : null;
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        CarSlot slot = slot(regNumber);
+        return slot == null ? null : slot.car;
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        return drivers.putIfAbsent(driver.getLicenseId(), driver) == null ?
+                OK : DRIVER_EXISTS;
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return drivers.get(licenseId);
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> newDrivers) {
+        drivers.ensureCapacity(drivers.size() + newDrivers.size());
+        List<CarsReturnCode> res = new ArrayList<>(newDrivers.size());
+        for (Driver driver : newDrivers)
+            res.add(addDriver(driver));
+        return res;
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        CarSlot slot = slot(regNumber);
+        if(slot == null) return NO_CAR;
+        Car car = slot.car;
+        if(car.isFlRemoved()) return CAR_REMOVED;
+        if(car.isInUse()) return CAR_IN_USE;
+        if(!drivers.containsKey(licenseId)) return NO_DRIVER;
+        if(!reservations.rent(regNumber, licenseId, (int) rentDate.toEpochDay(), rentDays))
+            return CAR_RESERVED;
+        addRecord(slot, new RentRecord(regNumber, licenseId, rentDate, rentDays));
+        car.setInUse(true);
+        setAvailable(car, false);
+        return OK;
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> newRecords) {
+        List<CarsReturnCode> res = new ArrayList<>(newRecords.size());
+        for (RentRecord record : newRecords)
+            res.add(importRentRecord(record));
+        return res;
+    }
+
+    private CarsReturnCode importRentRecord(RentRecord record) {
+        CarSlot slot = slot(record.getRegNumber());
+        if(slot == null) return NO_CAR;
+        Car car = slot.car;
+        if(car.isFlRemoved()) return CAR_REMOVED;
+        if(!drivers.containsKey(record.getLicenseId())) return NO_DRIVER;
+        boolean open = record.getReturnDate() == null;
+        if(open && car.isInUse()) return CAR_IN_USE;
+        addRecord(slot, record);
+        booked(record);
+        if(open) {
+            car.setInUse(true);
+            setAvailable(car, false);
+        }
+        return OK;
+    }
+
+    //Запись копируется в столбцы, сам объект не сохраняется
+    private void addRecord(CarSlot slot, RentRecord record) {
+        int row = store.add(slot.id, record.getLicenseId(), record.getRentDate(), record.getRentDays());
+        if(record.getReturnDate() != null) {
+            splitGas(record, models.get(slot.car.getModelName()));
+            store.setReturn(row, record.getReturnDate(), record.getDamages(), record.getTankPercent(),
+                    record.getCost(), record.getGasCost());
+        }
+        store.link(BY_DRIVER, driverRecords.computeIfAbsent(record.getLicenseId(), k -> new int[]{NONE, NONE}), row);
+        store.link(BY_CAR, slot.records, row);
+        store.link(BY_DAY, records.computeIfAbsent(record.getRentDate(), k -> new int[]{NONE, NONE}), row);
+        maxSpan = Math.max(maxSpan, store.endDay(row) - store.rentDay(row));
+        if(record.getReturnDate() == null) {
+            slot.open = row;
+            openRentals.put(slot.car.getRegNumber(), slot);
+        }
+        analytics.rented(record, slot.car.getModelName(), birthYear(row));
+        if(record.getReturnDate() != null)
+            revenue.returned(record, models.get(slot.car.getModelName()));
+    }
+
+    private int birthYear(int row) {
+        return drivers.get(store.licenseId(row)).getBirthYear();
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return streamCarByDrivers(licenseId).toList();
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        return store.rows(BY_DRIVER, driverRecords.get(licenseId))
+                .mapToObj(r -> carIds.get(store.carId(r)).car)
+                .distinct();
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return streamDriversByCars(regNumber).toList();
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        CarSlot slot = slot(regNumber);
+        return store.rows(BY_CAR, slot == null ? null : slot.records)
+                .mapToObj(r -> getDriver(store.licenseId(r)))
+                .distinct();
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return streamCarsByModel(modelName).toList();
+    }
+
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        Set<Car> res = availableCars.get(modelName);
+        if(res == null) return Stream.empty();
+        return res.stream()
+                .filter(RentCompanyEmbedded::isAvailable);
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return (int) streamCarsByModel(modelName).count();
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return streamCarsByModel(modelName).findFirst().orElse(null);
+    }
+
+    //Дерева интервалов нет: просматриваются дни начиная с from - самая длинная аренда
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        List<RentRecord> res = new ArrayList<>();
+        if(!from.isBefore(to)) return res;
+        long fromDay = from.toEpochDay();
+        LocalDate first = fromDay - maxSpan < LocalDate.MIN.toEpochDay() ? LocalDate.MIN : from.minusDays(maxSpan);
+        for(int[] day : records.subMap(first, to).values())
+            store.rows(BY_DAY, day)
+                    .filter(r -> store.endDay(r) >= fromDay)
+                    .forEach(r -> res.add(store.toRecord(r)));
+        return res;
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return openRentals.values().stream()
+                .map(s -> s.car)
+                .toList();
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return streamRentRecordsAtDates(from, to).toList();
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return records.subMap(from, to).values().stream()
+                .flatMapToInt(d -> store.rows(BY_DAY, d))
+                .mapToObj(store::toRecord);
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return pageByDays(records, this::dayRecords, from, to, pageSize, pageToken);
+    }
+
+    private Collection<RentRecord> dayRecords(int[] day) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<RentRecord> iterator() {
+                return store.rows(BY_DAY, day).mapToObj(store::toRecord).iterator();
+            }
+
+            @Override
+            public int size() {
+                return (int) store.rows(BY_DAY, day).count();
+            }
+        };
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        CarSlot slot = slot(regNumber);
+        if(slot == null || slot.car.isFlRemoved())
+            return null;
+        Car car = slot.car;
+        car.setFlRemoved(true);
+        setAvailable(car, false);
+        reservations.removeCar(regNumber);
+        return car.isInUse() ?
+                new RemovedCarData(car, null) : actualCarRemove(slot);
+    }
+
+    private RemovedCarData actualCarRemove(CarSlot slot) {
+        RemovedCarData res = removeHistory(slot);
+        Car car = slot.car;
+        List<Car> list = modelCars.get(car.getModelName());
+        if(list != null)
+            list.removeIf(c -> car.getRegNumber().equals(c.getRegNumber()));
+        setAvailable(car, false);
+        return res;
+    }
+
+    //Строки машины выходят из цепочек водителей и дней, цепочка машины уходит вместе с ней
+    private RemovedCarData removeHistory(CarSlot slot) {
+        Car car = slot.car;
+        Model model = models.get(car.getModelName());
+        List<RentRecord> removedRecords = new ArrayList<>();
+        for(int row = slot.records[0]; row != NONE; row = store.next(BY_CAR, row)) {
+            RentRecord record = store.toRecord(row);
+            removedRecords.add(record);
+            analytics.removed(record, car.getModelName(), birthYear(row));
+            revenue.removed(record, model);
+            long licenseId = store.licenseId(row);
+            if(store.unlink(BY_DRIVER, driverRecords.get(licenseId), row))
+                driverRecords.remove(licenseId);
+            LocalDate rentDate = LocalDate.ofEpochDay(store.rentDay(row));
+            if(store.unlink(BY_DAY, records.get(rentDate), row))
+                records.remove(rentDate);
+            store.remove(row);
+        }
+        carIds.set(slot.id, null);
+        carCount--;
+        openRentals.remove(car.getRegNumber());
+        return new RemovedCarData(car, removedRecords);
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String modelName) {
+        List<RemovedCarData> res = new ArrayList<>();
+        removeModel(modelName, res::add);
+        return res;
+    }
+
+    @Override
+    public int removeModel(String modelName, Consumer<? super RemovedCarData> action) {
+        List<Car> carsModel = modelCars.get(modelName);
+        if(carsModel == null) return 0;
+        Set<Car> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        int count = 0;
+        for(Car car : carsModel) {
+            if(car.isFlRemoved()) continue;
+            car.setFlRemoved(true);
+            reservations.removeCar(car.getRegNumber());
+            count++;
+            if(car.isInUse()) {
+                action.accept(new RemovedCarData(car, null));
+            } else {
+                action.accept(removeHistory(slot(car.getRegNumber())));
+                removed.add(car);
+            }
+        }
+        carsModel.removeIf(removed::contains);
+        availableCars.remove(modelName);
+        return count;
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        CarSlot slot = slot(regNumber);
+        if(slot == null || slot.open == NONE || store.licenseId(slot.open) != licensedId)
+            return new RemovedCarData(null, null);
+        int row = slot.open;
+        Car car = slot.car;
+        Model model = models.get(car.getModelName());
+        slot.open = NONE;
+        openRentals.remove(regNumber);
+        reservations.returned(regNumber, (int) returnDate.toEpochDay());
+        LocalDate rentDate = LocalDate.ofEpochDay(store.rentDay(row));
+        int delay = (int) Math.max(0, ChronoUnit.DAYS.between(rentDate, returnDate) - store.rentDays(row));
+        double cost = computeCost(model.getPriceDay(), store.rentDays(row), delay, tankPercent, model.getGasTank());
+        store.setReturn(row, returnDate, damages, tankPercent, cost, gasCost(tankPercent, model.getGasTank()));
+        maxSpan = Math.max(maxSpan, store.endDay(row) - store.rentDay(row));
+        RentRecord record = store.toRecord(row);
+        analytics.returned(record, car.getModelName(), birthYear(row));
+        revenue.returned(record, model);
+        updateCar(car, damages);
+        if(damages > REMOVE_TRESHOLD || car.isFlRemoved()) {
+            car.setFlRemoved(true);
+            reservations.removeCar(regNumber);
+            return actualCarRemove(slot);
+        }
+        setAvailable(car, true);
+        return new RemovedCarData(car, null);
+    }
+
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        checkReturns(returns);
+        double[] costs = new double[returns.size()];
+        BitSet removed = new BitSet();
+        for(int i = 0; i < costs.length; i++) {
+            CarReturn r = returns.get(i);
+            CarSlot slot = slot(r.getRegNumber());
+            int row = slot == null ? NONE : slot.open;
+            RemovedCarData res = returnCar(r.getRegNumber(), r.getLicenseId(), r.getReturnDate(),
+                    r.getDamages(), r.getTankPercent());
+            costs[i] = res.getCar() == null ? Double.NaN : store.cost(row);
+            if(res.getRemovedRecords() != null) removed.set(i);
+        }
+        return new ReturnResults(costs, removed);
+    }
+
+    private void updateCar(Car car, int damages) {
+        car.setInUse(false);
+        if(damages>BAD_TRESHOLD) car.setState(State.BAD);
+        else if (damages>= GOOD_TRESHOLD) car.setState(State.GOOD);
+        else car.setState(State.EXCELLENT);
+    }
+
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        Map<String, Long> res = new LinkedHashMap<>();
+        res.put("models", (long) models.size());
+        res.put("cars", (long) carCount);
+        res.put("drivers", (long) drivers.size());
+        res.put("modelCars", (long) modelCars.size());
+        res.put("driverRecords", (long) driverRecords.size());
+        res.put("records", (long) records.size()); //days
+        res.put("openRentals", (long) openRentals.size());
+        res.put("rentRecords", (long) store.size());
+        res.put("removedRows", (long) store.removedRows());
+        res.put("offHeapBytes", store.offHeapBytes());
+        res.put("revenueDays", (long) revenue.size());
+        res.put("reservations", (long) reservations.size());
+        return res;
+    }
+
+    @Override
+    public void save(String fileName) {
+        try {
+            toSnapshot().write(fileName);
+        } catch (IOException e) {
+            System.out.println("Error in method save " + e.getMessage());
+        }
+    }
+
+    CompanySnapshot toSnapshot() {
+        Iterable<RentRecord> allRecords = () -> store.rows().mapToObj(store::toRecord).iterator();
+        CompanySnapshot res = new CompanySnapshot(finePercent, gasPrice, models.values(), drivers.values(),
+                carIds.stream().filter(Objects::nonNull).map(s -> s.car).toList(), allRecords);
+        res.today = reservations.today();
+        res.reservations = reservations.reservations();
+        return res;
+    }
+
+    static RentCompanyOffHeap fromSnapshot(CompanySnapshot snapshot) {
+        RentCompanyOffHeap company = new RentCompanyOffHeap();
+        company.finePercent = snapshot.finePercent;
+        company.gasPrice = snapshot.gasPrice;
+        company.drivers = new LongHashMap<>(snapshot.drivers.size());
+        snapshot.models.forEach(company::addModel);
+        snapshot.drivers.forEach(company::addDriver);
+        snapshot.cars.forEach(company::putCar);
+        snapshot.records.forEach(r -> {
+            company.addRecord(company.slot(r.getRegNumber()), r);
+            company.booked(r);
+        });
+        company.restoreReservations(snapshot);
+        return company;
+    }
+
+    /**
+     * Restores a company saved by {@link #save} or by {@link RentCompanyEmbedded#save}.
+     */
+    /**
+     * Restores the company saved in the file, a new one if there is no file.
+     * Unlike {@link #restoreFromFile}, a file that cannot be read is reported.
+     */
+    public static IRentCompany load(String fileName) throws IOException {
+        if (!Files.exists(Path.of(fileName)))
+            return new RentCompanyOffHeap();
+        if (!CompanySnapshot.isSnapshot(fileName))
+            throw new IOException(fileName + " is not a snapshot");
+        return fromSnapshot(CompanySnapshot.read(fileName));
+    }
+
+    public static IRentCompany restoreFromFile(String fileName) {
+        try {
+            return load(fileName);
+        } catch (Exception e) {
+            System.out.println(fileName + " new object has been created " + e.getMessage());
+            return new RentCompanyOffHeap();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.utils.Measurable;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Read-only copy of a company that follows the journal shipped by a {@link ReplicationPrimary}.
+ * A receiving thread reads the records from the socket, an applying thread replays them in order
+ * on a {@link RentCompanyConcurrent}, so the reads run concurrently with the replay and do not wait
+ * for the network. A snapshot from the primary replaces the company at once.
+ * The connection is restored by itself, from the last sequence received; after a restart of the primary,
+ * whose sequences may repeat, from a new snapshot.
+ * <p>
+ * Reads see the state of {@link #getAppliedSequence}: a change of the primary shows up after
+ * {@link #getLag} records, use {@link #awaitSequence} to read own writes.
+ * Mutations throw {@link UnsupportedOperationException}.
+ */
+public class RentCompanyReplica implements IRentCompany, Measurable, Closeable {
+    private static final long RECONNECT_MILLIS = 200;
+
+    private final InetSocketAddress primary;
+    private volatile AbstractRentCompany company = new RentCompanyConcurrent();
+    private final BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+    private final Object progress = new Object();
+    private volatile long receivedSequence = -1;
+    private volatile long epoch = ReplicationPrimary.NO_EPOCH; //of the last snapshot, see ReplicationPrimary
+    private volatile long appliedSequence = -1;
+    private volatile long primarySequence = -1;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private final Thread receiver;
+    private final Thread applier;
+
+    //Снимок - с company, запись - с record
+    private record Message(long sequence, long millis, byte[] record, AbstractRentCompany company) {
+    }
+
+    private RentCompanyReplica(InetSocketAddress primary) {
+        this.primary = primary;
+        receiver = new Thread(this::receive, "replica-receiver");
+        applier = new Thread(this::applyAll, "replica-applier");
+        receiver.setDaemon(true);
+        applier.setDaemon(true);
+    }
+
+    /**
+     * Starts following the primary; the replica is empty until its snapshot or records arrive.
+     */
+    public static RentCompanyReplica connect(String host, int port) {
+        RentCompanyReplica res = new RentCompanyReplica(new InetSocketAddress(host, port));
+        res.applier.start();
+        res.receiver.start();
+        return res;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return last sequence of the primary known to the replica
+     */
+    public long getPrimarySequence() {
+        return primarySequence;
+    }
+
+    /**
+     * @return records received or announced by the primary and not applied yet
+     */
+    public long getLag() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * @return age of the oldest record received and not applied yet, 0 when nothing waits
+     */
+    public long getLagMillis() {
+        Message next = received.peek();
+        return next == null || next.record() == null ? 0 : Math.max(0, System.currentTimeMillis() - next.millis());
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Waits until the record {@code sequence} of the primary is applied.
+     * @return false if the time is out
+     */
+    public boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (progress) {
+            while (appliedSequence < sequence) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(progress, left);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        receiver.interrupt();
+        applier.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                //уже закрыт
+            }
+        }
+    }
+
+    private void receive() {
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(primary, 5_000);
+                //Свободный порт основного на loopback: сокет может соединиться сам с собой
+                if (s.getLocalPort() == s.getPort() && s.getLocalAddress().equals(s.getInetAddress()))
+                    throw new IOException("connected to itself, the primary is down");
+                s.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+                //Продолжение с последней принятой записи, даже если она еще не применена
+                long after = receivedSequence;
+                out.writeInt(ReplicationPrimary.MAGIC);
+                out.writeLong(epoch);
+                out.writeLong(after);
+                out.flush();
+                connected = true;
+                long acked = after;
+                while (!closed) {
+                    byte type = in.readByte();
+                    switch (type) {
+                        case ReplicationPrimary.SNAPSHOT -> {
+                            long snapshotEpoch = in.readLong();
+                            byte[] bytes = new byte[in.readInt()];
+                            in.readFully(bytes);
+                            CompanySnapshot snapshot = CompanySnapshot.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                            received.put(new Message(snapshot.journalSequence, System.currentTimeMillis(), null,
+                                    RentCompanyConcurrent.fromSnapshot(snapshot)));
+                            //Эпоха - только вместе со снимком: обрыв до него не даст продолжить чужой хвост
+                            epoch = snapshotEpoch;
+                            receivedSequence = snapshot.journalSequence;
+                            primarySequence = snapshot.journalSequence;
+                        }
+                        case ReplicationPrimary.RECORD -> {
+                            long sequence = in.readLong();
+                            long millis = in.readLong();
+                            byte[] record = new byte[in.readInt()];
+                            in.readFully(record);
+                            received.put(new Message(sequence, millis, record, null));
+                            receivedSequence = sequence;
+                            primarySequence = Math.max(primarySequence, sequence);
+                        }
+                        case ReplicationPrimary.HEARTBEAT -> {
+                            primarySequence = in.readLong();
+                            in.readLong();
+                        }
+                        default -> throw new IOException("unknown replication message " + type);
+                    }
+                    //Подтверждение примененного - когда поток от основного стих
+                    if (in.available() == 0 && appliedSequence != acked) {
+                        acked = appliedSequence;
+                        out.writeLong(acked);
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                connected = false;
+                if (closed) return;
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                connected = false;
+            }
+        }
+    }
+
+    private void applyAll() {
+        try {
+            while (!closed) {
+                Message message = received.take();
+                if (message.company() != null) {
+                    company = message.company();
+                } else if (message.sequence() > appliedSequence) {
+                    JournaledRentCompany.replay(company,
+                            new DataInputStream(new ByteArrayInputStream(message.record())));
+                } else {
+                    continue; //уже в снимке
+                }
+                synchronized (progress) {
+                    appliedSequence = message.sequence();
+                    progress.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            //закрыта
+        } catch (IOException e) {
+            //Запись, которую реплика не понимает: дальше применять нельзя
+            System.out.println("replica stopped at " + appliedSequence + " " + e.getMessage());
+            close();
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("replica is read-only, write to the primary");
+    }
+
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        Map<String, Long> res = new LinkedHashMap<>(company instanceof Measurable measurable ?
+                measurable.getIndexSizes() : Map.of());
+        res.put("replicationLag", getLag());
+        return res;
+    }
+
+    @Override
+    public int getGasPrice() {
+        return company.getGasPrice();
+    }
+
+    @Override
+    public void setGasPrice(int price) {
+        throw readOnly();
+    }
+
+    @Override
+    public int getFinePercent() {
+        return company.getFinePercent();
+    }
+
+    @Override
+    public void setFinePercent(int finePercent) {
+        throw readOnly();
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        throw readOnly();
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return company.getModel(modelName);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        throw readOnly();
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        return company.getCar(regNumber);
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        throw readOnly();
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return company.getDriver(licenseId);
+    }
+
+    @Override
+    public List<CarsReturnCode> addModels(Collection<Model> models) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> cars) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> records) {
+        throw readOnly();
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return company.getCarByDrivers(licenseId);
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return company.getDriversByCars(regNumber);
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return company.getCarsByModel(modelName);
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return company.countCarsByModel(modelName);
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return company.getAnyCarByModel(modelName);
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return company.getRentedCars();
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return company.getRentRecordsAtDates(from, to);
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        return company.getRentRecordsActiveAtDates(from, to);
+    }
+
+    @Override
+    public Stream<Car> streamCarByDrivers(long licenseId) {
+        return company.streamCarByDrivers(licenseId);
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        return company.streamDriversByCars(regNumber);
+    }
+
+    @Override
+    public Stream<Car> streamCarsByModel(String modelName) {
+        return company.streamCarsByModel(modelName);
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return company.streamRentRecordsAtDates(from, to);
+    }
+
+    @Override
+    public Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return company.getCarByDrivers(licenseId, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return company.getDriversByCars(regNumber, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        return company.getCarsByModel(modelName, pageSize, pageToken);
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return company.getRentRecordsAtDates(from, to, pageSize, pageToken);
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String model) {
+        throw readOnly();
+    }
+
+    @Override
+    public int removeModel(String model, Consumer<? super RemovedCarData> action) {
+        throw readOnly();
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        throw readOnly();
+    }
+
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        throw readOnly();
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        throw readOnly();
+    }
+
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        return company.findFreeCar(modelName, from, to);
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return company.getMostPopularCarModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return company.getMostProfitableCarModels(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return company.getMostActiveDrivers(n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return company.getRevenueTotals(from, to);
+    }
+}
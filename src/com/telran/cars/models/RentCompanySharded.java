@@ -0,0 +1,563 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.utils.Measurable;
+import com.telran.utils.Persistable;
+
+import java.io.Closeable;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Company split into {@link RentCompanyEmbedded} shards by hash of reg number: a car, its records
+ * and its reservations live in one shard, models, drivers and the tariffs are copied to every shard.
+ * Calls about one car go to its shard only. Queries about many cars run on all shards at once,
+ * the calling thread takes the first shard and a pool the others, and their results are merged:
+ * records by rent date, cars and removed data shard after shard, revenue totals summed.
+ * Batches are split by shard and every part runs on its shard in parallel.
+ * The day of the reservation calendars is moved on every shard by a rent or return in any of them.
+ * The reports and revenue totals combine the counters of the shards, the records are not read.
+ * A page pulls from every shard only the records it needs: its token keeps the position in every shard.
+ * <p>
+ * Not thread-safe, as {@link RentCompanyEmbedded}: one call at a time, whatever the number of shards.
+ * {@link #save} writes one ordinary snapshot, so the file can be restored by any company
+ * and by {@link #restoreFromFile} with any number of shards.
+ */
+public class RentCompanySharded implements IRentCompany, Persistable, Measurable, Closeable {
+    private final RentCompanyEmbedded[] shards;
+    private transient ExecutorService executor;
+
+    public RentCompanySharded(int shards) {
+        this(newShards(shards));
+    }
+
+    private RentCompanySharded(RentCompanyEmbedded[] shards) {
+        this.shards = shards;
+    }
+
+    private static RentCompanyEmbedded[] newShards(int count) {
+        if (count <= 0) throw new IllegalArgumentException("number of shards must be positive " + count);
+        RentCompanyEmbedded[] res = new RentCompanyEmbedded[count];
+        for (int i = 0; i < count; i++)
+            res[i] = new RentCompanyEmbedded();
+        return res;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return index of the shard of the car, the same for the company and for {@link #restoreFromFile}
+     */
+    public static int shardOf(String regNumber, int shards) {
+        if (regNumber == null) return 0;
+        int h = regNumber.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    private RentCompanyEmbedded shard(String regNumber) {
+        return shards[shardOf(regNumber, shards.length)];
+    }
+
+    //Потоки пула - демоны: незакрытая компания не держит JVM
+    private ExecutorService executor() {
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(shards.length - 1, r -> {
+                Thread thread = new Thread(r, "rent-shard");
+                thread.setDaemon(true);
+                return thread;
+            });
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdown();
+    }
+
+    /**
+     * Runs the call on every shard, the first one on the calling thread.
+     * Waits for all shards even if one fails, so no shard is still busy when the next call comes.
+     * @return results by shard index
+     */
+    private <T> List<T> scatter(IntFunction<T> call) {
+        List<T> res = new ArrayList<>(Collections.nCopies(shards.length, null));
+        List<CompletableFuture<T>> futures = new ArrayList<>(Collections.nCopies(shards.length, null));
+        for (int i = 1; i < shards.length; i++) {
+            int shard = i;
+            futures.set(i, CompletableFuture.supplyAsync(() -> call.apply(shard), executor()));
+        }
+        RuntimeException failure = null;
+        try {
+            res.set(0, call.apply(0));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (int i = 1; i < shards.length; i++) {
+            try {
+                res.set(i, futures.get(i).join());
+            } catch (CompletionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        if (failure != null) throw failure;
+        return res;
+    }
+
+    private <T> List<T> all(Function<? super RentCompanyEmbedded, T> call) {
+        return scatter(i -> call.apply(shards[i]));
+    }
+
+    private <T> List<T> concat(Function<? super RentCompanyEmbedded, ? extends Collection<T>> call) {
+        List<T> res = new ArrayList<>();
+        all(call).forEach(res::addAll);
+        return res;
+    }
+
+    //Записи каждого шарда уже по дате аренды: TimSort сливает готовые отрезки
+    private static List<RentRecord> byRentDate(List<RentRecord> records) {
+        records.sort(Comparator.comparing(RentRecord::getRentDate));
+        return records;
+    }
+
+    /**
+     * Page of records merged by rent date; the token is the number of records taken from every shard.
+     * @param records records of a shard in order of rent date
+     */
+    private <T> Page<T> pageByRentDate(IntFunction<Stream<RentRecord>> records, Function<RentRecord, T> item,
+                                       int pageSize, String pageToken) {
+        long[] offsets = pageToken == null ? new long[shards.length] : Page.decodeToken(pageToken, shards.length);
+        List<Iterator<RentRecord>> parts = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++)
+            parts.add(records.apply(s).skip(offsets[s]).iterator());
+        RentDateMerge merge = new RentDateMerge(parts);
+        List<T> items = Page.take(merge, pageSize).stream().map(item).toList();
+        if (!merge.hasNext()) return new Page<>(items, null);
+        for (int s = 0; s < shards.length; s++)
+            offsets[s] += merge.taken[s];
+        return new Page<>(items, Page.encodeToken(offsets));
+    }
+
+    /**
+     * Positions of the items of a batch by shard, in the order of the batch.
+     */
+    private <T> int[][] partition(List<T> items, Function<T, String> regNumber) {
+        int[] owners = new int[items.size()];
+        int[] counts = new int[shards.length];
+        for (int i = 0; i < owners.length; i++)
+            counts[owners[i] = shardOf(regNumber.apply(items.get(i)), shards.length)]++;
+        int[][] res = new int[shards.length][];
+        for (int s = 0; s < shards.length; s++)
+            res[s] = new int[counts[s]];
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < owners.length; i++)
+            res[owners[i]][counts[owners[i]]++] = i;
+        return res;
+    }
+
+    private static <T> List<T> select(List<T> items, int[] positions) {
+        List<T> res = new ArrayList<>(positions.length);
+        for (int position : positions)
+            res.add(items.get(position));
+        return res;
+    }
+
+    private <T> List<CarsReturnCode> partitioned(Collection<T> batch, Function<T, String> regNumber,
+                                                 BiFunction<RentCompanyEmbedded, List<T>, List<CarsReturnCode>> call) {
+        List<T> items = new ArrayList<>(batch);
+        int[][] positions = partition(items, regNumber);
+        List<List<CarsReturnCode>> codes = scatter(s -> positions[s].length == 0 ? List.of() :
+                call.apply(shards[s], select(items, positions[s])));
+        CarsReturnCode[] res = new CarsReturnCode[items.size()];
+        for (int s = 0; s < shards.length; s++)
+            for (int i = 0; i < positions[s].length; i++)
+                res[positions[s][i]] = codes.get(s).get(i);
+        return new ArrayList<>(Arrays.asList(res));
+    }
+
+    @Override
+    public int getGasPrice() {
+        return shards[0].getGasPrice();
+    }
+
+    @Override
+    public void setGasPrice(int price) {
+        for (RentCompanyEmbedded shard : shards)
+            shard.setGasPrice(price);
+    }
+
+    @Override
+    public int getFinePercent() {
+        return shards[0].getFinePercent();
+    }
+
+    @Override
+    public void setFinePercent(int finePercent) {
+        for (RentCompanyEmbedded shard : shards)
+            shard.setFinePercent(finePercent);
+    }
+
+    //Модели и водители есть в каждом шарде: код ответа у всех один
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        CarsReturnCode res = null;
+        for (RentCompanyEmbedded shard : shards)
+            res = shard.addModel(model);
+        return res;
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return shards[0].getModel(modelName);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        return shard(car.getRegNumber()).addCar(car);
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        return shard(regNumber).getCar(regNumber);
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        CarsReturnCode res = null;
+        for (RentCompanyEmbedded shard : shards)
+            res = shard.addDriver(driver);
+        return res;
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return shards[0].getDriver(licenseId);
+    }
+
+    @Override
+    public List<CarsReturnCode> addModels(Collection<Model> models) {
+        return all(shard -> shard.addModels(models)).get(0);
+    }
+
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> cars) {
+        return partitioned(cars, Car::getRegNumber, IRentCompany::addCars);
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        return all(shard -> shard.addDrivers(drivers)).get(0);
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> records) {
+        return partitioned(records, RentRecord::getRegNumber, IRentCompany::importRentRecords);
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        CarsReturnCode res = shard(regNumber).rentCar(regNumber, licenseId, rentDate, rentDays);
+        if (res == CarsReturnCode.OK) advance(rentDate);
+        return res;
+    }
+
+    //День календаря броней - общий для шардов, как у одной компании
+    private void advance(LocalDate day) {
+        for (RentCompanyEmbedded shard : shards)
+            shard.reservations.advance((int) day.toEpochDay());
+    }
+
+    /**
+     * Cars in order of the first rent of the driver, as one company returns them;
+     * the cars first rented on the same day come shard after shard.
+     */
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        List<RentRecord> firstRents = byRentDate(concat(shard -> {
+            Map<String, RentRecord> res = new LinkedHashMap<>();
+            shard.streamDriverRecords(licenseId).forEach(r -> res.putIfAbsent(r.getRegNumber(), r));
+            return res.values();
+        }));
+        List<Car> res = new ArrayList<>(firstRents.size());
+        for (RentRecord record : firstRents)
+            res.add(getCar(record.getRegNumber()));
+        return res;
+    }
+
+    @Override
+    public Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return pageByRentDate(s -> {
+            Set<String> seen = new HashSet<>();
+            return shards[s].streamDriverRecords(licenseId).filter(r -> seen.add(r.getRegNumber()));
+        }, r -> getCar(r.getRegNumber()), pageSize, pageToken);
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return shard(regNumber).getDriversByCars(regNumber);
+    }
+
+    @Override
+    public Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return shard(regNumber).getDriversByCars(regNumber, pageSize, pageToken);
+    }
+
+    @Override
+    public Stream<Driver> streamDriversByCars(String regNumber) {
+        return shard(regNumber).streamDriversByCars(regNumber);
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return concat(shard -> shard.getCarsByModel(modelName));
+    }
+
+    /**
+     * Cars shard after shard, as {@link #getCarsByModel(String)}; the token is the shard and the position in it.
+     */
+    @Override
+    public Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        if (pageSize <= 0) throw new IllegalArgumentException("page size must be positive " + pageSize);
+        long[] position = pageToken == null ? new long[2] : Page.decodeToken(pageToken, 2);
+        if (position[0] < 0 || position[0] >= shards.length || position[1] < 0)
+            throw new IllegalArgumentException("wrong page token " + pageToken);
+        List<Car> items = new ArrayList<>();
+        long offset = position[1];
+        for (int s = (int) position[0]; s < shards.length; s++, offset = 0) {
+            Iterator<Car> it = shards[s].streamCarsByModel(modelName).skip(offset).iterator();
+            for (; it.hasNext(); offset++) {
+                if (items.size() == pageSize) return new Page<>(items, Page.encodeToken(s, offset));
+                items.add(it.next());
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return all(shard -> shard.countCarsByModel(modelName)).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    //Шарды по очереди: обычно свободная машина находится в первом
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        for (RentCompanyEmbedded shard : shards) {
+            Car car = shard.getAnyCarByModel(modelName);
+            if (car != null) return car;
+        }
+        return null;
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return concat(IRentCompany::getRentedCars);
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return byRentDate(concat(shard -> shard.getRentRecordsAtDates(from, to)));
+    }
+
+    @Override
+    public Stream<RentRecord> streamRentRecordsAtDates(LocalDate from, LocalDate to) {
+        //Записи читаются из шардов по мере потребления, в памяти - по одной на шард
+        List<Stream<RentRecord>> parts = new ArrayList<>(shards.length);
+        for (RentCompanyEmbedded shard : shards)
+            parts.add(shard.streamRentRecordsAtDates(from, to));
+        return RentDateMerge.stream(parts.stream().map(Stream::iterator).toList())
+                .onClose(() -> parts.forEach(Stream::close));
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return pageByRentDate(s -> shards[s].streamRentRecordsAtDates(from, to), r -> r, pageSize, pageToken);
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        return byRentDate(concat(shard -> shard.getRentRecordsActiveAtDates(from, to)));
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        return shard(regNumber).removeCar(regNumber);
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String model) {
+        return concat(shard -> shard.removeModel(model));
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        RemovedCarData res = shard(regNumber).returnCar(regNumber, licensedId, returnDate, damages, tankPercent);
+        if (res.getCar() != null) advance(returnDate);
+        return res;
+    }
+
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        AbstractRentCompany.checkReturns(returns); //до раздачи частей шардам
+        int[][] positions = partition(returns, CarReturn::getRegNumber);
+        List<ReturnResults> results = scatter(s -> positions[s].length == 0 ? null :
+                shards[s].returnCars(select(returns, positions[s])));
+        double[] costs = new double[returns.size()];
+        BitSet removed = new BitSet();
+        for (int s = 0; s < shards.length; s++)
+            for (int i = 0; i < positions[s].length; i++) {
+                costs[positions[s][i]] = results.get(s).getCost(i);
+                if (results.get(s).isRemoved(i)) removed.set(positions[s][i]);
+            }
+        LocalDate last = null;
+        for (int i = 0; i < costs.length; i++)
+            if (!Double.isNaN(costs[i]) && (last == null || returns.get(i).getReturnDate().isAfter(last)))
+                last = returns.get(i).getReturnDate();
+        if (last != null) advance(last);
+        return new ReturnResults(costs, removed);
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        return shard(regNumber).reserveCar(regNumber, licenseId, from, days);
+    }
+
+    /**
+     * Free car of the first shard that has one: not always the car added first, as one company finds.
+     */
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        return all(shard -> shard.findFreeCar(modelName, from, to)).stream()
+                .filter(Objects::nonNull)
+                .findFirst().orElse(null);
+    }
+
+    //Отчеты - по счетчикам всех шардов сразу: лучшие n шарда не обязательно лучшие n компании
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return RentAnalytics.popularModels(analytics(), n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return RentAnalytics.profitableModels(analytics(), n, from, to, fromAge, toAge);
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return RentAnalytics.activeDrivers(analytics(), n, from, to, fromAge, toAge, l -> getDriver(l).getBirthYear())
+                .stream()
+                .map(this::getDriver)
+                .toList();
+    }
+
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        List<RevenueRollup> rollups = new ArrayList<>(shards.length);
+        for (RentCompanyEmbedded shard : shards)
+            rollups.add(shard.revenue);
+        return RevenueRollup.totals(rollups, from, to);
+    }
+
+    private List<RentAnalytics> analytics() {
+        List<RentAnalytics> res = new ArrayList<>(shards.length);
+        for (RentCompanyEmbedded shard : shards)
+            res.add(shard.analytics);
+        return res;
+    }
+
+    /**
+     * Sizes summed over the shards; models and drivers are counted in every shard, as they are kept.
+     */
+    @Override
+    public Map<String, Long> getIndexSizes() {
+        Map<String, Long> res = new LinkedHashMap<>();
+        res.put("shards", (long) shards.length);
+        for (RentCompanyEmbedded shard : shards)
+            shard.getIndexSizes().forEach((name, size) -> res.merge(name, size, Long::sum));
+        return res;
+    }
+
+    @Override
+    public void save(String fileName) {
+        try {
+            toSnapshot().write(fileName);
+        } catch (Exception e) {
+            System.out.println("Error in method save " + e.getMessage());
+        }
+    }
+
+    //Модели, водители и тарифы - из первого шарда, машины, записи и брони - из всех, записи слиты по дате аренды
+    CompanySnapshot toSnapshot() {
+        List<CompanySnapshot> parts = Arrays.stream(shards).map(RentCompanyEmbedded::toSnapshot).toList();
+        CompanySnapshot first = parts.get(0);
+        List<Car> cars = new ArrayList<>();
+        List<ReservationCalendar.Reservation> reservations = new ArrayList<>();
+        for (CompanySnapshot part : parts) {
+            cars.addAll(part.cars);
+            reservations.addAll(part.reservations);
+        }
+        Iterable<RentRecord> records = () -> new RentDateMerge(parts.stream()
+                .map(part -> part.records.iterator())
+                .toList());
+        CompanySnapshot res = new CompanySnapshot(first.finePercent, first.gasPrice, first.models, first.drivers,
+                cars, records);
+        res.reservations = reservations;
+        res.today = parts.stream().mapToInt(part -> part.today).max().getAsInt();
+        return res;
+    }
+
+    static RentCompanySharded fromSnapshot(CompanySnapshot snapshot, int count) {
+        List<List<Car>> cars = lists(count);
+        List<List<RentRecord>> records = lists(count);
+        List<List<ReservationCalendar.Reservation>> reservations = lists(count);
+        snapshot.cars.forEach(c -> cars.get(shardOf(c.getRegNumber(), count)).add(c));
+        snapshot.records.forEach(r -> records.get(shardOf(r.getRegNumber(), count)).add(r));
+        snapshot.reservations.forEach(r -> reservations.get(shardOf(r.regNumber(), count)).add(r));
+        RentCompanyEmbedded[] shards = new RentCompanyEmbedded[count];
+        for (int i = 0; i < count; i++) {
+            CompanySnapshot part = new CompanySnapshot(snapshot.finePercent, snapshot.gasPrice,
+                    snapshot.models, snapshot.drivers, cars.get(i), records.get(i));
+            part.reservations = reservations.get(i);
+            part.today = snapshot.today;
+            shards[i] = RentCompanyEmbedded.fromSnapshot(part);
+        }
+        return new RentCompanySharded(shards);
+    }
+
+    private static <T> List<List<T>> lists(int count) {
+        List<List<T>> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            res.add(new ArrayList<>());
+        return res;
+    }
+
+    /**
+     * Restores a company saved by any company into {@code shards} shards,
+     * the number of shards of the saved company does not matter.
+     */
+    public static RentCompanySharded restoreFromFile(String fileName, int shards) {
+        try {
+            if (CompanySnapshot.isSnapshot(fileName))
+                return fromSnapshot(CompanySnapshot.read(fileName), shards);
+            //Старые форматы: через обычную компанию
+            IRentCompany company = RentCompanyEmbedded.restoreFromFile(fileName);
+            return fromSnapshot(((AbstractRentCompany) company).toSnapshot(), shards);
+        } catch (Exception e) {
+            System.out.println(fileName + " new object has been created " + e.getMessage());
+            return new RentCompanySharded(shards);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.RentRecord;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Merges the records of several iterators, each in order of rent date, into one such order;
+ * records of the same date come in the order of the iterators, as after a stable sort of their concatenation.
+ * Holds one record per iterator, so the merge takes no more memory than its sources.
+ * Counts the records taken from every iterator, for the tokens of the pages.
+ */
+class RentDateMerge implements Iterator<RentRecord> {
+    private final List<Iterator<RentRecord>> parts;
+    private final RentRecord[] heads;
+    private final PriorityQueue<Integer> queue;
+    private int lastPart = -1;
+    final long[] taken;
+
+    RentDateMerge(List<Iterator<RentRecord>> parts) {
+        this.parts = parts;
+        heads = new RentRecord[parts.size()];
+        taken = new long[parts.size()];
+        queue = new PriorityQueue<>(Comparator.comparing((Integer i) -> heads[i].getRentDate())
+                .thenComparing(Comparator.naturalOrder()));
+        for (int i = 0; i < heads.length; i++)
+            pull(i);
+    }
+
+    static Stream<RentRecord> stream(List<Iterator<RentRecord>> parts) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new RentDateMerge(parts),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private void pull(int part) {
+        if (parts.get(part).hasNext()) {
+            heads[part] = parts.get(part).next();
+            queue.add(part);
+        }
+    }
+
+    /**
+     * @return index of the iterator of the record returned last
+     */
+    int lastPart() {
+        return lastPart;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !queue.isEmpty();
+    }
+
+    @Override
+    public RentRecord next() {
+        if (queue.isEmpty()) throw new NoSuchElementException();
+        lastPart = queue.poll();
+        RentRecord res = heads[lastPart];
+        taken[lastPart]++;
+        pull(lastPart);
+        return res;
+    }
+}
@@ -0,0 +1,230 @@
+package com.telran.cars.models;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships the journal of a {@link JournaledRentCompany} to {@link RentCompanyReplica}s over TCP.
+ * Every committed record is queued for the connected replicas in the order of the journal, as it is applied;
+ * a record the journal failed to commit is never sent. The queues are written to the sockets by a thread
+ * per replica, no socket is touched with the mutations stopped.
+ * A replica that connects tells the epoch and the last sequence it has. The epoch names one opening
+ * of the journal: after a restart of the primary the same sequence may be another record.
+ * If the epoch is the primary's and the last {@link #BACKLOG} records kept in memory go back that far,
+ * the replica gets the records after its sequence, otherwise a snapshot with the epoch and then
+ * the records committed since the snapshot was taken. Both are chosen with the mutations stopped,
+ * so nothing is missed or sent twice.
+ * <pre>
+ * replica -&gt; primary  int magic "RCRP", long epoch (0 without state), long last sequence (-1 without state),
+ *                     then long acks of applied sequence
+ * primary -&gt; replica  byte SNAPSHOT, long epoch, int length, snapshot of {@link CompanySnapshot}
+ *                     byte RECORD, long sequence, long millis of commit, int length, journal record
+ *                     byte HEARTBEAT, long last sequence, long millis, when no record is sent for a while
+ * </pre>
+ * A replica that falls {@link #QUEUE_SIZE} records behind is disconnected, it reconnects and catches up.
+ * The primary listens on the loopback interface unless an address is given; there is no authentication.
+ */
+public class ReplicationPrimary implements Closeable {
+    public static final int MAGIC = 0x52435250; //RCRP
+    static final long NO_EPOCH = 0;
+    static final byte SNAPSHOT = 1;
+    static final byte RECORD = 2;
+    static final byte HEARTBEAT = 3;
+    static final int BACKLOG = 100_000;
+    static final int QUEUE_SIZE = 100_000;
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private final JournaledRentCompany primary;
+    private final ServerSocket serverSocket;
+    private final JournaledRentCompany.RecordListener listener = this::appended;
+    //Хвост журнала в памяти и реплики: меняются при применении записи или при остановленных мутациях
+    private final ArrayDeque<Entry> backlog = new ArrayDeque<>();
+    private long backlogBase;
+    private final Set<Connection> connections = new LinkedHashSet<>();
+    private volatile boolean closed;
+
+    record Entry(long sequence, long millis, byte[] record) {
+    }
+
+    public ReplicationPrimary(JournaledRentCompany primary, int port) throws IOException {
+        this(primary, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public ReplicationPrimary(JournaledRentCompany primary, InetSocketAddress address) throws IOException {
+        this.primary = primary;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+    }
+
+    public void start() {
+        primary.whileStopped(() -> {
+            backlogBase = primary.lastSequence();
+            primary.addListener(listener);
+            return null;
+        });
+        daemon(this::accept, "replication-accept").start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return records every connected replica is behind the primary by its address, as it acknowledged them
+     */
+    public Map<String, Long> getReplicaLags() {
+        long last = primary.lastSequence();
+        Map<String, Long> res = new LinkedHashMap<>();
+        primary.whileStopped(() -> {
+            connections.forEach(c -> res.put(c.name, Math.max(0, last - c.acked)));
+            return null;
+        });
+        return res;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        primary.removeListener(listener);
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //закрываем в любом случае
+        }
+        List<Connection> open = primary.whileStopped(() -> new ArrayList<>(connections));
+        open.forEach(Connection::close);
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    //под applyLock журнала, после commit: только в очереди, сокеты пишут потоки реплик
+    private void appended(long sequence, byte[] record) {
+        Entry entry = new Entry(sequence, System.currentTimeMillis(), record);
+        backlog.addLast(entry);
+        if (backlog.size() > BACKLOG)
+            backlogBase = backlog.removeFirst().sequence();
+        for (Connection connection : connections)
+            if (!connection.queue.offer(entry))
+                connection.overflowed = true;
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                daemon(connection::send, "replication-send").start();
+            } catch (IOException e) {
+                if (!closed) System.out.println("replication accept failed " + e.getMessage());
+            }
+        }
+    }
+
+    private class Connection {
+        final Socket socket;
+        final String name;
+        final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        volatile boolean overflowed;
+        volatile long acked = -1;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+            name = socket.getRemoteSocketAddress().toString();
+        }
+
+        void send() {
+            CompanySnapshot snapshot = null;
+            try (socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                if (in.readInt() != MAGIC) return;
+                long epoch = in.readLong();
+                long after = in.readLong();
+                //Хвост или снимок - при остановленных мутациях, дальше записи идут в очередь
+                snapshot = primary.whileStopped(() -> {
+                    connections.add(this);
+                    if (epoch == primary.epoch() && after >= backlogBase && after <= primary.lastSequence()) {
+                        backlog.stream().filter(e -> e.sequence() > after).forEach(queue::add);
+                        acked = after;
+                        return null;
+                    }
+                    return primary.freeze();
+                });
+                daemon(() -> readAcks(in), "replication-acks").start();
+                if (snapshot != null) {
+                    sendSnapshot(out, snapshot);
+                    release(snapshot);
+                    snapshot = null;
+                }
+                while (!closed && !overflowed) {
+                    Entry entry = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (entry == null) {
+                        out.writeByte(HEARTBEAT);
+                        out.writeLong(primary.lastSequence());
+                        out.writeLong(System.currentTimeMillis());
+                    }
+                    //Пачкой все, что накопилось, потом один flush
+                    for (; entry != null; entry = queue.poll()) {
+                        out.writeByte(RECORD);
+                        out.writeLong(entry.sequence());
+                        out.writeLong(entry.millis());
+                        out.writeInt(entry.record().length);
+                        out.write(entry.record());
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                //реплика отключилась: переподключится сама
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (snapshot != null) release(snapshot);
+                primary.whileStopped(() -> connections.remove(this));
+            }
+        }
+
+        private void sendSnapshot(DataOutputStream out, CompanySnapshot snapshot) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+            snapshot.write(bytes);
+            out.writeByte(SNAPSHOT);
+            out.writeLong(primary.epoch());
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.flush();
+        }
+
+        private void release(CompanySnapshot snapshot) {
+            primary.whileStopped(() -> {
+                snapshot.release();
+                return null;
+            });
+        }
+
+        private void readAcks(DataInputStream in) {
+            try {
+                while (true)
+                    acked = in.readLong();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //уже закрыт
+            }
+        }
+    }
+}
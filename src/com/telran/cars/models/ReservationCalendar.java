@@ -0,0 +1,355 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.enums.CarsReturnCode;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Booked days of the cars: future reservations and the days of the open rentals.
+ * Per model the cars get slots and every booked day a bitmap of the slots, so
+ * "a car of the model free for [from, to)" ORs one word of 64 cars over the days
+ * and stops at the first word with a free car: O(days) words while most of the fleet is free,
+ * not one check per car. A day bitmap is dropped once it has no booked car.
+ * Per car the reservations are kept by first day to find the conflicting ones and the ones a rent consumes.
+ * The calendar has no clock of its own: its day is the latest day of a rent or a return. A reservation
+ * whose days are all before it is dropped at the next call for its model, and a rental not returned
+ * by then is overdue: its car is taken from the rent day until it comes back.
+ * The days of a model are guarded by its {@link ModelDays} monitor, so the concurrent company,
+ * which updates the calendar from several car stripes, serializes only the updates of one model.
+ */
+class ReservationCalendar implements Serializable {
+    private final Map<String, ModelDays> models = new ConcurrentHashMap<>(); //key model name
+    private final Map<String, CarDays> cars = new ConcurrentHashMap<>(); //key reg number
+    private final LongAdder reservationsCount = new LongAdder();
+    private final AtomicInteger today = new AtomicInteger(Integer.MIN_VALUE); //latest day of a rent or return
+
+    record Reservation(String regNumber, long licenseId, int fromDay, int days) implements Serializable {
+        int toDay() {
+            return fromDay + days;
+        }
+    }
+
+    private static class ModelDays implements Serializable {
+        final ArrayList<String> slots = new ArrayList<>(); //slot -> reg number, null after removal
+        long[] live = new long[1]; //slots of the cars not removed
+        long[] rented = new long[1]; //slots of the cars in an open rental
+        final Map<Integer, DayBits> days = new HashMap<>(); //key epoch day
+        final TreeMap<Long, Reservation> ends = new TreeMap<>(); //key day after the reservation << 32 | slot
+    }
+
+    private static class DayBits implements Serializable {
+        long[] words;
+        int count;
+
+        DayBits(int words) {
+            this.words = new long[words];
+        }
+
+        boolean set(int slot) {
+            int word = slot >>> 6;
+            if (word >= words.length) words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            long bit = 1L << slot;
+            if ((words[word] & bit) != 0) return false;
+            words[word] |= bit;
+            count++;
+            return true;
+        }
+
+        void clear(int slot) {
+            int word = slot >>> 6;
+            long bit = 1L << slot;
+            if (word < words.length && (words[word] & bit) != 0) {
+                words[word] &= ~bit;
+                count--;
+            }
+        }
+
+        long word(int word) {
+            return word < words.length ? words[word] : 0;
+        }
+    }
+
+    private static class CarDays implements Serializable {
+        final ModelDays model;
+        final int slot;
+        final TreeMap<Integer, Reservation> reservations = new TreeMap<>(); //key first day
+        int rentFrom, rentTo; //paid days of the open rental
+
+        CarDays(ModelDays model, int slot) {
+            this.model = model;
+            this.slot = slot;
+        }
+    }
+
+    void addCar(String regNumber, String modelName) {
+        ModelDays model = models.computeIfAbsent(modelName, k -> new ModelDays());
+        synchronized (model) {
+            addCar(regNumber, model);
+        }
+    }
+
+    /**
+     * Adds the cars of one model from a batch: the slots of the model grow once for all of them.
+     */
+    void addCars(String modelName, Collection<String> regNumbers) {
+        ModelDays model = models.computeIfAbsent(modelName, k -> new ModelDays());
+        synchronized (model) {
+            int size = model.slots.size() + regNumbers.size();
+            model.slots.ensureCapacity(size);
+            if ((size + 63) >>> 6 > model.live.length) model.live = Arrays.copyOf(model.live, (size + 63) >>> 6);
+            for (String regNumber : regNumbers)
+                addCar(regNumber, model);
+        }
+    }
+
+    //под монитором модели
+    private void addCar(String regNumber, ModelDays model) {
+        if (cars.containsKey(regNumber)) return;
+        int slot = model.slots.size();
+        model.slots.add(regNumber);
+        if (slot >>> 6 >= model.live.length) model.live = Arrays.copyOf(model.live, model.live.length * 2);
+        if (model.rented.length < model.live.length) model.rented = Arrays.copyOf(model.rented, model.live.length);
+        model.live[slot >>> 6] |= 1L << slot;
+        cars.put(regNumber, new CarDays(model, slot));
+    }
+
+    /**
+     * Frees every day of a removed car, its reservations are dropped.
+     */
+    void removeCar(String regNumber) {
+        CarDays car = cars.get(regNumber);
+        if (car == null) return;
+        synchronized (car.model) {
+            if (!cars.remove(regNumber, car)) return;
+            new ArrayList<>(car.reservations.values()).forEach(r -> drop(car, r));
+            endRental(car);
+            car.model.live[car.slot >>> 6] &= ~(1L << car.slot);
+            car.model.slots.set(car.slot, null);
+        }
+    }
+
+    //Машина календаря под монитором ее модели; null, если ее удалили до захвата монитора
+    private CarDays locked(String regNumber, CarDays car) {
+        return cars.get(regNumber) == car ? car : null;
+    }
+
+    /**
+     * @return OK, WRONG_PERIOD if the days are not positive or end by the day of the calendar,
+     * CAR_RESERVED if a day is booked, NO_CAR if the car is not in the calendar
+     */
+    CarsReturnCode reserve(String regNumber, long licenseId, int fromDay, int days) {
+        CarDays car = cars.get(regNumber);
+        if (car == null) return CarsReturnCode.NO_CAR;
+        if (days <= 0 || (long) fromDay + days <= today.get()) return CarsReturnCode.WRONG_PERIOD;
+        synchronized (car.model) {
+            if (locked(regNumber, car) == null) return CarsReturnCode.NO_CAR;
+            expire(car.model);
+            int toDay = fromDay + days;
+            if (isRented(car, fromDay, toDay) || !overlapping(car, fromDay, toDay).isEmpty())
+                return CarsReturnCode.CAR_RESERVED;
+            add(car, new Reservation(regNumber, licenseId, fromDay, days));
+            return CarsReturnCode.OK;
+        }
+    }
+
+    /**
+     * Books the days of a rent if they are free. The reservations of the driver the rent overlaps
+     * are consumed: their days are free for the rent. The rent day becomes the day of the calendar if later.
+     * @return false if a day is booked by a reservation of another driver or a rental
+     */
+    boolean rent(String regNumber, long licenseId, int fromDay, int days) {
+        CarDays car = cars.get(regNumber);
+        if (car == null) return true;
+        synchronized (car.model) {
+            if (locked(regNumber, car) == null) return true;
+            expire(car.model);
+            int toDay = fromDay + days;
+            if (isRented(car, fromDay, toDay)) return false;
+            List<Reservation> overlapping = overlapping(car, fromDay, toDay);
+            for (Reservation r : overlapping)
+                if (r.licenseId() != licenseId) return false;
+            overlapping.forEach(r -> drop(car, r));
+            rented(car, fromDay, days);
+            advance(fromDay);
+            return true;
+        }
+    }
+
+    /**
+     * Books the days of an open rental without checks: imported records and snapshots.
+     */
+    void rented(String regNumber, int fromDay, int days) {
+        CarDays car = cars.get(regNumber);
+        if (car == null) return;
+        synchronized (car.model) {
+            if (locked(regNumber, car) != null) rented(car, fromDay, days);
+        }
+    }
+
+    private static void rented(CarDays car, int fromDay, int days) {
+        endRental(car);
+        car.rentFrom = fromDay;
+        car.rentTo = fromDay + days;
+        car.model.rented[car.slot >>> 6] |= 1L << car.slot;
+        book(car, car.rentFrom, car.rentTo);
+    }
+
+    private static void endRental(CarDays car) {
+        free(car, car.rentFrom, car.rentTo);
+        car.rentFrom = car.rentTo = 0;
+        car.model.rented[car.slot >>> 6] &= ~(1L << car.slot);
+    }
+
+    /**
+     * Adds a reservation without checks: snapshots. A reservation over by the day of the calendar is dropped.
+     */
+    void restore(Reservation reservation) {
+        CarDays car = cars.get(reservation.regNumber());
+        if (car == null || reservation.toDay() <= today.get()) return;
+        synchronized (car.model) {
+            if (locked(reservation.regNumber(), car) == null
+                    || car.reservations.containsKey(reservation.fromDay())) return;
+            add(car, reservation);
+        }
+    }
+
+    /**
+     * Frees the days of the open rental. The return day becomes the day of the calendar if later.
+     */
+    void returned(String regNumber, int returnDay) {
+        advance(returnDay);
+        CarDays car = cars.get(regNumber);
+        if (car == null) return;
+        synchronized (car.model) {
+            if (locked(regNumber, car) != null) endRental(car);
+        }
+    }
+
+    /**
+     * @return latest day of a rent or return, Integer.MIN_VALUE before the first one
+     */
+    int today() {
+        return today.get();
+    }
+
+    /**
+     * Moves the day of the calendar forward: rents, returns and the day of a snapshot before its reservations.
+     */
+    void advance(int day) {
+        today.accumulateAndGet(day, Math::max);
+    }
+
+    /**
+     * @return reg number of a car of the model with no booked day in [fromDay, toDay)
+     * and not overdue, null if there is none
+     */
+    String findFree(String modelName, int fromDay, int toDay) {
+        ModelDays model = models.get(modelName);
+        if (model == null) return null;
+        synchronized (model) {
+            expire(model);
+            return findFree(model, fromDay, toDay);
+        }
+    }
+
+    private String findFree(ModelDays model, int fromDay, int toDay) {
+        List<DayBits> booked = new ArrayList<>();
+        for (int day = fromDay; day < toDay; day++) {
+            DayBits bits = model.days.get(day);
+            if (bits != null) booked.add(bits);
+        }
+        for (int word = 0; word < model.live.length; word++) {
+            long free = model.live[word];
+            for (int i = 0; i < booked.size() && free != 0; i++)
+                free &= ~booked.get(i).word(word);
+            //Дни аренды уже в битах, просроченная занимает машину и после них
+            for (long rented = free & model.rented[word]; rented != 0; rented &= rented - 1) {
+                int slot = word << 6 | Long.numberOfTrailingZeros(rented);
+                if (isRented(cars.get(model.slots.get(slot)), fromDay, toDay)) free &= ~(1L << slot);
+            }
+            if (free != 0)
+                return model.slots.get(word << 6 | Long.numberOfTrailingZeros(free));
+        }
+        return null;
+    }
+
+    /**
+     * @return the reservations not over by the day of the calendar
+     */
+    List<Reservation> reservations() {
+        List<Reservation> res = new ArrayList<>(size());
+        for (ModelDays model : models.values())
+            synchronized (model) {
+                expire(model);
+                res.addAll(model.ends.values());
+            }
+        return res;
+    }
+
+    int size() {
+        return reservationsCount.intValue();
+    }
+
+    //под монитором модели: брони, дни которых прошли, снимаются при следующем обращении к модели
+    private void expire(ModelDays model) {
+        long end = ((long) today.get() + 1) << 32; //ключи броней, кончившихся не позже today
+        for (Map.Entry<Long, Reservation> e = model.ends.firstEntry(); e != null && e.getKey() < end;
+             e = model.ends.firstEntry())
+            drop(cars.get(e.getValue().regNumber()), e.getValue());
+    }
+
+    private void add(CarDays car, Reservation reservation) {
+        car.reservations.put(reservation.fromDay(), reservation);
+        car.model.ends.put(endKey(car, reservation), reservation);
+        reservationsCount.increment();
+        book(car, reservation.fromDay(), reservation.toDay());
+    }
+
+    private void drop(CarDays car, Reservation reservation) {
+        car.reservations.remove(reservation.fromDay());
+        car.model.ends.remove(endKey(car, reservation));
+        reservationsCount.decrement();
+        free(car, reservation.fromDay(), reservation.toDay());
+    }
+
+    private static long endKey(CarDays car, Reservation reservation) {
+        return (long) reservation.toDay() << 32 | car.slot;
+    }
+
+    //Открытая аренда занимает оплаченные дни, просроченная - все дни с начала аренды до возврата
+    private boolean isRented(CarDays car, int fromDay, int toDay) {
+        if ((car.model.rented[car.slot >>> 6] & 1L << car.slot) == 0) return false;
+        long rentTo = car.rentTo <= today.get() ? Long.MAX_VALUE : car.rentTo;
+        return car.rentFrom < toDay && fromDay < rentTo;
+    }
+
+    //Брони машины не пересекаются: с [fromDay, toDay) пересекаются последние брони, начатые до toDay
+    private static List<Reservation> overlapping(CarDays car, int fromDay, int toDay) {
+        List<Reservation> res = new ArrayList<>(1);
+        for (Reservation r : car.reservations.headMap(toDay, false).descendingMap().values()) {
+            if (r.toDay() <= fromDay) break;
+            res.add(r);
+        }
+        return res;
+    }
+
+    private static void book(CarDays car, int fromDay, int toDay) {
+        ModelDays model = car.model;
+        for (int day = fromDay; day < toDay; day++)
+            model.days.computeIfAbsent(day, k -> new DayBits(model.live.length)).set(car.slot);
+    }
+
+    private static void free(CarDays car, int fromDay, int toDay) {
+        ModelDays model = car.model;
+        for (int day = fromDay; day < toDay; day++) {
+            DayBits bits = model.days.get(day);
+            if (bits == null) continue;
+            bits.clear(car.slot);
+            if (bits.count == 0) model.days.remove(day);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.telran.cars.models;
+
+import com.telran.cars.dto.Model;
+import com.telran.cars.dto.RentRecord;
+import com.telran.cars.dto.RevenueTotals;
+import com.telran.utils.FenwickTree;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Totals of the returned records by epoch day of return in a {@link FenwickTree},
+ * so the totals of any period cost O(log days) instead of reading its records.
+ * The cost of a record is split as {@link AbstractRentCompany#computeCost} adds it up: the rent by
+ * the price per day, the gas part stored in the record at the return, the rest is the delay fine.
+ * So a change of the gas price moves nothing between the columns, also when a record is removed or restored.
+ * The trees are striped by car as {@link RentAnalytics} and summed on read.
+ */
+class RevenueRollup implements Serializable {
+    private static final int RETURNS = 0;
+    private static final int RENTED_DAYS = 1;
+    private static final int REVENUE = 2;
+    private static final int RENT_COST = 3;
+    private static final int FINES = 4;
+    private static final int GAS_COST = 5;
+
+    private static final int COLUMNS = 6;
+
+    private final FenwickTree[] stripes; //each guarded by itself
+
+    RevenueRollup() {
+        this(1);
+    }
+
+    /**
+     * @param stripes number of stripes, a power of two
+     */
+    RevenueRollup(int stripes) {
+        this.stripes = new FenwickTree[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = new FenwickTree(COLUMNS);
+    }
+
+    private FenwickTree stripe(RentRecord record) {
+        return stripes[RentAnalytics.stripe(record.getRegNumber(), stripes.length)];
+    }
+
+    void returned(RentRecord record, Model model) {
+        double[] parts = parts(record, model, 1);
+        FenwickTree days = stripe(record);
+        synchronized (days) {
+            days.add(returnDay(record), parts);
+        }
+    }
+
+    void removed(RentRecord record, Model model) {
+        if (record.getReturnDate() == null) return;
+        double[] parts = parts(record, model, -1);
+        FenwickTree days = stripe(record);
+        synchronized (days) {
+            days.add(returnDay(record), parts);
+        }
+    }
+
+    /**
+     * @param from first day of return, null is not bounded
+     * @param to   day after the last day of return, null is not bounded
+     */
+    RevenueTotals totals(LocalDate from, LocalDate to) {
+        return totals(List.of(this), from, to);
+    }
+
+    /**
+     * Totals over several rollups, e.g. of the shards of a company.
+     */
+    static RevenueTotals totals(Collection<RevenueRollup> rollups, LocalDate from, LocalDate to) {
+        int fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        int toDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        double[] sum = new double[COLUMNS];
+        double[] part = new double[COLUMNS];
+        for (RevenueRollup rollup : rollups)
+            for (FenwickTree days : rollup.stripes) {
+                synchronized (days) {
+                    days.sum(fromDay, toDay, part);
+                }
+                for (int c = 0; c < COLUMNS; c++)
+                    sum[c] += part[c];
+            }
+        return new RevenueTotals(from, to, Math.round(sum[RETURNS]), Math.round(sum[RENTED_DAYS]),
+                sum[REVENUE], sum[RENT_COST], sum[FINES], sum[GAS_COST]);
+    }
+
+    /**
+     * @return number of days with returns, a day of several stripes counts once per stripe
+     */
+    int size() {
+        int res = 0;
+        for (FenwickTree days : stripes)
+            synchronized (days) {
+                res += days.size();
+            }
+        return res;
+    }
+
+    private static int returnDay(RentRecord record) {
+        return (int) record.getReturnDate().toEpochDay();
+    }
+
+    private static double[] parts(RentRecord record, Model model, int sign) {
+        double rent = (double) record.getRentDays() * model.getPriceDay();
+        double gas = record.getGasCost();
+        double[] res = new double[COLUMNS];
+        res[RETURNS] = sign;
+        res[RENTED_DAYS] = sign * ChronoUnit.DAYS.between(record.getRentDate(), record.getReturnDate());
+        res[REVENUE] = sign * record.getCost();
+        res[RENT_COST] = sign * rent;
+        res[FINES] = sign * (record.getCost() - rent - gas);
+        res[GAS_COST] = sign * gas;
+        return res;
+    }
+
+    /**
+     * Builds the totals from records, for companies that do not keep them.
+     */
+    static RevenueRollup of(Iterable<RentRecord> records, IRentCompany company) {
+        RevenueRollup res = new RevenueRollup();
+        for (RentRecord record : records)
+            if (record.getReturnDate() != null)
+                res.returned(record, company.getModel(company.getCar(record.getRegNumber()).getModelName()));
+        return res;
+    }
+}
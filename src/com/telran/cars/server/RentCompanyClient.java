@@ -0,0 +1,339 @@
+package com.telran.cars.server;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.models.IRentCompany;
+import com.telran.utils.Persistable;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import static com.telran.cars.server.Wire.*;
+
+/**
+ * Rent company served by a {@link RentCompanyServer}: every call is one HTTP request on a kept-alive connection.
+ * Entities are copies: changing a returned car does not change the company.
+ * Transport failures are {@link UncheckedIOException}, a 400 of the server an {@link IllegalArgumentException}.
+ * {@link #save} writes the file on the machine of the server, a plain name in the save directory of the server.
+ */
+public class RentCompanyClient implements IRentCompany, Persistable {
+    private final URI base;
+    private transient HttpClient client;
+
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final Arguments NONE = out -> {};
+
+    public RentCompanyClient(String host, int port) {
+        base = URI.create("http://" + host + ":" + port + "/");
+        client = client();
+    }
+
+    //Один клиент на все потоки: его пул держит соединения; после десериализации создаётся заново
+    private HttpClient client() {
+        if (client == null)
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+        return client;
+    }
+
+    private <T> T call(String operation, Arguments arguments, Wire.Reader<T> result) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            arguments.write(out);
+            out.flush();
+            HttpRequest request = HttpRequest.newBuilder(base.resolve(operation))
+                    .header("Content-Type", RentCompanyServer.CONTENT_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(bytes.toByteArray()))
+                    .build();
+            HttpResponse<byte[]> response = client().send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() == 400)
+                throw new IllegalArgumentException(new String(response.body(), StandardCharsets.UTF_8));
+            if (response.statusCode() != 200)
+                throw new IOException(operation + ": HTTP " + response.statusCode() + " "
+                        + new String(response.body(), StandardCharsets.UTF_8));
+            return result == null ? null :
+                    result.read(new DataInputStream(new ByteArrayInputStream(response.body())));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException(operation + " interrupted"));
+        }
+    }
+
+    @Override
+    public int getGasPrice() {
+        return call("getGasPrice", NONE, DataInput::readInt);
+    }
+
+    @Override
+    public void setGasPrice(int price) {
+        call("setGasPrice", out -> out.writeInt(price), null);
+    }
+
+    @Override
+    public int getFinePercent() {
+        return call("getFinePercent", NONE, DataInput::readInt);
+    }
+
+    @Override
+    public void setFinePercent(int finePercent) {
+        call("setFinePercent", out -> out.writeInt(finePercent), null);
+    }
+
+    @Override
+    public CarsReturnCode addModel(Model model) {
+        return call("addModel", out -> writeModel(out, model), Wire::readCode);
+    }
+
+    @Override
+    public Model getModel(String modelName) {
+        return call("getModel", out -> writeString(out, modelName), Wire::readModel);
+    }
+
+    @Override
+    public CarsReturnCode addCar(Car car) {
+        return call("addCar", out -> writeCar(out, car), Wire::readCode);
+    }
+
+    @Override
+    public Car getCar(String regNumber) {
+        return call("getCar", out -> writeString(out, regNumber), Wire::readCar);
+    }
+
+    @Override
+    public CarsReturnCode addDriver(Driver driver) {
+        return call("addDriver", out -> writeDriver(out, driver), Wire::readCode);
+    }
+
+    @Override
+    public Driver getDriver(long licenseId) {
+        return call("getDriver", out -> out.writeLong(licenseId), Wire::readDriver);
+    }
+
+    @Override
+    public List<CarsReturnCode> addModels(Collection<Model> models) {
+        return call("addModels", out -> writeList(out, models, Wire::writeModel), in -> readList(in, Wire::readCode));
+    }
+
+    @Override
+    public List<CarsReturnCode> addCars(Collection<Car> cars) {
+        return call("addCars", out -> writeList(out, cars, Wire::writeCar), in -> readList(in, Wire::readCode));
+    }
+
+    @Override
+    public List<CarsReturnCode> addDrivers(Collection<Driver> drivers) {
+        return call("addDrivers", out -> writeList(out, drivers, Wire::writeDriver), in -> readList(in, Wire::readCode));
+    }
+
+    @Override
+    public List<CarsReturnCode> importRentRecords(Collection<RentRecord> records) {
+        return call("importRentRecords", out -> writeList(out, records, Wire::writeRecord),
+                in -> readList(in, Wire::readCode));
+    }
+
+    @Override
+    public CarsReturnCode rentCar(String regNumber, long licenseId, LocalDate rentDate, int rentDays) {
+        return call("rentCar", out -> {
+            writeString(out, regNumber);
+            out.writeLong(licenseId);
+            writeDate(out, rentDate);
+            out.writeInt(rentDays);
+        }, Wire::readCode);
+    }
+
+    @Override
+    public List<Car> getCarByDrivers(long licenseId) {
+        return call("getCarByDrivers", out -> out.writeLong(licenseId), in -> readList(in, Wire::readCar));
+    }
+
+    @Override
+    public List<Driver> getDriversByCars(String regNumber) {
+        return call("getDriversByCars", out -> writeString(out, regNumber), in -> readList(in, Wire::readDriver));
+    }
+
+    @Override
+    public List<Car> getCarsByModel(String modelName) {
+        return call("getCarsByModel", out -> writeString(out, modelName), in -> readList(in, Wire::readCar));
+    }
+
+    @Override
+    public int countCarsByModel(String modelName) {
+        return call("countCarsByModel", out -> writeString(out, modelName), DataInput::readInt);
+    }
+
+    @Override
+    public Car getAnyCarByModel(String modelName) {
+        return call("getAnyCarByModel", out -> writeString(out, modelName), Wire::readCar);
+    }
+
+    @Override
+    public List<Car> getRentedCars() {
+        return call("getRentedCars", NONE, in -> readList(in, Wire::readCar));
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to) {
+        return call("getRentRecordsAtDates", out -> {
+            writeDate(out, from);
+            writeDate(out, to);
+        }, in -> readList(in, Wire::readRecord));
+    }
+
+    @Override
+    public List<RentRecord> getRentRecordsActiveAtDates(LocalDate from, LocalDate to) {
+        return call("getRentRecordsActiveAtDates", out -> {
+            writeDate(out, from);
+            writeDate(out, to);
+        }, in -> readList(in, Wire::readRecord));
+    }
+
+    @Override
+    public Page<Car> getCarByDrivers(long licenseId, int pageSize, String pageToken) {
+        return call("getCarByDriversPage", out -> {
+            out.writeLong(licenseId);
+            out.writeInt(pageSize);
+            writeString(out, pageToken);
+        }, in -> readPage(in, Wire::readCar));
+    }
+
+    @Override
+    public Page<Driver> getDriversByCars(String regNumber, int pageSize, String pageToken) {
+        return call("getDriversByCarsPage", out -> {
+            writeString(out, regNumber);
+            out.writeInt(pageSize);
+            writeString(out, pageToken);
+        }, in -> readPage(in, Wire::readDriver));
+    }
+
+    @Override
+    public Page<Car> getCarsByModel(String modelName, int pageSize, String pageToken) {
+        return call("getCarsByModelPage", out -> {
+            writeString(out, modelName);
+            out.writeInt(pageSize);
+            writeString(out, pageToken);
+        }, in -> readPage(in, Wire::readCar));
+    }
+
+    @Override
+    public Page<RentRecord> getRentRecordsAtDates(LocalDate from, LocalDate to, int pageSize, String pageToken) {
+        return call("getRentRecordsAtDatesPage", out -> {
+            writeDate(out, from);
+            writeDate(out, to);
+            out.writeInt(pageSize);
+            writeString(out, pageToken);
+        }, in -> readPage(in, Wire::readRecord));
+    }
+
+    @Override
+    public RemovedCarData removeCar(String regNumber) {
+        return call("removeCar", out -> writeString(out, regNumber), Wire::readRemoved);
+    }
+
+    @Override
+    public List<RemovedCarData> removeModel(String model) {
+        return call("removeModel", out -> writeString(out, model), in -> readList(in, Wire::readRemoved));
+    }
+
+    @Override
+    public RemovedCarData returnCar(String regNumber, long licensedId, LocalDate returnDate, int damages, int tankPercent) {
+        return call("returnCar", out -> {
+            writeString(out, regNumber);
+            out.writeLong(licensedId);
+            writeDate(out, returnDate);
+            out.writeInt(damages);
+            out.writeInt(tankPercent);
+        }, Wire::readRemoved);
+    }
+
+    @Override
+    public ReturnResults returnCars(List<CarReturn> returns) {
+        return call("returnCars", out -> writeList(out, returns, Wire::writeReturn), Wire::readResults);
+    }
+
+    @Override
+    public CarsReturnCode reserveCar(String regNumber, long licenseId, LocalDate from, int days) {
+        return call("reserveCar", out -> {
+            writeString(out, regNumber);
+            out.writeLong(licenseId);
+            writeDate(out, from);
+            out.writeInt(days);
+        }, Wire::readCode);
+    }
+
+    @Override
+    public Car findFreeCar(String modelName, LocalDate from, LocalDate to) {
+        return call("findFreeCar", out -> {
+            writeString(out, modelName);
+            writeDate(out, from);
+            writeDate(out, to);
+        }, Wire::readCar);
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return call("getMostPopularCarModels", report(n, from, to, fromAge, toAge), in -> readList(in, Wire::readString));
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return call("getMostProfitableCarModels", report(n, from, to, fromAge, toAge), in -> readList(in, Wire::readString));
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return call("getMostActiveDrivers", report(n, from, to, fromAge, toAge), in -> readList(in, Wire::readDriver));
+    }
+
+    private static Arguments report(int n, LocalDate from, LocalDate to, int fromAge, int toAge) {
+        return out -> {
+            out.writeInt(n);
+            writeDate(out, from);
+            writeDate(out, to);
+            out.writeInt(fromAge);
+            out.writeInt(toAge);
+        };
+    }
+
+    @Override
+    public List<String> getMostPopularCarModels(int n) {
+        return call("getMostPopularCarModelsAll", out -> out.writeInt(n), in -> readList(in, Wire::readString));
+    }
+
+    @Override
+    public List<String> getMostProfitableCarModels(int n) {
+        return call("getMostProfitableCarModelsAll", out -> out.writeInt(n), in -> readList(in, Wire::readString));
+    }
+
+    @Override
+    public List<Driver> getMostActiveDrivers(int n) {
+        return call("getMostActiveDriversAll", out -> out.writeInt(n), in -> readList(in, Wire::readDriver));
+    }
+
+    @Override
+    public RevenueTotals getRevenueTotals(LocalDate from, LocalDate to) {
+        return call("getRevenueTotals", out -> {
+            writeDate(out, from);
+            writeDate(out, to);
+        }, Wire::readTotals);
+    }
+
+    @Override
+    public void save(String fileName) {
+        call("save", out -> writeString(out, fileName), null);
+    }
+}
@@ -0,0 +1,235 @@
+package com.telran.cars.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.telran.cars.dto.*;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.utils.Persistable;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.telran.cars.server.Wire.*;
+
+/**
+ * HTTP front-end of a rent company on the JDK {@link HttpServer}: every operation of {@link IRentCompany}
+ * is {@code POST /<method name>} with the arguments in the body and the result in the response,
+ * both in the binary encoding of {@link Wire}; {@link RentCompanyClient} is the other side.
+ * Overloads get their own names: {@code getCarsByModelPage}, {@code getMostActiveDriversAll} and so on.
+ * <p>
+ * Every request runs on a virtual thread of its own,
+ * so a request waiting on a lock of the company does not hold a pooled thread.
+ * The company must be thread-safe, {@link RentCompanyConcurrent} by default.
+ * Errors: 404 unknown operation, 400 illegal argument, 500 other failures, the message as the body.
+ * The server listens on the loopback interface unless an address is given; it has no authentication.
+ * {@code save} writes only a plain file name into the save directory set on the server,
+ * and is refused when the server has none.
+ * <p>
+ * The constructor sets {@code sun.net.httpserver.nodelay} to true unless it is already set:
+ * the JDK reads it for every {@link HttpServer} of the JVM, and only when the first one is created,
+ * so an embedder that runs another server first, or wants the delay, must set it before.
+ */
+public class RentCompanyServer implements Closeable {
+    public static final int DEFAULT_PORT = 8080;
+    static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final IRentCompany company;
+    private final Path saveDirectory;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+    interface Endpoint {
+        void handle(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    public RentCompanyServer(IRentCompany company, int port) throws IOException {
+        this(company, port, null);
+    }
+
+    /**
+     * @param saveDirectory directory of the files written by {@code save}, null to refuse {@code save}
+     */
+    public RentCompanyServer(IRentCompany company, int port, Path saveDirectory) throws IOException {
+        this(company, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), saveDirectory);
+    }
+
+    public RentCompanyServer(IRentCompany company, InetSocketAddress address, Path saveDirectory) throws IOException {
+        this.company = company;
+        this.saveDirectory = saveDirectory;
+        //Без TCP_NODELAY ответ из двух пакетов ждёт отложенного ACK клиента - 40 мс на запрос.
+        //JDK читает свойство один раз, при создании первого сервера
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        registerEndpoints();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public IRentCompany getCompany() {
+        return company;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Endpoint endpoint = endpoints.get(exchange.getRequestURI().getPath().substring(1));
+            if (endpoint == null || !exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 404, text("no operation " + exchange.getRequestMethod() + " " + exchange.getRequestURI()));
+                return;
+            }
+            byte[] body;
+            int status = 200;
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(exchange.getRequestBody().readAllBytes()));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                DataOutputStream out = new DataOutputStream(bytes);
+                endpoint.handle(in, out);
+                out.flush();
+                body = bytes.toByteArray();
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = text(e.getMessage());
+            } catch (RuntimeException | IOException e) {
+                status = 500;
+                body = text(e.toString());
+            }
+            send(exchange, status, body);
+        }
+    }
+
+    private static byte[] text(String message) {
+        return String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", status == 200 ? CONTENT_TYPE : "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) exchange.getResponseBody().write(body);
+    }
+
+    private void on(String name, Endpoint endpoint) {
+        endpoints.put(name, endpoint);
+    }
+
+    private void registerEndpoints() {
+        on("getGasPrice", (in, out) -> out.writeInt(company.getGasPrice()));
+        on("setGasPrice", (in, out) -> company.setGasPrice(in.readInt()));
+        on("getFinePercent", (in, out) -> out.writeInt(company.getFinePercent()));
+        on("setFinePercent", (in, out) -> company.setFinePercent(in.readInt()));
+
+        on("addModel", (in, out) -> writeCode(out, company.addModel(readModel(in))));
+        on("getModel", (in, out) -> writeModel(out, company.getModel(readString(in))));
+        on("addCar", (in, out) -> writeCode(out, company.addCar(readCar(in))));
+        on("getCar", (in, out) -> writeCar(out, company.getCar(readString(in))));
+        on("addDriver", (in, out) -> writeCode(out, company.addDriver(readDriver(in))));
+        on("getDriver", (in, out) -> writeDriver(out, company.getDriver(in.readLong())));
+        on("addModels", (in, out) -> writeList(out, company.addModels(readList(in, Wire::readModel)), Wire::writeCode));
+        on("addCars", (in, out) -> writeList(out, company.addCars(readList(in, Wire::readCar)), Wire::writeCode));
+        on("addDrivers", (in, out) -> writeList(out, company.addDrivers(readList(in, Wire::readDriver)), Wire::writeCode));
+        on("importRentRecords", (in, out) ->
+                writeList(out, company.importRentRecords(readList(in, Wire::readRecord)), Wire::writeCode));
+
+        on("rentCar", (in, out) ->
+                writeCode(out, company.rentCar(readString(in), in.readLong(), readDate(in), in.readInt())));
+        on("getCarByDrivers", (in, out) -> writeList(out, company.getCarByDrivers(in.readLong()), Wire::writeCar));
+        on("getDriversByCars", (in, out) -> writeList(out, company.getDriversByCars(readString(in)), Wire::writeDriver));
+        on("getCarsByModel", (in, out) -> writeList(out, company.getCarsByModel(readString(in)), Wire::writeCar));
+        on("countCarsByModel", (in, out) -> out.writeInt(company.countCarsByModel(readString(in))));
+        on("getAnyCarByModel", (in, out) -> writeCar(out, company.getAnyCarByModel(readString(in))));
+        on("getRentedCars", (in, out) -> writeList(out, company.getRentedCars(), Wire::writeCar));
+        on("getRentRecordsAtDates", (in, out) ->
+                writeList(out, company.getRentRecordsAtDates(readDate(in), readDate(in)), Wire::writeRecord));
+        on("getRentRecordsActiveAtDates", (in, out) ->
+                writeList(out, company.getRentRecordsActiveAtDates(readDate(in), readDate(in)), Wire::writeRecord));
+
+        on("getCarByDriversPage", (in, out) ->
+                writePage(out, company.getCarByDrivers(in.readLong(), in.readInt(), readString(in)), Wire::writeCar));
+        on("getDriversByCarsPage", (in, out) ->
+                writePage(out, company.getDriversByCars(readString(in), in.readInt(), readString(in)), Wire::writeDriver));
+        on("getCarsByModelPage", (in, out) ->
+                writePage(out, company.getCarsByModel(readString(in), in.readInt(), readString(in)), Wire::writeCar));
+        on("getRentRecordsAtDatesPage", (in, out) -> writePage(out,
+                company.getRentRecordsAtDates(readDate(in), readDate(in), in.readInt(), readString(in)), Wire::writeRecord));
+
+        on("removeCar", (in, out) -> writeRemoved(out, company.removeCar(readString(in))));
+        on("removeModel", (in, out) -> writeList(out, company.removeModel(readString(in)), Wire::writeRemoved));
+        on("returnCar", (in, out) -> writeRemoved(out,
+                company.returnCar(readString(in), in.readLong(), readDate(in), in.readInt(), in.readInt())));
+        on("returnCars", (in, out) -> writeResults(out, company.returnCars(readList(in, Wire::readReturn))));
+        on("reserveCar", (in, out) ->
+                writeCode(out, company.reserveCar(readString(in), in.readLong(), readDate(in), in.readInt())));
+        on("findFreeCar", (in, out) ->
+                writeCar(out, company.findFreeCar(readString(in), readDate(in), readDate(in))));
+
+        on("getMostPopularCarModels", (in, out) -> writeList(out, company.getMostPopularCarModels(in.readInt(),
+                readDate(in), readDate(in), in.readInt(), in.readInt()), Wire::writeString));
+        on("getMostProfitableCarModels", (in, out) -> writeList(out, company.getMostProfitableCarModels(in.readInt(),
+                readDate(in), readDate(in), in.readInt(), in.readInt()), Wire::writeString));
+        on("getMostActiveDrivers", (in, out) -> writeList(out, company.getMostActiveDrivers(in.readInt(),
+                readDate(in), readDate(in), in.readInt(), in.readInt()), Wire::writeDriver));
+        on("getMostPopularCarModelsAll", (in, out) ->
+                writeList(out, company.getMostPopularCarModels(in.readInt()), Wire::writeString));
+        on("getMostProfitableCarModelsAll", (in, out) ->
+                writeList(out, company.getMostProfitableCarModels(in.readInt()), Wire::writeString));
+        on("getMostActiveDriversAll", (in, out) ->
+                writeList(out, company.getMostActiveDrivers(in.readInt()), Wire::writeDriver));
+        on("getRevenueTotals", (in, out) -> writeTotals(out, company.getRevenueTotals(readDate(in), readDate(in))));
+
+        //Файл пишет сервер: только имя файла в его каталоге, путь из запроса не принимается
+        on("save", (in, out) -> {
+            if (!(company instanceof Persistable persistable))
+                throw new IllegalArgumentException("company is not persistable " + company.getClass().getSimpleName());
+            persistable.save(saveFile(readString(in)).toString());
+        });
+    }
+
+    private Path saveFile(String fileName) {
+        if (saveDirectory == null)
+            throw new IllegalArgumentException("save is not allowed on this server");
+        Path name = fileName == null || fileName.isEmpty() ? null : Path.of(fileName).getFileName();
+        if (name == null || !name.toString().equals(fileName) || fileName.equals("..") || fileName.equals("."))
+            throw new IllegalArgumentException("not a plain file name " + fileName);
+        return saveDirectory.resolve(name);
+    }
+
+    /**
+     * Serves a {@link RentCompanyConcurrent}: arguments port (8080 by default) and snapshot file,
+     * restored on start and saved on shutdown. {@code save} writes into the directory of the snapshot file.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String file = args.length > 1 ? args[1] : null;
+        IRentCompany company = file == null ? new RentCompanyConcurrent() : RentCompanyConcurrent.restoreFromFile(file);
+        Path directory = file == null ? null : Path.of(file).toAbsolutePath().getParent();
+        RentCompanyServer server = new RentCompanyServer(company, port, directory);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            if (file != null) ((Persistable) company).save(file);
+        }));
+        server.start();
+        System.out.println("rent company on http://localhost:" + server.getPort() + "/");
+    }
+}
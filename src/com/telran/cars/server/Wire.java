@@ -0,0 +1,227 @@
+package com.telran.cars.server;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.dto.enums.State;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary encoding of the arguments and results of the endpoints, the same on the server and the client.
+ * Fields are written in declaration order with {@link DataOutput}: no names, no text numbers.
+ * Nullable values start with a boolean, strings are UTF, dates epoch days ({@link #NO_DATE} for null),
+ * lists an int size (-1 for null) and their items, enums a byte ordinal.
+ */
+final class Wire {
+    static final int NO_DATE = Integer.MIN_VALUE;
+    private static final CarsReturnCode[] CODES = CarsReturnCode.values();
+    private static final State[] STATES = State.values();
+
+    interface Writer<T> {
+        void write(DataOutput out, T value) throws IOException;
+    }
+
+    interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    private Wire() {
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeInt(date == null ? NO_DATE : (int) date.toEpochDay());
+    }
+
+    static LocalDate readDate(DataInput in) throws IOException {
+        int day = in.readInt();
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    static void writeCode(DataOutput out, CarsReturnCode code) throws IOException {
+        out.writeByte(code.ordinal());
+    }
+
+    static CarsReturnCode readCode(DataInput in) throws IOException {
+        return CODES[in.readByte()];
+    }
+
+    static <T> void writeList(DataOutput out, Collection<T> list, Writer<? super T> writer) throws IOException {
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(list.size());
+        for (T item : list)
+            writer.write(out, item);
+    }
+
+    static <T> List<T> readList(DataInput in, Reader<T> reader) throws IOException {
+        int size = in.readInt();
+        if (size == -1) return null;
+        if (size < 0) throw new IllegalArgumentException("wrong list size " + size);
+        //Размер пришел из запроса: память растет по мере чтения элементов, а не по заявленному числу
+        List<T> res = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++)
+            res.add(reader.read(in));
+        return res;
+    }
+
+    static <T> void writePage(DataOutput out, Page<T> page, Writer<? super T> writer) throws IOException {
+        writeList(out, page.getItems(), writer);
+        writeString(out, page.getNextPageToken());
+    }
+
+    static <T> Page<T> readPage(DataInput in, Reader<T> reader) throws IOException {
+        List<T> items = readList(in, reader);
+        return new Page<>(items, readString(in));
+    }
+
+    static void writeModel(DataOutput out, Model m) throws IOException {
+        out.writeBoolean(m != null);
+        if (m == null) return;
+        writeString(out, m.getModelName());
+        out.writeInt(m.getGasTank());
+        writeString(out, m.getCompany());
+        writeString(out, m.getCountry());
+        out.writeInt(m.getPriceDay());
+    }
+
+    static Model readModel(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        return new Model(readString(in), in.readInt(), readString(in), readString(in), in.readInt());
+    }
+
+    static void writeCar(DataOutput out, Car c) throws IOException {
+        out.writeBoolean(c != null);
+        if (c == null) return;
+        writeString(out, c.getRegNumber());
+        writeString(out, c.getColor());
+        writeString(out, c.getModelName());
+        out.writeByte(c.getState() == null ? -1 : c.getState().ordinal());
+        out.writeBoolean(c.isInUse());
+        out.writeBoolean(c.isFlRemoved());
+    }
+
+    static Car readCar(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        Car car = new Car(readString(in), readString(in), readString(in));
+        int state = in.readByte();
+        car.setState(state < 0 ? null : STATES[state]);
+        car.setInUse(in.readBoolean());
+        car.setFlRemoved(in.readBoolean());
+        return car;
+    }
+
+    static void writeDriver(DataOutput out, Driver d) throws IOException {
+        out.writeBoolean(d != null);
+        if (d == null) return;
+        out.writeLong(d.getLicenseId());
+        writeString(out, d.getName());
+        out.writeInt(d.getBirthYear());
+        writeString(out, d.getPhone());
+    }
+
+    static Driver readDriver(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        return new Driver(in.readLong(), readString(in), in.readInt(), readString(in));
+    }
+
+    static void writeRecord(DataOutput out, RentRecord r) throws IOException {
+        out.writeBoolean(r != null);
+        if (r == null) return;
+        writeString(out, r.getRegNumber());
+        out.writeLong(r.getLicenseId());
+        writeDate(out, r.getRentDate());
+        out.writeInt(r.getRentDays());
+        writeDate(out, r.getReturnDate());
+        out.writeInt(r.getDamages());
+        out.writeInt(r.getTankPercent());
+        out.writeDouble(r.getCost());
+        out.writeDouble(r.getGasCost());
+    }
+
+    static RentRecord readRecord(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        RentRecord record = new RentRecord(readString(in), in.readLong(), readDate(in), in.readInt());
+        record.setReturnDate(readDate(in));
+        record.setDamages(in.readInt());
+        record.setTankPercent(in.readInt());
+        record.setCost(in.readDouble());
+        record.setGasCost(in.readDouble());
+        return record;
+    }
+
+    static void writeRemoved(DataOutput out, RemovedCarData data) throws IOException {
+        out.writeBoolean(data != null);
+        if (data == null) return;
+        writeCar(out, data.getCar());
+        writeList(out, data.getRemovedRecords(), Wire::writeRecord);
+    }
+
+    static RemovedCarData readRemoved(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+        return new RemovedCarData(readCar(in), readList(in, Wire::readRecord));
+    }
+
+    static void writeReturn(DataOutput out, CarReturn r) throws IOException {
+        writeString(out, r.getRegNumber());
+        out.writeLong(r.getLicenseId());
+        writeDate(out, r.getReturnDate());
+        out.writeInt(r.getDamages());
+        out.writeInt(r.getTankPercent());
+    }
+
+    static CarReturn readReturn(DataInput in) throws IOException {
+        return new CarReturn(readString(in), in.readLong(), readDate(in), in.readInt(), in.readInt());
+    }
+
+    static void writeResults(DataOutput out, ReturnResults res) throws IOException {
+        out.writeInt(res.size());
+        for (int i = 0; i < res.size(); i++) {
+            out.writeDouble(res.getCost(i));
+            out.writeBoolean(res.isRemoved(i));
+        }
+    }
+
+    static ReturnResults readResults(DataInput in) throws IOException {
+        double[] costs = new double[in.readInt()];
+        BitSet removed = new BitSet();
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = in.readDouble();
+            if (in.readBoolean()) removed.set(i);
+        }
+        return new ReturnResults(costs, removed);
+    }
+
+    static void writeTotals(DataOutput out, RevenueTotals t) throws IOException {
+        writeDate(out, t.getFrom());
+        writeDate(out, t.getTo());
+        out.writeLong(t.getReturns());
+        out.writeLong(t.getRentedDays());
+        out.writeDouble(t.getRevenue());
+        out.writeDouble(t.getRentCost());
+        out.writeDouble(t.getFines());
+        out.writeDouble(t.getGasCost());
+    }
+
+    static RevenueTotals readTotals(DataInput in) throws IOException {
+        return new RevenueTotals(readDate(in), readDate(in), in.readLong(), in.readLong(),
+                in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+}
@@ -0,0 +1,85 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.InstrumentedRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.utils.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstrumentedRentCompanyTest extends RentCompanyEmbeddedTest {
+
+    @Override
+    protected IRentCompany createCompany() {
+        return new InstrumentedRentCompany(new RentCompanyEmbedded());
+    }
+
+    @Test
+    void testMetrics() {
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER, COLOR, MODEL_NAME)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER)));
+        assertEquals(OK, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(CAR_IN_USE, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(CAR_IN_USE, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(NO_CAR, company.rentCar(REG_NUMBER + 1, LICENSE, RENT_DATE, RENT_DAYS));
+        company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE);
+
+        MetricsSnapshot snapshot = ((InstrumentedRentCompany) company).snapshot();
+        assertEquals(4, snapshot.getLatencies().get("rentCar").getCount());
+        assertEquals(1, snapshot.getReturnCodeCount("rentCar", OK));
+        assertEquals(2, snapshot.getReturnCodeCount("rentCar", CAR_IN_USE));
+        assertEquals(1, snapshot.getReturnCodeCount("rentCar", NO_CAR));
+        assertEquals(0, snapshot.getReturnCodeCount("addCar", CAR_EXISTS));
+        assertEquals(1, snapshot.getLatencies().get("getRentRecordsAtDates").getCount());
+        assertFalse(snapshot.getLatencies().containsKey("removeModel"));
+        assertEquals(1, (long) snapshot.getIndexSizes().get("cars"));
+        assertEquals(1, (long) snapshot.getIndexSizes().get("openRentals"));
+        assertTrue(snapshot.toText().contains("rent_company_return_codes_total{method=\"rentCar\",code=\"CAR_IN_USE\"} 2"));
+    }
+
+    @Test
+    void testReserveAndReturnCodes() {
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER, COLOR, MODEL_NAME)));
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER + 1, COLOR, MODEL_NAME)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER)));
+        assertEquals(OK, company.reserveCar(REG_NUMBER, LICENSE, RETURN_DATE, RENT_DAYS));
+        assertEquals(NO_CAR, company.reserveCar(REG_NUMBER + 2, LICENSE, RETURN_DATE, RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE, RENT_DATE, RENT_DAYS));
+        ReturnResults results = company.returnCars(List.of(
+                new CarReturn(REG_NUMBER + 1, LICENSE, RETURN_DATE, 0, 100),
+                new CarReturn(REG_NUMBER, LICENSE, RETURN_DATE, 0, 100)));
+        assertEquals(1, results.getReturned());
+        assertNull(company.returnCar(REG_NUMBER + 1, LICENSE, RETURN_DATE, 0, 100).getCar());
+
+        MetricsSnapshot snapshot = ((InstrumentedRentCompany) company).snapshot();
+        assertEquals(1, snapshot.getReturnCodeCount("reserveCar", OK));
+        assertEquals(1, snapshot.getReturnCodeCount("reserveCar", NO_CAR));
+        assertEquals(1, snapshot.getReturnCodeCount("returnCars", OK));
+        assertEquals(1, snapshot.getReturnCodeCount("returnCars", NO_CAR));
+        assertEquals(0, snapshot.getReturnCodeCount("returnCar", OK));
+        assertEquals(1, snapshot.getReturnCodeCount("returnCar", NO_CAR));
+    }
+
+    @Test
+    void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(500_500, snapshot.getMean(), 1);
+        //Ошибка значения меньше 1/32
+        assertEquals(500_000, snapshot.getValueAtPercentile(50), 500_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(990_000, snapshot.getValueAtPercentile(99), 990_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,203 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.JournaledRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.utils.Journal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournaledRentCompanyTest extends RentCompanyEmbeddedTest {
+    final String SNAPSHOT = "journalTest.data";
+    final String JOURNAL = "journalTest.journal";
+
+    @Override
+    protected IRentCompany createCompany() {
+        try {
+            Files.deleteIfExists(Path.of(SNAPSHOT));
+            Files.deleteIfExists(Path.of(JOURNAL));
+            return open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JournaledRentCompany open() throws IOException {
+        return JournaledRentCompany.open(SNAPSHOT, JOURNAL, Journal.SyncPolicy.GROUP);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        ((JournaledRentCompany) company).close();
+    }
+
+    private void fillAndRent() {
+        company.setGasPrice(12);
+        company.setFinePercent(20);
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER)));
+        for (int i = 0; i < 3; i++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + i, COLOR, MODEL_NAME)));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, RENT_DATE, RENT_DAYS));
+        company.returnCar(REG_NUMBER + 0, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE, RENT_DATE, RENT_DAYS));
+        assertNotNull(company.removeCar(REG_NUMBER + 2));
+    }
+
+    private void assertRestored(IRentCompany restored) {
+        assertEquals(12, restored.getGasPrice());
+        assertEquals(20, restored.getFinePercent());
+        assertNotNull(restored.getModel(MODEL_NAME));
+        assertNotNull(restored.getDriver(LICENSE));
+        assertNull(restored.getCar(REG_NUMBER + 2));
+        assertEquals(List.of(REG_NUMBER + 1), restored.getRentedCars().stream().map(Car::getRegNumber).toList());
+        List<RentRecord> records = restored.getRentRecordsAtDates(RENT_DATE, RETURN_DATE);
+        assertEquals(2, records.size());
+        assertEquals(company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE), records);
+    }
+
+    @Test
+    void testReplayWithoutSnapshot() throws IOException {
+        fillAndRent();
+        //Без save: состояние восстанавливается только из журнала
+        ((JournaledRentCompany) company).close();
+        try (JournaledRentCompany restored = open()) {
+            assertRestored(restored);
+        }
+    }
+
+    @Test
+    void testCheckpointTruncatesJournal() throws IOException {
+        fillAndRent();
+        long journalSize = Files.size(Path.of(JOURNAL));
+        ((JournaledRentCompany) company).checkpoint();
+        assertTrue(Files.size(Path.of(JOURNAL)) < journalSize);
+        //Новый журнал пишется рядом и переименовывается поверх старого
+        assertFalse(Files.exists(Path.of(JOURNAL + ".tmp")));
+
+        company.returnCar(REG_NUMBER + 1, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        ((JournaledRentCompany) company).close();
+        try (JournaledRentCompany restored = open()) {
+            assertTrue(restored.getRentedCars().isEmpty());
+            assertEquals(company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE),
+                    restored.getRentRecordsAtDates(RENT_DATE, RETURN_DATE));
+        }
+    }
+
+    @Test
+    void testSnapshotWithoutTruncation() throws IOException {
+        fillAndRent();
+        Path copy = Path.of(JOURNAL + ".copy");
+        Files.copy(Path.of(JOURNAL), copy, StandardCopyOption.REPLACE_EXISTING);
+        ((JournaledRentCompany) company).checkpoint();
+        ((JournaledRentCompany) company).close();
+        //Сбой между записью снимка и усечением: записи журнала уже есть в снимке
+        Files.move(copy, Path.of(JOURNAL), StandardCopyOption.REPLACE_EXISTING);
+        try (JournaledRentCompany restored = open()) {
+            assertRestored(restored);
+        }
+    }
+
+    @Test
+    void testTornTail() throws IOException {
+        fillAndRent();
+        ((JournaledRentCompany) company).close();
+        try (FileOutputStream out = new FileOutputStream(JOURNAL, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+        try (JournaledRentCompany restored = open()) {
+            assertRestored(restored);
+            assertEquals(OK, restored.addCar(new Car(REG_NUMBER + 3, COLOR, MODEL_NAME)));
+        }
+        try (JournaledRentCompany restored = open()) {
+            assertNotNull(restored.getCar(REG_NUMBER + 3));
+        }
+    }
+
+    @Test
+    void testBadSnapshotStopsOpen() throws IOException {
+        fillAndRent();
+        ((JournaledRentCompany) company).checkpoint();
+        ((JournaledRentCompany) company).close();
+        byte[] snapshot = Files.readAllBytes(Path.of(SNAPSHOT));
+        Files.write(Path.of(SNAPSHOT), Arrays.copyOf(snapshot, snapshot.length / 2));
+        //Журнал усечен снимком: пустая компания с журналом поверх потеряла бы все
+        assertThrows(IOException.class, this::open);
+    }
+
+    @Test
+    void testFailedJournalWrite() throws IOException {
+        fillAndRent();
+        //Закрытый журнал не пишется: мутация не применяется, следующие отклоняются
+        ((JournaledRentCompany) company).close();
+        assertThrows(UncheckedIOException.class, () -> company.rentCar(REG_NUMBER + 0, LICENSE, RETURN_DATE, RENT_DAYS));
+        assertFalse(company.getCar(REG_NUMBER + 0).isInUse());
+        assertThrows(IllegalStateException.class, () -> company.addCar(new Car(REG_NUMBER + 3, COLOR, MODEL_NAME)));
+        assertNull(company.getCar(REG_NUMBER + 3));
+        try (JournaledRentCompany restored = open()) {
+            assertRestored(restored);
+        }
+    }
+
+    @Test
+    void testReplayConcurrent() throws IOException {
+        fillAndRent();
+        ((JournaledRentCompany) company).close();
+        try (JournaledRentCompany restored = JournaledRentCompany.open(SNAPSHOT, JOURNAL,
+                Journal.SyncPolicy.ALWAYS, RentCompanyConcurrent::load)) {
+            assertRestored(restored);
+        }
+    }
+
+    @Test
+    void testBackgroundSnapshotIsPointInTime() {
+        fillAndRent();
+        String file = "journalTestCopy.data";
+        CompletableFuture<Void> saved = ((JournaledRentCompany) company).saveInBackground(file);
+        company.returnCar(REG_NUMBER + 1, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER + 3, COLOR, MODEL_NAME)));
+        assertNotNull(company.removeCar(REG_NUMBER + 0));
+        saved.join();
+
+        IRentCompany restored = RentCompanyEmbedded.restoreFromFile(file);
+        assertNull(restored.getCar(REG_NUMBER + 3));
+        assertNotNull(restored.getCar(REG_NUMBER + 0));
+        assertEquals(2, restored.getRentRecordsAtDates(RENT_DATE, RETURN_DATE).size());
+        assertTrue(restored.getCar(REG_NUMBER + 1).isInUse());
+        assertNull(restored.getRentRecordsAtDates(RENT_DATE, RETURN_DATE).get(1).getReturnDate());
+    }
+
+    @Test
+    void testBackgroundCheckpointKeepsTail() throws IOException {
+        fillAndRent();
+        CompletableFuture<Void> saved = ((JournaledRentCompany) company).checkpointInBackground();
+        company.returnCar(REG_NUMBER + 1, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER + 3, COLOR, MODEL_NAME)));
+        saved.join();
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER + 4, COLOR, MODEL_NAME)));
+        ((JournaledRentCompany) company).close();
+
+        try (JournaledRentCompany restored = open()) {
+            assertTrue(restored.getRentedCars().isEmpty());
+            assertNotNull(restored.getCar(REG_NUMBER + 3));
+            assertNotNull(restored.getCar(REG_NUMBER + 4));
+            assertEquals(company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE),
+                    restored.getRentRecordsAtDates(RENT_DATE, RETURN_DATE));
+        }
+    }
+}
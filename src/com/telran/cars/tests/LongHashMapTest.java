@@ -0,0 +1,155 @@
+package com.telran.cars.tests;
+
+import com.telran.utils.LongHashMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongHashMapTest {
+    final int TABLE = 16; //начальная таблица карты
+
+    private LongHashMap<String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new LongHashMap<>();
+    }
+
+    //То же перемешивание, что в карте: ключи с одной домашней ячейкой
+    private static int home(long key, int tableSize) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (tableSize - 1);
+    }
+
+    private static List<Long> collidingKeys(int count, int tableSize) {
+        List<Long> res = new ArrayList<>();
+        int slot = home(1, tableSize);
+        for (long key = 1; res.size() < count; key++)
+            if (home(key, tableSize) == slot) res.add(key);
+        return res;
+    }
+
+    @Test
+    void testPutGet() {
+        assertTrue(map.isEmpty());
+        assertNull(map.put(5, "five"));
+        assertEquals("five", map.put(5, "FIVE"));
+        assertEquals("FIVE", map.get(5));
+        assertNull(map.get(6));
+        assertEquals("none", map.getOrDefault(6, "none"));
+        assertEquals(1, map.size());
+        assertEquals("FIVE", map.putIfAbsent(5, "other"));
+        assertEquals("seven", map.computeIfAbsent(7, k -> "seven"));
+        assertEquals("seven", map.computeIfAbsent(7, k -> "other"));
+        assertEquals(2, map.size());
+        assertThrows(NullPointerException.class, () -> map.put(8, null));
+    }
+
+    @Test
+    void testZeroAndNegativeKeys() {
+        long[] keys = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, -1000L};
+        for (long key : keys) {
+            assertFalse(map.containsKey(key));
+            assertNull(map.put(key, "v" + key));
+        }
+        assertEquals(keys.length, map.size());
+        for (long key : keys) {
+            assertTrue(map.containsKey(key));
+            assertEquals("v" + key, map.get(key));
+        }
+        Map<Long, String> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(keys.length, seen.size());
+        assertEquals("v0", seen.get(0L));
+        assertTrue(map.values().contains("v0"));
+
+        assertEquals("v0", map.remove(0));
+        assertNull(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertNull(map.get(0));
+        assertEquals("v" + Long.MIN_VALUE, map.remove(Long.MIN_VALUE));
+        assertEquals(keys.length - 2, map.size());
+        assertEquals(keys.length - 2, map.values().size());
+    }
+
+    @Test
+    void testCollisions() {
+        List<Long> keys = collidingKeys(6, TABLE);
+        keys.forEach(k -> map.put(k, "v" + k));
+        keys.forEach(k -> assertEquals("v" + k, map.get(k)));
+
+        //Удаление из середины цепочки: остальные ключи находятся
+        assertEquals("v" + keys.get(2), map.remove(keys.get(2)));
+        assertNull(map.get(keys.get(2)));
+        for (int i = 0; i < keys.size(); i++)
+            if (i != 2) assertEquals("v" + keys.get(i), map.get(keys.get(i)));
+        assertEquals("v" + keys.get(0), map.remove(keys.get(0)));
+        assertEquals("v" + keys.get(5), map.get(keys.get(5)));
+        assertNull(map.put(keys.get(2), "again"));
+        assertEquals("again", map.get(keys.get(2)));
+        assertEquals(5, map.size());
+    }
+
+    @Test
+    void testCollisionsWrapAround() {
+        //Цепочка из последней ячейки таблицы переходит в начало
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < 4; key++)
+            if (home(key, TABLE) == TABLE - 1) keys.add(key);
+        List<Long> early = new ArrayList<>();
+        for (long key = 1; early.size() < 2; key++)
+            if (home(key, TABLE) == 0) early.add(key);
+        keys.forEach(k -> map.put(k, "v" + k));
+        early.forEach(k -> map.put(k, "v" + k));
+        assertEquals("v" + keys.get(0), map.remove(keys.get(0)));
+        assertEquals("v" + keys.get(1), map.remove(keys.get(1)));
+        keys.subList(2, 4).forEach(k -> assertEquals("v" + k, map.get(k)));
+        early.forEach(k -> assertEquals("v" + k, map.get(k)));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    void testResize() {
+        int n = 10_000;
+        for (long key = -n; key < n; key++)
+            map.put(key * 31, "v" + key);
+        assertEquals(2 * n, map.size());
+        for (long key = -n; key < n; key++)
+            assertEquals("v" + key, map.get(key * 31));
+        assertNull(map.get(7));
+
+        LongHashMap<String> presized = new LongHashMap<>();
+        presized.ensureCapacity(n);
+        for (long key = 0; key < n; key++)
+            presized.put(key, "v" + key);
+        for (long key = 0; key < n; key++)
+            assertEquals("v" + key, presized.get(key));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(31));
+        assertFalse(map.values().iterator().hasNext());
+    }
+
+    @Test
+    void testRandomAgainstHashMap() {
+        Random random = new Random(1);
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 2_500;
+            if (random.nextInt(3) == 0)
+                assertEquals(expected.remove(key), map.remove(key));
+            else
+                assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((k, v) -> assertEquals(v, map.get(k)));
+        Map<Long, String> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+    }
+}
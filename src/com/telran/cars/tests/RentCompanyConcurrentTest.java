@@ -0,0 +1,146 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.utils.Persistable;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentCompanyConcurrentTest extends RentCompanyEmbeddedTest {
+    final int N_THREADS = 8;
+    final int N_CARS = 200;
+
+    @Override
+    protected IRentCompany createCompany() {
+        return new RentCompanyConcurrent();
+    }
+
+    @Override
+    protected IRentCompany restoreFromFile(String file) {
+        return RentCompanyConcurrent.restoreFromFile(file);
+    }
+
+    @Override
+    @Test
+    void testSaveRestore_Fail() {
+        IRentCompany restored = RentCompanyConcurrent.restoreFromFile("companyTest_file.data");
+        assertNotNull(restored);
+        assertTrue(restored instanceof RentCompanyConcurrent);
+        assertNull(restored.getModel(MODEL_NAME));
+    }
+
+    @Test
+    void testParallelRentReturn() throws Exception {
+        company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY));
+        for (int i = 0; i < N_CARS; i++) {
+            company.addCar(new Car(REG_NUMBER + i, COLOR, MODEL_NAME));
+            company.addDriver(new Driver(LICENSE + i, NAME, YEAR_OB, PHONE_NUMBER));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < N_THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = thread; i < N_CARS; i += N_THREADS) {
+                    assertEquals(OK, company.rentCar(REG_NUMBER + i, LICENSE + i, RENT_DATE, RENT_DAYS));
+                    company.returnCar(REG_NUMBER + i, LICENSE + i, RETURN_DATE, DAMAGES, TANK_PERCENT);
+                    assertEquals(OK, company.rentCar(REG_NUMBER + i, LICENSE + i, RETURN_DATE, RENT_DAYS));
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        executor.shutdown();
+
+        assertEquals(N_CARS, company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE).size());
+        assertEquals(N_CARS, company.getRentRecordsAtDates(RETURN_DATE, RETURN_DATE.plusDays(1)).size());
+        //Деревья интервалов всех полос: возвращенные записи до дня возврата и открытые с него
+        List<RentRecord> active = company.getRentRecordsActiveAtDates(RETURN_DATE, RETURN_DATE.plusDays(1));
+        assertEquals(2 * N_CARS, active.size());
+        assertEquals(company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE.plusDays(1)), active);
+        assertTrue(company.getRentRecordsActiveAtDates(RETURN_DATE.plusDays(RENT_DAYS + 1), RETURN_DATE.plusDays(30)).isEmpty());
+        assertTrue(company.getCarsByModel(MODEL_NAME).isEmpty());
+        //Полосы аналитики и выручки сливаются при чтении без потерь
+        assertEquals(N_CARS, company.getMostActiveDrivers(2 * N_CARS).size());
+        assertEquals(List.of(MODEL_NAME), company.getMostPopularCarModels(1));
+        assertEquals(N_CARS, company.getRevenueTotals(null, null).getReturns());
+    }
+
+    @Test
+    void testSameCarRentedOnce() throws Exception {
+        company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY));
+        company.addCar(new Car(REG_NUMBER, COLOR, MODEL_NAME));
+        for (int i = 0; i < N_THREADS; i++)
+            company.addDriver(new Driver(LICENSE + i, NAME, YEAR_OB, PHONE_NUMBER));
+        ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger rented = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < N_THREADS; t++) {
+            long license = LICENSE + t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                CarsReturnCode code = company.rentCar(REG_NUMBER, license, RENT_DATE, RENT_DAYS);
+                if (code == OK) rented.incrementAndGet();
+                else assertEquals(CAR_IN_USE, code);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get();
+        executor.shutdown();
+
+        assertEquals(1, rented.get());
+        assertEquals(1, company.getDriversByCars(REG_NUMBER).size());
+        LocalDate to = RENT_DATE.plusDays(1);
+        assertEquals(1, company.getRentRecordsAtDates(RENT_DATE, to).size());
+    }
+
+    @Test
+    void testSaveWhileRenting() throws Exception {
+        company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY));
+        for (int i = 0; i < N_CARS; i++) {
+            company.addCar(new Car(REG_NUMBER + i, COLOR, MODEL_NAME));
+            company.addDriver(new Driver(LICENSE + i, NAME, YEAR_OB, PHONE_NUMBER));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < N_THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int round = 0; round < 20; round++) {
+                    LocalDate date = RENT_DATE.plusDays(round * 2L);
+                    for (int i = thread; i < N_CARS; i += N_THREADS) {
+                        company.rentCar(REG_NUMBER + i, LICENSE + i, date, 1);
+                        company.returnCar(REG_NUMBER + i, LICENSE + i, date.plusDays(1), 0, 100);
+                    }
+                }
+            }));
+        }
+        //Каждый снимок: машина в аренде тогда и только тогда, когда у нее есть открытая запись
+        String file = "companyTest.data";
+        for (int i = 0; i < 10; i++) {
+            ((Persistable) company).save(file);
+            IRentCompany restored = restoreFromFile(file);
+            Set<String> rented = new HashSet<>();
+            restored.getRentedCars().forEach(c -> rented.add(c.getRegNumber()));
+            for (int c = 0; c < N_CARS; c++) {
+                Car car = restored.getCar(REG_NUMBER + c);
+                assertEquals(car.isInUse(), rented.contains(car.getRegNumber()), car.getRegNumber());
+            }
+        }
+        for (Future<?> f : futures) f.get();
+        executor.shutdown();
+    }
+}
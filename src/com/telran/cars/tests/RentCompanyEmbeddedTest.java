@@ -1,16 +1,30 @@
 package com.telran.cars.tests;
 
 import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.CarsReturnCode;
 import com.telran.cars.dto.enums.State;
+import com.telran.cars.models.FleetCsvLoader;
 import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
 import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.cars.models.RecordArchive;
+import com.telran.cars.models.RentCompanyMapped;
 import com.telran.utils.Persistable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.telran.cars.dto.enums.CarsReturnCode.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -42,15 +56,22 @@ public class RentCompanyEmbeddedTest {
     private Car car;
     private Driver driver;
 
-    private IRentCompany company;
+    protected IRentCompany company;
 
+    protected IRentCompany createCompany() {
+        return new RentCompanyEmbedded();
+    }
+
+    protected IRentCompany restoreFromFile(String file) {
+        return RentCompanyEmbedded.restoreFromFile(file);
+    }
 
     @BeforeEach
     void setUp() {
         model = new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY);
         car = new Car(REG_NUMBER, COLOR, MODEL_NAME);
         driver = new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER);
-        company = new RentCompanyEmbedded();
+        company = createCompany();
         ((Persistable) company).save("company2.dat");
     }
 
@@ -94,7 +115,7 @@ public class RentCompanyEmbeddedTest {
         String file = "companyTest.data";
 
         ((Persistable) company).save(file);
-        IRentCompany restored = RentCompanyEmbedded.restoreFromFile(file);
+        IRentCompany restored = restoreFromFile(file);
         assertNotNull(restored);
 
         assertEquals(model, restored.getModel(MODEL_NAME));
@@ -114,6 +135,21 @@ public class RentCompanyEmbeddedTest {
         assertNull(restored.getDriver(LICENSE));
     }
 
+    @Test
+    void testLoadSerialized() throws IOException {
+        //Файл Java-сериализации первых версий не читается: load сообщает об этом
+        Path file = Path.of("companySerialized.data");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject(new Car(REG_NUMBER, COLOR, MODEL_NAME));
+        }
+        try {
+            assertThrows(IOException.class, () -> RentCompanyEmbedded.load(file.toString()));
+            assertThrows(IOException.class, () -> RentCompanyConcurrent.load(file.toString()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     //Sprint 2
     @Test
     void testRentCarOK() {
@@ -407,4 +443,721 @@ public class RentCompanyEmbeddedTest {
         company.removeModel(MODEL_NAME);
         assertEquals(0,company.getCarsByModel(MODEL_NAME).size());
     }
+
+    @Test
+    void testRentedCars() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        assertTrue(company.getRentedCars().isEmpty());
+
+        company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS);
+        assertEquals(List.of(car), company.getRentedCars());
+
+        //Возврат другим водителем не закрывает аренду
+        assertEquals(new RemovedCarData(null, null),
+                company.returnCar(REG_NUMBER, LICENSE + 1, RETURN_DATE, DAMAGES, TANK_PERCENT));
+        assertEquals(List.of(car), company.getRentedCars());
+
+        company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        assertTrue(company.getRentedCars().isEmpty());
+    }
+
+    @Test
+    void testRemoveModelRemovesCars() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        Car car2 = new Car(REG_NUMBER + 2, COLOR, MODEL_NAME);
+        assertEquals(OK, company.addCar(car2));
+
+        company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS);
+        company.rentCar(REG_NUMBER + 2, LICENSE, RENT_DATE, RENT_DAYS);
+        company.returnCar(REG_NUMBER + 2, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+
+        List<RemovedCarData> removed = company.removeModel(MODEL_NAME);
+        assertEquals(2, removed.size());
+        assertEquals(new RemovedCarData(car, null), removed.get(0));       //на руках, удаляется при возврате
+        assertEquals(1, removed.get(1).getRemovedRecords().size());
+        assertNull(company.getCar(REG_NUMBER + 2));
+        assertEquals(1, company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE).size());
+
+        company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        assertNull(company.getCar(REG_NUMBER));
+        assertTrue(company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE).isEmpty());
+        assertTrue(company.getCarByDrivers(LICENSE).isEmpty());
+    }
+
+    @Test
+    void testRentRecordsActiveAtDates() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS);
+        LocalDate weekEnd = RETURN_DATE.plusDays(7);
+
+        //Аренда началась до периода, но еще продолжается
+        assertTrue(company.getRentRecordsAtDates(RENT_DATE.plusDays(2), weekEnd).isEmpty());
+        assertEquals(1, company.getRentRecordsActiveAtDates(RENT_DATE.plusDays(2), weekEnd).size());
+        assertTrue(company.getRentRecordsActiveAtDates(RETURN_DATE, weekEnd).isEmpty());
+        assertTrue(company.getRentRecordsActiveAtDates(RENT_DATE.minusDays(7), RENT_DATE).isEmpty());
+
+        //После возврата с опозданием интервал продлевается до даты возврата
+        company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        List<RentRecord> res = company.getRentRecordsActiveAtDates(RETURN_DATE, weekEnd);
+        assertEquals(1, res.size());
+        assertEquals(RETURN_DATE, res.get(0).getReturnDate());
+
+        company.removeCar(REG_NUMBER);
+        assertTrue(company.getRentRecordsActiveAtDates(RENT_DATE, weekEnd).isEmpty());
+    }
+
+    @Test
+    void testRentRecordsPages() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addDriver(driver));
+        for (int i = 0; i < 7; i++) {
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + i, COLOR, MODEL_NAME)));
+            company.rentCar(REG_NUMBER + i, LICENSE, RENT_DATE.plusDays(i / 3), RENT_DAYS);
+        }
+        LocalDate to = RENT_DATE.plusDays(10);
+        List<RentRecord> expected = company.getRentRecordsAtDates(RENT_DATE, to);
+        assertEquals(7, expected.size());
+
+        List<RentRecord> actual = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            Page<RentRecord> page = company.getRentRecordsAtDates(RENT_DATE, to, 2, token);
+            actual.addAll(page.getItems());
+            token = page.getNextPageToken();
+            pages++;
+        } while (token != null);
+        assertEquals(expected, actual);
+        assertEquals(4, pages);
+
+        Page<Car> cars = company.getCarByDrivers(LICENSE, 5, null);
+        assertEquals(5, cars.getItems().size());
+        assertEquals(2, company.getCarByDrivers(LICENSE, 5, cars.getNextPageToken()).getItems().size());
+
+        assertEquals(expected.get(0), company.streamRentRecordsAtDates(RENT_DATE, to).findFirst().orElseThrow());
+        assertEquals(3, company.streamRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(1)).count());
+    }
+
+    @Test
+    void testSaveRestoreHistory() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        Car car2 = new Car(REG_NUMBER + 2, COLOR, MODEL_NAME);
+        assertEquals(OK, company.addCar(car2));
+        company.setGasPrice(12);
+        company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS);
+        company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE, BAD_TRESHOLD + 5, TANK_PERCENT);
+        company.rentCar(REG_NUMBER + 2, LICENSE, RETURN_DATE, RENT_DAYS);
+
+        String file = "companyHistoryTest.data";
+        ((Persistable) company).save(file);
+        IRentCompany restored = restoreFromFile(file);
+
+        assertEquals(12, restored.getGasPrice());
+        assertEquals(State.BAD, restored.getCar(REG_NUMBER).getState());
+        assertEquals(company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE.plusDays(1)),
+                restored.getRentRecordsAtDates(RENT_DATE, RETURN_DATE.plusDays(1)));
+        assertEquals(List.of(car2), restored.getRentedCars());
+        assertEquals(List.of(car, car2), restored.getCarByDrivers(LICENSE));
+        assertEquals(new RemovedCarData(car2, null),
+                restored.returnCar(REG_NUMBER + 2, LICENSE, RETURN_DATE.plusDays(1), DAMAGES, TANK_PERCENT));
+    }
+
+    @Test
+    void testMappedRestore() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS);
+
+        String file = "companyMappedTest.data";
+        ((Persistable) company).save(file);
+        IRentCompany restored = RentCompanyMapped.restoreFromFile(file);
+        assertTrue(restored instanceof RentCompanyMapped);
+
+        //До окончания фоновой загрузки ответы читаются из файла
+        assertEquals(car, restored.getCar(REG_NUMBER));
+        assertTrue(restored.getCar(REG_NUMBER).isInUse());
+        assertEquals(driver, restored.getDriver(LICENSE));
+        assertEquals(model, restored.getModel(MODEL_NAME));
+        assertNull(restored.getCar(REG_NUMBER + 1));
+        assertNull(restored.getDriver(LICENSE + 1));
+
+        assertEquals(List.of(car), restored.getRentedCars());
+        assertTrue(((RentCompanyMapped) restored).isLoaded());
+        assertEquals(OK, ((RentCompanyMapped) restored).awaitLoaded().addCar(new Car(REG_NUMBER + 1, COLOR, MODEL_NAME)));
+        assertEquals(1, restored.getCarsByModel(MODEL_NAME).size());
+    }
+
+    @Test
+    void testMappedRestore_Fail() throws IOException {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        String file = "companyMappedTest.data";
+        ((Persistable) company).save(file);
+
+        //Число водителей испорчено: отображение открывается, полная загрузка - нет
+        byte[] bytes = Files.readAllBytes(Path.of(file));
+        byte[] section = ByteBuffer.allocate(12).putInt(1).putLong(LICENSE).array();
+        int position = indexOf(bytes, section);
+        assertTrue(position > 0);
+        ByteBuffer.wrap(bytes).putInt(position, Integer.MAX_VALUE);
+        Files.write(Path.of(file), bytes);
+
+        RentCompanyMapped restored = (RentCompanyMapped) RentCompanyMapped.restoreFromFile(file);
+        IllegalStateException e = assertThrows(IllegalStateException.class, restored::awaitLoaded);
+        assertNotNull(e.getCause());
+        assertThrows(IllegalStateException.class, restored::getRentedCars);
+        assertThrows(IllegalStateException.class, () -> restored.getCar(REG_NUMBER));
+        assertThrows(IllegalStateException.class, () -> restored.addCar(new Car(REG_NUMBER + 1, COLOR, MODEL_NAME)));
+        assertFalse(restored.isLoaded());
+        assertTrue(restored.isFailed());
+        assertTrue(restored.getIndexSizes().isEmpty());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= bytes.length; i++)
+            if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length))
+                return i;
+        return -1;
+    }
+
+    @Test
+    void testBatchAdd() {
+        Model model2 = new Model(MODEL_NAME + 2, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY);
+        assertEquals(List.of(OK, MODEL_EXISTS, OK), company.addModels(List.of(model, model, model2)));
+        assertEquals(List.of(OK, CAR_EXISTS, NO_MODEL),
+                company.addCars(List.of(car, car, new Car(REG_NUMBER + 1, COLOR, MODEL_NAME + 3))));
+        assertEquals(List.of(OK, DRIVER_EXISTS), company.addDrivers(List.of(driver, driver)));
+
+        assertEquals(car, company.getCar(REG_NUMBER));
+        assertEquals(driver, company.getDriver(LICENSE));
+        assertEquals(model2, company.getModel(MODEL_NAME + 2));
+        assertEquals(List.of(car), company.getCarsByModel(MODEL_NAME));
+    }
+
+    @Test
+    void testBatchIndexes() {
+        //Индексы пакета строятся после вставки машин: те же ответы, что после addCar по одной
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, YEAR_OB, PHONE_NUMBER)));
+        List<Car> batch = new ArrayList<>();
+        for (int i = 1; i <= 100; i++)
+            batch.add(new Car(REG_NUMBER + i, COLOR, MODEL_NAME));
+        Car removed = new Car(REG_NUMBER + 101, COLOR, MODEL_NAME);
+        removed.setFlRemoved(true);
+        batch.add(removed);
+        List<CarsReturnCode> codes = company.addCars(batch);
+        assertEquals(101, codes.size());
+        assertTrue(codes.stream().allMatch(c -> c == OK));
+
+        assertEquals(101, company.getCarsByModel(MODEL_NAME).size());
+        assertEquals(101, company.countCarsByModel(MODEL_NAME));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 50, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(CAR_REMOVED, company.rentCar(REG_NUMBER + 101, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 60, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(CAR_RESERVED, company.rentCar(REG_NUMBER + 60, LICENSE + 1, RENT_DATE, RENT_DAYS));
+        Car free = company.findFreeCar(MODEL_NAME, RENT_DATE, RENT_DATE.plusDays(RENT_DAYS));
+        assertNotNull(free);
+        assertNotEquals(REG_NUMBER + 50, free.getRegNumber());
+        assertNotEquals(REG_NUMBER + 60, free.getRegNumber());
+        assertNotEquals(REG_NUMBER + 101, free.getRegNumber());
+    }
+
+    @Test
+    void testImportRentRecords() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(OK, company.addDriver(driver));
+        RentRecord closed = new RentRecord(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS);
+        closed.setReturnDate(RETURN_DATE);
+        closed.setDamages(DAMAGES);
+        closed.setTankPercent(TANK_PERCENT);
+        closed.setCost(COST);
+        RentRecord open = new RentRecord(REG_NUMBER, LICENSE, RETURN_DATE, RENT_DAYS);
+
+        assertEquals(List.of(OK, OK, CAR_IN_USE, NO_CAR, NO_DRIVER), company.importRentRecords(List.of(closed, open,
+                new RentRecord(REG_NUMBER, LICENSE, RETURN_DATE, RENT_DAYS),
+                new RentRecord(REG_NUMBER + 1, LICENSE, RENT_DATE, RENT_DAYS),
+                new RentRecord(REG_NUMBER, LICENSE + 1, RENT_DATE, RENT_DAYS))));
+
+        assertEquals(List.of(closed, open), company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE.plusDays(1)));
+        assertEquals(List.of(car), company.getRentedCars());
+        assertEquals(List.of(driver), company.getDriversByCars(REG_NUMBER));
+        assertEquals(car, company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE.plusDays(RENT_DAYS),
+                DAMAGES, TANK_PERCENT).getCar());
+        assertFalse(company.getCar(REG_NUMBER).isInUse());
+    }
+
+    @Test
+    void testCsvLoader() throws IOException {
+        Path dir = Files.createTempDirectory("fleet");
+        try {
+            Path models = Files.writeString(dir.resolve("models.csv"),
+                    "modelName,gasTank,company,country,priceDay\n" +
+                    MODEL_NAME + "," + GAS_TANK + "," + COMPANY + "," + COUNTRY + "," + PRICE_PER_DAY + "\r\n");
+            Path cars = Files.writeString(dir.resolve("cars.csv"),
+                    "regNumber,color,modelName\n" + REG_NUMBER + "," + COLOR + "," + MODEL_NAME + "\n\n" +
+                    REG_NUMBER + 1 + ",\"dark, \"\"blue\"\"\"," + MODEL_NAME + ",GOOD\n");
+            Path drivers = Files.writeString(dir.resolve("drivers.csv"),
+                    "licenseId,name,birthYear,phone\n" + LICENSE + "," + NAME + "," + YEAR_OB + "," + PHONE_NUMBER);
+            Path records = Files.writeString(dir.resolve("records.csv"),
+                    "regNumber,licenseId,rentDate,rentDays,returnDate,damages,tankPercent,cost\n" +
+                    REG_NUMBER + "," + LICENSE + "," + RENT_DATE + "," + RENT_DAYS + "," + RETURN_DATE + ","
+                            + DAMAGES + "," + TANK_PERCENT + "," + COST + "\n" +
+                    REG_NUMBER + 1 + "," + LICENSE + "," + RETURN_DATE + "," + RENT_DAYS + ",,,,\n");
+
+            assertEquals(List.of(OK), FleetCsvLoader.loadModels(company, models));
+            assertEquals(List.of(OK, OK), FleetCsvLoader.loadCars(company, cars));
+            assertEquals(List.of(OK), FleetCsvLoader.loadDrivers(company, drivers));
+            assertEquals(List.of(OK, OK), FleetCsvLoader.loadRentRecords(company, records));
+
+            assertEquals(model, company.getModel(MODEL_NAME));
+            assertEquals("dark, \"blue\"", company.getCar(REG_NUMBER + 1).getColor());
+            assertEquals(State.GOOD, company.getCar(REG_NUMBER + 1).getState());
+            assertEquals(driver, company.getDriver(LICENSE));
+            List<RentRecord> loaded = company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE.plusDays(1));
+            assertEquals(2, loaded.size());
+            assertEquals(COST, loaded.get(0).getCost());
+            assertNull(loaded.get(1).getReturnDate());
+            assertEquals(List.of(company.getCar(REG_NUMBER + 1)), company.getRentedCars());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+
+    @Test
+    void testAvailableCars() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addDriver(driver));
+        assertEquals(0, company.countCarsByModel(MODEL_NAME));
+        assertNull(company.getAnyCarByModel(MODEL_NAME));
+        for (int i = 0; i < 3; i++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + i, COLOR, MODEL_NAME)));
+        assertEquals(3, company.countCarsByModel(MODEL_NAME));
+
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(2, company.countCarsByModel(MODEL_NAME));
+        assertFalse(company.getCarsByModel(MODEL_NAME).contains(company.getCar(REG_NUMBER + 0)));
+        assertNotEquals(REG_NUMBER + 0, company.getAnyCarByModel(MODEL_NAME).getRegNumber());
+
+        assertNotNull(company.removeCar(REG_NUMBER + 1));
+        assertEquals(1, company.countCarsByModel(MODEL_NAME));
+        assertEquals(REG_NUMBER + 2, company.getAnyCarByModel(MODEL_NAME).getRegNumber());
+
+        company.returnCar(REG_NUMBER + 0, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+        assertEquals(2, company.countCarsByModel(MODEL_NAME));
+        assertEquals(2, company.getCarsByModel(MODEL_NAME).size());
+
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, RETURN_DATE, RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 2, LICENSE, RETURN_DATE, RENT_DAYS));
+        assertEquals(0, company.countCarsByModel(MODEL_NAME));
+        assertNull(company.getAnyCarByModel(MODEL_NAME));
+        assertTrue(company.getCarsByModel(MODEL_NAME).isEmpty());
+
+        //Удаленная в прокате машина не возвращается в набор, выборка набор не меняет
+        assertNotNull(company.removeCar(REG_NUMBER + 0));
+        company.returnCar(REG_NUMBER + 0, LICENSE, RETURN_DATE.plusDays(RENT_DAYS), DAMAGES, TANK_PERCENT);
+        company.returnCar(REG_NUMBER + 2, LICENSE, RETURN_DATE.plusDays(RENT_DAYS), DAMAGES, TANK_PERCENT);
+        assertEquals(1, company.countCarsByModel(MODEL_NAME));
+        for (int i = 0; i < 3; i++)
+            assertEquals(REG_NUMBER + 2, company.getAnyCarByModel(MODEL_NAME).getRegNumber());
+        assertEquals(1, company.countCarsByModel(MODEL_NAME));
+        assertEquals(company.countCarsByModel(MODEL_NAME), company.getCarsByModel(MODEL_NAME).size());
+    }
+
+    @Test
+    void testAvailableCarMarkedOutside() {
+        //Флаг, измененный снаружи компании, скрывает машину, но не выбрасывает ее из набора
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addCar(car));
+        Car outside = company.getCar(REG_NUMBER);
+        outside.setInUse(true);
+        assertNull(company.getAnyCarByModel(MODEL_NAME));
+        assertEquals(0, company.countCarsByModel(MODEL_NAME));
+        outside.setInUse(false);
+        assertEquals(1, company.countCarsByModel(MODEL_NAME));
+        assertEquals(outside, company.getAnyCarByModel(MODEL_NAME));
+    }
+
+    @Test
+    void testReports() {
+        String model2 = MODEL_NAME + 2;
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addModel(new Model(model2, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY / 2)));
+        assertEquals(OK, company.addDriver(driver)); //35 years at the rent date
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, 1960, PHONE_NUMBER))); //65
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 2, NAME, 2000, PHONE_NUMBER))); //25
+        assertEquals(OK, company.addCar(car));
+        for (int i = 1; i < 4; i++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + i, COLOR, model2)));
+        assertTrue(company.getMostPopularCarModels(2).isEmpty());
+
+        assertEquals(OK, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE + 1, RENT_DATE, RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 2, LICENSE + 1, RENT_DATE, RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 3, LICENSE + 2, RENT_DATE.plusDays(10), RENT_DAYS));
+        assertEquals(List.of(MODEL_NAME, model2), company.getMostProfitableCarModels(2)); //no revenue yet, by name
+        company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+
+        assertEquals(List.of(model2, MODEL_NAME), company.getMostPopularCarModels(2));
+        assertEquals(List.of(model2), company.getMostPopularCarModels(1));
+        assertEquals(List.of(MODEL_NAME, model2), company.getMostProfitableCarModels(2));
+        assertEquals(List.of(LICENSE + 1, LICENSE, LICENSE + 2),
+                company.getMostActiveDrivers(5).stream().map(Driver::getLicenseId).toList());
+
+        LocalDate middle = RENT_DATE.plusDays(1);
+        assertEquals(List.of(model2, MODEL_NAME), company.getMostPopularCarModels(5, null, middle, 0, 200));
+        assertEquals(List.of(model2), company.getMostPopularCarModels(5, middle, null, 0, 200));
+        assertEquals(List.of(company.getDriver(LICENSE + 2)), company.getMostActiveDrivers(5, middle, null, 0, 200));
+        assertEquals(List.of(model2), company.getMostPopularCarModels(5, null, null, 20, 30));
+        assertEquals(List.of(MODEL_NAME), company.getMostProfitableCarModels(5, null, null, 30, 40));
+        assertEquals(List.of(company.getDriver(LICENSE + 1)), company.getMostActiveDrivers(5, null, middle, 60, 70));
+        assertTrue(company.getMostActiveDrivers(5, null, null, 40, 60).isEmpty());
+
+        //Восстановленная компания пересчитывает отчеты по записям
+        ((Persistable) company).save("companyTest.data");
+        IRentCompany restored = restoreFromFile("companyTest.data");
+        assertEquals(company.getMostProfitableCarModels(5), restored.getMostProfitableCarModels(5));
+        assertEquals(company.getMostActiveDrivers(5, null, middle, 30, 70),
+                restored.getMostActiveDrivers(5, null, middle, 30, 70));
+
+        assertNotNull(company.removeCar(REG_NUMBER));
+        assertEquals(List.of(model2), company.getMostPopularCarModels(5));
+        assertEquals(List.of(model2), company.getMostProfitableCarModels(5));
+        assertEquals(List.of(LICENSE + 1, LICENSE + 2),
+                company.getMostActiveDrivers(5).stream().map(Driver::getLicenseId).toList());
+    }
+
+    @Test
+    void testRevenueTotals() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addDriver(driver));
+        assertEquals(OK, company.addCar(car));
+        assertEquals(0, company.getRevenueTotals(null, null).getReturns());
+
+        //Возвраты на 100 дней позже, затем раньше первого - дерево растет в обе стороны
+        int[] shifts = {0, 100, 200, -300, -1000};
+        for (int shift : shifts) {
+            assertEquals(OK, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE.plusDays(shift), RENT_DAYS));
+            company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE.plusDays(shift), DAMAGES, TANK_PERCENT);
+        }
+        assertEquals(OK, company.rentCar(REG_NUMBER, LICENSE, RETURN_DATE.plusDays(300), RENT_DAYS));
+
+        RevenueTotals all = company.getRevenueTotals(null, null);
+        assertEquals(shifts.length, all.getReturns());
+        assertEquals(shifts.length * 5, all.getRentedDays());
+        assertEquals(shifts.length * COST, all.getRevenue(), 1e-6);
+        assertEquals(shifts.length * RENT_DAYS * PRICE_PER_DAY, all.getRentCost(), 1e-6);
+        assertEquals(shifts.length * 100, all.getGasCost(), 1e-6); //10% of 50 liters by 10
+        assertEquals(shifts.length * 460, all.getFines(), 1e-6); //2 days by 200 + 15%
+
+        assertEquals(2, company.getRevenueTotals(RETURN_DATE, RETURN_DATE.plusDays(101)).getReturns());
+        assertEquals(1, company.getRevenueTotals(RETURN_DATE.plusDays(1), RETURN_DATE.plusDays(101)).getReturns());
+        assertEquals(0, company.getRevenueTotals(RETURN_DATE.plusDays(1), RETURN_DATE.plusDays(100)).getReturns());
+        assertEquals(3, company.getRevenueTotals(null, RETURN_DATE.plusDays(1)).getReturns());
+        assertEquals(3 * COST, company.getRevenueTotals(RETURN_DATE, null).getRevenue(), 1e-6);
+        assertEquals(0, company.getRevenueTotals(RETURN_DATE, RETURN_DATE).getReturns());
+
+        //Доля топлива - по цене дня возврата, новая цена ее не меняет
+        company.setGasPrice(company.getGasPrice() * 2);
+        assertEquals(shifts.length * 100, company.getRevenueTotals(null, null).getGasCost(), 1e-6);
+        ((Persistable) company).save("companyTest.data");
+        RevenueTotals restored = restoreFromFile("companyTest.data").getRevenueTotals(null, RETURN_DATE);
+        assertEquals(2, restored.getReturns());
+        assertEquals(2 * 460, restored.getFines(), 1e-6);
+        assertEquals(2 * 100, restored.getGasCost(), 1e-6);
+
+        assertNotNull(company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE.plusDays(305), REMOVE_TRESHOLD + 1, 100));
+        RevenueTotals removed = company.getRevenueTotals(null, null);
+        assertEquals(0, removed.getReturns());
+        assertEquals(0, removed.getRevenue(), 1e-6);
+        assertEquals(0, removed.getFines(), 1e-6);
+        assertEquals(0, removed.getGasCost(), 1e-6);
+    }
+
+    @Test
+    void testRemoveModelStreaming() {
+        final int CARS = 200;
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME + 2, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        for (int d = 0; d < 3; d++)
+            assertEquals(OK, company.addDriver(new Driver(LICENSE + d, NAME, YEAR_OB, PHONE_NUMBER)));
+        for (int c = 0; c < CARS; c++) {
+            String regNumber = REG_NUMBER + c;
+            assertEquals(OK, company.addCar(new Car(regNumber, COLOR, MODEL_NAME)));
+            for (int r = 0; r < 2; r++) {
+                LocalDate rentDate = RENT_DATE.plusDays(c % 7 + r * 10);
+                assertEquals(OK, company.rentCar(regNumber, LICENSE + (c + r) % 3, rentDate, RENT_DAYS));
+                company.returnCar(regNumber, LICENSE + (c + r) % 3, rentDate.plusDays(RENT_DAYS), 0, 100);
+            }
+        }
+        assertEquals(OK, company.addCar(new Car("other", COLOR, MODEL_NAME + 2)));
+        assertEquals(OK, company.rentCar("other", LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, RENT_DATE.plusDays(30), RENT_DAYS));
+
+        List<RemovedCarData> removed = new ArrayList<>();
+        assertEquals(CARS, company.removeModel(MODEL_NAME, removed::add));
+        assertEquals(CARS, removed.size());
+        assertEquals(2 * (CARS - 1), removed.stream()
+                .filter(r -> r.getRemovedRecords() != null)
+                .mapToInt(r -> r.getRemovedRecords().size()).sum());
+        assertEquals(1, removed.stream().filter(r -> r.getRemovedRecords() == null).count());
+        assertEquals(0, company.removeModel(MODEL_NAME, removed::add));
+
+        assertTrue(company.getCarsByModel(MODEL_NAME).isEmpty());
+        assertNull(company.getCar(REG_NUMBER + 1));
+        assertEquals(List.of(REG_NUMBER + 0, "other"), company.getCarByDrivers(LICENSE).stream()
+                .map(Car::getRegNumber).sorted().toList());
+        assertTrue(company.getCarByDrivers(LICENSE + 2).isEmpty());
+        assertEquals(4, company.getRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(31)).size()); //other and the car in use
+
+        company.returnCar(REG_NUMBER + 0, LICENSE, RENT_DATE.plusDays(33), DAMAGES, TANK_PERCENT);
+        assertNull(company.getCar(REG_NUMBER + 0));
+        assertEquals(1, company.getRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(31)).size());
+        assertEquals(List.of(MODEL_NAME + 2), company.getMostPopularCarModels(5));
+    }
+
+    @Test
+    void testArchive() throws IOException {
+        if (!(company instanceof RentCompanyEmbedded embedded)) return; //архив есть только у этой компании
+        LocalDate jan = LocalDate.of(2025, 1, 5);
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addDriver(driver));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, 1960, PHONE_NUMBER)));
+        for (int c = 0; c < 3; c++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + c, COLOR, MODEL_NAME)));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, jan, RENT_DAYS));
+        company.returnCar(REG_NUMBER + 0, LICENSE, jan.plusDays(3), 0, 100);
+        assertEquals(OK, company.rentCar(REG_NUMBER + 2, LICENSE, jan.plusDays(15), RENT_DAYS)); //не возвращена
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE + 1, jan.plusDays(36), RENT_DAYS));
+        company.returnCar(REG_NUMBER + 1, LICENSE + 1, jan.plusDays(38), DAMAGES, TANK_PERCENT);
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE + 1, jan.plusDays(55), RENT_DAYS));
+        company.returnCar(REG_NUMBER + 0, LICENSE + 1, jan.plusDays(58), 0, 100);
+        ((Persistable) company).save("companyBeforeArchive.data");
+
+        List<Object> before = history(company, jan);
+        Path dir = Files.createTempDirectory("archive");
+        try {
+            embedded.attachArchive(new RecordArchive(dir.toString()), 30);
+            assertEquals(0, embedded.archiveRecords(jan.plusDays(30)));
+            assertEquals(2, embedded.archiveRecords(jan.plusDays(86))); //вернули раньше 02.03
+            assertEquals(2L, (long) embedded.getIndexSizes().get("archivedRecords"));
+            assertEquals(2L, (long) embedded.getIndexSizes().get("archiveSegments"));
+            assertEquals(2L, (long) embedded.getIndexSizes().get("rentRecords"));
+            assertEquals(before, history(company, jan));
+            //Страницы архива и памяти - по одной записи, в порядке полного списка
+            List<RentRecord> paged = new ArrayList<>();
+            String token = null;
+            do {
+                Page<RentRecord> page = company.getRentRecordsAtDates(jan, jan.plusDays(100), 1, token);
+                paged.addAll(page.getItems());
+                token = page.getNextPageToken();
+            } while (token != null);
+            assertEquals(company.getRentRecordsAtDates(jan, jan.plusDays(100)), paged);
+            assertEquals(4, paged.size());
+
+            ((Persistable) company).save("companyTest.data");
+            RentCompanyEmbedded restored = (RentCompanyEmbedded) RentCompanyEmbedded.restoreFromFile("companyTest.data");
+            restored.attachArchive(new RecordArchive(dir.toString()), 30);
+            assertEquals(before, history(restored, jan));
+
+            //Снимок до архивации: записи, уже лежащие в архиве, не должны повториться
+            RentCompanyEmbedded old = (RentCompanyEmbedded) RentCompanyEmbedded.restoreFromFile("companyBeforeArchive.data");
+            old.attachArchive(new RecordArchive(dir.toString()), 30);
+            assertEquals(2L, (long) old.getIndexSizes().get("rentRecords"));
+            assertEquals(before, history(old, jan));
+
+            RemovedCarData removed = company.removeCar(REG_NUMBER + 1);
+            assertEquals(1, removed.getRemovedRecords().size());
+            assertEquals(List.of(company.getCar(REG_NUMBER + 0)), company.getCarByDrivers(LICENSE + 1));
+            assertEquals(1L, (long) embedded.getIndexSizes().get("archiveSegments"));
+            assertEquals(0, company.getRevenueTotals(jan.plusDays(38), jan.plusDays(39)).getReturns());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    void testReservations() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addDriver(driver));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, YEAR_OB, PHONE_NUMBER)));
+        for (int c = 0; c < 3; c++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + c, COLOR, MODEL_NAME)));
+        LocalDate from = RENT_DATE.plusDays(10);
+
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE, from, 5));
+        assertEquals(CAR_RESERVED, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(4), 2));
+        assertEquals(CAR_RESERVED, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.minusDays(2), 3));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(5), 2)); //встык
+        assertEquals(NO_CAR, company.reserveCar("x", LICENSE, from, 1));
+        assertEquals(NO_DRIVER, company.reserveCar(REG_NUMBER + 0, LICENSE + 5, from.plusDays(20), 1));
+        assertEquals(WRONG_PERIOD, company.reserveCar(REG_NUMBER + 0, LICENSE, from, 0));
+
+        assertEquals(company.getCar(REG_NUMBER + 1), company.findFreeCar(MODEL_NAME, from, from.plusDays(3)));
+        assertEquals(company.getCar(REG_NUMBER + 0), company.findFreeCar(MODEL_NAME, from.plusDays(7), from.plusDays(9)));
+        assertNull(company.findFreeCar("x", from, from.plusDays(3)));
+
+        //Аренда занимает дни так же, как бронь
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE + 1, from.minusDays(1), RENT_DAYS));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 2, LICENSE + 1, from.plusDays(2), 1));
+        assertNull(company.findFreeCar(MODEL_NAME, from, from.plusDays(3)));
+        assertEquals(CAR_RESERVED, company.reserveCar(REG_NUMBER + 1, LICENSE, from.plusDays(1), 1));
+        assertEquals(company.getCar(REG_NUMBER + 1), company.findFreeCar(MODEL_NAME, from.plusDays(2), from.plusDays(3)));
+
+        //Бронь чужого водителя не дает арендовать, свою аренда забирает
+        assertEquals(CAR_RESERVED, company.rentCar(REG_NUMBER + 0, LICENSE + 1, from.minusDays(1), RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, from, RENT_DAYS));
+        assertEquals(2L, company.getRentRecordsAtDates(from.minusDays(1), from.plusDays(1)).size());
+        company.returnCar(REG_NUMBER + 0, LICENSE, from.plusDays(1), 0, 100);
+        assertEquals(company.getCar(REG_NUMBER + 0), company.findFreeCar(MODEL_NAME, from.plusDays(1), from.plusDays(5)));
+        assertEquals(CAR_RESERVED, company.rentCar(REG_NUMBER + 0, LICENSE, from.plusDays(4), RENT_DAYS));
+
+        ((Persistable) company).save("companyTest.data");
+        IRentCompany restored = restoreFromFile("companyTest.data");
+        assertEquals(CAR_RESERVED, restored.reserveCar(REG_NUMBER + 0, LICENSE, from.plusDays(6), 1));
+        assertEquals(CAR_RESERVED, restored.reserveCar(REG_NUMBER + 1, LICENSE, from.plusDays(1), 1));
+        assertEquals(OK, restored.reserveCar(REG_NUMBER + 0, LICENSE, from.plusDays(3), 2));
+
+        //Брони удаленной машины снимаются, она не находится
+        company.removeCar(REG_NUMBER + 2);
+        assertEquals(company.getCar(REG_NUMBER + 0), company.findFreeCar(MODEL_NAME, from.plusDays(2), from.plusDays(3)));
+        assertEquals(NO_CAR, company.reserveCar(REG_NUMBER + 2, LICENSE, from.plusDays(20), 1));
+        company.removeModel(MODEL_NAME);
+        assertNull(company.findFreeCar(MODEL_NAME, from.plusDays(20), from.plusDays(21)));
+    }
+
+    @Test
+    void testReservationDays() {
+        assertEquals(OK, company.addModel(model));
+        assertEquals(OK, company.addDriver(driver));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, YEAR_OB, PHONE_NUMBER)));
+        for (int c = 0; c < 2; c++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + c, COLOR, MODEL_NAME)));
+        LocalDate from = RENT_DATE.plusDays(10);
+
+        //Аренда внутри своей брони забирает ее целиком
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE, from, 5));
+        assertEquals(CAR_RESERVED, company.rentCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(2), 1));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, from.plusDays(2), 1));
+        company.returnCar(REG_NUMBER + 0, LICENSE, from.plusDays(3), 0, 100);
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(4), 1));
+
+        //День компании - последний день аренды или возврата: прошедшие брони снимаются, новые не принимаются
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 1, LICENSE, from.plusDays(5), 2));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, from.plusDays(8), RENT_DAYS));
+        assertEquals(WRONG_PERIOD, company.reserveCar(REG_NUMBER + 1, LICENSE + 1, from.plusDays(5), 2));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 1, LICENSE + 1, from.plusDays(6), 5));
+
+        //Машина не возвращена к концу аренды: она занята до возврата
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE + 1, from.plusDays(12), 1));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 1, LICENSE, from.plusDays(20), 1));
+        assertNull(company.findFreeCar(MODEL_NAME, from.plusDays(20), from.plusDays(21)));
+        assertEquals(CAR_RESERVED, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(20), 1));
+
+        ((Persistable) company).save("companyTest.data");
+        IRentCompany restored = restoreFromFile("companyTest.data");
+        assertEquals(WRONG_PERIOD, restored.reserveCar(REG_NUMBER + 1, LICENSE, from.plusDays(6), 2));
+        assertNull(restored.findFreeCar(MODEL_NAME, from.plusDays(20), from.plusDays(21)));
+
+        company.returnCar(REG_NUMBER + 0, LICENSE, from.plusDays(13), 0, 100);
+        assertEquals(company.getCar(REG_NUMBER + 0), company.findFreeCar(MODEL_NAME, from.plusDays(20), from.plusDays(21)));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(20), 1));
+    }
+
+    @Test
+    void testReturnCars() {
+        IRentCompany single = createCompany();
+        for (IRentCompany c : List.of(company, single)) {
+            assertEquals(OK, c.addModel(model));
+            assertEquals(OK, c.addModel(new Model(MODEL_NAME + 2, 40, COMPANY, COUNTRY, 150)));
+            assertEquals(OK, c.addDriver(driver));
+            assertEquals(OK, c.addDriver(new Driver(LICENSE + 1, NAME, YEAR_OB, PHONE_NUMBER)));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(OK, c.addCar(new Car(REG_NUMBER + i, COLOR, i % 2 == 0 ? MODEL_NAME : MODEL_NAME + 2)));
+                assertEquals(OK, c.rentCar(REG_NUMBER + i, LICENSE + i % 2, RENT_DATE, RENT_DAYS));
+            }
+            assertNotNull(c.removeCar(REG_NUMBER + 3));
+        }
+        List<CarReturn> returns = List.of(
+                new CarReturn(REG_NUMBER + 0, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT),
+                new CarReturn(REG_NUMBER + 1, LICENSE, RETURN_DATE, 0, 100), //не тот водитель
+                new CarReturn(REG_NUMBER + 1, LICENSE + 1, RETURN_DATE.plusDays(10), 40, 100),
+                new CarReturn(REG_NUMBER + 0, LICENSE, RETURN_DATE, 0, 100), //уже возвращена
+                new CarReturn(REG_NUMBER + 2, LICENSE, RENT_DATE.plusDays(1), REMOVE_TRESHOLD + 1, 0),
+                new CarReturn(REG_NUMBER + 3, LICENSE + 1, RETURN_DATE, 0, 100),
+                new CarReturn("x", LICENSE, RETURN_DATE, 0, 100));
+
+        ReturnResults res = company.returnCars(returns);
+        assertEquals(returns.size(), res.size());
+        assertEquals(4, res.getReturned());
+        assertEquals(COST, res.getCost(0), 1e-6);
+        for (int i : new int[]{1, 3, 6}) {
+            assertFalse(res.isReturned(i));
+            assertTrue(Double.isNaN(res.getCost(i)));
+        }
+        assertEquals(List.of(false, false, false, false, true, true, false),
+                IntStream.range(0, res.size()).mapToObj(res::isRemoved).toList());
+
+        //Пакет дает то же, что возвраты по одному
+        double revenue = 0;
+        for (int i = 0; i < returns.size(); i++) {
+            CarReturn r = returns.get(i);
+            RemovedCarData data = single.returnCar(r.getRegNumber(), r.getLicenseId(), r.getReturnDate(),
+                    r.getDamages(), r.getTankPercent());
+            assertEquals(res.isReturned(i), data.getCar() != null);
+        }
+        for (RentRecord record : single.getRentRecordsAtDates(RENT_DATE, RETURN_DATE))
+            revenue += record.getCost();
+        assertEquals(revenue, res.getRevenue() - res.getCost(4) - res.getCost(5), 1e-6);
+        assertEquals(single.getRevenueTotals(null, null).getRevenue(), company.getRevenueTotals(null, null).getRevenue(), 1e-6);
+        assertEquals(single.getRentRecordsAtDates(RENT_DATE, RETURN_DATE), company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE));
+        for (int i = 0; i < 4; i++)
+            assertEquals(single.getCar(REG_NUMBER + i), company.getCar(REG_NUMBER + i));
+        assertEquals(State.BAD, company.getCar(REG_NUMBER + 1).getState());
+        assertEquals(single.getCarsByModel(MODEL_NAME), company.getCarsByModel(MODEL_NAME));
+        assertEquals(List.of(company.getCar(REG_NUMBER + 1)), company.getCarsByModel(MODEL_NAME + 2));
+        assertNull(company.getCar(REG_NUMBER + 2));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE + 1, RETURN_DATE, RENT_DAYS));
+
+        //Пакет с плохим возвратом отклоняется целиком, до изменений
+        List<CarReturn> bad = Arrays.asList(new CarReturn(REG_NUMBER + 0, LICENSE + 1, RETURN_DATE.plusDays(3), 0, 100),
+                new CarReturn(REG_NUMBER + 1, LICENSE + 1, null, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> company.returnCars(bad));
+        assertEquals(List.of(company.getCar(REG_NUMBER + 0)), company.getRentedCars());
+        assertEquals(1, company.returnCars(bad.subList(0, 1)).getReturned());
+    }
+
+    private static List<Object> history(IRentCompany company, LocalDate from) {
+        List<Object> res = new ArrayList<>();
+        for (long license = 1000; license < 1002; license++)
+            res.add(company.getCarByDrivers(license));
+        for (int c = 0; c < 3; c++)
+            res.add(company.getDriversByCars("100" + c));
+        res.add(company.getRentRecordsAtDates(from, from.plusDays(100)));
+        res.add(company.getRentRecordsAtDates(from.plusDays(30), from.plusDays(40), 1, null).getItems());
+        res.add(company.getRentRecordsActiveAtDates(from.plusDays(2), from.plusDays(37)));
+        res.add(company.getMostPopularCarModels(5));
+        res.add(company.getMostActiveDrivers(5));
+        res.add(company.getRevenueTotals(null, null).getRevenue());
+        return res;
+    }
 }
@@ -0,0 +1,65 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyOffHeap;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentCompanyOffHeapTest extends RentCompanyEmbeddedTest {
+
+    @Override
+    protected IRentCompany createCompany() {
+        return new RentCompanyOffHeap();
+    }
+
+    @Override
+    protected IRentCompany restoreFromFile(String file) {
+        return RentCompanyOffHeap.restoreFromFile(file);
+    }
+
+    @Override
+    @Test
+    void testSaveRestore_Fail() {
+        IRentCompany restored = RentCompanyOffHeap.restoreFromFile("companyTest_file.data");
+        assertNotNull(restored);
+        assertTrue(restored instanceof RentCompanyOffHeap);
+        assertNull(restored.getModel(MODEL_NAME));
+    }
+
+    @Test
+    void testRecordsOffHeap() {
+        company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY));
+        company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER));
+        for (int i = 0; i < 3; i++) {
+            company.addCar(new Car(REG_NUMBER + i, COLOR, MODEL_NAME));
+            assertEquals(OK, company.rentCar(REG_NUMBER + i, LICENSE, RENT_DATE.plusDays(i), RENT_DAYS));
+        }
+        company.returnCar(REG_NUMBER + 1, LICENSE, RETURN_DATE, DAMAGES, TANK_PERCENT);
+
+        //Запись из запроса - копия строки: ее изменение не меняет компанию
+        RentRecord record = company.getRentRecordsAtDates(RENT_DATE.plusDays(1), RENT_DATE.plusDays(2)).get(0);
+        double cost = record.getCost();
+        assertTrue(cost > 0);
+        record.setCost(0);
+        assertEquals(cost, company.getRentRecordsAtDates(RENT_DATE.plusDays(1), RENT_DATE.plusDays(2)).get(0).getCost());
+
+        assertEquals(3, company.getRentRecordsActiveAtDates(RENT_DATE.plusDays(2), RETURN_DATE).size());
+        assertEquals(2, company.getRentRecordsActiveAtDates(RENT_DATE.plusDays(5), RETURN_DATE.plusDays(1)).size());
+
+        assertEquals(1, company.removeCar(REG_NUMBER + 1).getRemovedRecords().size());
+        Map<String, Long> sizes = ((RentCompanyOffHeap) company).getIndexSizes();
+        assertEquals(2, (long) sizes.get("rentRecords"));
+        assertEquals(1, (long) sizes.get("removedRows"));
+        assertTrue(sizes.get("offHeapBytes") > 0);
+        assertEquals(List.of(RENT_DATE, RENT_DATE.plusDays(2)),
+                company.getRentRecordsAtDates(RENT_DATE, RETURN_DATE).stream().map(RentRecord::getRentDate).toList());
+        assertEquals(List.of(company.getCar(REG_NUMBER + 0), company.getCar(REG_NUMBER + 2)),
+                company.getCarByDrivers(LICENSE));
+    }
+}
@@ -0,0 +1,201 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.JournaledRentCompany;
+import com.telran.cars.models.RentCompanyReplica;
+import com.telran.cars.models.ReplicationPrimary;
+import com.telran.utils.Journal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentCompanyReplicaTest {
+    final String SNAPSHOT = "replicationTest.data";
+    final String JOURNAL = "replicationTest.journal";
+    final String MODEL_NAME = "Model1";
+    final long LICENSE = 1000L;
+    final String REG_NUMBER = "100";
+    final LocalDate RENT_DATE = LocalDate.of(2025, 8, 1);
+    final int CARS = 20;
+
+    private JournaledRentCompany company;
+    private ReplicationPrimary primary;
+    private final List<RentCompanyReplica> replicas = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.deleteIfExists(Path.of(SNAPSHOT));
+        Files.deleteIfExists(Path.of(JOURNAL));
+        company = JournaledRentCompany.open(SNAPSHOT, JOURNAL, Journal.SyncPolicy.NONE);
+        primary = new ReplicationPrimary(company, 0);
+        primary.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        replicas.forEach(RentCompanyReplica::close);
+        primary.close();
+        company.close();
+    }
+
+    private RentCompanyReplica replica() {
+        RentCompanyReplica res = RentCompanyReplica.connect("localhost", primary.getPort());
+        replicas.add(res);
+        return res;
+    }
+
+    private void fill() {
+        company.setGasPrice(12);
+        company.setFinePercent(20);
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, 50, "Company", "Country1", 200)));
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME + 2, 40, "Company", "Country1", 150)));
+        for (int d = 0; d < 3; d++)
+            assertEquals(OK, company.addDriver(new Driver(LICENSE + d, "name" + d, 1970 + d * 10, "123")));
+        for (int c = 0; c < CARS; c++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + c, "black", c % 2 == 0 ? MODEL_NAME : MODEL_NAME + 2)));
+        rentAndReturn(RENT_DATE);
+        assertNotNull(company.removeCar(REG_NUMBER + 0));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 1, LICENSE, RENT_DATE.plusDays(30), 3));
+    }
+
+    private void rentAndReturn(LocalDate date) {
+        List<CarReturn> returns = new ArrayList<>();
+        for (int c = 0; c < CARS; c++)
+            if (company.rentCar(REG_NUMBER + c, LICENSE + c % 3, date, 3) == OK && c % 4 != 3)
+                returns.add(new CarReturn(REG_NUMBER + c, LICENSE + c % 3, date.plusDays(2 + c % 3), c % 5, 60 + c));
+        returns.subList(0, returns.size() / 2)
+                .forEach(r -> company.returnCar(r.getRegNumber(), r.getLicenseId(), r.getReturnDate(), r.getDamages(), r.getTankPercent()));
+        company.returnCars(returns.subList(returns.size() / 2, returns.size()));
+    }
+
+    private void awaitCaughtUp(RentCompanyReplica replica) throws InterruptedException {
+        assertTrue(replica.awaitSequence(company.lastSequence(), 10, TimeUnit.SECONDS),
+                "replica at " + replica.getAppliedSequence() + " primary at " + company.lastSequence());
+    }
+
+    private void assertSameState(IRentCompany replica) {
+        assertEquals(company.getGasPrice(), replica.getGasPrice());
+        assertEquals(company.getFinePercent(), replica.getFinePercent());
+        for (int c = 0; c < CARS; c++)
+            assertEquals(company.getCar(REG_NUMBER + c), replica.getCar(REG_NUMBER + c));
+        assertEquals(company.getRentRecordsAtDates(LocalDate.MIN, LocalDate.MAX),
+                replica.getRentRecordsAtDates(LocalDate.MIN, LocalDate.MAX));
+        //Реплика - конкурентная компания: списки машин в другом порядке
+        assertEquals(new HashSet<>(company.getRentedCars()), new HashSet<>(replica.getRentedCars()));
+        assertEquals(new HashSet<>(company.getCarsByModel(MODEL_NAME)), new HashSet<>(replica.getCarsByModel(MODEL_NAME)));
+        assertEquals(company.getRevenueTotals(null, null).getRevenue(), replica.getRevenueTotals(null, null).getRevenue(), 1e-6);
+        assertEquals(company.getMostPopularCarModels(2), replica.getMostPopularCarModels(2));
+        assertEquals(company.getMostActiveDrivers(3), replica.getMostActiveDrivers(3));
+        assertEquals(company.findFreeCar(MODEL_NAME + 2, RENT_DATE.plusDays(30), RENT_DATE.plusDays(31)),
+                replica.findFreeCar(MODEL_NAME + 2, RENT_DATE.plusDays(30), RENT_DATE.plusDays(31)));
+    }
+
+    @Test
+    void testReplicaFollowsPrimary() throws InterruptedException {
+        RentCompanyReplica replica = replica();
+        fill();
+        awaitCaughtUp(replica);
+        assertSameState(replica);
+        assertEquals(0, replica.getLag());
+        assertEquals(0, replica.getLagMillis());
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> replica.rentCar(REG_NUMBER + 1, LICENSE, RENT_DATE, 1));
+        assertThrows(UnsupportedOperationException.class, () -> replica.setGasPrice(1));
+
+        //Подтверждения доходят до основного
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (primary.getReplicaLags().values().stream().anyMatch(lag -> lag > 0)
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+        assertEquals(List.of(0L), List.copyOf(primary.getReplicaLags().values()));
+    }
+
+    @Test
+    void testCatchUpFromSnapshot() throws InterruptedException {
+        fill();
+        company.checkpoint();
+        rentAndReturn(RENT_DATE.plusDays(10));
+        RentCompanyReplica late = replica();
+        awaitCaughtUp(late);
+        assertSameState(late);
+
+        rentAndReturn(RENT_DATE.plusDays(20));
+        awaitCaughtUp(late);
+        assertSameState(late);
+    }
+
+    //Порт может быть на миг занят попыткой реплики переподключиться
+    private void restartPrimary(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                primary = new ReplicationPrimary(company, port);
+                primary.start();
+                return;
+            } catch (BindException e) {
+                if (attempt == 50) throw e;
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    @Test
+    void testReconnect() throws IOException, InterruptedException {
+        RentCompanyReplica replica = replica();
+        fill();
+        awaitCaughtUp(replica);
+
+        //Основной перезапущен без изменений: продолжение по хвосту
+        int port = primary.getPort();
+        primary.close();
+        restartPrimary(port);
+        rentAndReturn(RENT_DATE.plusDays(10));
+        awaitCaughtUp(replica);
+        assertSameState(replica);
+
+        //Изменения, пока реплика отключена: снимок
+        primary.close();
+        rentAndReturn(RENT_DATE.plusDays(20));
+        restartPrimary(port);
+        awaitCaughtUp(replica);
+        assertSameState(replica);
+        assertTrue(replica.isConnected());
+    }
+
+    @Test
+    void testPrimaryRestartResync() throws IOException, InterruptedException {
+        RentCompanyReplica replica = replica();
+        fill();
+        awaitCaughtUp(replica);
+
+        //Основной потерял журнал: те же номера записей - уже другие записи, нужен снимок
+        int port = primary.getPort();
+        long last = company.lastSequence();
+        primary.close();
+        company.close();
+        Files.deleteIfExists(Path.of(SNAPSHOT));
+        Files.deleteIfExists(Path.of(JOURNAL));
+        company = JournaledRentCompany.open(SNAPSHOT, JOURNAL, Journal.SyncPolicy.NONE);
+        //Хвост основного покрывает номер реплики: без эпохи она получила бы только его
+        restartPrimary(port);
+        for (int i = 0; company.lastSequence() < last + 2; i++)
+            company.setGasPrice(i);
+        awaitCaughtUp(replica);
+        assertSameState(replica);
+        assertNull(replica.getModel(MODEL_NAME));
+    }
+}
@@ -0,0 +1,157 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.dto.enums.State;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyConcurrent;
+import com.telran.cars.server.RentCompanyClient;
+import com.telran.cars.server.RentCompanyServer;
+import com.telran.utils.Persistable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The tests of the concurrent company through the HTTP front-end: every call goes
+ * through the client, the server and the wire encoding.
+ */
+public class RentCompanyServerTest extends RentCompanyConcurrentTest {
+    private final List<RentCompanyServer> servers = new ArrayList<>();
+
+    @Override
+    protected IRentCompany createCompany() {
+        return serve(new RentCompanyConcurrent());
+    }
+
+    @Override
+    protected IRentCompany restoreFromFile(String file) {
+        return serve(RentCompanyConcurrent.restoreFromFile(file));
+    }
+
+    private IRentCompany serve(IRentCompany company) {
+        try {
+            RentCompanyServer server = new RentCompanyServer(company, 0, Path.of("").toAbsolutePath());
+            server.start();
+            servers.add(server);
+            return new RentCompanyClient("localhost", server.getPort());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        servers.forEach(RentCompanyServer::close);
+    }
+
+    //Машины клиента - копии: состояние меняется только вызовами компании
+
+    @Override
+    @Test
+    void testRentCarRemove_Use() {
+        fill();
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, YEAR_OB, PHONE_NUMBER)));
+        assertEquals(OK, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(CAR_IN_USE, company.rentCar(REG_NUMBER, LICENSE + 1, RENT_DATE, RENT_DAYS));
+        assertNotNull(company.removeCar(REG_NUMBER));
+        assertEquals(CAR_REMOVED, company.rentCar(REG_NUMBER, LICENSE + 1, RENT_DATE, RENT_DAYS));
+    }
+
+    @Override
+    @Test
+    void testAvailableCarMarkedOutside() {
+        fill();
+        company.getCar(REG_NUMBER).setInUse(true);
+        assertEquals(1, company.countCarsByModel(MODEL_NAME));
+        assertEquals(company.getCar(REG_NUMBER), company.getAnyCarByModel(MODEL_NAME));
+    }
+
+    @Override
+    @Test
+    void testCarByModel() {
+        fill();
+        assertEquals(List.of(company.getCar(REG_NUMBER)), company.getCarsByModel(MODEL_NAME));
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER + 1, COLOR + "R", MODEL_NAME)));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE, RENT_DATE, RENT_DAYS));
+        assertEquals(List.of(company.getCar(REG_NUMBER)), company.getCarsByModel(MODEL_NAME));
+    }
+
+    @Override
+    @Test
+    void testReturnCarUpdateCar() {
+        fill();
+        assertEquals(State.EXCELLENT, company.getCar(REG_NUMBER).getState());
+        int[] damages = {DAMAGES, GOOD_TRESHOLD + 5, BAD_TRESHOLD + 5};
+        State[] states = {State.EXCELLENT, State.GOOD, State.BAD};
+        for (int i = 0; i < damages.length; i++) {
+            assertEquals(OK, company.rentCar(REG_NUMBER, LICENSE, RENT_DATE, RENT_DAYS));
+            RemovedCarData actual = company.returnCar(REG_NUMBER, LICENSE, RETURN_DATE, damages[i], TANK_PERCENT);
+            assertEquals(new RemovedCarData(company.getCar(REG_NUMBER), null), actual);
+            assertEquals(states[i], company.getCar(REG_NUMBER).getState());
+            assertEquals(states[i], actual.getCar().getState());
+        }
+    }
+
+    private void fill() {
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER, COLOR, MODEL_NAME)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER)));
+    }
+
+    @Test
+    void testWire() throws Exception {
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, null, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(new Model(MODEL_NAME, GAS_TANK, null, COUNTRY, PRICE_PER_DAY), company.getModel(MODEL_NAME));
+        assertNull(company.getCar("x"));
+        assertEquals(OK, company.addCar(new Car(REG_NUMBER, COLOR, MODEL_NAME)));
+
+        //Ответ - копия: изменение машины у клиента не меняет компанию
+        Car car = company.getCar(REG_NUMBER);
+        car.setFlRemoved(true);
+        assertFalse(company.getCar(REG_NUMBER).isFlRemoved());
+
+        assertThrows(IllegalArgumentException.class, () -> company.getCarsByModel(MODEL_NAME, 0, null));
+        HttpClient client = HttpClient.newHttpClient();
+        URI base = URI.create("http://localhost:" + servers.get(0).getPort() + "/");
+        assertEquals(404, client.send(HttpRequest.newBuilder(base.resolve("noSuchOperation"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(404, client.send(HttpRequest.newBuilder(base.resolve("getCar")).GET().build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+        //Тело короче аргументов
+        assertEquals(500, client.send(HttpRequest.newBuilder(base.resolve("rentCar"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[3])).build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+        //Заявленный размер списка без элементов: ни массива на миллиард, ни отрицательного размера
+        assertEquals(500, client.send(HttpRequest.newBuilder(base.resolve("addCars"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[]{0x7f, -1, -1, -1})).build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(400, client.send(HttpRequest.newBuilder(base.resolve("addCars"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[]{-1, -1, -1, -2})).build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void testSavePath() throws IOException {
+        //Путь из запроса за пределы каталога сервера не принимается
+        Persistable persistable = (Persistable) company;
+        for (String file : new String[]{"../companyTest.data", "/tmp/companyTest.data", "..", "", "dir/companyTest.data"})
+            assertThrows(IllegalArgumentException.class, () -> persistable.save(file));
+        try (RentCompanyServer server = new RentCompanyServer(new RentCompanyConcurrent(), 0)) {
+            server.start();
+            Persistable client = new RentCompanyClient("localhost", server.getPort());
+            assertThrows(IllegalArgumentException.class, () -> client.save("companyTest.data"));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.telran.cars.tests;
+
+import com.telran.cars.dto.*;
+import com.telran.cars.models.IRentCompany;
+import com.telran.cars.models.RentCompanyEmbedded;
+import com.telran.cars.models.RentCompanySharded;
+import com.telran.utils.Persistable;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.telran.cars.dto.enums.CarsReturnCode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentCompanyShardedTest extends RentCompanyEmbeddedTest {
+    static final int SHARDS = 4;
+
+    @Override
+    protected IRentCompany createCompany() {
+        return new RentCompanySharded(SHARDS);
+    }
+
+    //Восстанавливается в другое число шардов: машины раскладываются заново
+    @Override
+    protected IRentCompany restoreFromFile(String file) {
+        return RentCompanySharded.restoreFromFile(file, SHARDS - 1);
+    }
+
+    @Override
+    @Test
+    void testSaveRestore_Fail() {
+        IRentCompany restored = RentCompanySharded.restoreFromFile("companyTest_file.data", SHARDS);
+        assertNotNull(restored);
+        assertNull(restored.getModel(MODEL_NAME));
+    }
+
+    //Свободная машина - первого шарда, где она есть, а не первая добавленная
+    @Override
+    @Test
+    void testReservations() {
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE + 1, NAME, YEAR_OB, PHONE_NUMBER)));
+        for (int c = 0; c < 3; c++)
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + c, COLOR, MODEL_NAME)));
+        LocalDate from = RENT_DATE.plusDays(10);
+
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE, from, 5));
+        assertEquals(CAR_RESERVED, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(4), 2));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 0, LICENSE + 1, from.plusDays(5), 2));
+        assertTrue(Set.of(REG_NUMBER + 1, REG_NUMBER + 2)
+                .contains(company.findFreeCar(MODEL_NAME, from, from.plusDays(3)).getRegNumber()));
+        assertEquals(company.getCar(REG_NUMBER + 0), company.findFreeCar(MODEL_NAME, from.plusDays(7), from.plusDays(9)));
+
+        assertEquals(OK, company.rentCar(REG_NUMBER + 1, LICENSE + 1, from.minusDays(1), RENT_DAYS));
+        assertEquals(OK, company.reserveCar(REG_NUMBER + 2, LICENSE + 1, from.plusDays(2), 1));
+        assertNull(company.findFreeCar(MODEL_NAME, from, from.plusDays(3)));
+        assertEquals(company.getCar(REG_NUMBER + 1), company.findFreeCar(MODEL_NAME, from.plusDays(2), from.plusDays(3)));
+
+        assertEquals(CAR_RESERVED, company.rentCar(REG_NUMBER + 0, LICENSE + 1, from.minusDays(1), RENT_DAYS));
+        assertEquals(OK, company.rentCar(REG_NUMBER + 0, LICENSE, from, RENT_DAYS));
+
+        ((Persistable) company).save("companyTest.data");
+        IRentCompany restored = restoreFromFile("companyTest.data");
+        assertEquals(CAR_RESERVED, restored.reserveCar(REG_NUMBER + 0, LICENSE, from.plusDays(6), 1));
+        assertEquals(CAR_RESERVED, restored.reserveCar(REG_NUMBER + 2, LICENSE, from.plusDays(2), 1));
+        assertNull(restored.findFreeCar(MODEL_NAME, from, from.plusDays(3)));
+        assertEquals(restored.getCar(REG_NUMBER + 1), restored.findFreeCar(MODEL_NAME, from.plusDays(2), from.plusDays(3)));
+
+        company.removeCar(REG_NUMBER + 1);
+        assertNull(company.findFreeCar(MODEL_NAME, from.plusDays(2), from.plusDays(3)));
+    }
+
+    @Test
+    void testShards() {
+        RentCompanySharded sharded = (RentCompanySharded) company;
+        assertEquals(OK, company.addModel(new Model(MODEL_NAME, GAS_TANK, COMPANY, COUNTRY, PRICE_PER_DAY)));
+        assertEquals(OK, company.addDriver(new Driver(LICENSE, NAME, YEAR_OB, PHONE_NUMBER)));
+        int[] counts = new int[SHARDS];
+        for (int c = 0; c < 100; c++) {
+            assertEquals(OK, company.addCar(new Car(REG_NUMBER + c, COLOR, MODEL_NAME)));
+            counts[RentCompanySharded.shardOf(REG_NUMBER + c, SHARDS)]++;
+            assertEquals(OK, company.rentCar(REG_NUMBER + c, LICENSE, RENT_DATE.plusDays(c), 1));
+            assertNotNull(company.returnCar(REG_NUMBER + c, LICENSE, RENT_DATE.plusDays(c + 1), 0, 100).getCar());
+        }
+        for (int count : counts)
+            assertTrue(count > 0);
+        assertEquals(SHARDS, sharded.getShardCount());
+        Map<String, Long> sizes = sharded.getIndexSizes();
+        assertEquals(Long.valueOf(100), sizes.get("cars"));
+        assertEquals(Long.valueOf(SHARDS), sizes.get("drivers"));
+
+        //Слияние по дате аренды и сумма итогов по шардам
+        List<RentRecord> records = company.getRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(100));
+        assertEquals(100, records.size());
+        for (int i = 0; i < records.size(); i++)
+            assertEquals(REG_NUMBER + i, records.get(i).getRegNumber());
+        assertEquals(records, company.streamRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(100)).toList());
+        assertEquals(IntStream.range(0, 100).mapToObj(c -> company.getCar(REG_NUMBER + c)).toList(),
+                company.getCarByDrivers(LICENSE));
+        assertEquals(100, company.getRevenueTotals(null, null).getReturns());
+        assertEquals(100, company.countCarsByModel(MODEL_NAME));
+
+        //Страницы берут из каждого шарда только нужное и идут в порядке полных списков
+        assertEquals(records, pages(token -> company.getRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(100), 7, token)));
+        assertEquals(company.getCarByDrivers(LICENSE), pages(token -> company.getCarByDrivers(LICENSE, 7, token)));
+        assertEquals(company.getCarsByModel(MODEL_NAME), pages(token -> company.getCarsByModel(MODEL_NAME, 7, token)));
+        assertEquals(company.getCarsByModel(MODEL_NAME), pages(token -> company.getCarsByModel(MODEL_NAME, 100, token)));
+        assertThrows(IllegalArgumentException.class, () -> company.getCarsByModel(MODEL_NAME, 0, null));
+        assertEquals(List.of(MODEL_NAME), company.getMostPopularCarModels(5));
+        assertEquals(List.of(company.getDriver(LICENSE)), company.getMostActiveDrivers(5, RENT_DATE, null, 0, 200));
+
+        ((Persistable) company).save("companyTest.data");
+        IRentCompany single = RentCompanyEmbedded.restoreFromFile("companyTest.data");
+        assertEquals(records, single.getRentRecordsAtDates(RENT_DATE, RENT_DATE.plusDays(100)));
+        assertEquals(company.getRevenueTotals(null, null).getRevenue(), single.getRevenueTotals(null, null).getRevenue(), 1e-6);
+        assertEquals(company.getMostActiveDrivers(1), single.getMostActiveDrivers(1));
+        //Записи снимка слиты по дате аренды, а не шард за шардом
+        assertEquals(company.getCarByDrivers(LICENSE), single.getCarByDrivers(LICENSE));
+        sharded.close();
+    }
+
+    private static <T> List<T> pages(Function<String, Page<T>> query) {
+        List<T> res = new ArrayList<>();
+        String token = null;
+        do {
+            Page<T> page = query.apply(token);
+            res.addAll(page.getItems());
+            token = page.getNextPageToken();
+        } while (token != null);
+        return res;
+    }
+}
@@ -0,0 +1,13 @@
+package com.telran.utils;
+
+import java.time.LocalDate;
+
+public interface Archivable {
+
+    /**
+     * Moves the closed records older than the retention age of the company at {@code today}
+     * out of memory; queries keep returning them.
+     * @return number of records moved, 0 if no archive is attached
+     */
+    int archiveRecords(LocalDate today);
+}
@@ -0,0 +1,121 @@
+package com.telran.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Fenwick (binary indexed) tree of sums over int keys, e.g. epoch days: adding to a key and the sum
+ * of a range of keys cost O(log keys). Every key holds {@code columns} values summed together,
+ * so several totals of the same key share one tree.
+ * The tree is indexed by the sorted keys added so far, not by their span, so a far key costs one slot.
+ * A key after the last one is appended in O(log keys), a key before it is inserted by rebuilding in O(keys).
+ */
+public class FenwickTree implements Serializable {
+    private static final int MIN_SIZE = 64;
+
+    private final int columns;
+    private int size;
+    private int[] keys = new int[0]; //sorted, key of the index i at i - 1
+    private double[] tree; //column c of index i at i * columns + c, index 0 unused
+
+    public FenwickTree(int columns) {
+        this.columns = columns;
+        tree = new double[columns];
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of keys added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds {@code values} to the columns of the key, one value per column from the first.
+     */
+    public void add(int key, double... values) {
+        int position = Arrays.binarySearch(keys, 0, size, key);
+        if (position < 0) position = insert(-position - 1, key);
+        for (int i = position + 1; i <= size; i += i & -i)
+            for (int c = 0; c < values.length; c++)
+                tree[i * columns + c] += values[c];
+    }
+
+    /**
+     * @param res array of {@code columns} values, filled with the sums of the keys in [fromKey, toKey)
+     * @return res
+     */
+    public double[] sum(int fromKey, int toKey, double[] res) {
+        Arrays.fill(res, 0);
+        if (fromKey >= toKey) return res;
+        prefix(lowerBound(toKey), res, 1);
+        prefix(lowerBound(fromKey), res, -1);
+        return res;
+    }
+
+    //Число ключей меньше key
+    private int lowerBound(int key) {
+        int position = Arrays.binarySearch(keys, 0, size, key);
+        return position < 0 ? -position - 1 : position;
+    }
+
+    //Сумма первых count ключей со знаком sign
+    private void prefix(int count, double[] res, int sign) {
+        for (int i = count; i > 0; i -= i & -i)
+            for (int c = 0; c < columns; c++)
+                res[c] += sign * tree[i * columns + c];
+    }
+
+    //Новый ключ с нулевыми значениями, возвращает его позицию
+    private int insert(int position, int key) {
+        if (size == keys.length) {
+            int capacity = Math.max(MIN_SIZE, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            tree = Arrays.copyOf(tree, (capacity + 1) * columns);
+        }
+        if (position == size) {
+            //Узел i покрывает (i - lowbit(i), i]: его сумма - уже добавленные ключи этого отрезка
+            keys[size++] = key;
+            int i = size;
+            double[] covered = new double[columns];
+            prefix(i - 1, covered, 1);
+            prefix(i - (i & -i), covered, -1);
+            System.arraycopy(covered, 0, tree, i * columns, columns);
+            return position;
+        }
+        double[] values = values();
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(values, (position + 1) * columns, values, (position + 2) * columns, (size - position) * columns);
+        Arrays.fill(values, (position + 1) * columns, (position + 2) * columns, 0);
+        keys[position] = key;
+        size++;
+        tree = values;
+        build();
+        return position;
+    }
+
+    //Значения по ключам из дерева: обратный проход к построению за O(n)
+    private double[] values() {
+        double[] res = tree.clone();
+        for (int i = size; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent <= size)
+                for (int c = 0; c < columns; c++)
+                    res[parent * columns + c] -= res[i * columns + c];
+        }
+        return res;
+    }
+
+    private void build() {
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size)
+                for (int c = 0; c < columns; c++)
+                    tree[parent * columns + c] += tree[i * columns + c];
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.telran.utils;
+
+import java.io.Serializable;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Interval tree over closed intervals {@code [start, end]} of long points (e.g. epoch days).
+ * Implemented as a treap ordered by start and augmented with the maximal end of every subtree,
+ * so an overlap query costs O(log n + k) expected.
+ * {@link #add} returns a handle used to remove the interval in O(log n).
+ */
+public class IntervalIndex<E> implements Serializable {
+
+    public static final class Interval<E> implements Serializable {
+        private final long start;
+        private final long end;
+        private final long id;
+        private final int priority;
+        private final E value;
+        private Interval<E> left;
+        private Interval<E> right;
+        private long maxEnd;
+
+        private Interval(long start, long end, long id, int priority, E value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.priority = priority;
+            this.value = value;
+            this.maxEnd = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public E getValue() {
+            return value;
+        }
+
+        private int compareTo(Interval<E> o) {
+            int res = Long.compare(start, o.start);
+            return res != 0 ? res : Long.compare(id, o.id);
+        }
+    }
+
+    private final Random random = new Random();
+    private Interval<E> root;
+    private long nextId;
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public Interval<E> add(long start, long end, E value) {
+        if (end < start) throw new IllegalArgumentException("end " + end + " is before start " + start);
+        Interval<E> node = new Interval<>(start, end, nextId++, random.nextInt(), value);
+        root = insert(root, node);
+        size++;
+        return node;
+    }
+
+    private Interval<E> insert(Interval<E> root, Interval<E> node) {
+        if (root == null) return node;
+        if (node.compareTo(root) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) root = rotateRight(root);
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) root = rotateLeft(root);
+        }
+        update(root);
+        return root;
+    }
+
+    /**
+     * @return false if the interval is not in this index
+     */
+    public boolean remove(Interval<E> interval) {
+        int before = size;
+        root = delete(root, interval);
+        return size < before;
+    }
+
+    private Interval<E> delete(Interval<E> root, Interval<E> node) {
+        if (root == null) return null;
+        if (root == node) {
+            size--;
+            return merge(root.left, root.right);
+        }
+        if (node.compareTo(root) < 0) root.left = delete(root.left, node);
+        else root.right = delete(root.right, node);
+        update(root);
+        return root;
+    }
+
+    private Interval<E> merge(Interval<E> left, Interval<E> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private Interval<E> rotateRight(Interval<E> node) {
+        Interval<E> res = node.left;
+        node.left = res.right;
+        res.right = node;
+        update(node);
+        update(res);
+        return res;
+    }
+
+    private Interval<E> rotateLeft(Interval<E> node) {
+        Interval<E> res = node.right;
+        node.right = res.left;
+        res.left = node;
+        update(node);
+        update(res);
+        return res;
+    }
+
+    private void update(Interval<E> node) {
+        long max = node.end;
+        if (node.left != null && node.left.maxEnd > max) max = node.left.maxEnd;
+        if (node.right != null && node.right.maxEnd > max) max = node.right.maxEnd;
+        node.maxEnd = max;
+    }
+
+    /**
+     * Passes to the action, in order of start, the value of every interval
+     * that has at least one point in {@code [from, to)}.
+     */
+    public void overlapping(long from, long to, Consumer<? super E> action) {
+        overlapping(root, from, to, action);
+    }
+
+    private void overlapping(Interval<E> node, long from, long to, Consumer<? super E> action) {
+        //В поддереве нет интервала, который заканчивается не раньше from
+        if (node == null || node.maxEnd < from) return;
+        overlapping(node.left, from, to, action);
+        if (node.start >= to) return; //правое поддерево начинается еще позже
+        if (node.end >= from) action.accept(node.value);
+        overlapping(node.right, from, to, action);
+    }
+}
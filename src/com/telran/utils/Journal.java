@@ -0,0 +1,331 @@
+package com.telran.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of binary records numbered by a growing sequence.
+ * <pre>
+ * header  int magic "RCJL", long base (sequence of the last record before this file)
+ * record  int length, int crc32 of sequence and payload, long sequence, payload
+ * </pre>
+ * {@link #append} only buffers a record; {@link #commit} makes it durable according to the {@link SyncPolicy}.
+ * A record torn by a crash is detected by its length or checksum and cut off when the journal is opened.
+ */
+public class Journal implements Closeable {
+    public static final int MAGIC = 0x52434A4C; //RCJL
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_HEADER = 16;
+
+    public enum SyncPolicy {
+        /**
+         * every record is written and forced to the disk on its own, writers queue behind each fsync
+         */
+        ALWAYS,
+        /**
+         * group commit: one writer forces everything appended so far, the writers that came meanwhile
+         * wait for that fsync instead of issuing their own
+         */
+        GROUP,
+        /**
+         * records are written to the OS without fsync: they survive a crash of the process, not of the machine
+         */
+        NONE
+    }
+
+    public interface RecordConsumer {
+        void accept(long sequence, DataInput payload) throws IOException;
+    }
+
+    private final Path file;
+    private final SyncPolicy policy;
+    private FileChannel channel;
+    private long base;
+    //Порядок захвата: syncLock, затем appendLock
+    private final Object appendLock = new Object(); //pending, sequence
+    private final ReentrantLock syncLock = new ReentrantLock(); //syncing
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncing; //ведущий пишет out в канал без syncLock
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer out = ByteBuffer.allocate(1 << 16);
+    private long sequence;
+    private volatile long written;
+    private volatile long durable;
+    //Записи после written потеряны при сбое: следующие записи дали бы разрыв последовательности
+    private volatile IOException failure;
+
+    /**
+     * Opens or creates the journal, cutting off a torn tail.
+     * @param base sequence to start a new file from
+     */
+    public Journal(String fileName, SyncPolicy policy, long base) throws IOException {
+        this.policy = policy;
+        file = Path.of(fileName);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(base);
+            this.base = sequence = base;
+        } else {
+            long[] end = scan(channel, null);
+            this.base = end[2];
+            sequence = end[0];
+            channel.truncate(end[1]);
+            channel.position(end[1]);
+        }
+        written = durable = sequence;
+    }
+
+    private void writeHeader(long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(base).flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(true);
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * Passes to the consumer every complete record of the file with a sequence greater than {@code after}.
+     * @return the last sequence of the file; 0 if there is no file
+     */
+    public static long replay(String fileName, long after, RecordConsumer consumer) throws IOException {
+        if (!new File(fileName).exists()) return 0;
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return 0;
+            return scan(channel, (s, payload) -> {
+                if (s > after) consumer.accept(s, payload);
+            })[0];
+        }
+    }
+
+    /**
+     * @return the base sequence of the file, -1 if there is no file
+     */
+    public static long base(String fileName) throws IOException {
+        if (!new File(fileName).exists()) return -1;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            if (in.readInt() != MAGIC) throw new IOException(fileName + " is not a journal");
+            return in.readLong();
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    //{последний номер, позиция конца последней целой записи, base}
+    private static long[] scan(FileChannel channel, RecordConsumer consumer) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), 1 << 16));
+        if (in.readInt() != MAGIC) throw new IOException("not a journal");
+        long base = in.readLong();
+        long sequence = base;
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        CRC32 crc = new CRC32();
+        while (size - position >= RECORD_HEADER) {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 8 || length > size - position - 8) break;
+            byte[] record = new byte[length];
+            in.readFully(record);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) break;
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long s = buffer.getLong();
+            if (s != sequence + 1) break;
+            if (consumer != null)
+                consumer.accept(s, new DataInputStream(new ByteArrayInputStream(record, 8, length - 8)));
+            sequence = s;
+            position += 8 + length;
+        }
+        return new long[]{sequence, position, base};
+    }
+
+    /**
+     * Buffers a record; it is not durable before {@link #commit} of its sequence returns.
+     * With {@link SyncPolicy#ALWAYS} the record is forced to the disk before this method returns.
+     * After a write or fsync has failed, the journal accepts no more records.
+     * @return sequence of the record
+     */
+    public long append(byte[] payload) throws IOException {
+        checkFailure();
+        long res = appendRecord(payload);
+        if (policy == SyncPolicy.ALWAYS) sync(res);
+        return res;
+    }
+
+    private long appendRecord(byte[] payload) {
+        synchronized (appendLock) {
+            long res = ++sequence;
+            int length = 8 + payload.length;
+            if (pending.remaining() < 8 + length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + 8 + length));
+                pending.flip();
+                pending = larger.put(pending);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(8).putLong(0, res));
+            crc.update(payload);
+            pending.putInt(length).putInt((int) crc.getValue()).putLong(res).put(payload);
+            return res;
+        }
+    }
+
+    /**
+     * Waits until the record is written according to the policy.
+     */
+    public void commit(long sequence) throws IOException {
+        if (policy != SyncPolicy.ALWAYS) sync(sequence);
+    }
+
+    private boolean isCommitted(long sequence) {
+        return policy == SyncPolicy.NONE ? written >= sequence : durable >= sequence;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw new IOException("journal " + file + " has failed", failure);
+    }
+
+    /**
+     * A record committed before a failure stays committed; any other fails.
+     */
+    private void sync(long sequence) throws IOException {
+        if (isCommitted(sequence)) return;
+        syncLock.lock();
+        try {
+            while (!isCommitted(sequence)) {
+                checkFailure();
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                //Ведущий пишет все, что накоплено к этому моменту, остальные ждут его fsync
+                syncing = true;
+                syncLock.unlock();
+                try {
+                    flush();
+                    if (policy != SyncPolicy.NONE) {
+                        long forced = written;
+                        channel.force(false);
+                        durable = forced;
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    //только ведущий или владелец syncLock при syncing == false
+    private void flush() throws IOException {
+        long last;
+        synchronized (appendLock) {
+            ByteBuffer full = pending;
+            pending = out;
+            out = full;
+            pending.clear();
+            last = sequence;
+        }
+        out.flip();
+        while (out.hasRemaining())
+            channel.write(out);
+        out.clear();
+        written = last;
+    }
+
+    public long lastSequence() {
+        synchronized (appendLock) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Drops the records up to {@code base}, they are contained in a snapshot.
+     * Records appended after the snapshot was taken are kept: they are copied to a new file
+     * that replaces the journal atomically, so a crash leaves either the old journal or the new one.
+     * Appends wait while the journal is truncated; a failed truncation fails the journal as a failed write does.
+     */
+    public void truncate(long base) throws IOException {
+        lockIdle();
+        try {
+            synchronized (appendLock) {
+                if (base < this.base || base > sequence)
+                    throw new IllegalStateException("journal holds " + this.base + ".." + sequence
+                            + ", snapshot at " + base);
+                checkFailure();
+                //Как и в sync: после сбоя записи после written потеряны, журнал больше не пишется
+                try {
+                    flush();
+                    keepTail(base);
+                } catch (IOException e) {
+                    failure = e;
+                    throw e;
+                }
+                this.base = base;
+                durable = sequence;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void keepTail(long base) throws IOException {
+        long position = HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        for (long s = this.base; s < base; ) {
+            channel.read(header.clear(), position);
+            s = header.getLong(8);
+            position += 8 + header.getInt(0);
+        }
+        Path tmp = Path.of(file + ".tmp");
+        try (FileChannel tail = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            tail.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(base).flip());
+            long size = channel.size();
+            while (position < size)
+                position += channel.transferTo(position, size - position, tail);
+            tail.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    private void lockIdle() {
+        syncLock.lock();
+        while (syncing)
+            synced.awaitUninterruptibly();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lockIdle();
+        try {
+            if (!channel.isOpen()) return;
+            flush();
+            channel.force(false);
+            durable = written;
+            channel.close();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.telran.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with log-linear buckets, as HdrHistogram keeps them:
+ * every power of two is split into {@link #SUB_BUCKETS} equal buckets, so a value is reported
+ * with a relative error below 1 / SUB_BUCKETS over the whole range of long.
+ * Recording is a few atomic increments and never allocates; {@link #snapshot} may run concurrently with it.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(index(nanos));
+        sum.add(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos))
+            current = max.get();
+    }
+
+    /**
+     * Records the time passed since {@code startNanos} taken by {@link System#nanoTime}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    //Значения меньше SUB_BUCKETS хранятся точно, дальше - SUB_BUCKETS корзин на каждую степень двойки
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return largest value of the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index >>> SUB_BITS) - 1;
+        long sub = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    /**
+     * Immutable copy of the histogram. Taken while recording goes on, it may miss the sum or the max
+     * of the values recorded at that moment, never the counts recorded before.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return value that {@code percentile} percents of the recorded values do not exceed, 0 if none
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highestValue(i), max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "count=" + count +
+                    ", mean=" + (long) getMean() +
+                    ", p50=" + getValueAtPercentile(50) +
+                    ", p99=" + getValueAtPercentile(99) +
+                    ", p999=" + getValueAtPercentile(99.9) +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.telran.utils;
+
+import java.util.AbstractCollection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Doubly linked list that hands out its nodes.
+ * A holder of a {@link Node} can unlink it in O(1) without searching the list
+ * and without calling {@code equals} on the elements.
+ */
+public class LinkedIndex<E> extends AbstractCollection<E> {
+
+    public static final class Node<E> {
+        private final E value;
+        private LinkedIndex<E> owner;
+        private Node<E> prev;
+        private Node<E> next;
+
+        private Node(E value, LinkedIndex<E> owner) {
+            this.value = value;
+            this.owner = owner;
+        }
+
+        public E getValue() {
+            return value;
+        }
+
+        public LinkedIndex<E> getOwner() {
+            return owner;
+        }
+
+        public boolean isLinked() {
+            return owner != null;
+        }
+    }
+
+    private Node<E> head;
+    private Node<E> tail;
+    private int size;
+    private int modCount;
+
+    public Node<E> link(E value) {
+        Node<E> node = new Node<>(value, this);
+        linkLast(node);
+        return node;
+    }
+
+    private void linkLast(Node<E> node) {
+        node.prev = tail;
+        if (tail == null) head = node;
+        else tail.next = node;
+        tail = node;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * @return false if the node does not belong to this list (already unlinked or foreign)
+     */
+    public boolean unlink(Node<E> node) {
+        if (node.owner != this) return false;
+        if (node.prev == null) head = node.next;
+        else node.prev.next = node.next;
+        if (node.next == null) tail = node.prev;
+        else node.next.prev = node.prev;
+        node.prev = node.next = null;
+        node.owner = null;
+        size--;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean add(E e) {
+        link(e);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            Node<E> next = head;
+            Node<E> last;
+            int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null) throw new NoSuchElementException();
+                if (expectedModCount != modCount) throw new ConcurrentModificationException();
+                last = next;
+                next = next.next;
+                return last.value;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) throw new IllegalStateException();
+                if (expectedModCount != modCount) throw new ConcurrentModificationException();
+                unlink(last);
+                last = null;
+                expectedModCount = modCount;
+            }
+        };
+    }
+}
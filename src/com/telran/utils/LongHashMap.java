@@ -0,0 +1,252 @@
+package com.telran.utils;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+/**
+ * Open-addressing hash map with primitive {@code long} keys and linear probing.
+ * Keys are never boxed and there are no entry objects: one {@code long[]} and one {@code Object[]}.
+ * Null values are not supported, {@code get} returns null for a missing key.
+ */
+public class LongHashMap<V> implements Serializable {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+    //Ключ 0 хранится отдельно, 0 в массиве keys означает пустую ячейку
+    private boolean hasZeroKey;
+    private Object zeroValue;
+
+    public LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashMap(int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(expectedSize / LOAD_FACTOR)));
+    }
+
+    private static int tableSizeFor(int n) {
+        int cap = Integer.highestOneBit(Math.max(MIN_CAPACITY, n) - 1) << 1;
+        return cap < 0 ? 1 << 30 : cap;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) return (V) zeroValue;
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V res = get(key);
+        return res == null ? defaultValue : res;
+    }
+
+    /**
+     * @return previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("null values are not supported");
+        if (key == 0) {
+            V old = (V) zeroValue;
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return old;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) rehash(keys.length << 1);
+        return null;
+    }
+
+    /**
+     * Grows the table at once for the expected number of keys, so a bulk insert does not rehash step by step.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(expectedSize / LOAD_FACTOR));
+        if (capacity > keys.length) rehash(capacity);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        V old = get(key);
+        return old != null ? old : put(key, value);
+    }
+
+    public V computeIfAbsent(long key, LongFunction<? extends V> mapping) {
+        V res = get(key);
+        if (res == null) {
+            res = mapping.apply(key);
+            put(key, res);
+        }
+        return res;
+    }
+
+    /**
+     * @return removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) return null;
+            V old = (V) zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            size--;
+            return old;
+        }
+        int i = indexOf(key);
+        if (i < 0) return null;
+        V old = (V) values[i];
+        shiftBack(i);
+        size--;
+        return old;
+    }
+
+    //Удаление без "надгробий": сдвигаем назад элементы своей цепочки пробирования
+    private void shiftBack(int free) {
+        int mask = keys.length - 1;
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == null) break;
+            int home = hash(keys[i]) & mask;
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                free = i;
+            }
+        }
+        keys[free] = 0;
+        values[free] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while (values[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    public interface LongObjConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjConsumer<? super V> action) {
+        if (hasZeroKey) action.accept(0, (V) zeroValue);
+        for (int i = 0; i < keys.length; i++)
+            if (values[i] != null) action.accept(keys[i], (V) values[i]);
+    }
+
+    /**
+     * Read-only view of the values, slots are visited in table order.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+                    boolean zeroPending = hasZeroKey;
+                    int next = advance(0);
+
+                    private int advance(int i) {
+                        while (i < values.length && values[i] == null) i++;
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return zeroPending || next < values.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public V next() {
+                        if (zeroPending) {
+                            zeroPending = false;
+                            return (V) zeroValue;
+                        }
+                        if (next >= values.length) throw new NoSuchElementException();
+                        V res = (V) values[next];
+                        next = advance(next + 1);
+                        return res;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,11 @@
+package com.telran.utils;
+
+import java.util.Map;
+
+public interface Measurable {
+
+    /**
+     * Number of entries of every index by its name; read without locks, so it may be a little stale.
+     */
+    Map<String, Long> getIndexSizes();
+}
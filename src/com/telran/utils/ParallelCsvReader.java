@@ -0,0 +1,128 @@
+package com.telran.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a CSV file in chunks parsed in parallel.
+ * The file is cut at line ends into chunks of about {@link #CHUNK_SIZE} bytes; every chunk is read with a positional
+ * read of the shared channel and its lines are mapped by the worker, the results are joined in file order.
+ * Fields are separated by commas; a field in double quotes may contain commas and doubled quotes, not line ends.
+ * Empty lines are skipped. The file is expected in UTF-8.
+ */
+public class ParallelCsvReader {
+    public static final int CHUNK_SIZE = 16 << 20;
+    private static final int SCAN = 1 << 16;
+
+    /**
+     * @param skipHeader true if the first line holds column names
+     * @param mapper     maps the fields of one line, it runs on several threads
+     */
+    public static <T> List<T> read(Path file, boolean skipHeader, Function<String[], T> mapper) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, skipHeader);
+            try {
+                List<List<T>> chunks = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> parse(channel, bounds[i], bounds[i + 1], mapper))
+                        .toList();
+                int size = chunks.stream().mapToInt(List::size).sum();
+                List<T> res = new ArrayList<>(size);
+                chunks.forEach(res::addAll);
+                return res;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    //Границы кусков - позиции сразу после '\n'
+    private static long[] chunkBounds(FileChannel channel, boolean skipHeader) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        long start = skipHeader ? nextLine(channel, 0, size) : 0;
+        bounds.add(start);
+        for (long position = start + CHUNK_SIZE; position < size; position += CHUNK_SIZE) {
+            long bound = nextLine(channel, Math.max(position, bounds.get(bounds.size() - 1)), size);
+            if (bound >= size) break;
+            bounds.add(bound);
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return start of the line after the position
+     */
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN);
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++)
+                if (buffer.get(i) == '\n') return position + i + 1;
+            position += n;
+        }
+        return size;
+    }
+
+    private static <T> List<T> parse(FileChannel channel, long from, long to, Function<String[], T> mapper) {
+        byte[] bytes = new byte[(int) (to - from)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, from + buffer.position()) < 0) break;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<T> res = new ArrayList<>(bytes.length / 32);
+        List<String> fields = new ArrayList<>();
+        StringBuilder quoted = new StringBuilder();
+        int i = 0;
+        while (i < bytes.length) {
+            fields.clear();
+            boolean lineEnd = false;
+            while (!lineEnd) {
+                int start = i;
+                String field;
+                if (i < bytes.length && bytes[i] == '"') {
+                    quoted.setLength(0);
+                    i++;
+                    while (i < bytes.length) {
+                        int chunk = i;
+                        while (i < bytes.length && bytes[i] != '"') i++;
+                        quoted.append(new String(bytes, chunk, i - chunk, StandardCharsets.UTF_8));
+                        if (i + 1 < bytes.length && bytes[i + 1] == '"') {
+                            quoted.append('"');
+                            i += 2;
+                        } else {
+                            i++;
+                            break;
+                        }
+                    }
+                    field = quoted.toString();
+                    while (i < bytes.length && bytes[i] != ',' && bytes[i] != '\n') i++;
+                } else {
+                    while (i < bytes.length && bytes[i] != ',' && bytes[i] != '\n') i++;
+                    int end = i > start && bytes[i - 1] == '\r' && (i == bytes.length || bytes[i] == '\n') ? i - 1 : i;
+                    field = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                }
+                fields.add(field);
+                if (i >= bytes.length || bytes[i] == '\n') lineEnd = true;
+                i++;
+            }
+            if (fields.size() == 1 && fields.get(0).isEmpty()) continue;
+            res.add(mapper.apply(fields.toArray(new String[0])));
+        }
+        return res;
+    }
+}
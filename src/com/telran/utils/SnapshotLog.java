@@ -0,0 +1,153 @@
+package com.telran.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only sequence of entries stored in fixed chunks, with O(1) add and remove
+ * and a {@link #freeze} that gives another thread a point-in-time view without copying.
+ * While a view is frozen the entries it covers are never changed: removals of those entries
+ * are deferred until the last view is released, appends go past the end of every view.
+ * Holes left by removals are compacted when they exceed half of the log and no view is frozen.
+ * The log itself is not thread-safe: add, remove, freeze and release must be called by the owner's thread
+ * (or under the owner's lock); only the iteration of a frozen view may run on another thread.
+ */
+public class SnapshotLog<E extends SnapshotLog.Entry> implements Iterable<E>, Serializable {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    /**
+     * Entries keep their own position in the log, so removal does not search.
+     */
+    public interface Entry {
+        int getLogIndex();
+
+        void setLogIndex(int index);
+    }
+
+    private Object[][] chunks = new Object[16][];
+    private int end; //next free slot
+    private int holes;
+    private transient int frozenViews;
+    private transient int frozenEnd;
+    private transient int[] deferred;
+    private transient int deferredCount;
+
+    public int size() {
+        return end - holes;
+    }
+
+    public void add(E entry) {
+        int chunk = end >>> CHUNK_BITS;
+        if (chunk == chunks.length) chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        if (chunks[chunk] == null) chunks[chunk] = new Object[CHUNK];
+        chunks[chunk][end & (CHUNK - 1)] = entry;
+        entry.setLogIndex(end++);
+    }
+
+    public void remove(E entry) {
+        int index = entry.getLogIndex();
+        if (index < 0 || get(index) != entry) return;
+        entry.setLogIndex(-1);
+        if (frozenViews > 0 && index < frozenEnd) {
+            if (deferred == null) deferred = new int[16];
+            else if (deferredCount == deferred.length) deferred = Arrays.copyOf(deferred, deferredCount * 2);
+            deferred[deferredCount++] = index;
+            return;
+        }
+        clear(index);
+        compactIfSparse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E get(int index) {
+        return (E) chunks[index >>> CHUNK_BITS][index & (CHUNK - 1)];
+    }
+
+    private void clear(int index) {
+        chunks[index >>> CHUNK_BITS][index & (CHUNK - 1)] = null;
+        holes++;
+    }
+
+    private void compactIfSparse() {
+        if (frozenViews > 0 || end < CHUNK || holes * 2 < end) return;
+        int to = 0;
+        for (int from = 0; from < end; from++) {
+            E entry = get(from);
+            if (entry == null) continue;
+            chunks[to >>> CHUNK_BITS][to & (CHUNK - 1)] = entry;
+            entry.setLogIndex(to++);
+        }
+        for (int i = to; i < end; i++)
+            chunks[i >>> CHUNK_BITS][i & (CHUNK - 1)] = null;
+        for (int chunk = (to + CHUNK - 1) >>> CHUNK_BITS; chunk < chunks.length; chunk++)
+            chunks[chunk] = null;
+        end = to;
+        holes = 0;
+    }
+
+    /**
+     * @return view of the entries present now; it stays unchanged until {@link #release}
+     */
+    public Iterable<E> freeze() {
+        frozenViews++;
+        frozenEnd = end;
+        Object[][] viewChunks = chunks;
+        int viewEnd = end;
+        return () -> iterator(viewChunks, viewEnd, false);
+    }
+
+    /**
+     * Ends one frozen view; the removals deferred for the views are done with the last one.
+     */
+    public void release() {
+        if (frozenViews == 0) throw new IllegalStateException("no frozen view");
+        if (--frozenViews > 0) return;
+        for (int i = 0; i < deferredCount; i++)
+            clear(deferred[i]);
+        deferredCount = 0;
+        deferred = null;
+        compactIfSparse();
+    }
+
+    /**
+     * Iterates the current entries; not to be used while the log changes.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return iterator(chunks, end, true);
+    }
+
+    //Живой обход пропускает записи, удаление которых отложено ради замороженных видов
+    private static <E extends Entry> Iterator<E> iterator(Object[][] chunks, int end, boolean live) {
+        return new Iterator<>() {
+            int next = advance(0);
+
+            private int advance(int index) {
+                while (index < end && skip(chunks[index >>> CHUNK_BITS][index & (CHUNK - 1)]))
+                    index++;
+                return index;
+            }
+
+            private boolean skip(Object entry) {
+                return entry == null || live && ((Entry) entry).getLogIndex() < 0;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (next >= end) throw new NoSuchElementException();
+                E res = (E) chunks[next >>> CHUNK_BITS][next & (CHUNK - 1)];
+                next = advance(next + 1);
+                return res;
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.telran.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Dense int ids of strings: the first string added gets 0, the next 1 and so on; ids are never
+ * taken back, so arrays indexed by id can replace maps keyed by the strings.
+ * Open addressing with linear probing over a {@code long[]} of hash and id pairs, no entry objects
+ * and no boxing; the strings are compared only when the hashes are equal.
+ * {@link #get} of an id returns the instance added first, so equal strings can share one instance.
+ * Null is not supported.
+ */
+public class StringDictionary implements Serializable {
+    private static final int MIN_CAPACITY = 16;
+
+    private String[] strings; //id -> string
+    private long[] table; //slot -> hash << 32 | id + 1, 0 means empty
+    private int size;
+
+    public StringDictionary() {
+        this(MIN_CAPACITY);
+    }
+
+    public StringDictionary(int expectedSize) {
+        strings = new String[Math.max(MIN_CAPACITY, expectedSize)];
+        table = new long[tableSizeFor(expectedSize)];
+    }
+
+    //Заполнение таблицы не больше половины
+    private static int tableSizeFor(int size) {
+        int cap = Integer.highestOneBit(Math.max(MIN_CAPACITY, size * 2) - 1) << 1;
+        return cap < 0 ? 1 << 30 : cap;
+    }
+
+    private static int hash(String s) {
+        int h = s.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return id of the string, -1 if it was not added
+     */
+    public int id(String s) {
+        int hash = hash(s);
+        int mask = table.length - 1;
+        for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask) {
+            long slot = table[i];
+            int id = (int) slot - 1;
+            if ((int) (slot >>> 32) == hash && strings[id].equals(s)) return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @return id of the string, a new one if it was not added
+     */
+    public int add(String s) {
+        int id = id(s);
+        if (id >= 0) return id;
+        if (size * 2 >= table.length) rehash(tableSizeFor(size + 1));
+        if (size == strings.length) strings = Arrays.copyOf(strings, size * 2);
+        strings[size] = s;
+        insert(size);
+        return size++;
+    }
+
+    /**
+     * @return the instance added first of a string equal to {@code s}, adding {@code s} if there is none
+     */
+    public String intern(String s) {
+        return s == null ? null : strings[add(s)];
+    }
+
+    public String get(int id) {
+        if (id < 0 || id >= size) throw new IndexOutOfBoundsException("no string with id " + id);
+        return strings[id];
+    }
+
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize * 2 > table.length) rehash(tableSizeFor(expectedSize));
+        if (expectedSize > strings.length) strings = Arrays.copyOf(strings, expectedSize);
+    }
+
+    private void rehash(int capacity) {
+        table = new long[capacity];
+        for (int id = 0; id < size; id++)
+            insert(id);
+    }
+
+    private void insert(int id) {
+        int hash = hash(strings[id]);
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = (long) hash << 32 | id + 1;
+    }
+}
@@ -0,0 +1,130 @@
+package com.telran.utils;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Counters of keys changed by one that give the keys with the largest counts without sorting.
+ * Keys are kept in buckets of equal count, and the buckets in a list ordered by count,
+ * as in an LFU cache: increment and decrement move a key to the neighbour bucket in O(1),
+ * the top n keys are read from the head of the list in O(n + keys tied with the n-th).
+ */
+public class TopCounter<K> implements Serializable {
+    private final Map<K, Bucket<K>> buckets = new HashMap<>();
+    private Bucket<K> head; //largest count
+    private Bucket<K> tail; //smallest count
+
+    private static class Bucket<K> implements Serializable {
+        final long count;
+        final Set<K> keys = new HashSet<>();
+        Bucket<K> higher;
+        Bucket<K> lower;
+
+        Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long get(K key) {
+        Bucket<K> bucket = buckets.get(key);
+        return bucket == null ? 0 : bucket.count;
+    }
+
+    public void increment(K key) {
+        Bucket<K> from = buckets.get(key);
+        long count = from == null ? 1 : from.count + 1;
+        Bucket<K> to;
+        if (from == null) {
+            //Корзина с единицей - всегда последняя
+            to = tail != null && tail.count == 1 ? tail : insertBelow(tail, 1);
+        } else {
+            to = from.higher != null && from.higher.count == count ? from.higher : insertAbove(from, count);
+        }
+        to.keys.add(key);
+        buckets.put(key, to);
+        if (from != null) removeFrom(from, key);
+    }
+
+    /**
+     * Decrements the count of the key; a key with count 0 is removed.
+     */
+    public void decrement(K key) {
+        Bucket<K> from = buckets.get(key);
+        if (from == null) return;
+        long count = from.count - 1;
+        if (count == 0) {
+            buckets.remove(key);
+        } else {
+            Bucket<K> to = from.lower != null && from.lower.count == count ? from.lower : insertBelow(from, count);
+            to.keys.add(key);
+            buckets.put(key, to);
+        }
+        removeFrom(from, key);
+    }
+
+    public void forEach(ObjLongConsumer<? super K> action) {
+        buckets.forEach((key, bucket) -> action.accept(key, bucket.count));
+    }
+
+    /**
+     * @param n       maximal number of keys
+     * @param tieOrder order of keys with equal counts
+     * @return keys with the largest counts, by count descending
+     */
+    public List<K> top(int n, Comparator<? super K> tieOrder) {
+        List<K> res = new ArrayList<>(Math.min(n, buckets.size()));
+        for (Bucket<K> bucket = head; bucket != null && res.size() < n; bucket = bucket.lower)
+            res.addAll(first(bucket.keys, n - res.size(), tieOrder));
+        return res;
+    }
+
+    //Первые limit ключей в порядке order: куча из limit ключей, без сортировки всей корзины
+    private static <K> List<K> first(Set<K> keys, int limit, Comparator<? super K> order) {
+        PriorityQueue<K> heap = new PriorityQueue<>(Math.min(limit, keys.size()) + 1, order.reversed());
+        for (K key : keys) {
+            heap.add(key);
+            if (heap.size() > limit) heap.poll();
+        }
+        List<K> res = new ArrayList<>(heap);
+        res.sort(order);
+        return res;
+    }
+
+    private void removeFrom(Bucket<K> bucket, K key) {
+        bucket.keys.remove(key);
+        if (!bucket.keys.isEmpty()) return;
+        if (bucket.higher != null) bucket.higher.lower = bucket.lower;
+        else head = bucket.lower;
+        if (bucket.lower != null) bucket.lower.higher = bucket.higher;
+        else tail = bucket.higher;
+    }
+
+    private Bucket<K> insertAbove(Bucket<K> bucket, long count) {
+        Bucket<K> res = new Bucket<>(count);
+        res.lower = bucket;
+        res.higher = bucket.higher;
+        if (bucket.higher != null) bucket.higher.lower = res;
+        else head = res;
+        bucket.higher = res;
+        return res;
+    }
+
+    private Bucket<K> insertBelow(Bucket<K> bucket, long count) {
+        Bucket<K> res = new Bucket<>(count);
+        if (bucket == null) {
+            head = tail = res;
+            return res;
+        }
+        res.higher = bucket;
+        res.lower = bucket.lower;
+        if (bucket.lower != null) bucket.lower.higher = res;
+        else tail = res;
+        bucket.lower = res;
+        return res;
+    }
+}